@@ -0,0 +1,107 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.bzip2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes sequences of bits to an <code>OutputStream</code>, most significant
+ * bit first, as bzip2 streams are made of. This is used to concatenate
+ * compressed blocks that do not end on a byte boundary.
+ */
+final class BitWriter {
+
+    private final OutputStream out;
+
+    /** Bits that do not fill a byte yet, in the low bits */
+    private long bsBuff;
+
+    /** Number of bits in bsBuff, always lower than 8 between calls */
+    private int bsLive;
+
+    BitWriter(final OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the <code>n</code> low bits of the given value.
+     *
+     * @param n the number of bits to write, at most 48
+     * @param v the value whose bits are written
+     */
+    void writeBits(final int n, final long v) throws IOException {
+        int bsLiveShadow = this.bsLive + n;
+        long bsBuffShadow = (this.bsBuff << n) | (v & ((1L << n) - 1));
+
+        while (bsLiveShadow >= 8) {
+            bsLiveShadow -= 8;
+            this.out.write((int) (bsBuffShadow >>> bsLiveShadow));
+        }
+
+        this.bsBuff = bsBuffShadow & ((1L << bsLiveShadow) - 1);
+        this.bsLive = bsLiveShadow;
+    }
+
+    /**
+     * Writes the bits of <code>src</code> that range from bit
+     * <code>from</code> inclusive to bit <code>to</code> exclusive, bit 0
+     * being the most significant bit of <code>src[0]</code>.
+     */
+    void writeBits(final byte[] src, long from, final long to)
+        throws IOException {
+        if ((from & 7) == 0 && this.bsLive == 0) {
+            // Both aligned on a byte boundary
+            final int n = (int) ((to - from) >>> 3);
+            this.out.write(src, (int) (from >>> 3), n);
+            from += (long) n << 3;
+        } else {
+            for (; to - from >= 8; from += 8) {
+                writeBits(8, getBits(src, from, 8));
+            }
+        }
+
+        if (to > from) {
+            writeBits((int) (to - from), getBits(src, from, (int) (to - from)));
+        }
+    }
+
+    /**
+     * Pads the last byte with zeros and writes it, if bits are pending.
+     */
+    void flush() throws IOException {
+        if (this.bsLive > 0) {
+            writeBits(8 - this.bsLive, 0);
+        }
+    }
+
+    /**
+     * Returns the <code>n</code> bits, at most 8, that start at bit
+     * <code>from</code> of <code>src</code>.
+     */
+    static int getBits(final byte[] src, final long from, final int n) {
+        final int i = (int) (from >>> 3);
+        final int shift = (int) (from & 7);
+        int bits = (src[i] & 0xff) << 8;
+        if (shift + n > 8) {
+            bits |= src[i + 1] & 0xff;
+        }
+        return (bits >>> (16 - shift - n)) & ((1 << n) - 1);
+    }
+}
@@ -551,6 +551,14 @@ public class CBZip2OutputStream extends OutputStream
     private int combinedCRC;
     private final int allowableBlockSize;
 
+    /**
+     * If true, only the blocks are written: neither the stream header nor the
+     * end of stream marker and combined CRC.
+     */
+    private final boolean blocksOnly;
+    private int nBlocks;
+    private int paddingBits;
+
     /**
      * All memory intensive stuff.
      */
@@ -623,6 +631,30 @@ public class CBZip2OutputStream extends OutputStream
      */
     public CBZip2OutputStream(final OutputStream out, final int blockSize)
         throws IOException {
+        this(out, blockSize, false);
+    }
+
+    /**
+     * Constructs a new <code>CBZip2OutputStream</code> with specified
+     * blocksize that, if <code>blocksOnly</code> is true, writes the
+     * compressed blocks only. This allows {@link ParallelCBZip2OutputStream}
+     * to compress parts of a stream separately and to concatenate them at
+     * bit level.
+     *
+     * @param out
+     *            the destination stream.
+     * @param blockSize
+     *            the blockSize as 100k units.
+     * @param blocksOnly
+     *            if true, neither the <code>"h"</code> header nor the end
+     *            of stream marker are written.
+     *
+     * @throws IOException
+     *             if an I/O error occurs in the specified stream.
+     */
+    CBZip2OutputStream(final OutputStream out, final int blockSize,
+                       final boolean blocksOnly)
+        throws IOException {
         super();
 
         if (blockSize < 1) {
@@ -636,6 +668,7 @@ public class CBZip2OutputStream extends OutputStream
 
         this.blockSize100k = blockSize;
         this.out = out;
+        this.blocksOnly = blocksOnly;
 
         /* 20 is just a paranoia constant */
         this.allowableBlockSize = (this.blockSize100k * BZip2Constants.baseBlockSize) - 20;
@@ -768,8 +801,10 @@ public class CBZip2OutputStream extends OutputStream
          * Write `magic' bytes h indicating file-format == huffmanised, followed
          * by a digit indicating blockSize100k.
          */
-        bsPutUByte('h');
-        bsPutUByte('0' + this.blockSize100k);
+        if (!this.blocksOnly) {
+            bsPutUByte('h');
+            bsPutUByte('0' + this.blockSize100k);
+        }
 
         this.combinedCRC = 0;
         initBlock();
@@ -796,6 +831,7 @@ public class CBZip2OutputStream extends OutputStream
         if (this.last == -1) {
             return;
         }
+        this.nBlocks++;
 
         /* sort the block and establish posn of original string */
         blockSort();
@@ -829,6 +865,12 @@ public class CBZip2OutputStream extends OutputStream
     }
 
     private void endCompression() throws IOException {
+        if (this.blocksOnly) {
+            this.paddingBits = (8 - (this.bsLive & 7)) & 7;
+            bsFinishedWithStream();
+            return;
+        }
+
         /*
          * Now another magic 48-bit number, 0x177245385090, to indicate the end
          * of the last block. (sqrt(pi), if you want to know. I did want to use
@@ -855,6 +897,29 @@ public class CBZip2OutputStream extends OutputStream
         return this.blockSize100k;
     }
 
+    /**
+     * Returns the number of blocks written so far.
+     */
+    final int getBlockCount() {
+        return this.nBlocks;
+    }
+
+    /**
+     * Returns the CRC combining the CRCs of the blocks written so far, as
+     * written at the end of the stream.
+     */
+    final int getCombinedCRC() {
+        return this.combinedCRC;
+    }
+
+    /**
+     * Returns the number of bits that were appended to the last compressed
+     * byte to pad it, once this stream is finished.
+     */
+    final int getPaddingBits() {
+        return this.paddingBits;
+    }
+
     @Override
     public void write(final byte[] buf, int offs, final int len)
         throws IOException {
@@ -0,0 +1,631 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.bzip2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+/**
+ * An input stream that decompresses from the BZip2 format (without the file
+ * header chars) using several threads.
+ *
+ * <p>The compressed stream is scanned for the 48-bit magic numbers that start
+ * blocks, and the blocks that are found are decoded ahead by a pool of
+ * threads, each of them with a {@link CBZip2InputStream}. Decoded blocks are
+ * returned in order. As the block magic may occur by chance in compressed
+ * data, a block that fails to decode is joined with the next one and decoded
+ * again.</p>
+ *
+ * <p>At most twice as many blocks as there are threads are decoded or
+ * waiting to be read at once. With a single thread, blocks are decoded by the
+ * thread that reads the data.</p>
+ *
+ * <p>Unlike <code>CBZip2InputStream</code>, a CRC error is fatal and results
+ * in an <code>IOException</code>.</p>
+ *
+ * <p>Like <code>CBZip2InputStream</code>, this stream expects the next byte
+ * in the stream to be the first one after the <code>"BZ"</code> magic, and
+ * reads bytes from the compressed source stream via the single byte
+ * {@link java.io.InputStream#read() read()} method exclusively. Thus you
+ * should consider to use a buffered source stream.</p>
+ *
+ * <p>The position of each block in the compressed stream can be reported
+ * to a {@link BlockListener}, and a stream can be decompressed from any of
+ * these blocks with
+ * {@link #ParallelCBZip2InputStream(InputStream, int, int, int)}.</p>
+ *
+ * <p>Instances of this class are not threadsafe.</p>
+ */
+public class ParallelCBZip2InputStream extends InputStream {
+
+    private static final long MAGIC_MASK = (1L << 48) - 1;
+
+    private InputStream in;
+    private final boolean decompressConcatenated;
+    private final int nbThreads;
+
+    /** Decodes the blocks if several threads are used, created when first needed */
+    private ExecutorService executor;
+
+    /** Blocks being decoded or waiting to be read, in order */
+    private final Deque<Segment> pendingSegments = new ArrayDeque<Segment>();
+
+    private int blockSize100k;
+
+    /** Compressed bytes that have been read but not extracted into segments yet */
+    private byte[] buf = new byte[65536];
+    private int bufLength;
+
+    /**
+     * Position in bits in buf of the magic number that starts the next
+     * segment, -1 if the end of the input was reached.
+     */
+    private long segmentStart;
+
+    /** Whether the next segment starts with the end of stream magic */
+    private boolean atEndOfStream;
+
+    private int computedCombinedCRC;
+
+    /** The decoded block being read */
+    private byte[] decoded = new byte[0];
+    private int decodedOffset;
+
+    private boolean eof;
+
+    /** Whether the combined CRC of the current stream can be checked */
+    private boolean checkCombinedCRC = true;
+
+    /** Number of bytes read from the compressed source stream */
+    private long inCount;
+
+    /** Number of decompressed bytes that precede the current block */
+    private long blockOffset;
+
+    private BlockListener blockListener;
+
+    /**
+     * Is notified of the blocks that are decompressed, in order.
+     */
+    public interface BlockListener {
+
+        /**
+         * Called when a block is about to be read.
+         *
+         * @param position the position in bits in the compressed source
+         *                 stream of the block's magic number
+         * @param offset the number of decompressed bytes that precede the
+         *               block
+         * @param blockSize100k the block size of the stream the block is part
+         *                      of
+         */
+        void blockRead(long position, long offset, int blockSize100k);
+    }
+
+    /**
+     * Constructs a new ParallelCBZip2InputStream which decompresses bytes
+     * read from the specified stream. This doesn't support decompressing
+     * concatenated .bz2 files.
+     *
+     * @param in InputStream
+     * @param nbThreads the number of threads that decode blocks
+     * @throws IOException
+     *  if the stream content is malformed or an I/O error occurs.
+     */
+    public ParallelCBZip2InputStream(final InputStream in, final int nbThreads)
+        throws IOException {
+        this(in, nbThreads, false);
+    }
+
+    /**
+     * Constructs a new ParallelCBZip2InputStream which decompresses bytes
+     * read from the specified stream.
+     *
+     * @param in the InputStream from which this object should be created
+     * @param nbThreads the number of threads that decode blocks
+     * @param decompressConcatenated
+     *                     if true, decompress until the end of the input;
+     *                     if false, stop after the first .bz2 stream and
+     *                     leave the input position to point to the next
+     *                     byte after the .bz2 stream
+     *
+     * @throws IOException
+     *             if the stream content is malformed or an I/O error occurs.
+     */
+    public ParallelCBZip2InputStream(final InputStream in, final int nbThreads,
+                                     final boolean decompressConcatenated)
+        throws IOException {
+        this.in = in;
+        this.nbThreads = Math.max(1, nbThreads);
+        this.decompressConcatenated = decompressConcatenated;
+
+        init(true);
+    }
+
+    /**
+     * Constructs a new ParallelCBZip2InputStream which decompresses bytes
+     * read from the specified stream, starting at the block whose position
+     * was reported to a {@link BlockListener}. Concatenated .bz2 files are
+     * decompressed, and the combined CRC of the stream the block is part of
+     * is not checked.
+     *
+     * @param in the InputStream from which this object should be created,
+     *           positioned at the byte that holds the first bit of the block
+     * @param nbThreads the number of threads that decode blocks
+     * @param blockSize100k the block size of the stream the block is part of
+     * @param bitOffset the position in bits of the block in the first byte,
+     *                  from 0 to 7
+     *
+     * @throws IOException
+     *             if there is no block at this position or an I/O error
+     *             occurs.
+     */
+    public ParallelCBZip2InputStream(final InputStream in, final int nbThreads,
+                                     final int blockSize100k, final int bitOffset)
+        throws IOException {
+        this.in = in;
+        this.nbThreads = Math.max(1, nbThreads);
+        this.decompressConcatenated = true;
+        this.blockSize100k = blockSize100k;
+        this.checkCombinedCRC = false;
+
+        if (!ensureBits(bitOffset + 48)) {
+            throw new IOException("unexpected end of stream");
+        }
+        if (getBits(bitOffset, 48) != ParallelCBZip2OutputStream.BLOCK_MAGIC) {
+            throw new IOException("bad block header");
+        }
+        this.segmentStart = bitOffset;
+    }
+
+    /**
+     * Sets the listener that is notified of the blocks that are read, which
+     * must be done before the first read.
+     *
+     * @param blockListener the listener, null for none
+     */
+    public void setBlockListener(final BlockListener blockListener) {
+        this.blockListener = blockListener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (this.in == null) {
+            throw new IOException("stream closed");
+        }
+        if (this.decodedOffset == this.decoded.length && !nextBlock()) {
+            return -1;
+        }
+        return this.decoded[this.decodedOffset++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] dest, final int offs, final int len)
+        throws IOException {
+        if (offs < 0 || len < 0 || offs + len > dest.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (this.in == null) {
+            throw new IOException("stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (this.decodedOffset == this.decoded.length && !nextBlock()) {
+            return -1;
+        }
+
+        final int n = Math.min(len, this.decoded.length - this.decodedOffset);
+        System.arraycopy(this.decoded, this.decodedOffset, dest, offs, n);
+        this.decodedOffset += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return this.decoded.length - this.decodedOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        InputStream inShadow = this.in;
+        if (inShadow != null) {
+            try {
+                cancelPendingSegments();
+                if (inShadow != System.in) {
+                    inShadow.close();
+                }
+            } finally {
+                if (this.executor != null) {
+                    this.executor.shutdownNow();
+                    this.executor = null;
+                }
+                this.decoded = new byte[0];
+                this.decodedOffset = 0;
+                this.buf = null;
+                this.in = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the header of a stream and locates its first block.
+     *
+     * @return false if the end of the input was reached instead of the next
+     * stream
+     */
+    private boolean init(final boolean isFirstStream) throws IOException {
+        if (!isFirstStream) {
+            int magic0 = readByte();
+            if (magic0 == -1) {
+                return false;
+            }
+            int magic1 = readByte();
+            if (magic0 != 'B' || magic1 != 'Z') {
+                throw new IOException("Garbage after a valid BZip2 stream");
+            }
+        }
+
+        int magic2 = readByte();
+        if (magic2 != 'h') {
+            throw new IOException(isFirstStream
+                    ? "Stream is not in the BZip2 format"
+                    : "Garbage after a valid BZip2 stream");
+        }
+
+        int blockSize = readByte();
+        if (blockSize < '1' || blockSize > '9') {
+            throw new IOException("Stream is not BZip2 formatted: illegal "
+                                  + "blocksize " + (char) blockSize);
+        }
+
+        this.blockSize100k = blockSize - '0';
+        this.computedCombinedCRC = 0;
+        this.checkCombinedCRC = true;
+        this.bufLength = 0;
+
+        if (!ensureBits(48)) {
+            throw new IOException("unexpected end of stream");
+        }
+        long magic = getBits(0, 48);
+        if (magic != ParallelCBZip2OutputStream.BLOCK_MAGIC
+            && magic != ParallelCBZip2OutputStream.EOS_MAGIC) {
+            throw new IOException("bad block header");
+        }
+        this.segmentStart = 0;
+        this.atEndOfStream = magic == ParallelCBZip2OutputStream.EOS_MAGIC;
+
+        return true;
+    }
+
+    /**
+     * Makes the next decoded block the current one.
+     *
+     * @return false if the end of the stream was reached
+     */
+    private boolean nextBlock() throws IOException {
+        while (!this.eof) {
+            fillPendingSegments();
+
+            if (this.pendingSegments.isEmpty()) {
+                // All the blocks before the end of stream magic have been read
+                endStream();
+                continue;
+            }
+
+            Segment segment = this.pendingSegments.removeFirst();
+            byte[] block;
+            try {
+                block = segment.get();
+            } catch (IOException e) {
+                // The block magic or end of stream magic that ends the
+                // segment was not one: try again with the next segment
+                Segment next = this.pendingSegments.pollFirst();
+                if (next == null) {
+                    if (this.segmentStart == -1) {
+                        throw e;
+                    }
+                    next = scanSegment();
+                }
+                next.task.cancel(false);
+
+                segment = segment.join(next);
+                block = segment.get();
+            }
+
+            this.computedCombinedCRC = Integer.rotateLeft(this.computedCombinedCRC, 1)
+                ^ segment.getStoredCRC();
+            if (this.blockListener != null && block.length > 0) {
+                this.blockListener.blockRead(segment.position, this.blockOffset,
+                                             this.blockSize100k);
+            }
+            this.blockOffset += block.length;
+            this.decoded = block;
+            this.decodedOffset = 0;
+
+            if (block.length > 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Scans the segments that follow the pending ones and submits them for
+     * decoding, until the end of the stream or the maximum number of pending
+     * segments is reached.
+     */
+    private void fillPendingSegments() throws IOException {
+        final int maxPendingSegments = this.nbThreads > 1 ? 2 * this.nbThreads : 1;
+
+        while (this.pendingSegments.size() < maxPendingSegments
+               && !this.atEndOfStream && this.segmentStart != -1) {
+            Segment segment = scanSegment();
+            if (this.nbThreads > 1) {
+                if (this.executor == null) {
+                    this.executor = ParallelCBZip2OutputStream.newExecutor(
+                        this.nbThreads, "ParallelCBZip2InputStream decoder");
+                }
+                this.executor.execute(segment.task);
+            }
+            this.pendingSegments.addLast(segment);
+        }
+    }
+
+    /**
+     * Checks the combined CRC of the stream that ends and moves to the next
+     * stream if decompressing concatenated files.
+     */
+    private void endStream() throws IOException {
+        if (this.segmentStart == -1) {
+            throw new IOException("unexpected end of stream");
+        }
+        if (!ensureBits(this.segmentStart + 80)) {
+            throw new IOException("unexpected end of stream");
+        }
+
+        int storedCombinedCRC = (int) getBits(this.segmentStart + 48, 32);
+        if (this.checkCombinedCRC
+            && storedCombinedCRC != this.computedCombinedCRC) {
+            throw new IOException("BZip2 CRC error");
+        }
+
+        this.eof = !this.decompressConcatenated || !init(false);
+    }
+
+    /**
+     * Extracts the bits that range from the current segment start to the
+     * next block or end of stream magic, or to the end of the input.
+     */
+    private Segment scanSegment() throws IOException {
+        final long start = this.segmentStart;
+        long end = -1;
+        long magic = 0;
+
+        // The magic numbers that end in byte i start in the 8 bits that
+        // follow bit 8 * (i - 6), the window holding bytes i - 6 to i
+        int i = (int) ((start + 8) >>> 3) + 5;
+        long window = 0;
+        if (ensureBits(8L * i)) {
+            for (int j = i - 6; j < i; j++) {
+                window = (window << 8) | (j < 0 ? 0 : this.buf[j] & 0xff);
+            }
+            for (; end == -1 && ensureBits(8L * (i + 1)); i++) {
+                window = (window << 8) | (this.buf[i] & 0xff);
+                for (int shift = 7; shift >= 0; shift--) {
+                    long position = 8L * (i - 5) - shift;
+                    if (position <= start) {
+                        continue;
+                    }
+                    magic = (window >>> shift) & MAGIC_MASK;
+                    if (magic == ParallelCBZip2OutputStream.BLOCK_MAGIC
+                        || magic == ParallelCBZip2OutputStream.EOS_MAGIC) {
+                        end = position;
+                        break;
+                    }
+                }
+            }
+        }
+
+        final long stop = end == -1 ? 8L * this.bufLength : end;
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream((int) ((stop - start) >>> 3) + 1);
+        final BitWriter bitWriter = new BitWriter(bout);
+        bitWriter.writeBits(this.buf, start, stop);
+        bitWriter.flush();
+        final long position = 8L * (this.inCount - this.bufLength) + start;
+        final Segment segment = new Segment(bout.toByteArray(), stop - start, position);
+
+        if (end == -1) {
+            this.segmentStart = -1;
+            this.bufLength = 0;
+            this.atEndOfStream = false;
+        } else {
+            // Discards the bytes that precede the next segment
+            int first = (int) (end >>> 3);
+            System.arraycopy(this.buf, first, this.buf, 0, this.bufLength - first);
+            this.bufLength -= first;
+            this.segmentStart = end - 8L * first;
+            this.atEndOfStream = magic == ParallelCBZip2OutputStream.EOS_MAGIC;
+        }
+
+        return segment;
+    }
+
+    /**
+     * Reads bytes from the input until buf holds at least the given number of
+     * bits.
+     *
+     * @return false if the end of the input was reached before
+     */
+    private boolean ensureBits(final long nbBits) throws IOException {
+        while (8L * this.bufLength < nbBits) {
+            int b = readByte();
+            if (b < 0) {
+                return false;
+            }
+            if (this.bufLength == this.buf.length) {
+                this.buf = Arrays.copyOf(this.buf, 2 * this.buf.length);
+            }
+            this.buf[this.bufLength++] = (byte) b;
+        }
+        return true;
+    }
+
+    private int readByte() throws IOException {
+        int b = this.in.read();
+        if (b >= 0) {
+            this.inCount++;
+        }
+        return b;
+    }
+
+    /**
+     * Returns the given number of bits of buf, at most 56, that start at the
+     * given position.
+     */
+    private long getBits(long from, int n) {
+        long bits = 0;
+        for (; n > 0; n -= 8, from += 8) {
+            int count = Math.min(n, 8);
+            bits = (bits << count) | BitWriter.getBits(this.buf, from, count);
+        }
+        return bits;
+    }
+
+    private void cancelPendingSegments() {
+        for (Segment segment : this.pendingSegments) {
+            segment.task.cancel(false);
+        }
+        this.pendingSegments.clear();
+    }
+
+    /**
+     * The bits that range from a block magic to the next magic number, that
+     * are expected to be a whole compressed block.
+     */
+    private final class Segment {
+        final byte[] bits;
+        final long bitLength;
+        /** Position in bits of the segment in the compressed source stream */
+        final long position;
+        final FutureTask<byte[]> task;
+
+        Segment(final byte[] bits, final long bitLength, final long position) {
+            this.bits = bits;
+            this.bitLength = bitLength;
+            this.position = position;
+            this.task = new FutureTask<byte[]>(this::decode);
+        }
+
+        int getStoredCRC() {
+            int crc = 0;
+            for (int i = 0; i < 4; i++) {
+                crc = (crc << 8) | BitWriter.getBits(this.bits, 48 + 8 * i, 8);
+            }
+            return crc;
+        }
+
+        /**
+         * Returns the segment that joins this one and the given one.
+         */
+        Segment join(final Segment next) throws IOException {
+            final ByteArrayOutputStream bout = new ByteArrayOutputStream(this.bits.length + next.bits.length);
+            final BitWriter bitWriter = new BitWriter(bout);
+            bitWriter.writeBits(this.bits, 0, this.bitLength);
+            bitWriter.writeBits(next.bits, 0, next.bitLength);
+            bitWriter.flush();
+            return new Segment(bout.toByteArray(), this.bitLength + next.bitLength,
+                               this.position);
+        }
+
+        /**
+         * Waits for the block to be decoded, decoding it on this thread if no
+         * decoding thread has started it yet.
+         */
+        byte[] get() throws IOException {
+            this.task.run();
+            try {
+                return this.task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+
+        /**
+         * Decodes the block by decompressing a stream made of this block
+         * only, and checks its CRC. This method is called by the decoding
+         * threads.
+         */
+        private byte[] decode() throws IOException {
+            if (this.bitLength < 80) {
+                throw new IOException("unexpected end of stream");
+            }
+            final int storedCRC = getStoredCRC();
+
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream(this.bits.length + 16);
+            stream.write('h');
+            stream.write('0' + ParallelCBZip2InputStream.this.blockSize100k);
+            final BitWriter bitWriter = new BitWriter(stream);
+            bitWriter.writeBits(this.bits, 0, this.bitLength);
+            bitWriter.writeBits(48, ParallelCBZip2OutputStream.EOS_MAGIC);
+            bitWriter.writeBits(32, storedCRC);
+            bitWriter.flush();
+
+            final ByteArrayOutputStream block = new ByteArrayOutputStream(
+                ParallelCBZip2InputStream.this.blockSize100k * BZip2Constants.baseBlockSize);
+            final byte[] buffer = new byte[8192];
+            try (CBZip2InputStream bz = new CBZip2InputStream(new ByteArrayInputStream(stream.toByteArray()))) {
+                int n;
+                while ((n = bz.read(buffer, 0, buffer.length)) != -1) {
+                    block.write(buffer, 0, n);
+                }
+            } catch (RuntimeException e) {
+                // CBZip2InputStream is known to throw unchecked exceptions on
+                // data that is not properly encoded
+                throw new IOException(e);
+            }
+
+            final byte[] decodedBlock = block.toByteArray();
+            final CRC crc = new CRC();
+            crc.initialiseCRC();
+            for (byte b : decodedBlock) {
+                crc.updateCRC(b & 0xff);
+            }
+            if (crc.getFinalCRC() != storedCRC) {
+                throw new IOException("BZip2 CRC error");
+            }
+
+            return decodedBlock;
+        }
+    }
+}
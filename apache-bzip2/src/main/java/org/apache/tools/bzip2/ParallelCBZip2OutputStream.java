@@ -0,0 +1,406 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.bzip2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An output stream that compresses into the BZip2 format (without the file
+ * header chars) using several threads.
+ *
+ * <p>BZip2 blocks are compressed independently from each other: this stream
+ * splits the data into blocks exactly where {@link CBZip2OutputStream} would,
+ * has the blocks sorted and encoded concurrently by a pool of threads, and
+ * concatenates them in order at bit level. The resulting stream is identical
+ * to the one that <code>CBZip2OutputStream</code> produces.</p>
+ *
+ * <p>At most twice as many blocks as there are threads are compressed or
+ * waiting to be written at once, each of them requiring about as much memory
+ * as a <code>CBZip2OutputStream</code>. With a single thread, blocks are
+ * compressed by the thread that writes the data.</p>
+ *
+ * <p><b>Attention: </b>Like with <code>CBZip2OutputStream</code>, the caller
+ * is responsible to write the two BZip2 magic bytes <code>"BZ"</code> to the
+ * specified stream prior to calling the constructor.</p>
+ *
+ * <p>Instances of this class are not threadsafe.</p>
+ */
+public class ParallelCBZip2OutputStream extends OutputStream {
+
+    /** The 48-bit magic number that starts each block: BCD of pi */
+    static final long BLOCK_MAGIC = 0x314159265359L;
+
+    /** The 48-bit magic number that ends the stream: BCD of sqrt(pi) */
+    static final long EOS_MAGIC = 0x177245385090L;
+
+    /** Length of the longest run that the first run-length encoding step encodes */
+    private static final int MAX_RUN_LENGTH = 255;
+
+    private OutputStream out;
+
+    private final int blockSize100k;
+
+    /** Same as CBZip2OutputStream's, blocks end after this number of run-length encoded bytes */
+    private final int allowableBlockSize;
+
+    private int nbThreads;
+
+    /** Compresses the blocks if several threads are used, created when first needed */
+    private ExecutorService executor;
+
+    /** Blocks being compressed or waiting to be written, in order */
+    private final Deque<FutureTask<CompressedBlock>> pendingBlocks = new ArrayDeque<FutureTask<CompressedBlock>>();
+
+    /** Holds the bits of the stream before they are written to <code>out</code> */
+    private final ByteArrayOutputStream staging = new ByteArrayOutputStream();
+    private final BitWriter bitWriter = new BitWriter(staging);
+
+    private int combinedCRC;
+
+    /** The uncompressed data of the block being filled */
+    private byte[] block;
+    private int blockLength;
+
+    /**
+     * Index of the last run-length encoded byte of the block being filled,
+     * like <code>CBZip2OutputStream.last</code>. The run being accumulated is
+     * not accounted for.
+     */
+    private int last = -1;
+
+    /** Offset in the block, value and length of the run being accumulated */
+    private int runStart;
+    private int runChar = -1;
+    private int runLength;
+
+    /**
+     * Constructs a new <code>ParallelCBZip2OutputStream</code> with a
+     * blocksize of 900k.
+     *
+     * @param out
+     *            the destination stream.
+     * @param nbThreads
+     *            the number of threads that compress blocks.
+     *
+     * @throws IOException
+     *             if an I/O error occurs in the specified stream.
+     */
+    public ParallelCBZip2OutputStream(final OutputStream out,
+                                      final int nbThreads)
+        throws IOException {
+        this(out, CBZip2OutputStream.MAX_BLOCKSIZE, nbThreads);
+    }
+
+    /**
+     * Constructs a new <code>ParallelCBZip2OutputStream</code> with specified
+     * blocksize.
+     *
+     * @param out
+     *            the destination stream.
+     * @param blockSize
+     *            the blockSize as 100k units.
+     * @param nbThreads
+     *            the number of threads that compress blocks.
+     *
+     * @throws IOException
+     *             if an I/O error occurs in the specified stream.
+     * @throws IllegalArgumentException
+     *             if <code>(blockSize &lt; 1) || (blockSize &gt; 9)</code>.
+     */
+    public ParallelCBZip2OutputStream(final OutputStream out,
+                                      final int blockSize,
+                                      final int nbThreads)
+        throws IOException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize(" + blockSize
+                                               + ") < 1");
+        }
+        if (blockSize > 9) {
+            throw new IllegalArgumentException("blockSize(" + blockSize
+                                               + ") > 9");
+        }
+
+        this.out = out;
+        this.blockSize100k = blockSize;
+        this.allowableBlockSize = (blockSize * BZip2Constants.baseBlockSize) - 20;
+        this.block = new byte[blockSize * BZip2Constants.baseBlockSize];
+        setThreads(nbThreads);
+
+        this.bitWriter.writeBits(8, 'h');
+        this.bitWriter.writeBits(8, '0' + blockSize);
+    }
+
+    /**
+     * Sets the number of threads that compress blocks. This has no effect
+     * once a block has been compressed using several threads.
+     *
+     * @param nbThreads the number of threads that compress blocks
+     */
+    public void setThreads(final int nbThreads) {
+        this.nbThreads = Math.max(1, nbThreads);
+    }
+
+    /**
+     * Returns the blocksize parameter specified at construction time.
+     *
+     * @return int
+     */
+    public final int getBlockSize() {
+        return this.blockSize100k;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (this.out == null) {
+            throw new IOException("closed");
+        }
+        write0(b & 0xff);
+    }
+
+    @Override
+    public void write(final byte[] buf, int offs, final int len)
+        throws IOException {
+        if (offs < 0 || len < 0 || offs + len > buf.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (this.out == null) {
+            throw new IOException("stream closed");
+        }
+
+        for (int hi = offs + len; offs < hi;) {
+            write0(buf[offs++] & 0xff);
+        }
+    }
+
+    /**
+     * Appends a byte to the block, keeping track of runs to find out where
+     * <code>CBZip2OutputStream</code> would end the block.
+     */
+    private void write0(final int b) throws IOException {
+        if (this.runLength > 0 && b == this.runChar
+            && this.runLength < MAX_RUN_LENGTH) {
+            this.runLength++;
+        } else {
+            if (this.runLength > 0) {
+                endRun();
+            }
+            this.runChar = b;
+            this.runLength = 1;
+            this.runStart = this.blockLength;
+        }
+
+        if (this.blockLength == this.block.length) {
+            this.block = Arrays.copyOf(this.block, 2 * this.block.length);
+        }
+        this.block[this.blockLength++] = (byte) b;
+    }
+
+    /**
+     * Accounts for the run that was accumulated, ending the block before it
+     * if the block is full.
+     *
+     * @see CBZip2OutputStream#writeRun()
+     */
+    private void endRun() throws IOException {
+        final int encodedLength = this.runLength < 4 ? this.runLength : 5;
+
+        if (this.last < this.allowableBlockSize) {
+            this.last += encodedLength;
+        } else {
+            submitBlock(this.runStart);
+            this.last = encodedLength - 1;
+        }
+    }
+
+    /**
+     * Queues the first bytes of the block for compression, after writing the
+     * oldest pending block if too many are pending. The remaining bytes start
+     * the next block.
+     *
+     * @param length the number of bytes that end the block
+     */
+    private void submitBlock(final int length) throws IOException {
+        final byte[] input = this.block;
+        final FutureTask<CompressedBlock> task = new FutureTask<CompressedBlock>(
+            () -> compressBlock(input, length));
+
+        this.block = new byte[input.length];
+        this.blockLength -= length;
+        System.arraycopy(input, length, this.block, 0, this.blockLength);
+        this.runStart -= length;
+
+        if (this.nbThreads > 1) {
+            if (this.pendingBlocks.size() >= 2 * this.nbThreads) {
+                writeBlock(this.pendingBlocks.removeFirst());
+            }
+            if (this.executor == null) {
+                this.executor = newExecutor(this.nbThreads, "ParallelCBZip2OutputStream compressor");
+            }
+            this.executor.execute(task);
+            this.pendingBlocks.addLast(task);
+        } else {
+            writeBlock(task);
+        }
+    }
+
+    /**
+     * Compresses a block. This method is called by the compression threads.
+     */
+    private CompressedBlock compressBlock(final byte[] input, final int length)
+        throws IOException {
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream(length / 4 + 64);
+        final CBZip2OutputStream bz = new CBZip2OutputStream(bout, this.blockSize100k, true);
+        bz.write(input, 0, length);
+        bz.finish();
+
+        return new CompressedBlock(bout.toByteArray(),
+                                   8L * bout.size() - bz.getPaddingBits(),
+                                   bz.getBlockCount(), bz.getCombinedCRC());
+    }
+
+    /**
+     * Waits for the given block to be compressed, running it on this thread
+     * if no compression thread has started it yet, and writes it.
+     */
+    private void writeBlock(final FutureTask<CompressedBlock> task)
+        throws IOException {
+        final CompressedBlock compressed;
+        task.run();
+        try {
+            compressed = task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+
+        this.bitWriter.writeBits(compressed.bits, 0, compressed.bitLength);
+        this.combinedCRC = Integer.rotateLeft(this.combinedCRC, compressed.nbBlocks)
+            ^ compressed.combinedCRC;
+
+        this.staging.writeTo(this.out);
+        this.staging.reset();
+    }
+
+    /**
+     * Compresses the remaining data and writes the end of stream marker.
+     * The underlying stream is not closed.
+     *
+     * @throws IOException if an I/O error occurs in the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (this.out == null) {
+            return;
+        }
+
+        try {
+            if (this.runLength > 0) {
+                endRun();
+            }
+            if (this.blockLength > 0) {
+                submitBlock(this.blockLength);
+            }
+            while (!this.pendingBlocks.isEmpty()) {
+                writeBlock(this.pendingBlocks.removeFirst());
+            }
+
+            this.bitWriter.writeBits(48, EOS_MAGIC);
+            this.bitWriter.writeBits(32, this.combinedCRC);
+            this.bitWriter.flush();
+            this.staging.writeTo(this.out);
+        } finally {
+            for (Future<CompressedBlock> pendingBlock : this.pendingBlocks) {
+                pendingBlock.cancel(false);
+            }
+            this.pendingBlocks.clear();
+            if (this.executor != null) {
+                this.executor.shutdownNow();
+                this.executor = null;
+            }
+            this.out = null;
+            this.block = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.out != null) {
+            OutputStream outShadow = this.out;
+            finish();
+            outShadow.close();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        OutputStream outShadow = this.out;
+        if (outShadow != null) {
+            outShadow.flush();
+        }
+    }
+
+    /**
+     * Creates a pool of daemon threads whose threads terminate when idle, so
+     * that streams that are not closed do not leak threads.
+     */
+    static ExecutorService newExecutor(final int nbThreads, final String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            nbThreads, nbThreads, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * The bits of one or more compressed blocks.
+     */
+    private static final class CompressedBlock {
+        final byte[] bits;
+        final long bitLength;
+        final int nbBlocks;
+        final int combinedCRC;
+
+        CompressedBlock(final byte[] bits, final long bitLength,
+                        final int nbBlocks, final int combinedCRC) {
+            this.bits = bits;
+            this.bitLength = bitLength;
+            this.nbBlocks = nbBlocks;
+            this.combinedCRC = combinedCRC;
+        }
+    }
+}
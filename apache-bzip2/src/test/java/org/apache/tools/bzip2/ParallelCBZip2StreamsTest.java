@@ -0,0 +1,212 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.bzip2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+/**
+ * This class is a TestNG test case for {@link ParallelCBZip2OutputStream} and
+ * {@link ParallelCBZip2InputStream}.
+ */
+public class ParallelCBZip2StreamsTest {
+
+    /**
+     * Returns data of the given length made of text-like bytes and of runs of
+     * various lengths, which the first run-length encoding step shrinks or
+     * expands.
+     */
+    private static byte[] createData(int length) {
+        Random random = new Random(length);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length;) {
+            int runLength = random.nextInt(10) == 0 ? 1 + random.nextInt(600) : 1;
+            byte b = (byte) ('a' + random.nextInt(16));
+            for (int j = 0; j < runLength && i < length; j++) {
+                data[i++] = b;
+            }
+        }
+        return data;
+    }
+
+    private static byte[] compress(byte[] data, int nbThreads) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        OutputStream out = nbThreads == 0
+            ? new CBZip2OutputStream(bout, 1)
+            : new ParallelCBZip2OutputStream(bout, 1, nbThreads);
+        // Writes data in chunks that are not aligned on blocks
+        for (int off = 0; off < data.length; off += 10000) {
+            out.write(data, off, Math.min(10000, data.length - off));
+        }
+        out.close();
+        return bout.toByteArray();
+    }
+
+    private static byte[] decompress(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int nbRead;
+        while ((nbRead = in.read(buf)) != -1) {
+            bout.write(buf, 0, nbRead);
+        }
+        in.close();
+        return bout.toByteArray();
+    }
+
+    /**
+     * Asserts that the parallel stream splits data into blocks like
+     * <code>CBZip2OutputStream</code> does and produces the same bytes.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testSameAsSequentialCompression() throws IOException {
+        for (int length : new int[] {0, 1, 1000, 99980, 99981, 1234567}) {
+            byte[] data = createData(length);
+            byte[] expected = compress(data, 0);
+            assert Arrays.equals(expected, compress(data, 1));
+            assert Arrays.equals(expected, compress(data, 4));
+        }
+    }
+
+    /**
+     * Decompresses several blocks with one and several threads, and checks
+     * that the input is left after the end of the stream.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testDecompression() throws IOException {
+        byte[] data = createData(1234567);
+        byte[] compressed = compress(data, 4);
+
+        for (int nbThreads : new int[] {1, 4}) {
+            ByteArrayInputStream bin = new ByteArrayInputStream(compressed);
+            assert Arrays.equals(data, decompress(new ParallelCBZip2InputStream(bin, nbThreads)));
+            assert bin.available() == 0;
+        }
+
+        assert decompress(new ParallelCBZip2InputStream(new ByteArrayInputStream(compress(new byte[0], 4)), 4)).length == 0;
+    }
+
+    /**
+     * Decompresses concatenated streams, as produced by tools that compress
+     * files in parallel.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testConcatenatedStreams() throws IOException {
+        byte[] data1 = createData(250000);
+        byte[] data2 = createData(1000);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        bout.write(compress(data1, 2));
+        bout.write('B');
+        bout.write('Z');
+        bout.write(compress(data2, 2));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(data1);
+        expected.write(data2);
+
+        assert Arrays.equals(expected.toByteArray(),
+                             decompress(new ParallelCBZip2InputStream(new ByteArrayInputStream(bout.toByteArray()), 3, true)));
+        assert Arrays.equals(data1,
+                             decompress(new ParallelCBZip2InputStream(new ByteArrayInputStream(bout.toByteArray()), 3)));
+    }
+
+    /**
+     * Records the positions of the blocks of concatenated streams and
+     * decompresses from each of them.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testResumeAtBlock() throws IOException {
+        // Random bytes, that run-length encoding does not shrink
+        Random random = new Random(0);
+        byte[] data1 = new byte[250000];
+        random.nextBytes(data1);
+        byte[] data2 = createData(1000);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        bout.write(compress(data1, 2));
+        bout.write('B');
+        bout.write('Z');
+        bout.write(compress(data2, 2));
+        byte[] compressed = bout.toByteArray();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(data1);
+        expected.write(data2);
+        byte[] data = expected.toByteArray();
+
+        List<long[]> blocks = new ArrayList<long[]>();
+        ParallelCBZip2InputStream in = new ParallelCBZip2InputStream(new ByteArrayInputStream(compressed), 2, true);
+        in.setBlockListener((position, offset, blockSize100k) -> blocks.add(new long[] {position, offset, blockSize100k}));
+        assert Arrays.equals(data, decompress(in));
+        // The first stream is made of three blocks, and the second one of one block
+        assert blocks.size() == 4;
+        assert blocks.get(0)[0] == 16 && blocks.get(0)[1] == 0;
+        assert blocks.get(3)[1] == data1.length;
+
+        for (long[] block : blocks) {
+            ByteArrayInputStream bin = new ByteArrayInputStream(compressed);
+            bin.skip(block[0] >>> 3);
+            byte[] decompressed = decompress(new ParallelCBZip2InputStream(bin, 2, (int) block[2], (int) (block[0] & 7)));
+            assert Arrays.equals(Arrays.copyOfRange(data, (int) block[1], data.length), decompressed);
+        }
+    }
+
+    /**
+     * Asserts that truncated and corrupted streams cause an IOException.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCorruptedStreams() throws IOException {
+        byte[] compressed = compress(createData(300000), 2);
+
+        assertFails(Arrays.copyOf(compressed, compressed.length - 3));
+        assertFails(Arrays.copyOf(compressed, compressed.length / 2));
+
+        byte[] corrupted = compressed.clone();
+        corrupted[compressed.length / 2] ^= 0x10;
+        assertFails(corrupted);
+    }
+
+    private static void assertFails(byte[] compressed) {
+        try {
+            decompress(new ParallelCBZip2InputStream(new ByteArrayInputStream(compressed), 2));
+        } catch (IOException e) {
+            return;
+        }
+        assert false;
+    }
+}
@@ -23,7 +23,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.zip.GZIPOutputStream;
 
-import org.apache.tools.bzip2.CBZip2OutputStream;
+import org.apache.tools.bzip2.ParallelCBZip2OutputStream;
 import org.tukaani.xz.XZOutputStream;
 import org.tukaani.xz.LZMA2Options;
 
@@ -135,6 +135,8 @@ public abstract class Archiver {
     protected int format;
     /** Archive format's name of this Archiver */
     protected String formatName;
+    /** The Bzip2 stream that compresses the archive, null if the format is not Bzip2 compressed */
+    private ParallelCBZip2OutputStream bzip2OutputStream;
 	
 	
     /**
@@ -208,6 +210,20 @@ public abstract class Archiver {
         // No-op
     }
 
+    /**
+     * Sets the number of threads that compress the entries, for archive formats that are able to use several threads.
+     * Calling this method has no effect otherwise.
+     *
+     * <p>Implementation note: Bzip2 compressed formats are handled by this method, other Archiver implementations
+     * must override it to compress using several threads.</p>
+     *
+     * @param nbThreads the number of compression threads
+     */
+    public void setThreads(int nbThreads) {
+        if (bzip2OutputStream != null)
+            bzip2OutputStream.setThreads(nbThreads);
+    }
+
 
     /**
      * Normalizes the entry path, that is :
@@ -284,6 +300,7 @@ public abstract class Archiver {
      */
     public static Archiver getArchiver(OutputStream out, int format) throws IOException {
         Archiver archiver;
+        ParallelCBZip2OutputStream bzip2Out = null;
 
         switch(format) {
             case ZIP_FORMAT:
@@ -293,7 +310,7 @@ public abstract class Archiver {
                 archiver = new SingleFileArchiver(new GZIPOutputStream(out));
                 break;
             case BZ2_FORMAT:
-                archiver = new SingleFileArchiver(createBzip2OutputStream(out));
+                archiver = new SingleFileArchiver(bzip2Out = createBzip2OutputStream(out));
                 break;
             case XZ_FORMAT:
                 archiver = new SingleFileArchiver(new XZOutputStream(out, new LZMA2Options()));
@@ -305,7 +322,7 @@ public abstract class Archiver {
                 archiver = new TarArchiver(new GZIPOutputStream(out));
                 break;
             case TAR_BZ2_FORMAT:
-                archiver = new TarArchiver(createBzip2OutputStream(out));
+                archiver = new TarArchiver(bzip2Out = createBzip2OutputStream(out));
                 break;
             case TAR_XZ_FORMAT:
                 archiver = new TarArchiver(new XZOutputStream(out, new LZMA2Options()));
@@ -316,19 +333,20 @@ public abstract class Archiver {
         }
 		
         archiver.setFormat(format);
+        archiver.bzip2OutputStream = bzip2Out;
 
         return archiver;
     }
 
     /**
      * Creates and returns a Bzip2 <code>OutputStream</code> using the given <code>OutputStream</code> as the underlying
-     * stream.
+     * stream. The returned stream compresses using a single thread until {@link #setThreads(int)} is called.
      *
      * @param out the underlying stream
      * @return a Bzip2 OutputStream
      * @throws IOException if an error occurred while initializing the Bzip2 OutputStream
      */
-    protected static OutputStream createBzip2OutputStream(OutputStream out) throws IOException {
+    protected static ParallelCBZip2OutputStream createBzip2OutputStream(OutputStream out) throws IOException {
         // Writes the 2 magic bytes 'BZ', as required by CBZip2OutputStream. A quote from CBZip2OutputStream's Javadoc:
         // "Attention: The caller is resonsible to write the two BZip2 magic bytes "BZ" to the specified stream
         // prior to calling this constructor."
@@ -336,7 +354,7 @@ public abstract class Archiver {
         out.write('B');
         out.write('Z');
 
-        return new CBZip2OutputStream(out);
+        return new ParallelCBZip2OutputStream(out, 1);
     }
 
 
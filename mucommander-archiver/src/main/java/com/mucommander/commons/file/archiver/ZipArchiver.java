@@ -60,6 +60,14 @@ class ZipArchiver extends Archiver {
     public void setComment(String comment) {
         zos.setComment(comment);
     } 
+
+    /**
+     * Overrides Archiver's setThreads method as the data of Zip entries can be compressed in parallel.
+     */
+    @Override
+    public void setThreads(int nbThreads) {
+        zos.setThreads(nbThreads);
+    }
 	
 
     /////////////////////////////
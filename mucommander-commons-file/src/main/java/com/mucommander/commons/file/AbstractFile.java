@@ -27,6 +27,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.function.Consumer;
 
 import javax.swing.Icon;
 
@@ -39,6 +40,8 @@ import com.mucommander.commons.file.archive.AbstractRWArchiveFile;
 import com.mucommander.commons.file.compat.CompatURLStreamHandler;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
+import com.mucommander.commons.file.util.SegmentedCopier;
+import com.mucommander.commons.io.BoundedInputStream;
 import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.ChecksumInputStream;
 import com.mucommander.commons.io.FileTransferError;
@@ -349,6 +352,25 @@ public abstract class AbstractFile implements FileAttributes {
 
         return in;
     }
+
+    /**
+     * Returns an <code>InputStream</code> to read the given number of bytes of this file's contents, starting at the
+     * specified offset (in bytes). A <code>java.io.IOException</code> is thrown if the file doesn't exist.
+     *
+     * <p>This implementation bounds the stream returned by {@link #getInputStream(long)}. File implementations whose
+     * protocol allows requesting a range of bytes may want to override this method, so that the bytes that follow the
+     * range are not transferred.</p>
+     *
+     * @param offset the offset in bytes from the beginning of the file, must be >0
+     * @param length the number of bytes to read
+     * @throws IOException if this file cannot be read or is a folder.
+     * @throws UnsupportedFileOperationException if this method relies on a file operation that is not supported
+     * or not implemented by the underlying filesystem.
+     * @return an <code>InputStream</code> to read the specified range of this file's contents
+     */
+    public InputStream getInputStream(long offset, long length) throws IOException, UnsupportedFileOperationException {
+        return new BoundedInputStream(getInputStream(offset), length, false);
+    }
 	
 
     /**
@@ -563,6 +585,30 @@ public abstract class AbstractFile implements FileAttributes {
     }
 
 
+    /**
+     * Lists the children files that this file contains, filtering out files that do not match the specified
+     * FileFilter, and passes them to the given consumer in chunks, as they are listed. This allows the first children
+     * of a large folder to be used before the whole folder has been listed. The consumer is called by the current
+     * thread, every children is passed once and chunks are never empty. The listing is aborted with an
+     * <code>InterruptedIOException</code> if the current thread is interrupted.
+     *
+     * <p>This default implementation passes all the children returned by {@link #ls(FileFilter)} as a single chunk.
+     * This method should be overridden by filesystems that can list a folder incrementally, typically using
+     * {@link com.mucommander.commons.file.util.ChildrenChunker}.</p>
+     *
+     * @param filter the FileFilter to be used to filter files out from the list, may be <code>null</code>
+     * @param chunkConsumer the consumer to pass the children to
+     * @throws IOException if this operation is not possible (file is not browsable) or if an error occurred.
+     * @throws UnsupportedFileOperationException if this method relies on a file operation that is not supported
+     * or not implemented by the underlying filesystem.
+     */
+    public void ls(FileFilter filter, Consumer<AbstractFile[]> chunkConsumer) throws IOException, UnsupportedFileOperationException {
+        AbstractFile children[] = ls(filter);
+        if(children.length>0)
+            chunkConsumer.accept(children);
+    }
+
+
     /**
      * Changes this file's permissions to the specified permissions int.
      * The permissions int should be constructed using the permission types and accesses defined in
@@ -1258,6 +1304,7 @@ public abstract class AbstractFile implements FileAttributes {
      * Copies the source file to the destination one and recurses on directory contents.
      * This method assumes that the destination file does not exists, this must be checked prior to calling this method.
      * Symbolic links are skipped when encountered: neither the link nor the linked file are copied.
+     * Large remote files are copied with a {@link SegmentedCopier} when the source and destination allow it.
      *
      * @param sourceFile the file to copy
      * @param destFile the destination file
@@ -1295,6 +1342,10 @@ public abstract class AbstractFile implements FileAttributes {
                 copyRecursively(child, destChild);
             }
         }
+        else if(SegmentedCopier.isSupported(sourceFile, destFile, sourceFile.getSize())) {
+            // Download large remote files over several connections
+            new SegmentedCopier(sourceFile, destFile).copy(0);
+        }
         else {
             InputStream in;
 
@@ -18,10 +18,8 @@
 
 package com.mucommander.commons.file;
 
-import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import org.slf4j.Logger;
@@ -30,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
 import com.mucommander.commons.file.protocol.local.LocalFile;
+import com.mucommander.commons.file.protocol.local.LocalFileAttributes;
 
 /**
  * CachedFile is a ProxyFile that caches the return values of most {@link AbstractFile} getter methods. This allows
@@ -121,55 +120,11 @@ public class CachedFile extends ProxyFile {
     private AbstractFile getCanonicalFile;
     private boolean getCanonicalFileSet;
 
-    // Used to access the java.io.FileSystem#getBooleanAttributes method
-    private static boolean getFileAttributesAvailable;
-    private static Method mGetBooleanAttributes;
-    private static int BA_DIRECTORY, BA_EXISTS, BA_HIDDEN;
-    private static Object fs;
-
-    static {
-        // Exposes the java.io.FileSystem class which by default has package access, in order to use its
-        // 'getBooleanAttributes' method to speed up access to file attributes under Windows.
-        // This method allows to retrieve the values of the 'exists', 'isDirectory' and 'isHidden' attributes in one
-        // pass, resolving the underlying file only once instead of 3 times. Since resolving a file is a particularly
-        // expensive operation under Windows due to improper use of the Win32 API, this helps speed things up a little.
-        // References:
-        //  - http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=5036988
-        //  - http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6240028
-        //
-        // This hack was made for Windows, but is now used for other platforms as well as it is necessarily faster than
-        // retrieving file attributes individually.
-
-        try {
-            // Resolve FileSystem class, 'getBooleanAttributes' method and fields
-            Class<?> cFile = File.class;
-            Class<?> cFileSystem = Class.forName("java.io.FileSystem");
-            mGetBooleanAttributes = cFileSystem.getDeclaredMethod("getBooleanAttributes", new Class [] {cFile});
-            Field fBA_EXISTS = cFileSystem.getDeclaredField("BA_EXISTS");
-            Field fBA_DIRECTORY = cFileSystem.getDeclaredField("BA_DIRECTORY");
-            Field fBA_HIDDEN = cFileSystem.getDeclaredField("BA_HIDDEN");
-            Field fFs = cFile.getDeclaredField("fs");
-
-            // Allow access to the 'getBooleanAttributes' method and to the fields we're interested in
-            mGetBooleanAttributes.setAccessible(true);
-            fFs.setAccessible(true);
-            fBA_EXISTS.setAccessible(true);
-            fBA_DIRECTORY.setAccessible(true);
-            fBA_HIDDEN.setAccessible(true);
-
-            // Retrieve constant field values once for all
-            BA_EXISTS = (Integer) fBA_EXISTS.get(null);
-            BA_DIRECTORY = (Integer) fBA_DIRECTORY.get(null);
-            BA_HIDDEN = (Integer) fBA_HIDDEN.get(null);
-            fs = fFs.get(null);
-
-            getFileAttributesAvailable = true;
-            LOGGER.trace("Access to java.io.FileSystem granted");
-        }
-        catch(Exception e) {
-            LOGGER.info("Error while allowing access to java.io.FileSystem", e);
-        }
-    }
+    /** True once the attributes of the underlying local file have been fetched, or if the file is not local */
+    private boolean localAttributesFetched;
+
+    /** Attributes of the underlying local file, kept to resolve the owner and group names if they are asked for */
+    private LocalFileAttributes localAttributes;
 
 
     /**
@@ -196,31 +151,59 @@ public class CachedFile extends ProxyFile {
 
 
     /**
-     * Pre-fetches values of {@link #isDirectory}, {@link #exists} and {@link #isHidden} for the given local file,
-     * using the <code>java.io.FileSystem#getBooleanAttributes(java.io.File)</code> method.
-     * The given {@link AbstractFile} must be a local file or a proxy to a local file ('file' protocol). This method
-     * must only be called if the {@link #getFileAttributesAvailable} field is <code>true</code>.
+     * Pre-fetches the values of {@link #getSize}, {@link #getDate}, {@link #isSymlink}, {@link #isDirectory},
+     * {@link #isHidden}, {@link #exists}, {@link #getOwner} and {@link #getGroup} in one pass if the underlying file is
+     * a local file or a proxy to a local file ('file' protocol), using {@link LocalFile#getAttributes()}. The attributes
+     * may have been read when the file's parent was listed, in which case no I/O is performed at all.
+     * This method does nothing if it has been called before.
      */
-    private void getFileAttributes(AbstractFile file) {
-        file = file.getTopAncestor();
+    private void fetchLocalAttributes() {
+        if(localAttributesFetched)
+            return;
+        localAttributesFetched = true;
 
-        if(file instanceof LocalFile) {
-            try {
-                int ba = (Integer) mGetBooleanAttributes.invoke(fs, new Object[]{file.getUnderlyingFileObject()});
+        if(!LocalFile.SCHEMA.equals(file.getURL().getScheme()))
+            return;
 
-                isDirectory = (ba & BA_DIRECTORY)!=0;
-                isDirectorySet = true;
+        AbstractFile topAncestor = file.getTopAncestor();
+        if(!(topAncestor instanceof LocalFile))
+            return;
 
-                exists = (ba & BA_EXISTS)!=0;
-                existsSet = true;
+        LocalFileAttributes attributes = ((LocalFile)topAncestor).getAttributes();
 
-                isHidden = (ba & BA_HIDDEN)!=0;
-                isHiddenSet = true;
-            }
-            catch(Exception e) {
-                LOGGER.info("Could not retrieve file attributes for {}", file, e);
-            }
+        if(!getSizeSet) {
+            getSize = attributes.getSize();
+            getSizeSet = true;
+        }
+
+        if(!getDateSet) {
+            getDate = attributes.getDate();
+            getDateSet = true;
+        }
+
+        if(!isSymlinkSet) {
+            isSymlink = attributes.isSymlink();
+            isSymlinkSet = true;
+        }
+
+        if(!isDirectorySet) {
+            isDirectory = attributes.isDirectory();
+            isDirectorySet = true;
+        }
+
+        if(!isHiddenSet) {
+            isHidden = attributes.isHidden();
+            isHiddenSet = true;
+        }
+
+        if(!existsSet) {
+            exists = attributes.exists();
+            existsSet = true;
         }
+
+        // Owner and group names are resolved only if they are asked for
+        if(!getOwnerSet || !getGroupSet)
+            localAttributes = attributes;
     }
 
 
@@ -230,6 +213,10 @@ public class CachedFile extends ProxyFile {
 
     @Override
     public long getSize() {
+        if(!getSizeSet)
+            fetchLocalAttributes();
+        // Note: fetchLocalAttributes() might not have retrieved the attribute, so we need to test getSizeSet again
+
         if(!getSizeSet) {
             getSize = file.getSize();
             getSizeSet = true;
@@ -240,6 +227,10 @@ public class CachedFile extends ProxyFile {
 
     @Override
     public long getDate() {
+        if(!getDateSet)
+            fetchLocalAttributes();
+        // Note: fetchLocalAttributes() might not have retrieved the attribute, so we need to test getDateSet again
+
         if(!getDateSet) {
             getDate = file.getDate();
             getDateSet = true;
@@ -250,6 +241,10 @@ public class CachedFile extends ProxyFile {
 
     @Override
     public boolean isSymlink() {
+        if(!isSymlinkSet)
+            fetchLocalAttributes();
+        // Note: fetchLocalAttributes() might not have retrieved the attribute, so we need to test isSymlinkSet again
+
         if(!isSymlinkSet) {
             isSymlink = file.isSymlink();
             isSymlinkSet = true;
@@ -260,9 +255,9 @@ public class CachedFile extends ProxyFile {
 
     @Override
     public boolean isDirectory() {
-        if(!isDirectorySet && getFileAttributesAvailable && LocalFile.SCHEMA.equals(file.getURL().getScheme()))
-            getFileAttributes(file);
-        // Note: getFileAttributes() might fail to retrieve file attributes, so we need to test isDirectorySet again
+        if(!isDirectorySet)
+            fetchLocalAttributes();
+        // Note: fetchLocalAttributes() might not have retrieved the attribute, so we need to test isDirectorySet again
 
         if(!isDirectorySet) {
             isDirectory = file.isDirectory();
@@ -284,9 +279,9 @@ public class CachedFile extends ProxyFile {
 
     @Override
     public boolean isHidden() {
-        if(!isHiddenSet && getFileAttributesAvailable && LocalFile.SCHEMA.equals(file.getURL().getScheme()))
-            getFileAttributes(file);
-        // Note: getFileAttributes() might fail to retrieve file attributes, so we need to test isDirectorySet again
+        if(!isHiddenSet)
+            fetchLocalAttributes();
+        // Note: fetchLocalAttributes() might not have retrieved the attribute, so we need to test isHiddenSet again
 
         if(!isHiddenSet) {
             isHidden = file.isHidden();
@@ -358,9 +353,9 @@ public class CachedFile extends ProxyFile {
 
     @Override
     public boolean exists() {
-        if(!existsSet && getFileAttributesAvailable && LocalFile.SCHEMA.equals(file.getURL().getScheme()))
-            getFileAttributes(file);
-        // Note: getFileAttributes() might fail to retrieve file attributes, so we need to test isDirectorySet again
+        if(!existsSet)
+            fetchLocalAttributes();
+        // Note: fetchLocalAttributes() might not have retrieved the attribute, so we need to test existsSet again
 
         if(!existsSet) {
             exists = file.exists();
@@ -393,7 +388,8 @@ public class CachedFile extends ProxyFile {
     @Override
     public String getOwner() {
         if(!getOwnerSet) {
-            getOwner = file.getOwner();
+            fetchLocalAttributes();
+            getOwner = localAttributes!=null?localAttributes.getOwner():file.getOwner();
             getOwnerSet = true;
         }
 
@@ -403,7 +399,8 @@ public class CachedFile extends ProxyFile {
     @Override
     public String getGroup() {
         if(!getGroupSet) {
-            getGroup = file.getGroup();
+            fetchLocalAttributes();
+            getGroup = localAttributes!=null?localAttributes.getGroup():file.getGroup();
             getGroupSet = true;
         }
 
@@ -495,6 +492,12 @@ public class CachedFile extends ProxyFile {
         return files;
     }
 
+    @Override
+    public void ls(FileFilter filter, Consumer<AbstractFile[]> chunkConsumer) throws IOException, UnsupportedFileOperationException {
+        // Don't cache ls() result but create a CachedFile instance around each of the files if recursion is enabled
+        file.ls(filter, recurseInstances ? chunk -> chunkConsumer.accept(createCachedFiles(chunk)) : chunkConsumer);
+    }
+
     @Override
     public AbstractFile[] ls(FilenameFilter filter) throws IOException, UnsupportedFileOperationException {
         // Don't cache ls() result but create a CachedFile instance around each of the files if recursion is enabled
@@ -20,13 +20,13 @@ package com.mucommander.commons.file;
 
 import java.io.IOException;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -106,8 +106,8 @@ public class FileFactory {
     /** Array of registered FileProtocolMapping instances, for quicker access */
     private static ArchiveFormatProvider[] archiveFormatProviders = new ArchiveFormatProvider[0];
 
-    /** Contains a FilePool instance for each registered scheme */
-    private static final HashMap<String, FilePool> FILE_POOL_MAP = new HashMap<String, FilePool>();
+    /** Contains a FilePool instance for each registered scheme, read concurrently by every file resolution */
+    private static final Map<String, FilePool> FILE_POOL_MAP = new ConcurrentHashMap<String, FilePool>();
 
     /** System temp directory */
     private static final AbstractFile TEMP_DIRECTORY;
@@ -16,6 +16,8 @@
  */
 package com.mucommander.commons.file;
 
+import java.util.Set;
+
 /**
  * This class is an implementation of {@link ProxyFile} that provides an interface
  * for detecting changes to the content of the specified file.
@@ -36,6 +38,21 @@ public abstract class MonitoredFile extends ProxyFile {
      */
     public abstract boolean isChanged(boolean periodicCheck);
 
+    /**
+     * Returns the names of the children of this folder that were created, deleted or modified, as detected by the
+     * calls to {@link #isChanged(boolean)} since the previous call to this method. Each name is returned once, however
+     * many times the child has changed. Returns <code>null</code> if the changes are not known, in which case the
+     * folder has to be listed again.
+     *
+     * <p>This implementation returns <code>null</code>, as it is only known whether the content of this file has
+     * changed.</p>
+     *
+     * @return the names of the children that were created, deleted or modified, <code>null</code> if they are not known
+     */
+    public Set<String> takeChangedChildren() {
+        return null;
+    }
+
     /**
      * Start watching for changes to the content of this file.
      */
@@ -32,6 +32,7 @@ import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.function.Consumer;
 
 /**
  * ProxyFile is an {@link AbstractFile} that acts as a proxy between the class that extends it
@@ -338,6 +339,11 @@ public abstract class ProxyFile extends AbstractFile {
         return file.getInputStream(offset);
     }
 
+    @Override
+    public InputStream getInputStream(long offset, long length) throws IOException, UnsupportedFileOperationException {
+        return file.getInputStream(offset, length);
+    }
+
     @Override
     public void copyStream(InputStream in, boolean append, long length) throws FileTransferException {
         file.copyStream(in, append, length);
@@ -348,6 +354,11 @@ public abstract class ProxyFile extends AbstractFile {
         return file.ls(filter);
     }
 
+    @Override
+    public void ls(FileFilter filter, Consumer<AbstractFile[]> chunkConsumer) throws IOException, UnsupportedFileOperationException {
+        file.ls(filter, chunkConsumer);
+    }
+
     @Override
     public AbstractFile[] ls(FilenameFilter filter) throws IOException, UnsupportedFileOperationException {
         return file.ls(filter);
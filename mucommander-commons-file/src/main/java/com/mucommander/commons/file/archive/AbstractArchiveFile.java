@@ -184,12 +184,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      */
     protected void removeFromEntriesTree(ArchiveEntry entry) throws IOException, UnsupportedFileOperationException {
         checkEntriesTree();
-        DefaultMutableTreeNode entryNode = entryTreeRoot.findEntryNode(entry.getPath());
-
-        if(entryNode!=null) {
-            DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
-            parentNode.remove(entryNode);
-        }
+        entryTreeRoot.removeArchiveEntry(entry);
     }
 
     /**
@@ -445,6 +440,19 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      */
     public abstract InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException, UnsupportedFileOperationException;
 
+    /**
+     * Returns <code>true</code> if the streams returned by {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}
+     * can be opened without an iterator and read concurrently, without slowing each other down. This is typically the
+     * case of archive formats that can locate an entry's data without traversing the archive.
+     *
+     * <p>This implementation returns <code>false</code>, it should be overridden by archive formats that support it.</p>
+     *
+     * @return <code>true</code> if entries can be read concurrently
+     */
+    public boolean isConcurrentEntryReadSupported() {
+        return false;
+    }
+
     /**
      * Returns <code>true</code> if this archive file is writable, i.e. is capable of adding and deleting entries from
      * the underlying archive file.
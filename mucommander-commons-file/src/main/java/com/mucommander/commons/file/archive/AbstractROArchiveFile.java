@@ -18,7 +18,14 @@
 
 package com.mucommander.commons.file.archive;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.UnsupportedFileOperationException;
 
 /**
  * <code>AbstractROArchiveFile</code> represents a read-only archive file. This class is abstract and implemented
@@ -33,10 +40,34 @@ import com.mucommander.commons.file.AbstractFile;
  * The {@link #isWritable()} method is implemented to always returns <code>false</code>.
  * </p>
  *
+ * <p>
+ * Several entries can also be extracted at once with {@link #extractEntries(List, EntryConsumer)}, which formats
+ * that can only read an entry by decompressing the preceding ones (e.g. solid archives) should override to extract
+ * them in a single pass.
+ * </p>
+ *
  * @author Maxence Bernard
  */
 public abstract class AbstractROArchiveFile extends AbstractArchiveFile {
 
+    /**
+     * Receives the entries extracted by {@link AbstractROArchiveFile#extractEntries(List, EntryConsumer)}.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+
+        /**
+         * Called for each extracted entry, with a stream to read its content from. The stream is closed once this
+         * method returns, the content that has not been read is discarded.
+         *
+         * @param entry the extracted entry, one of those passed to {@link AbstractROArchiveFile#extractEntries(List, EntryConsumer)}
+         * @param in the stream to read the entry's content from
+         * @return <code>true</code> to go on with the next entry, <code>false</code> to stop the extraction
+         * @throws IOException if an error occurred while reading the entry, which stops the extraction
+         */
+        boolean accept(ArchiveEntry entry, InputStream in) throws IOException;
+    }
+
     /**
      * Creates an AbstractROArchiveFile on top of the given file.
      *
@@ -61,4 +92,56 @@ public abstract class AbstractROArchiveFile extends AbstractArchiveFile {
     public final boolean isWritable() {
         return false;
     }
+
+
+    /**
+     * Extracts the given entries and passes their content to the consumer, in the order they are stored in the
+     * archive, which may differ from the order of the list. Directory entries have no content and should not be
+     * requested. The consumer is called by the current thread. The archive is no longer read once this method
+     * returns, even if the consumer stopped the extraction, so that entries can then be read with
+     * {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}.
+     *
+     * <p>This implementation traverses the archive once with {@link #getEntryIterator()}, reading the requested
+     * entries with {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}. It should be overridden by
+     * formats that can extract several entries more efficiently, in which case {@link #isBulkExtractionSupported()}
+     * should also be overridden.</p>
+     *
+     * @param entries the entries to extract
+     * @param consumer the consumer to pass the entries to
+     * @throws IOException if an error occurred while reading the archive or if the consumer failed
+     * @throws UnsupportedFileOperationException if this operation is not supported by the underlying filesystem,
+     * or is not implemented.
+     */
+    public void extractEntries(List<ArchiveEntry> entries, EntryConsumer consumer) throws IOException, UnsupportedFileOperationException {
+        Map<String, ArchiveEntry> remainingEntries = new HashMap<String, ArchiveEntry>();
+        for(ArchiveEntry entry : entries)
+            remainingEntries.put(entry.getPath(), entry);
+
+        try (ArchiveEntryIterator iterator = getEntryIterator()) {
+            ArchiveEntry entry;
+            while(!remainingEntries.isEmpty() && (entry = iterator.nextEntry())!=null) {
+                ArchiveEntry requestedEntry = remainingEntries.remove(entry.getPath());
+                if(requestedEntry==null)
+                    continue;
+
+                try (InputStream in = getEntryInputStream(entry, iterator)) {
+                    if(!consumer.accept(requestedEntry, in))
+                        return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if {@link #extractEntries(List, EntryConsumer)} extracts entries more efficiently
+     * than reading them one by one with {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}, in which
+     * case it should be preferred to extract several entries.
+     *
+     * <p>This implementation returns <code>false</code>.</p>
+     *
+     * @return <code>true</code> if entries should be extracted with {@link #extractEntries(List, EntryConsumer)}
+     */
+    public boolean isBulkExtractionSupported() {
+        return false;
+    }
 }
@@ -18,22 +18,30 @@
 
 package com.mucommander.commons.file.archive;
 
-import com.mucommander.commons.file.util.PathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.tree.DefaultMutableTreeNode;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Stores archive entries and organizes them in a tree structure that maps entries in the way they are organized
  * inside the archive. An instance of <code>ArchiveEntryTree</code> also acts as the root node: all entry nodes
  * are children of it (direct or indirect).
  *
+ * <p>Nodes are indexed by path so that adding an entry and looking one up do not require walking the children of
+ * each of its parent nodes, which matters for archives that contain many entries.</p>
+ *
  * @author Maxence Bernard
  */
 public class ArchiveEntryTree extends DefaultMutableTreeNode {
     private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveEntryTree.class);
 
+    /** Entry nodes, indexed by their path without trailing separator */
+    private final Map<String, DefaultMutableTreeNode> nodes = new HashMap<>();
+
     /**
      * Creates a new empty tree.
      */
@@ -46,59 +54,49 @@ public class ArchiveEntryTree extends DefaultMutableTreeNode {
      * @param entry the entry to add to the tree
      */
     public void addArchiveEntry(ArchiveEntry entry) {
-        String entryPath = entry.getPath();
-        int entryDepth = entry.getDepth();
-        int slashPos = 0;
-        DefaultMutableTreeNode node = this;
-        for(int d=1; d<=entryDepth; d++) {
-            if(d==entryDepth && !entry.isDirectory()) {
-                // Create a leaf node for the entry
-                entry.setExists(true);      // the entry has to exist
-                node.add(new DefaultMutableTreeNode(entry, true));
-                break;
-            }
-
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
-
-            int nbChildren = node.getChildCount();
-            DefaultMutableTreeNode childNode = null;
-            boolean matchFound = false;
-            for(int c=0; c<nbChildren; c++) {
-                childNode = (DefaultMutableTreeNode)node.getChildAt(c);
-                // Path comparison is 'trailing slash insensitive'
-                if(PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found a match
-                    matchFound = true;
-                    break;
-                }
-            }
-
-            if(matchFound) {
-                if(d==entryDepth) {
-                    LOGGER.trace("Replacing entry for node "+childNode);
-                    // Replace existing entry
-                    childNode.setUserObject(entry);
-                }
-                else {
-                    node = childNode;
-                }
-            }
-            else {
-                if(d==entryDepth) {
-                    // Create a leaf node for the entry
-                    entry.setExists(true);      // the entry has to exist
-                    node.add(new DefaultMutableTreeNode(entry, true));
-                }
-                else {
-                    LOGGER.trace("Creating node for "+subPath);
-                    childNode = new DefaultMutableTreeNode(new ArchiveEntry(subPath, true, entry.getDate(), 0, true), true);
-                    node.add(childNode);
-                    node = childNode;
-                }
-            }
+        if(entry.getDepth()==0)
+            return;
+
+        String key = getKey(entry.getPath());
+        int slashPos = key.lastIndexOf('/');
+        DefaultMutableTreeNode parentNode = slashPos==-1?this:getDirectoryNode(key.substring(0, slashPos), entry.getDate());
+
+        DefaultMutableTreeNode node = getNode(key);
+        if(node!=null && entry.isDirectory()) {
+            LOGGER.trace("Replacing entry for node "+node);
+            // Replace existing entry
+            node.setUserObject(entry);
+            return;
         }
+
+        // Create a leaf node for the entry
+        entry.setExists(true);      // the entry has to exist
+        DefaultMutableTreeNode entryNode = new DefaultMutableTreeNode(entry, true);
+        parentNode.add(entryNode);
+        // Regular files may appear more than once in an archive, lookups return the first of them
+        if(node==null)
+            nodes.put(key, entryNode);
     }
 
+    /**
+     * Removes the node that corresponds to the given entry from the tree, along with its children if it is a
+     * directory. This method has no effect if the entry is not in the tree.
+     *
+     * @param entry the entry to remove from the tree
+     */
+    public void removeArchiveEntry(ArchiveEntry entry) {
+        DefaultMutableTreeNode node = findEntryNode(entry.getPath());
+        if(node==null)
+            return;
+
+        Enumeration<?> descendants = node.depthFirstEnumeration();
+        while(descendants.hasMoreElements()) {
+            DefaultMutableTreeNode descendant = (DefaultMutableTreeNode)descendants.nextElement();
+            nodes.remove(getKey(((ArchiveEntry)descendant.getUserObject()).getPath()), descendant);
+        }
+
+        ((DefaultMutableTreeNode)node.getParent()).remove(node);
+    }
 
     /**
      * Finds and returns the node that corresponds to the specified entry path, <code>null</code> if no entry matching
@@ -112,31 +110,49 @@ public class ArchiveEntryTree extends DefaultMutableTreeNode {
      * @return the node that corresponds to the specified entry path
      */
     public DefaultMutableTreeNode findEntryNode(String entryPath) {
-        int entryDepth = ArchiveEntry.getDepth(entryPath);
-        int slashPos = 0;
-        DefaultMutableTreeNode currentNode = this;
-        for(int d=1; d<=entryDepth; d++) {
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
-
-            int nbChildren = currentNode.getChildCount();
-            DefaultMutableTreeNode matchNode = null;
-            for(int c=0; c<nbChildren; c++) {
-                DefaultMutableTreeNode childNode = (DefaultMutableTreeNode)currentNode.getChildAt(c);
-
-                // Path comparison is 'trailing slash insensitive'
-                if(PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found the node, let's return it
-                    matchNode = childNode;
-                    break;
-                }
-            }
-
-            if(matchNode==null)
-                return null;    // No node maching the provided path, return null
-
-            currentNode = matchNode;
+        if(ArchiveEntry.getDepth(entryPath)==0)
+            return this;
+
+        return getNode(getKey(entryPath));
+    }
+
+    /**
+     * Returns the node of the directory with the given key, creating it and its parent nodes as necessary.
+     */
+    private DefaultMutableTreeNode getDirectoryNode(String key, long date) {
+        DefaultMutableTreeNode node = getNode(key);
+        if(node==null) {
+            int slashPos = key.lastIndexOf('/');
+            DefaultMutableTreeNode parentNode = slashPos==-1?this:getDirectoryNode(key.substring(0, slashPos), date);
+
+            LOGGER.trace("Creating node for "+key);
+            node = new DefaultMutableTreeNode(new ArchiveEntry(key+"/", true, date, 0, true), true);
+            parentNode.add(node);
+            nodes.put(key, node);
+        }
+
+        return node;
+    }
+
+    /**
+     * Returns the indexed node with the given key, <code>null</code> if there is none or if it has been detached from
+     * this tree through the <code>DefaultMutableTreeNode</code> API rather than {@link #removeArchiveEntry}.
+     */
+    private DefaultMutableTreeNode getNode(String key) {
+        DefaultMutableTreeNode node = nodes.get(key);
+        if(node!=null && node.getRoot()!=this) {
+            nodes.remove(key);
+            return null;
         }
 
-        return currentNode;
+        return node;
+    }
+
+    /**
+     * Returns the key under which the node of the given entry path is indexed: the path without trailing separator,
+     * making lookups 'trailing slash insensitive'.
+     */
+    private static String getKey(String entryPath) {
+        return entryPath.endsWith("/")?entryPath.substring(0, entryPath.length()-1):entryPath;
     }
 }
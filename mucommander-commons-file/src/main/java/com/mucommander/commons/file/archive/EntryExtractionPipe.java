@@ -0,0 +1,291 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.mucommander.commons.util.CircularByteBuffer;
+
+/**
+ * Hands the entries that an archive library extracts in a single pass over to the thread that consumes them, for
+ * {@link AbstractROArchiveFile#extractEntries(java.util.List, AbstractROArchiveFile.EntryConsumer)} implementations
+ * whose library writes the entries from a thread of its own.
+ *
+ * <p>The extracting thread calls {@link #startEntry(ArchiveEntry)}, writes the entry's content to the returned stream
+ * and calls {@link #endEntry(IOException)}, for each entry. It calls {@link #finish(Exception)} once done, whether the
+ * extraction succeeded or not. Meanwhile, the consuming thread calls {@link #consume(AbstractROArchiveFile.EntryConsumer, Thread)},
+ * which returns once the extracting thread has ended.</p>
+ *
+ * <p>The content of an entry goes through a buffer of at most {@link #BUFFER_SIZE} bytes, and the extracting thread
+ * blocks while the buffer is full: memory usage does not depend on the size of the entries. The content that the
+ * consumer does not read is discarded, and if the consumer stops the extraction or fails, writing to the stream
+ * throws an <code>IOException</code> so that the library aborts.</p>
+ */
+public class EntryExtractionPipe {
+
+    /** Maximum size of the buffer each entry goes through */
+    public final static int BUFFER_SIZE = 256 * 1024;
+
+    /** Minimum size of the buffer each entry goes through */
+    private final static int MIN_BUFFER_SIZE = 1024;
+
+    /** Number of entries that may be started before the consumer gets to them */
+    private final static int MAX_PENDING_ENTRIES = 2;
+
+    /** Interval in milliseconds at which threads waiting for each other check whether the extraction was aborted */
+    private final static long POLL_INTERVAL = 100;
+
+    /** Marks the end of the extraction in {@link #entries} */
+    private final static PipedEntry END = new PipedEntry(null, 0);
+
+    /** Entries started by the extracting thread and not consumed yet */
+    private final BlockingQueue<PipedEntry> entries = new ArrayBlockingQueue<PipedEntry>(MAX_PENDING_ENTRIES);
+
+    /** The entry being written by the extracting thread, only accessed by it */
+    private PipedEntry currentEntry;
+
+    /** True if the consumer stopped the extraction or failed */
+    private volatile boolean aborted;
+
+    /** The error the extraction ended with, if any */
+    private volatile Exception failure;
+
+    /**
+     * An entry and the buffer its content goes through.
+     */
+    private static class PipedEntry {
+        private final ArchiveEntry entry;
+        private final CircularByteBuffer buffer;
+
+        /** The error the entry's extraction ended with, if any */
+        private volatile IOException failure;
+
+        /** True once the consumer has closed the entry's stream */
+        private volatile boolean consumed;
+
+        private PipedEntry(ArchiveEntry entry, int bufferSize) {
+            this.entry = entry;
+            this.buffer = entry==null?null:new CircularByteBuffer(bufferSize, true);
+        }
+    }
+
+    /**
+     * Waits for the consumer to take an entry, failing if the extraction was aborted meanwhile.
+     */
+    private void put(PipedEntry pipedEntry) throws InterruptedIOException {
+        try {
+            while(!entries.offer(pipedEntry, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if(aborted)
+                    throw new InterruptedIOException("Extraction aborted");
+            }
+        }
+        catch(InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+
+    //////////////////////////////////////
+    // Methods of the extracting thread //
+    //////////////////////////////////////
+
+    /**
+     * Starts the extraction of the given entry, ending that of the previous one if {@link #endEntry(IOException)}
+     * was not called. This method blocks while the consumer is behind.
+     *
+     * @param entry the entry to extract
+     * @return the stream to write the content of the entry to
+     * @throws InterruptedIOException if the extraction was aborted by the consumer
+     */
+    public OutputStream startEntry(ArchiveEntry entry) throws InterruptedIOException {
+        endEntry(null);
+
+        long size = entry.getSize();
+        int bufferSize = size>=0 && size<BUFFER_SIZE?Math.max(MIN_BUFFER_SIZE, (int)size+1):BUFFER_SIZE;
+        PipedEntry pipedEntry = new PipedEntry(entry, bufferSize);
+        put(pipedEntry);
+        currentEntry = pipedEntry;
+
+        OutputStream out = pipedEntry.buffer.getOutputStream();
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte)b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if(aborted)
+                    throw new InterruptedIOException("Extraction aborted");
+
+                // The content that the consumer has not read is discarded
+                if(pipedEntry.consumed)
+                    return;
+
+                try {
+                    out.write(b, off, len);
+                }
+                catch(IOException e) {
+                    if(aborted || !pipedEntry.consumed)
+                        throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * Ends the extraction of the current entry, if any.
+     *
+     * @param failure the error the extraction of the entry failed with, <code>null</code> if it succeeded
+     */
+    public void endEntry(IOException failure) {
+        if(currentEntry==null)
+            return;
+
+        currentEntry.failure = failure;
+        try {
+            currentEntry.buffer.getOutputStream().close();
+        }
+        catch(IOException e) {
+            // Can't happen, the stream has not been closed yet
+        }
+        currentEntry = null;
+    }
+
+    /**
+     * Ends the extraction. This method must be called by the extracting thread once done, even if the extraction
+     * failed.
+     *
+     * @param failure the error the extraction failed with, <code>null</code> if it succeeded
+     */
+    public void finish(Exception failure) {
+        endEntry(failure==null || failure instanceof IOException?(IOException)failure:new IOException(failure));
+        this.failure = failure;
+
+        try {
+            put(END);
+        }
+        catch(InterruptedIOException e) {
+            // The consumer is gone
+        }
+    }
+
+
+    /////////////////////////////////////
+    // Methods of the consuming thread //
+    /////////////////////////////////////
+
+    /**
+     * Passes the extracted entries to the given consumer, until the extraction ends or the consumer stops it.
+     *
+     * @param consumer the consumer to pass the entries to
+     * @throws IOException if the extraction failed or if the consumer failed
+     */
+    public void consume(AbstractROArchiveFile.EntryConsumer consumer) throws IOException {
+        try {
+            PipedEntry pipedEntry;
+            while((pipedEntry=entries.take())!=END) {
+                final PipedEntry entry = pipedEntry;
+                InputStream in = new FilterInputStream(entry.buffer.getInputStream()) {
+                    @Override
+                    public int read() throws IOException {
+                        return checkEOF(super.read());
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        return checkEOF(super.read(b, off, len));
+                    }
+
+                    /** Reports the failure of the entry's extraction once its content has been read */
+                    private int checkEOF(int read) throws IOException {
+                        if(read==-1 && entry.failure!=null)
+                            throw entry.failure;
+                        return read;
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        entry.consumed = true;
+                        super.close();
+                    }
+                };
+
+                boolean goOn;
+                try {
+                    goOn = consumer.accept(entry.entry, in);
+                }
+                finally {
+                    in.close();
+                }
+
+                if(!goOn) {
+                    aborted = true;
+                    return;
+                }
+            }
+
+            if(failure!=null)
+                throw failure instanceof IOException?(IOException)failure:new IOException(failure);
+        }
+        catch(InterruptedException e) {
+            aborted = true;
+            throw new InterruptedIOException();
+        }
+        catch(IOException | RuntimeException e) {
+            aborted = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Passes the extracted entries to the given consumer like {@link #consume(AbstractROArchiveFile.EntryConsumer)},
+     * then waits for the given extracting thread to end, so that the archive is no longer read once this method
+     * returns. The extracting thread ends promptly if the extraction was aborted, as writing to the pipe fails.
+     *
+     * @param consumer the consumer to pass the entries to
+     * @param extractingThread the thread that writes the entries to this pipe
+     * @throws IOException if the extraction failed or if the consumer failed
+     */
+    public void consume(AbstractROArchiveFile.EntryConsumer consumer, Thread extractingThread) throws IOException {
+        try {
+            consume(consumer);
+        }
+        finally {
+            boolean interrupted = false;
+            while(extractingThread.isAlive()) {
+                try {
+                    extractingThread.join();
+                }
+                catch(InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if(interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+}
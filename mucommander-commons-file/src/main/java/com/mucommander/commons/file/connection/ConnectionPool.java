@@ -19,8 +19,19 @@ package com.mucommander.commons.file.connection;
 
 import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,254 +41,498 @@ import com.mucommander.commons.file.FileURL;
 
 
 /**
+ * ConnectionPool shares {@link ConnectionHandler} instances between the files of a same server, and closes or keeps
+ * alive the connections that are not in use.
+ *
+ * <p>Connection handlers are grouped by scheme and host, each group having its own lock, so that borrowing or
+ * releasing a connection to a server does not wait on the connections to other servers. A maximum number of
+ * connections is allowed per realm/credentials combo, which can be set per scheme with
+ * {@link #setMaxConnectionsPerRealm(String, int)}: threads that request a connection above it wait for one to be
+ * released.</p>
+ *
+ * <p>Closing idle connections and keeping them alive is scheduled when a connection is released, according to its
+ * {@link ConnectionHandler#getCloseOnInactivityPeriod() close on inactivity} and
+ * {@link ConnectionHandler#getKeepAlivePeriod() keep alive} periods. These operations, which may block, are performed
+ * by a pool of threads that are reused and that terminate when no connection is open.</p>
+ *
+ * <p>The number of connections that were reused, created and evicted, and the time spent waiting for them, are
+ * counted: see {@link #getHitCount()}, {@link #getCreateCount()}, {@link #getEvictionCount()} and
+ * {@link #getBorrowWaitTime()}.</p>
+ *
  * @see com.mucommander.commons.file.connection.ConnectionHandler
  * @author Maxence Bernard
  */
-public class ConnectionPool implements Runnable {
+public class ConnectionPool {
     private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
 
-    /** Singleton instance */
-    private static ConnectionPool instance = new ConnectionPool();
+    /** Connection handlers, grouped by scheme and host */
+    private final static ConcurrentHashMap<String, Stripe> stripes = new ConcurrentHashMap<String, Stripe>();
 
-    /** List of registered ConnectionHandler */
-    private final static List<ConnectionHandler> connectionHandlers = new ArrayList<ConnectionHandler>();
+    /** Default maximum number of simultaneous connections per realm/credentials combo */
+    public final static int DEFAULT_MAX_CONNECTIONS_PER_REALM = 4;
 
-    /** The thread that monitors connections, null if there currently is no registered ConnectionHandler */
-    private static Thread monitorThread;
+    /** Maximum number of simultaneous connections per realm/credentials combo, for the schemes that do not use the
+     * default one */
+    private final static Map<String, Integer> maxConnectionsPerRealm = new ConcurrentHashMap<String, Integer>();
 
-    /** Controls how of often the thread monitor checks connections */
-    private final static int MONITOR_SLEEP_PERIOD = 1000;
+    /** Number of seconds after which the threads of the pool terminate when they have nothing to do */
+    private final static long THREAD_KEEP_ALIVE_TIME = 60;
 
-    /** Maximum number of simultaneous connections per realm/credentials combo */
-    private final static int MAX_CONNECTIONS_PER_REALM = 4;
+    /** Schedules the checks of the connections that are not in use */
+    private final static ScheduledThreadPoolExecutor scheduler;
 
+    /** Closes and keeps alive connections, which may block */
+    private final static ExecutorService connectionExecutor;
 
-    public static ConnectionHandler getConnectionHandler(ConnectionHandlerFactory connectionHandlerFactory, FileURL url, boolean acquireLock) throws InterruptedIOException {
-        FileURL realm = url.getRealm();
+    static {
+        scheduler = new ScheduledThreadPoolExecutor(1, createThreadFactory("ConnectionPool monitor"));
+        scheduler.setKeepAliveTime(THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS);
+        scheduler.allowCoreThreadTimeOut(true);
+        scheduler.setRemoveOnCancelPolicy(true);
 
-        while(true) {
-            synchronized(connectionHandlers) {      // Ensures that monitor thread is not currently changing the list while we access it
-                Credentials urlCredentials = url.getCredentials();
-                int matchingConnHandlers = 0;
+        connectionExecutor = Executors.newCachedThreadPool(createThreadFactory("ConnectionPool worker"));
+    }
 
-                // Try and find an appropriate existing ConnectionHandler
-                for(ConnectionHandler connHandler : connectionHandlers) {
-                	// ConnectionHandler must match the realm and credentials and must not be locked
-                	if(connHandler.equals(realm, urlCredentials)) {
-                		matchingConnHandlers++;
-                		synchronized(connHandler) {     // Ensures that lock remains unchanged while we access/update it
-                			if(!connHandler.isLocked()) {
-                				// Try to acquire lock if a lock was requested
-                				if(!acquireLock || connHandler.acquireLock()) {
-                					LOGGER.info("returning ConnectionHandler {}, realm = {}", connHandler, realm);
-
-                					// Update last activity timestamp to now
-                					connHandler.updateLastActivityTimestamp();
-
-                					return connHandler;
-                				}
-                			}
-                		}
-                	}
-                    
-                    if(matchingConnHandlers==MAX_CONNECTIONS_PER_REALM) {
-                        LOGGER.info("Maximum number of connection per realm reached, waiting for one to be removed or released...");
-                        try {
-                            // Wait for a ConnectionHandler to be released or removed from the pool
-                            connectionHandlers.wait();      // relinquishes the lock on connectionHandlers
-                            break;
-                        }
-                        catch(InterruptedException e) {
-                            LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
-                            throw new InterruptedIOException();
-                        }
-                    }
-                }
+    /** Number of connections that have been requested */
+    private final static LongAdder borrowCount = new LongAdder();
 
-                if(matchingConnHandlers==MAX_CONNECTIONS_PER_REALM)
-                    continue;
+    /** Number of connections that have been requested and were served by an existing connection handler */
+    private final static LongAdder hitCount = new LongAdder();
 
-                // No suitable ConnectionHandler found, create a new one
-                ConnectionHandler connHandler = connectionHandlerFactory.createConnectionHandler(url);
+    /** Number of connection handlers that have been created */
+    private final static LongAdder createCount = new LongAdder();
 
-                // Acquire lock if a lock was requested
-                if(acquireLock)
-                    connHandler.acquireLock();
+    /** Number of connection handlers that have been removed because they were disconnected or idle */
+    private final static LongAdder evictionCount = new LongAdder();
 
-                LOGGER.info("adding new ConnectionHandler {}, realm = {}", connHandler, connHandler.getRealm());
+    /** Total time, in nanoseconds, spent waiting for a connection to be released */
+    private final static LongAdder borrowWaitTime = new LongAdder();
 
-                // Insert new ConnectionHandler at first position as if it has more chances to be accessed again soon
-                connectionHandlers.add(0, connHandler);
 
-                // Start monitor thread if it is not currently running (if there previously was no registered ConnectionHandler)
-                if(monitorThread==null) {
-                    LOGGER.info("starting monitor thread");
-                    monitorThread = new Thread(instance);
-                    monitorThread.start();
-                }
+    /**
+     * The connection handlers of a scheme and host, and their pending checks. Access to a stripe is synchronized on it.
+     */
+    private static class Stripe {
 
-                // Update last activity timestamp to now
-                connHandler.updateLastActivityTimestamp();
+        /** Registered connection handlers, most recently created first */
+        private final List<ConnectionHandler> connectionHandlers = new ArrayList<ConnectionHandler>();
 
-                return connHandler;
+        /** Pending checks of the connection handlers that are not in use. ConnectionHandler#equals does not tell
+         * handlers of a same realm apart, hence the identity map. */
+        private final Map<ConnectionHandler, ConnectionCheck> checks = new IdentityHashMap<ConnectionHandler, ConnectionCheck>();
+
+        private boolean contains(ConnectionHandler connHandler) {
+            for(ConnectionHandler handler : connectionHandlers) {
+                if(handler==connHandler)
+                    return true;
             }
+
+            return false;
+        }
+
+        /**
+         * Removes the given connection handler and its pending check, and wakes up the threads waiting for a
+         * connection.
+         */
+        private void evict(ConnectionHandler connHandler) {
+            for(Iterator<ConnectionHandler> it = connectionHandlers.iterator(); it.hasNext(); ) {
+                if(it.next()==connHandler) {
+                    it.remove();
+                    evictionCount.increment();
+                    break;
+                }
+            }
+
+            ConnectionCheck check = checks.remove(connHandler);
+            if(check!=null)
+                check.future.cancel(false);
+
+            notifyAll();
         }
     }
 
 
+    private static ThreadFactory createThreadFactory(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
     /**
-     * Returns a list of registered ConnectionHandler instances. As the name of this method implies, the returned
-     * list is only a snapshot and will not reflect the modifications that are made after this method has been called.
-     * The Vector is a cloned one and thus can be safely modified. 
-     *
-     * @return a list of registered ConnectionHandler instances
+     * Returns the stripe of the given realm, creating it if needed.
      */
-    public static List<ConnectionHandler> getConnectionHandlersSnapshot() {
-    	synchronized (connectionHandlers) {
-    		return new ArrayList<ConnectionHandler>(connectionHandlers);
-    	}
+    private static Stripe getStripe(FileURL realm) {
+        String key = realm.getScheme().toLowerCase(Locale.ENGLISH)+"://"+String.valueOf(realm.getHost()).toLowerCase(Locale.ENGLISH);
+
+        return stripes.computeIfAbsent(key, k -> new Stripe());
     }
-    
+
+
     /**
-     * Called by {@link ConnectionHandler#releaseLock()} to notify the <code>ConnectionHandler</code> that a
-     * <code>ConnectionHandler</code> has been released.
+     * Sets the maximum number of simultaneous connections per realm/credentials combo for the given scheme, for
+     * instance to allow more transfers to run in parallel with servers that accept more connections.
+     * The limit applies to the connections that are requested after this method has been called.
+     *
+     * @param scheme the scheme of the realms the limit applies to
+     * @param maxConnections the maximum number of simultaneous connections per realm, must be at least 1
+     * @throws IllegalArgumentException if <code>maxConnections</code> is lower than 1
      */
-    static void notifyConnectionHandlerLockReleased() {
-        synchronized(connectionHandlers) {
-            // Notify any thread waiting for a ConnectionHandler to be released
-            connectionHandlers.notify();
+    public static void setMaxConnectionsPerRealm(String scheme, int maxConnections) {
+        if(maxConnections<1)
+            throw new IllegalArgumentException("maxConnections must be at least 1: "+maxConnections);
+
+        maxConnectionsPerRealm.put(scheme.toLowerCase(Locale.ENGLISH), maxConnections);
+
+        // Wake up the threads waiting for a connection, which may now be created
+        for(Stripe stripe : stripes.values()) {
+            synchronized(stripe) {
+                stripe.notifyAll();
+            }
         }
     }
 
     /**
-     * Monitors connections and periodically:
-     * <ul>
-     *   <li>keeps connections alive
-     *   <li>closes and removes connections that have expired
-     * </ul>
+     * Returns the maximum number of simultaneous connections per realm/credentials combo for the given scheme,
+     * {@link #DEFAULT_MAX_CONNECTIONS_PER_REALM} unless another limit has been set.
+     *
+     * @param scheme the scheme of the realms the limit applies to
+     * @return the maximum number of simultaneous connections per realm for the given scheme
+     * @see #setMaxConnectionsPerRealm(String, int)
      */
-    public void run() {
+    public static int getMaxConnectionsPerRealm(String scheme) {
+        Integer maxConnections = maxConnectionsPerRealm.get(scheme.toLowerCase(Locale.ENGLISH));
+        return maxConnections==null?DEFAULT_MAX_CONNECTIONS_PER_REALM:maxConnections;
+    }
 
-        while(monitorThread!=null) {        // Thread will be interrupted by CloseConnectionThread if there are no more ConnectionHandler
-            long now = System.currentTimeMillis();
 
-            synchronized(connectionHandlers) {      // Ensures that getConnectionHandler is not currently changing the list while we access it
-                for (Iterator<ConnectionHandler> it = connectionHandlers.iterator(); it.hasNext(); ) {
-                	ConnectionHandler connHandler = it.next();
-                    synchronized(connHandler) {     // Ensures that no one is trying to acquire a lock on the connection while we access it 
-                        if(!connHandler.isLocked()) {   // Do not touch ConnectionHandler if it is currently locked
+    public static ConnectionHandler getConnectionHandler(ConnectionHandlerFactory connectionHandlerFactory, FileURL url, boolean acquireLock) throws InterruptedIOException {
+        FileURL realm = url.getRealm();
+        Credentials urlCredentials = url.getCredentials();
+        Stripe stripe = getStripe(realm);
 
-                            // Remove ConnectionHandler instance from the list of registered ConnectionHandler
-                            // if it is not connected
-                            if(!connHandler.isConnected()) {
-                                LOGGER.info("Removing unconnected ConnectionHandler {}", connHandler);
+        borrowCount.increment();
+        long waitStart = -1;
 
-                                it.remove();
-                                // Notify any thread waiting for a ConnectionHandler to be released
-                                connectionHandlers.notify();
+        synchronized(stripe) {      // Ensures that no other thread is changing the stripe while we access it
+            while(true) {
+                int maxConnections = getMaxConnectionsPerRealm(realm.getScheme());
+                int matchingConnHandlers = 0;
 
-                                continue;       // Skips close on inactivity and keep alive checks
+                // Try and find an appropriate existing ConnectionHandler
+                for(ConnectionHandler connHandler : stripe.connectionHandlers) {
+                    // ConnectionHandler must match the realm and credentials and must not be locked
+                    if(!connHandler.equals(realm, urlCredentials))
+                        continue;
+
+                    matchingConnHandlers++;
+                    synchronized(connHandler) {     // Ensures that lock remains unchanged while we access/update it
+                        if(!connHandler.isLocked()) {
+                            // Try to acquire lock if a lock was requested
+                            if(!acquireLock || connHandler.acquireLock()) {
+                                LOGGER.info("returning ConnectionHandler {}, realm = {}", connHandler, realm);
+
+                                // Update last activity timestamp to now
+                                connHandler.updateLastActivityTimestamp();
+
+                                hitCount.increment();
+                                recordWaitTime(waitStart);
+
+                                return connHandler;
                             }
+                        }
+                    }
+                }
 
-                            long lastUsed = connHandler.getLastActivityTimestamp();
+                if(matchingConnHandlers<maxConnections)
+                    break;
 
-                            // If time-to-live has been reached without any connection activity, remove ConnectionHandler
-                            // from the list of registered ConnectionHandler and close the connection in a separate thread
-                            long closePeriod = connHandler.getCloseOnInactivityPeriod();
-                            if(closePeriod!=-1 && now-lastUsed>closePeriod*1000) {
-                                LOGGER.info("Removing timed-out ConnectionHandler {}",connHandler);
+                LOGGER.info("Maximum number of connection per realm reached, waiting for one to be removed or released...");
+                if(waitStart==-1)
+                    waitStart = System.nanoTime();
 
-                                it.remove();
-                                // Notify any thread waiting for a ConnectionHandler to be released
-                                connectionHandlers.notify();
+                try {
+                    // Wait for a ConnectionHandler to be released or removed from the stripe
+                    stripe.wait();      // relinquishes the lock on the stripe
+                }
+                catch(InterruptedException e) {
+                    LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
+                    recordWaitTime(waitStart);
+                    throw new InterruptedIOException();
+                }
+            }
 
-                                // Close connection in a separate thread as it could lock this thread
-                                new CloseConnectionThread(connHandler).start();
+            // No suitable ConnectionHandler found, create a new one
+            ConnectionHandler connHandler = connectionHandlerFactory.createConnectionHandler(url);
 
-                                continue;       // Skips keep alive check
-                            }
+            // Acquire lock if a lock was requested
+            if(acquireLock)
+                connHandler.acquireLock();
 
-                            // If keep-alive period has been reached without any connection activity or a keep alive,
-                            // keep connection alive in a separate thread
-                            long keepAlivePeriod = connHandler.getKeepAlivePeriod(); 
-                            if(keepAlivePeriod!=-1 && now-Math.max(lastUsed, connHandler.getLastKeepAliveTimestamp())>keepAlivePeriod*1000) {
-                                // Update last keep alive timestamp to now
-                                connHandler.updateLastKeepAliveTimestamp();
+            LOGGER.info("adding new ConnectionHandler {}, realm = {}", connHandler, connHandler.getRealm());
 
-                                // Keep connection alive in a separate thread as it could lock this thread
-                                new KeepAliveConnectionThread(connHandler).start();
-                            }
+            // Insert new ConnectionHandler at first position as if it has more chances to be accessed again soon
+            stripe.connectionHandlers.add(0, connHandler);
+
+            // Update last activity timestamp to now
+            connHandler.updateLastActivityTimestamp();
+
+            // A handler that is not locked is checked right away, others are checked once they are released
+            if(!acquireLock)
+                scheduleCheck(stripe, connHandler);
+
+            createCount.increment();
+            recordWaitTime(waitStart);
+
+            return connHandler;
+        }
+    }
+
+    private static void recordWaitTime(long waitStart) {
+        if(waitStart!=-1)
+            borrowWaitTime.add(System.nanoTime()-waitStart);
+    }
+
+
+    /**
+     * Returns a list of registered ConnectionHandler instances. As the name of this method implies, the returned
+     * list is only a snapshot and will not reflect the modifications that are made after this method has been called.
+     * The list is a new one and thus can be safely modified. Connection handlers that are neither connected nor in use
+     * are removed from the pool and are not returned.
+     *
+     * @return a list of registered ConnectionHandler instances
+     */
+    public static List<ConnectionHandler> getConnectionHandlersSnapshot() {
+        List<ConnectionHandler> snapshot = new ArrayList<ConnectionHandler>();
+        for(Stripe stripe : stripes.values()) {
+            synchronized(stripe) {
+                for(ConnectionHandler connHandler : new ArrayList<ConnectionHandler>(stripe.connectionHandlers)) {
+                    synchronized(connHandler) {
+                        if(!connHandler.isLocked() && !connHandler.isConnected()) {
+                            LOGGER.info("Removing unconnected ConnectionHandler {}", connHandler);
+                            stripe.evict(connHandler);
+                            continue;
                         }
                     }
-                }
 
-                // Stop monitor thread if there are no more ConnectionHandler
-                if(connectionHandlers.isEmpty()) {
-                    LOGGER.info("No more ConnectionHandler, stopping monitor thread");
-                    monitorThread = null;
+                    snapshot.add(connHandler);
                 }
             }
+        }
+
+        return snapshot;
+    }
 
-            // Sleep for MONITOR_SLEEP_PERIOD milliseconds, minus the processing time of this loop
-            try {
-                Thread.sleep(Math.max(0, MONITOR_SLEEP_PERIOD-(System.currentTimeMillis()-now)));
+    /**
+     * Called by {@link ConnectionHandler#releaseLock()} to notify the <code>ConnectionPool</code> that a
+     * <code>ConnectionHandler</code> has been released: the threads waiting for a connection are woken up and the
+     * connection is removed if it is not connected anymore, or its next check is scheduled.
+     *
+     * @param connHandler the connection handler that has been released
+     */
+    static void notifyConnectionHandlerLockReleased(ConnectionHandler connHandler) {
+        Stripe stripe = getStripe(connHandler.getRealm());
+        synchronized(stripe) {
+            // The handler has been removed while it was locked
+            if(!stripe.contains(connHandler)) {
+                stripe.notifyAll();
+                return;
             }
-            catch(InterruptedException e) {
-                // Will loop again
+
+            synchronized(connHandler) {
+                // The handler may have been borrowed again in the meantime, it will be checked once released
+                if(connHandler.isLocked()) {
+                    stripe.notifyAll();
+                    return;
+                }
+
+                // Remove ConnectionHandler instance from the list of registered ConnectionHandler if it is not connected
+                if(!connHandler.isConnected()) {
+                    LOGGER.info("Removing unconnected ConnectionHandler {}", connHandler);
+                    stripe.evict(connHandler);
+                    return;
+                }
             }
+
+            scheduleCheck(stripe, connHandler);
+
+            // Notify any thread waiting for a ConnectionHandler to be released
+            stripe.notifyAll();
         }
     }
 
-
     /**
-     * Closes a specified ConnectionHandler's connection in a separate thread and removes the ConnectionHandler from
-     * the list of registered ConnectionHandler instances.
+     * Schedules the next check of the given connection handler, when its connection is to be closed or kept alive,
+     * replacing the pending one if any. Must be called with the lock of the stripe held.
      */
-    private static class CloseConnectionThread extends Thread {
-
-        private ConnectionHandler connHandler;
-
-        private CloseConnectionThread(ConnectionHandler connHandler) {
-            this.connHandler = connHandler;
+    private static void scheduleCheck(Stripe stripe, ConnectionHandler connHandler) {
+        long now = System.currentTimeMillis();
+        long lastUsed = connHandler.getLastActivityTimestamp();
+        long delay = -1;
+
+        long closePeriod = connHandler.getCloseOnInactivityPeriod();
+        if(closePeriod!=-1)
+            delay = lastUsed+closePeriod*1000-now;
+
+        long keepAlivePeriod = connHandler.getKeepAlivePeriod();
+        if(keepAlivePeriod!=-1) {
+            long keepAliveDelay = Math.max(lastUsed, connHandler.getLastKeepAliveTimestamp())+keepAlivePeriod*1000-now;
+            delay = delay==-1?keepAliveDelay:Math.min(delay, keepAliveDelay);
         }
 
-        @Override
-        public void run() {
-            // Try to close connection, only if it is connected
-            if(connHandler.isConnected()) {
-                LOGGER.info("Closing connection held by {}", connHandler);
-                connHandler.closeConnection();
-            }
+        ConnectionCheck previousCheck;
+        if(delay==-1) {
+            // The connection is neither closed on inactivity nor kept alive
+            previousCheck = stripe.checks.remove(connHandler);
+        }
+        else {
+            ConnectionCheck check = new ConnectionCheck(stripe, connHandler);
+            check.future = scheduler.schedule(check, Math.max(0, delay), TimeUnit.MILLISECONDS);
+            previousCheck = stripe.checks.put(connHandler, check);
         }
+
+        if(previousCheck!=null)
+            previousCheck.future.cancel(false);
     }
 
 
     /**
-     * Keeps alive a specified ConnectionHandler's connection in a separate thread. If the connection is not currently
-     * active, {@link com.mucommander.commons.file.connection.ConnectionHandler#keepAlive()} will not be called.
+     * Checks a connection handler that is not in use: removes it if it is not connected, closes its connection if it
+     * has been inactive for its close on inactivity period, or keeps it alive if it has been inactive for its keep
+     * alive period. The connection is closed or kept alive by another thread, as it could block this one.
      */
-    private static class KeepAliveConnectionThread extends Thread {
+    private static class ConnectionCheck implements Runnable {
 
+        private final Stripe stripe;
         private final ConnectionHandler connHandler;
 
-        private KeepAliveConnectionThread(ConnectionHandler connHandler) {
+        /** Set when the check is scheduled, with the lock of the stripe held */
+        private ScheduledFuture<?> future;
+
+        private ConnectionCheck(Stripe stripe, ConnectionHandler connHandler) {
+            this.stripe = stripe;
             this.connHandler = connHandler;
         }
 
-        @Override
         public void run() {
-            LOGGER.info("keeping connection alive: {}", connHandler);
-
-            synchronized(connHandler) {
-                // Ensures that lock was not grabbed in the meantime
-                if(connHandler.isLocked())
+            synchronized(stripe) {
+                // This check has been replaced or cancelled in the meantime
+                if(stripe.checks.get(connHandler)!=this)
                     return;
 
-                // Keep alive connection, only if it is connected
-                if(connHandler.isConnected())
-                    connHandler.keepAlive();
+                stripe.checks.remove(connHandler);
+
+                synchronized(connHandler) {     // Ensures that no one is trying to acquire a lock on the connection while we access it
+                    // Do not touch ConnectionHandler if it is currently locked, it will be checked once released
+                    if(connHandler.isLocked())
+                        return;
+
+                    // Remove ConnectionHandler instance from the list of registered ConnectionHandler if it is not connected
+                    if(!connHandler.isConnected()) {
+                        LOGGER.info("Removing unconnected ConnectionHandler {}", connHandler);
+                        stripe.evict(connHandler);
+                        return;
+                    }
+
+                    long now = System.currentTimeMillis();
+                    long lastUsed = connHandler.getLastActivityTimestamp();
+
+                    // If time-to-live has been reached without any connection activity, remove ConnectionHandler
+                    // from the list of registered ConnectionHandler and close the connection
+                    long closePeriod = connHandler.getCloseOnInactivityPeriod();
+                    if(closePeriod!=-1 && now-lastUsed>=closePeriod*1000) {
+                        LOGGER.info("Removing timed-out ConnectionHandler {}", connHandler);
+                        stripe.evict(connHandler);
+                        connectionExecutor.execute(new Runnable() {
+                            public void run() {
+                                // Try to close connection, only if it is connected
+                                if(connHandler.isConnected()) {
+                                    LOGGER.info("Closing connection held by {}", connHandler);
+                                    connHandler.closeConnection();
+                                }
+                            }
+                        });
+                        return;
+                    }
+
+                    // If keep-alive period has been reached without any connection activity or a keep alive,
+                    // keep connection alive. The handler is locked meanwhile so that it is not borrowed, and checked
+                    // again when it is released.
+                    long keepAlivePeriod = connHandler.getKeepAlivePeriod();
+                    if(keepAlivePeriod!=-1 && now-Math.max(lastUsed, connHandler.getLastKeepAliveTimestamp())>=keepAlivePeriod*1000) {
+                        // Update last keep alive timestamp to now
+                        connHandler.updateLastKeepAliveTimestamp();
+                        connHandler.acquireLock();
+                        connectionExecutor.execute(new Runnable() {
+                            public void run() {
+                                LOGGER.info("keeping connection alive: {}", connHandler);
+                                try {
+                                    // Keep alive connection, only if it is connected
+                                    if(connHandler.isConnected())
+                                        connHandler.keepAlive();
+                                }
+                                finally {
+                                    connHandler.releaseLock();
+                                }
+                            }
+                        });
+                        return;
+                    }
+                }
+
+                // Nothing to do yet
+                scheduleCheck(stripe, connHandler);
             }
         }
     }
 
+
+    /**
+     * Returns the number of connections that have been requested with
+     * {@link #getConnectionHandler(ConnectionHandlerFactory, FileURL, boolean)}.
+     *
+     * @return the number of connections that have been requested
+     */
+    public static long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    /**
+     * Returns the number of connections that have been requested and were served by an existing connection handler.
+     *
+     * @return the number of connections that were served by an existing connection handler
+     */
+    public static long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of connection handlers that have been created because no existing one could serve a request.
+     *
+     * @return the number of connection handlers that have been created
+     */
+    public static long getCreateCount() {
+        return createCount.sum();
+    }
+
+    /**
+     * Returns the number of connection handlers that have been removed from the pool, because their connection was
+     * closed or had been inactive for too long.
+     *
+     * @return the number of connection handlers that have been removed from the pool
+     */
+    public static long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the total time, in milliseconds, that requests for a connection have spent waiting for one to be
+     * released, because the maximum number of connections of their realm had been reached.
+     *
+     * @return the total time spent waiting for a connection, in milliseconds
+     */
+    public static long getBorrowWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(borrowWaitTime.sum());
+    }
 }
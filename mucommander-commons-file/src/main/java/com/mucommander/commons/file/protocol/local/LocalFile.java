@@ -30,14 +30,19 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -58,16 +63,22 @@ import com.mucommander.commons.file.PermissionBits;
 import com.mucommander.commons.file.PermissionType;
 import com.mucommander.commons.file.UnsupportedFileOperation;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
 import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.file.util.ChildrenChunker;
 import com.mucommander.commons.file.util.Kernel32;
 import com.mucommander.commons.file.util.Kernel32API;
 import com.mucommander.commons.file.util.PathUtils;
 import com.mucommander.commons.file.util.PathUtils.ResolvedDestination;
 import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.ChannelTransferable;
+import com.mucommander.commons.io.FileTransferError;
+import com.mucommander.commons.io.FileTransferException;
 import com.mucommander.commons.io.FilteredOutputStream;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
+import com.mucommander.commons.io.StreamUtils;
 import com.mucommander.commons.runtime.OsFamily;
 
 /**
@@ -119,6 +130,14 @@ public class LocalFile extends ProtocolFile {
     /** Indicates whether the parent folder instance has been retrieved and cached or not (parent can be null) */
     protected boolean parentValueSet;
 
+    /** Attributes read by the parent folder's {@link #ls()}, null if there are none or once they have been used */
+    private LocalFileAttributes prefetchedAttributes;
+    /** Time at which the parent folder's {@link #ls()} returned {@link #prefetchedAttributes} */
+    private long prefetchedAttributesTime;
+
+    /** Attributes read by {@link #ls()} are not returned by {@link #getAttributes()} after this many milliseconds */
+    private final static long PREFETCHED_ATTRIBUTES_LIFETIME = 10000;
+
     /** Underlying local filesystem's path separator: "/" under UNIX systems, "\" under Windows and OS/2 */
     public final static String SEPARATOR = File.separator;
 
@@ -222,6 +241,35 @@ public class LocalFile extends ProtocolFile {
     // LocalFile-specific methods //
     ////////////////////////////////
 
+    /**
+     * Returns this file's size, date, type, hidden flag, owner and group, read at once rather than with a call per
+     * attribute. If this file was returned by its parent's {@link #ls()} a short while ago, the attributes that
+     * <code>ls()</code> read in the same pass as the listing are returned, once. Otherwise the attributes are read
+     * from the filesystem.
+     *
+     * <p>Unlike this file's getters which always return the current value of an attribute, the returned attributes
+     * are a snapshot. This method is meant for {@link com.mucommander.commons.file.CachedFile}.</p>
+     *
+     * @return the attributes of this file
+     */
+    public LocalFileAttributes getAttributes() {
+        LocalFileAttributes attributes;
+        synchronized (this) {
+            attributes = prefetchedAttributes;
+            prefetchedAttributes = null;
+        }
+
+        if (attributes != null && System.currentTimeMillis() - prefetchedAttributesTime < PREFETCHED_ATTRIBUTES_LIFETIME)
+            return attributes;
+
+        return LocalFileAttributes.read(file);
+    }
+
+    private synchronized void setPrefetchedAttributes(LocalFileAttributes attributes, long time) {
+        this.prefetchedAttributes = attributes;
+        this.prefetchedAttributesTime = time;
+    }
+
     /**
      * Returns the user home folder. Most if not all OSes have one, but in the unlikely event that the OS doesn't have
      * one or that the folder cannot be resolved, <code>null</code> will be returned.
@@ -561,35 +609,49 @@ public class LocalFile extends ProtocolFile {
     }
 
     /**
-     * Always returns <code>null</code>, this information is not available unfortunately.
+     * Returns the owner of this file if the filesystem supports POSIX attributes, <code>null</code> otherwise.
      */
     @Override
     public String getOwner() {
-        return null;
+        if (!LocalFileAttributes.POSIX_SUPPORTED)
+            return null;
+
+        try {
+            return Files.getOwner(file.toPath()).getName();
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     /**
-     * Always returns <code>false</code>, this information is not available unfortunately.
+     * Returns <code>true</code> if the filesystem supports POSIX attributes.
      */
     @Override
     public boolean canGetOwner() {
-        return false;
+        return LocalFileAttributes.POSIX_SUPPORTED;
     }
 
     /**
-     * Always returns <code>null</code>, this information is not available unfortunately.
+     * Returns the group of this file if the filesystem supports POSIX attributes, <code>null</code> otherwise.
      */
     @Override
     public String getGroup() {
-        return null;
+        if (!LocalFileAttributes.POSIX_SUPPORTED)
+            return null;
+
+        try {
+            return Files.readAttributes(file.toPath(), PosixFileAttributes.class).group().getName();
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     /**
-     * Always returns <code>false</code>, this information is not available unfortunately.
+     * Returns <code>true</code> if the filesystem supports POSIX attributes.
      */
     @Override
     public boolean canGetGroup() {
-        return false;
+        return LocalFileAttributes.POSIX_SUPPORTED;
     }
 
     @Override
@@ -612,7 +674,7 @@ public class LocalFile extends ProtocolFile {
      */
     @Override
     public InputStream getInputStream() throws IOException {
-        return new LocalInputStream(new FileInputStream(file).getChannel());
+        return new LocalInputStream(new FileInputStream(file).getChannel(), file.isFile());
     }
 
     /**
@@ -642,7 +704,7 @@ public class LocalFile extends ProtocolFile {
      */
     @Override
     public RandomAccessInputStream getRandomAccessInputStream() throws IOException {
-        return new LocalRandomAccessInputStream(new RandomAccessFile(file, "r").getChannel());
+        return new LocalRandomAccessInputStream(new RandomAccessFile(file, "r").getChannel(), file.isFile());
     }
 
     /**
@@ -655,6 +717,42 @@ public class LocalFile extends ProtocolFile {
         return new LocalRandomAccessOutputStream(new RandomAccessFile(file, "rw").getChannel());
     }
 
+    /**
+     * Implementation notes: if the given <code>InputStream</code> is able to transfer its bytes directly to a channel
+     * (see {@link ChannelTransferable}), which is the case of local files' streams and of the filter streams that
+     * wrap them, the bytes are transferred using {@link FileChannel#transferTo(long, long, WritableByteChannel)} and
+     * thus copied by the kernel, without going through a buffer in user space. Otherwise, the stream is copied the
+     * regular way.
+     */
+    @Override
+    public void copyStream(InputStream in, boolean append, long length) throws FileTransferException {
+        if(!(in instanceof ChannelTransferable && ((ChannelTransferable)in).isChannelTransferSupported())) {
+            super.copyStream(in, append, length);
+            return;
+        }
+
+        FileChannel out;
+        try {
+            out = new FileOutputStream(absPath, append).getChannel();
+        }
+        catch(IOException e) {
+            throw new FileTransferException(FileTransferError.OPENING_DESTINATION);
+        }
+
+        try {
+            StreamUtils.transferStream((ChannelTransferable)in, out);
+        }
+        finally {
+            // Close channel even if transferStream() threw an IOException
+            try {
+                out.close();
+            }
+            catch(IOException e) {
+                throw new FileTransferException(FileTransferError.CLOSING_DESTINATION);
+            }
+        }
+    }
+
     @Override
     public void delete() throws IOException {
         boolean ret = file.delete();
@@ -816,22 +914,69 @@ public class LocalFile extends ProtocolFile {
 
         int nbFiles = files.length;
         AbstractFile children[] = new AbstractFile[nbFiles];
+        LocalFile localChildren[] = new LocalFile[nbFiles];
+        LocalFileAttributes attributes[] = new LocalFileAttributes[nbFiles];
 
         for (int i = 0; i < nbFiles; i++) {
-            // Clone the FileURL of this file and set the child's path, this is more efficient than creating a new
-            // FileURL instance from scratch.
-            FileURL childURL = (FileURL) fileURL.clone();
-
-            childURL.setPath(absPath + SEPARATOR + files[i].getName());
+            children[i] = createChild(files[i]);
+
+            // Read the attributes the file table and file jobs need in a single call per file, while listing the
+            // folder, rather than with a call per attribute later on
+            AbstractFile child = children[i].getTopAncestor();
+            if (child instanceof LocalFile) {
+                localChildren[i] = (LocalFile) child;
+                attributes[i] = LocalFileAttributes.read(files[i]);
+            }
+        }
 
-            // Retrieves an AbstractFile (LocalFile or AbstractArchiveFile) instance that's potentially already in
-            // the cache, reuse this file as the file's parent, and the already-created java.io.File instance.
-            children[i] = FileFactory.getFile(childURL, this, Collections.singletonMap("createdFile", files[i]));
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < nbFiles; i++) {
+            if (localChildren[i] != null)
+                localChildren[i].setPrefetchedAttributes(attributes[i], now);
         }
 
         return children;
     }
 
+    /**
+     * Lists this folder with a {@link DirectoryStream}, passing children to the consumer while the folder is still
+     * being read. Like {@link #ls(FilenameFilter)}, the attributes of the children are read in the same pass.
+     */
+    @Override
+    public void ls(FileFilter filter, Consumer<AbstractFile[]> chunkConsumer) throws IOException {
+        ChildrenChunker chunker = new ChildrenChunker(filter, chunkConsumer);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(file.toPath())) {
+            for (Path path : stream) {
+                File childFile = path.toFile();
+                AbstractFile child = createChild(childFile);
+
+                AbstractFile topAncestor = child.getTopAncestor();
+                if (topAncestor instanceof LocalFile)
+                    ((LocalFile) topAncestor).setPrefetchedAttributes(LocalFileAttributes.read(childFile), System.currentTimeMillis());
+
+                chunker.add(child);
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        chunker.flush();
+    }
+
+    /**
+     * Returns the child of this folder that corresponds to the given <code>java.io.File</code>.
+     */
+    private AbstractFile createChild(File childFile) throws IOException {
+        // Clone the FileURL of this file and set the child's path, this is more efficient than creating a new
+        // FileURL instance from scratch.
+        FileURL childURL = (FileURL) fileURL.clone();
+
+        childURL.setPath(absPath + SEPARATOR + childFile.getName());
+
+        // Retrieves an AbstractFile (LocalFile or AbstractArchiveFile) instance that's potentially already in
+        // the cache, reuse this file as the file's parent, and the already-created java.io.File instance.
+        return FileFactory.getFile(childURL, this, Collections.singletonMap("createdFile", childFile));
+    }
+
     @Override
     public boolean isHidden() {
         return file.isHidden();
@@ -921,14 +1066,28 @@ public class LocalFile extends ProtocolFile {
      * <code>InterruptibleChannel</code> and allow a thread waiting for an I/O to be gracefully interrupted using
      * <code>Thread#interrupt()</code>.
      */
-    public static class LocalRandomAccessInputStream extends RandomAccessInputStream {
+    public static class LocalRandomAccessInputStream extends RandomAccessInputStream implements ChannelTransferable {
 
         private final FileChannel channel;
         private final ByteBuffer bb;
+        /** True if the channel reads a regular file, which can be transferred with FileChannel#transferTo */
+        private final boolean regularFile;
 
         public LocalRandomAccessInputStream(FileChannel channel) {
+            this(channel, true);
+        }
+
+        /**
+         * Creates a new stream reading the given channel.
+         *
+         * @param channel the channel to read from
+         * @param regularFile true if the channel reads a regular file, false if it reads a FIFO, a device or any other
+         * special file whose channel is not seekable
+         */
+        public LocalRandomAccessInputStream(FileChannel channel, boolean regularFile) {
             this.channel = channel;
             this.bb = BufferPool.getByteBuffer();
+            this.regularFile = regularFile;
         }
 
         @Override
@@ -979,6 +1138,72 @@ public class LocalFile extends ProtocolFile {
         public void seek(long offset) throws IOException {
             channel.position(offset);
         }
+
+        @Override
+        public boolean isChannelTransferSupported() {
+            return regularFile;
+        }
+
+        /**
+         * Implementation notes: <code>FileChannel#transferTo</code> transfers nothing beyond the size the channel
+         * reports, which is not the actual size of files such as those in <code>/proc</code>, nor of a file that is
+         * growing. When it makes no progress, the bytes are read through this stream's buffer instead, until the end of
+         * the stream is actually reached.
+         */
+        @Override
+        public long transferTo(WritableByteChannel out, long count) throws IOException {
+            long position;
+            long nbTransferred;
+            try {
+                position = channel.position();
+                nbTransferred = channel.transferTo(position, count, out);
+            }
+            catch(IOException e) {
+                if (!channel.isOpen() || !isReadable())
+                    throw new FileTransferException(FileTransferError.READING_SOURCE);
+                throw e;
+            }
+
+            if (nbTransferred > 0) {
+                channel.position(position + nbTransferred);
+                return nbTransferred;
+            }
+
+            synchronized (bb) {
+                bb.position(0);
+                bb.limit((int)Math.min(bb.capacity(), count));
+
+                int nbRead;
+                try {
+                    nbRead = channel.read(bb);
+                }
+                catch(IOException e) {
+                    throw new FileTransferException(FileTransferError.READING_SOURCE);
+                }
+                if (nbRead <= 0)
+                    return -1;
+
+                bb.flip();
+                while (bb.hasRemaining())
+                    out.write(bb);
+
+                return nbRead;
+            }
+        }
+
+        /**
+         * Returns true if a byte can be read at the current position of the channel without error, which tells a
+         * failure to read the channel from a failure to write to the channel it is transferred to.
+         */
+        private boolean isReadable() {
+            try {
+                channel.read(ByteBuffer.allocate(1), channel.position());
+                return true;
+            }
+            catch(IOException e) {
+                return false;
+            }
+        }
     }
 
     /**
@@ -994,10 +1219,31 @@ public class LocalFile extends ProtocolFile {
      * </p>
      *
      */
-    public static class LocalInputStream extends FilterInputStream {
+    public static class LocalInputStream extends FilterInputStream implements ChannelTransferable {
 
         public LocalInputStream(FileChannel channel) {
-            super(new LocalRandomAccessInputStream(channel));
+            this(channel, true);
+        }
+
+        /**
+         * Creates a new stream reading the given channel.
+         *
+         * @param channel the channel to read from
+         * @param regularFile true if the channel reads a regular file, false if it reads a FIFO, a device or any other
+         * special file whose channel is not seekable
+         */
+        public LocalInputStream(FileChannel channel, boolean regularFile) {
+            super(new LocalRandomAccessInputStream(channel, regularFile));
+        }
+
+        @Override
+        public boolean isChannelTransferSupported() {
+            return ((LocalRandomAccessInputStream)in).isChannelTransferSupported();
+        }
+
+        @Override
+        public long transferTo(WritableByteChannel out, long count) throws IOException {
+            return ((LocalRandomAccessInputStream)in).transferTo(out, count);
         }
     }
 
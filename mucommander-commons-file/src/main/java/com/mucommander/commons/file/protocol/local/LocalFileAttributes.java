@@ -0,0 +1,156 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.protocol.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+
+import com.mucommander.commons.file.SimpleFileAttributes;
+import com.mucommander.commons.runtime.OsFamily;
+
+/**
+ * Attributes of a {@link LocalFile} that are read at once, with a single <code>lstat</code>-like call, plus a second
+ * one for symbolic links whose size, date and type are those of their target, like {@link LocalFile}'s getters
+ * return.
+ *
+ * <p>These attributes are a snapshot: they do not reflect the changes made to the file after they were read.
+ * The owner and group names are only resolved when requested, as resolving them has a cost of its own.</p>
+ *
+ * @see LocalFile#getAttributes()
+ */
+public class LocalFileAttributes extends SimpleFileAttributes {
+
+    /** Whether the default filesystem supports POSIX attributes, i.e. owner, group and mode */
+    final static boolean POSIX_SUPPORTED = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    /** Whether the default filesystem supports DOS attributes, used to tell whether a file is hidden under Windows */
+    private final static boolean DOS_SUPPORTED = OsFamily.WINDOWS.isCurrent()
+            && FileSystems.getDefault().supportedFileAttributeViews().contains("dos");
+
+    /** Hidden attribute */
+    private boolean hidden;
+
+    /** POSIX attributes of the file, null if they are not supported or if the file does not exist */
+    private PosixFileAttributes posixAttributes;
+
+    private boolean ownerResolved;
+    private boolean groupResolved;
+
+    private LocalFileAttributes() {
+    }
+
+    /**
+     * Reads the attributes of the given file. If the file does not exist or if its attributes cannot be read, the
+     * returned attributes say that the file does not exist.
+     *
+     * @param file the file whose attributes to read
+     * @return the attributes of the file
+     */
+    static LocalFileAttributes read(File file) {
+        LocalFileAttributes attributes = new LocalFileAttributes();
+        attributes.setPath(file.getAbsolutePath());
+
+        Path path = file.toPath();
+        BasicFileAttributes basicAttributes;
+        try {
+            basicAttributes = readAttributes(path, LinkOption.NOFOLLOW_LINKS);
+            if (basicAttributes.isSymbolicLink()) {
+                attributes.setSymlink(true);
+                // Size, date and type are those of the target, the link is broken if the target cannot be read
+                basicAttributes = readAttributes(path);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            attributes.setExists(false);
+            attributes.ownerResolved = true;
+            attributes.groupResolved = true;
+            return attributes;
+        }
+
+        attributes.setExists(true);
+        attributes.setDirectory(basicAttributes.isDirectory());
+        attributes.setSize(basicAttributes.size());
+        attributes.setDate(basicAttributes.lastModifiedTime().toMillis());
+
+        if (basicAttributes instanceof DosFileAttributes)
+            attributes.hidden = ((DosFileAttributes) basicAttributes).isHidden();
+        else
+            attributes.hidden = file.isHidden();    // Unlike under Windows, this only looks at the file's name
+
+        if (basicAttributes instanceof PosixFileAttributes)
+            attributes.posixAttributes = (PosixFileAttributes) basicAttributes;
+        else {
+            attributes.ownerResolved = true;
+            attributes.groupResolved = true;
+        }
+
+        return attributes;
+    }
+
+    private static BasicFileAttributes readAttributes(Path path, LinkOption... options) throws IOException {
+        if (POSIX_SUPPORTED)
+            return Files.readAttributes(path, PosixFileAttributes.class, options);
+        if (DOS_SUPPORTED)
+            return Files.readAttributes(path, DosFileAttributes.class, options);
+        return Files.readAttributes(path, BasicFileAttributes.class, options);
+    }
+
+    /**
+     * Returns <code>true</code> if the file is hidden.
+     *
+     * @return <code>true</code> if the file is hidden
+     */
+    public boolean isHidden() {
+        return hidden;
+    }
+
+
+    /////////////////////////////////////////////
+    // SimpleFileAttributes overridden methods //
+    /////////////////////////////////////////////
+
+    /**
+     * Returns the name of the file's owner, <code>null</code> if the filesystem does not support POSIX attributes.
+     */
+    @Override
+    public synchronized String getOwner() {
+        if (!ownerResolved) {
+            setOwner(posixAttributes.owner().getName());
+            ownerResolved = true;
+        }
+        return super.getOwner();
+    }
+
+    /**
+     * Returns the name of the file's group, <code>null</code> if the filesystem does not support POSIX attributes.
+     */
+    @Override
+    public synchronized String getGroup() {
+        if (!groupResolved) {
+            setGroup(posixAttributes.group().getName());
+            groupResolved = true;
+        }
+        return super.getGroup();
+    }
+}
@@ -24,6 +24,8 @@ import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,7 +38,8 @@ import com.mucommander.commons.file.MonitoredFile;
  * This class is an implementation of {@link MonitoredFile} that is based on a {@link WatchService}
  * if it is supported or falls back to the mechanism of {@link ModificationDateBasedMonitoredFile} otherwise.
  * This is useful for local files that reside in file systems in which the modification date of a folder
- * doesn't change upon changes to its content.
+ * doesn't change upon changes to its content. The events of the {@link WatchService} also tell which children
+ * have changed, see {@link #takeChangedChildren()}.
  * @author Arik Hadas
  */
 public class LocalMonitoredFile extends ModificationDateBasedMonitoredFile {
@@ -45,6 +48,9 @@ public class LocalMonitoredFile extends ModificationDateBasedMonitoredFile {
     private WatchService watchService;
     private WatchKey watchKey;
 
+    /** Names of the children that changed since the last call to takeChangedChildren(), null if they are not known */
+    private Set<String> changedChildren = new HashSet<>();
+
     private static WatchEvent.Kind<?>[] kinds = new WatchEvent.Kind<?>[] {
         StandardWatchEventKinds.ENTRY_CREATE,
         StandardWatchEventKinds.ENTRY_DELETE,
@@ -95,11 +101,17 @@ public class LocalMonitoredFile extends ModificationDateBasedMonitoredFile {
             // the modicifation date of the file as it appears to be faster
             // than getting events from WatchService on macOS
             if (!periodicCheck && super.isChanged(false)) {
+                synchronized (this) {
+                    changedChildren = null;
+                }
                 return true;
             }
             WatchKey watchKey = watchService.poll();
             if (watchKey != null) {
+                collectChangedChildren(watchKey);
                 watchKey.reset();
+                // the changes are reported by the events, not by the modification date
+                originalModificationDate = getDate();
                 return true;
             }
             return false;
@@ -110,4 +122,29 @@ public class LocalMonitoredFile extends ModificationDateBasedMonitoredFile {
         }
     }
 
+    /**
+     * Adds the children that the pending events of the given key refer to, to the children that have changed.
+     * If events were lost, the changes are not known anymore.
+     */
+    private synchronized void collectChangedChildren(WatchKey watchKey) {
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                LOGGER.debug("events were lost while watching {}", this);
+                changedChildren = null;
+            } else if (changedChildren != null) {
+                changedChildren.add(((Path) event.context()).toString());
+            }
+        }
+    }
+
+    @Override
+    public synchronized Set<String> takeChangedChildren() {
+        if (watchService == null) {
+            return super.takeChangedChildren();
+        }
+
+        Set<String> children = changedChildren;
+        changedChildren = new HashSet<>();
+        return children;
+    }
 }
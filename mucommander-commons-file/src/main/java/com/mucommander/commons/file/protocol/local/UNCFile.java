@@ -260,7 +260,7 @@ public class UNCFile extends ProtocolFile {
      */
     @Override
     public InputStream getInputStream() throws IOException {
-        return new LocalInputStream(new FileInputStream(file).getChannel());
+        return new LocalInputStream(new FileInputStream(file).getChannel(), file.isFile());
     }
 
     /**
@@ -290,7 +290,7 @@ public class UNCFile extends ProtocolFile {
      */
     @Override
     public RandomAccessInputStream getRandomAccessInputStream() throws IOException {
-        return new LocalRandomAccessInputStream(new RandomAccessFile(file, "r").getChannel());
+        return new LocalRandomAccessInputStream(new RandomAccessFile(file, "r").getChannel(), file.isFile());
     }
 
     /**
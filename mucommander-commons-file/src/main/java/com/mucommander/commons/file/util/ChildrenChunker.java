@@ -0,0 +1,106 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.filter.FileFilter;
+
+/**
+ * Groups the children of a folder that is being listed into chunks, for
+ * {@link AbstractFile#ls(FileFilter, Consumer)} implementations.
+ *
+ * <p>Children that match the filter are buffered and passed to the consumer once {@link #FLUSH_INTERVAL} milliseconds
+ * have elapsed since the previous chunk, so that a folder that is listed quickly is passed as a single chunk. As
+ * every chunk has a cost for the consumer, which typically merges it with the children it already has, a chunk is
+ * also at least {@link #MIN_CHUNK_RATIO} times smaller than the number of children passed before it: the number of
+ * chunks grows logarithmically with the number of children.</p>
+ *
+ * <p>This class is not thread-safe, it is meant to be used by the thread that lists the folder.</p>
+ */
+public class ChildrenChunker {
+
+    /** Minimum delay in milliseconds between two chunks */
+    public final static long FLUSH_INTERVAL = 200;
+
+    /** A chunk contains at least the number of children passed before it divided by this ratio */
+    public final static int MIN_CHUNK_RATIO = 8;
+
+    private final FileFilter filter;
+    private final Consumer<AbstractFile[]> consumer;
+
+    /** Children buffered since the last chunk */
+    private final List<AbstractFile> chunk = new ArrayList<>();
+
+    /** Number of children passed to the consumer so far */
+    private long nbPassed;
+
+    /** Time at which the last chunk was passed, or at which this chunker was created */
+    private long lastFlushTime = System.currentTimeMillis();
+
+    /**
+     * Creates a new ChildrenChunker.
+     *
+     * @param filter children that do not match this filter are discarded, may be <code>null</code>
+     * @param consumer the consumer to pass the chunks to
+     */
+    public ChildrenChunker(FileFilter filter, Consumer<AbstractFile[]> consumer) {
+        this.filter = filter;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Adds a child, passing the buffered children to the consumer if it is time to.
+     *
+     * @param child the child to add
+     * @throws InterruptedIOException if the current thread has been interrupted
+     */
+    public void add(AbstractFile child) throws InterruptedIOException {
+        if(Thread.currentThread().isInterrupted())
+            throw new InterruptedIOException();
+
+        if(filter!=null && !filter.match(child))
+            return;
+
+        chunk.add(child);
+
+        long now = System.currentTimeMillis();
+        if(now-lastFlushTime>=FLUSH_INTERVAL && chunk.size()>=nbPassed/MIN_CHUNK_RATIO) {
+            flush();
+            lastFlushTime = now;
+        }
+    }
+
+    /**
+     * Passes the buffered children, if any, to the consumer. This method must be called once the folder has been
+     * listed entirely.
+     */
+    public void flush() {
+        if(chunk.isEmpty())
+            return;
+
+        AbstractFile children[] = chunk.toArray(new AbstractFile[0]);
+        chunk.clear();
+        nbPassed += children.length;
+        consumer.accept(children);
+    }
+}
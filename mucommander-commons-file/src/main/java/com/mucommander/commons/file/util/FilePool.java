@@ -18,8 +18,15 @@
 
 package com.mucommander.commons.file.util;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
 import com.mucommander.commons.file.AbstractFile;
-import org.apache.commons.collections.map.ReferenceMap;
 
 /**
  * This class allows {@link AbstractFile} instances to be pooled, so that existing file instances can be reused,
@@ -28,22 +35,98 @@ import org.apache.commons.collections.map.ReferenceMap;
  * but a sensible choice is to use the {@link AbstractFile#getURL() file's URL}.
  *
  * <p>Files are stored as {@link java.lang.ref.WeakReference weak references} so they can be garbage collected
- * when they are no longer hard-referenced.</p>
+ * when they are no longer hard-referenced. The mappings of collected files are removed as the pool is accessed.</p>
+ *
+ * <p>This class is thread-safe: it is backed by a {@link ConcurrentHashMap}, so that concurrent lookups do not
+ * block each other. The number of lookups that found a file and of those that did not are counted, see
+ * {@link #getHitCount()} and {@link #getMissCount()}.</p>
  *
- * <p>This class uses the {@link ReferenceMap} class part of the <code>Apache Commons Collection</code> library.
- * All accesses to the underlying map is synchronized, making this class thread-safe.</p>
+ * <p>A pool can be bounded to a maximum number of mappings, in which case the oldest mappings are removed first when
+ * the pool holds more.</p>
  *
  * @author Maxence Bernard
  */
 public class FilePool {
 
+    /** Maximum number of mappings of an unbounded pool */
+    public final static int UNBOUNDED = -1;
+
     /** The actual hash map */
-    protected final ReferenceMap hashMap = new ReferenceMap(ReferenceMap.HARD, ReferenceMap.WEAK);
+    private final ConcurrentHashMap<Object, FileReference> hashMap = new ConcurrentHashMap<Object, FileReference>();
+
+    /** Receives the references of the files that have been garbage collected */
+    private final ReferenceQueue<AbstractFile> collectedFiles = new ReferenceQueue<AbstractFile>();
+
+    /** Maximum number of mappings, {@link #UNBOUNDED} if the pool is not bounded */
+    private final int maxSize;
+
+    /** References in the order they were added, only if the pool is bounded */
+    private final Queue<FileReference> insertionOrder;
+
+    /** Number of references in {@link #insertionOrder} */
+    private final AtomicInteger insertionOrderSize = new AtomicInteger();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
 
     /**
-     * Creates a new file pool.
+     * Weak reference to a pooled file, that knows the key it is mapped onto.
+     */
+    private static class FileReference extends WeakReference<AbstractFile> {
+        private final Object key;
+
+        private FileReference(Object key, AbstractFile file, ReferenceQueue<AbstractFile> queue) {
+            super(file, queue);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Creates a new unbounded file pool.
      */
     public FilePool() {
+        this(UNBOUNDED);
+    }
+
+    /**
+     * Creates a new file pool that holds at most the given number of mappings.
+     *
+     * @param maxSize maximum number of mappings, {@link #UNBOUNDED} for no limit
+     */
+    public FilePool(int maxSize) {
+        this.maxSize = maxSize;
+        this.insertionOrder = maxSize==UNBOUNDED?null:new ConcurrentLinkedQueue<FileReference>();
+    }
+
+    /**
+     * Removes the mappings of the files that have been garbage collected.
+     */
+    private void expungeCollectedFiles() {
+        FileReference ref;
+        while((ref = (FileReference)collectedFiles.poll())!=null) {
+            // The mapping may have been replaced since then
+            hashMap.remove(ref.key, ref);
+        }
+    }
+
+    /**
+     * Removes the oldest mappings until this pool holds no more than its maximum number of mappings, and discards
+     * the references of the mappings that have been removed or replaced from the insertion order.
+     */
+    private void trim() {
+        FileReference ref;
+        while(hashMap.size()>maxSize && (ref = insertionOrder.poll())!=null) {
+            insertionOrderSize.decrementAndGet();
+            hashMap.remove(ref.key, ref);
+        }
+
+        // Live mappings are at most maxSize, the others are discarded
+        for(int i = insertionOrderSize.get(); i>2*maxSize && (ref = insertionOrder.poll())!=null; i--) {
+            if(hashMap.get(ref.key)==ref && ref.get()!=null)
+                insertionOrder.offer(ref);
+            else
+                insertionOrderSize.decrementAndGet();
+        }
     }
 
     /**
@@ -55,8 +138,19 @@ public class FilePool {
      * @return returns the file instance previously mapped onto the given key, <code>null</code> if no
      * such mapping existed
      */
-    public synchronized AbstractFile put(Object key, AbstractFile value) {
-        return (AbstractFile)hashMap.put(key, value);
+    public AbstractFile put(Object key, AbstractFile value) {
+        expungeCollectedFiles();
+
+        FileReference ref = new FileReference(key, value, collectedFiles);
+        FileReference previousRef = hashMap.put(key, ref);
+
+        if(insertionOrder!=null) {
+            insertionOrder.offer(ref);
+            insertionOrderSize.incrementAndGet();
+            trim();
+        }
+
+        return previousRef==null?null:previousRef.get();
     }
 
     /**
@@ -67,8 +161,18 @@ public class FilePool {
      * @return the {@link AbstractFile} instance mapped onto the given key if there is one,
      * <code>null</code> otherwise
      */
-    public synchronized AbstractFile get(Object key) {
-        return (AbstractFile)hashMap.get(key);
+    public AbstractFile get(Object key) {
+        expungeCollectedFiles();
+
+        FileReference ref = hashMap.get(key);
+        AbstractFile file = ref==null?null:ref.get();
+
+        if(file==null)
+            missCount.increment();
+        else
+            hitCount.increment();
+
+        return file;
     }
 
     /**
@@ -79,8 +183,11 @@ public class FilePool {
      * @return <code>true</code> if this pool currently contains a key/file mapping where the given key is used as
      * the mapping's key.
      */
-    public synchronized boolean containsKey(Object key) {
-        return hashMap.containsKey(key);
+    public boolean containsKey(Object key) {
+        expungeCollectedFiles();
+
+        FileReference ref = hashMap.get(key);
+        return ref!=null && ref.get()!=null;
     }
 
     /**
@@ -91,16 +198,28 @@ public class FilePool {
      * @return <code>true</code> if this pool currently contains a key/file mapping where the given file is used as
      * the mapping's key.
      */
-    public synchronized boolean containsValue(AbstractFile file) {
-        return hashMap.containsValue(file);
+    public boolean containsValue(AbstractFile file) {
+        expungeCollectedFiles();
+
+        for(FileReference ref : hashMap.values()) {
+            if(file.equals(ref.get()))
+                return true;
+        }
+
+        return false;
     }
 
     /**
      * Removes all existing key/file mapping from this pool, leaving the pool in the same state as it was right after
-     * its creation.
+     * its creation. The hit and miss counts are not reset.
      */
-    public synchronized void clear() {
+    public void clear() {
         hashMap.clear();
+
+        if(insertionOrder!=null) {
+            while(insertionOrder.poll()!=null)
+                insertionOrderSize.decrementAndGet();
+        }
     }
 
     /**
@@ -108,7 +227,36 @@ public class FilePool {
      *
      * @return the number of key/file mapping this pool currently contains.
      */
-    public synchronized int size() {
+    public int size() {
+        expungeCollectedFiles();
+
         return hashMap.size();
     }
+
+    /**
+     * Returns the maximum number of mappings this pool holds, {@link #UNBOUNDED} if it is not bounded.
+     *
+     * @return the maximum number of mappings this pool holds, {@link #UNBOUNDED} if it is not bounded
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of calls to {@link #get(Object)} that returned a file.
+     *
+     * @return the number of calls to {@link #get(Object)} that returned a file
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of calls to {@link #get(Object)} that returned <code>null</code>.
+     *
+     * @return the number of calls to {@link #get(Object)} that returned <code>null</code>
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
 }
@@ -0,0 +1,321 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.protocol.FileProtocols;
+import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.FileTransferError;
+import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.RandomAccessOutputStream;
+
+/**
+ * Copies a remote file by splitting it into segments that are downloaded concurrently, each over its own connection,
+ * and written at their offset in the destination file. Transfers over high-latency links are typically bound by the
+ * throughput of a single connection, several connections multiply it.
+ *
+ * <p>A segment that fails is retried from the point it reached, up to {@link #MAX_ATTEMPTS} times in a row without
+ * progress. If the copy fails nonetheless, the destination file is truncated to the part that has been entirely
+ * copied, so that the copy can be resumed by appending to the destination file.</p>
+ *
+ * <p>The source must be a remote file that supports the {@link FileOperation#RANDOM_READ_FILE} operation, i.e. whose
+ * {@link AbstractFile#getInputStream(long, long)} reads the requested range without transferring the bytes before it,
+ * and fails if it cannot read that range. The destination must support the {@link FileOperation#RANDOM_WRITE_FILE} operation,
+ * see {@link #isSupported(AbstractFile, AbstractFile, long)}.</p>
+ */
+public class SegmentedCopier {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentedCopier.class);
+
+    /** Files that are smaller than twice this size are not segmented */
+    public final static long MIN_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /** Maximum number of segments that are copied concurrently */
+    public final static int MAX_SEGMENTS = 4;
+
+    /** Number of times in a row a segment is attempted without progress before the copy fails */
+    public final static int MAX_ATTEMPTS = 3;
+
+    /** Size of the buffer each segment is copied with */
+    private final static int BUFFER_SIZE = AbstractFile.IO_BUFFER_SIZE;
+
+    private final AbstractFile sourceFile;
+    private final AbstractFile destFile;
+    private final InputStreamWrapper wrapper;
+
+    /**
+     * Wraps the InputStreams the segments are read from, for instance to count the bytes that are read from them.
+     */
+    public interface InputStreamWrapper {
+
+        /**
+         * Returns the stream to read a segment from instead of the given one.
+         *
+         * @param in the stream that reads the segment from the source file
+         * @return the stream to read the segment from
+         * @throws IOException if the segment must not be read, the given stream is closed by the caller
+         */
+        InputStream wrap(InputStream in) throws IOException;
+    }
+
+    /**
+     * A range of bytes of the source file, and the position up to which they have been copied.
+     */
+    private static class Segment {
+        private final long end;
+        private volatile long position;
+
+        private Segment(long start, long end) {
+            this.position = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Creates a new SegmentedCopier that reads the segments directly from the source file.
+     *
+     * @param sourceFile the file to copy
+     * @param destFile the file to copy to
+     */
+    public SegmentedCopier(AbstractFile sourceFile, AbstractFile destFile) {
+        this(sourceFile, destFile, in -> in);
+    }
+
+    /**
+     * Creates a new SegmentedCopier that reads the segments from the streams returned by the given wrapper.
+     *
+     * @param sourceFile the file to copy
+     * @param destFile the file to copy to
+     * @param wrapper wraps the streams the segments are read from, may be called concurrently
+     */
+    public SegmentedCopier(AbstractFile sourceFile, AbstractFile destFile, InputStreamWrapper wrapper) {
+        this.sourceFile = sourceFile;
+        this.destFile = destFile;
+        this.wrapper = wrapper;
+    }
+
+    /**
+     * Returns <code>true</code> if copying the given number of bytes of the source file to the destination file is
+     * worth segmenting and if both files allow it.
+     *
+     * @param sourceFile the file to copy
+     * @param destFile the file to copy to
+     * @param length number of bytes to copy
+     * @return <code>true</code> if the copy can be segmented
+     */
+    public static boolean isSupported(AbstractFile sourceFile, AbstractFile destFile, long length) {
+        // Local files are not bound by the throughput of a connection, and archive entries cannot be read concurrently
+        return length >= 2 * MIN_SEGMENT_SIZE
+                && sourceFile.getTopAncestor() instanceof ProtocolFile
+                && !FileProtocols.FILE.equals(sourceFile.getURL().getScheme())
+                && sourceFile.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)
+                && destFile.isFileOperationSupported(FileOperation.RANDOM_WRITE_FILE);
+    }
+
+    /**
+     * Copies the source file to the destination file, starting at the given offset. The destination file is truncated
+     * to the offset first: the bytes before it are expected to be those of the source file when resuming a copy,
+     * <code>0</code> should be specified otherwise.
+     *
+     * @param offset the offset at which to start copying
+     * @throws FileTransferException if the copy failed, in which case the destination file contains the bytes of the
+     * source file that precede the first byte that could not be copied
+     */
+    public void copy(long offset) throws FileTransferException {
+        long length = sourceFile.getSize();
+
+        try (RandomAccessOutputStream out = destFile.getRandomAccessOutputStream()) {
+            out.setLength(offset);
+        }
+        catch (IOException e) {
+            throw new FileTransferException(FileTransferError.OPENING_DESTINATION);
+        }
+
+        long remaining = length - offset;
+        if (remaining <= 0)
+            return;
+
+        int nbSegments = (int) Math.max(1, Math.min(MAX_SEGMENTS, remaining / MIN_SEGMENT_SIZE));
+        long segmentSize = remaining / nbSegments;
+        List<Segment> segments = new ArrayList<>(nbSegments);
+        for (int i = 0; i < nbSegments; i++) {
+            long start = offset + i * segmentSize;
+            segments.add(new Segment(start, i == nbSegments - 1 ? length : start + segmentSize));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(nbSegments, r -> {
+            Thread thread = new Thread(r, "Segment copy of " + sourceFile.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        FileTransferException failure = null;
+        try {
+            List<Future<Void>> futures = new ArrayList<>(nbSegments);
+            for (Segment segment : segments)
+                futures.add(executor.submit(() -> { copySegment(segment); return null; }));
+
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                }
+                catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof FileTransferException ?
+                                (FileTransferException) e.getCause() : new FileTransferException(FileTransferError.UNKNOWN);
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            failure = new FileTransferException(FileTransferError.UNKNOWN);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        if (failure != null) {
+            truncateToCopiedPart(segments);
+            throw failure;
+        }
+    }
+
+    /**
+     * Copies the given segment, retrying from the point it reached when it fails.
+     */
+    private void copySegment(Segment segment) throws FileTransferException {
+        int attempts = 0;
+        while (segment.position < segment.end) {
+            long position = segment.position;
+            try {
+                transferSegment(segment);
+            }
+            catch (FileTransferException e) {
+                if (segment.position > position)
+                    attempts = 0;
+
+                if (++attempts >= MAX_ATTEMPTS || Thread.currentThread().isInterrupted())
+                    throw e;
+
+                LOGGER.info("failed to copy segment of {} at {}, retrying", sourceFile.getURL(), segment.position);
+            }
+        }
+    }
+
+    /**
+     * Copies the given segment from its position to its end, advancing its position as bytes are written.
+     */
+    private void transferSegment(Segment segment) throws FileTransferException {
+        RandomAccessOutputStream out;
+        try {
+            out = destFile.getRandomAccessOutputStream();
+            out.seek(segment.position);
+        }
+        catch (IOException e) {
+            throw new FileTransferException(FileTransferError.OPENING_DESTINATION);
+        }
+
+        InputStream in = null;
+        byte buffer[] = BufferPool.getByteArray(BUFFER_SIZE);
+        boolean transferred = false;
+        try {
+            try {
+                in = sourceFile.getInputStream(segment.position, segment.end - segment.position);
+                in = wrapper.wrap(in);
+            }
+            catch (IOException e) {
+                throw new FileTransferException(FileTransferError.OPENING_SOURCE);
+            }
+
+            while (segment.position < segment.end) {
+                int nbRead;
+                try {
+                    nbRead = in.read(buffer, 0, (int) Math.min(buffer.length, segment.end - segment.position));
+                }
+                catch (IOException e) {
+                    throw new FileTransferException(FileTransferError.READING_SOURCE);
+                }
+
+                // The source file is shorter than it was when the copy started
+                if (nbRead == -1)
+                    throw new FileTransferException(FileTransferError.READING_SOURCE);
+
+                try {
+                    out.write(buffer, 0, nbRead);
+                }
+                catch (IOException e) {
+                    throw new FileTransferException(FileTransferError.WRITING_DESTINATION);
+                }
+
+                segment.position += nbRead;
+            }
+            transferred = true;
+        }
+        finally {
+            BufferPool.releaseByteArray(buffer);
+
+            if (in != null) {
+                try { in.close(); }
+                catch (IOException e) {}
+            }
+
+            try {
+                out.close();
+            }
+            catch (IOException e) {
+                // Do not replace the exception the transfer failed with, if any
+                if (transferred)
+                    throw new FileTransferException(FileTransferError.CLOSING_DESTINATION);
+                LOGGER.debug("failed to close {}", destFile.getURL(), e);
+            }
+        }
+    }
+
+    /**
+     * Truncates the destination file to the bytes that precede the first segment that has not been copied entirely.
+     */
+    private void truncateToCopiedPart(List<Segment> segments) {
+        long copied = segments.get(segments.size() - 1).end;
+        for (Segment segment : segments) {
+            if (segment.position < segment.end) {
+                copied = segment.position;
+                break;
+            }
+        }
+
+        try (RandomAccessOutputStream out = destFile.getRandomAccessOutputStream()) {
+            out.setLength(copied);
+        }
+        catch (IOException e) {
+            LOGGER.info("failed to truncate {} to the part that has been copied", destFile.getURL(), e);
+        }
+    }
+}
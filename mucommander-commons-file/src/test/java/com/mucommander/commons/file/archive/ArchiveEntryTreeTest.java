@@ -0,0 +1,90 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive;
+
+import org.testng.annotations.Test;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+
+/**
+ * This class is a TestNG test case for {@link ArchiveEntryTree}.
+ */
+public class ArchiveEntryTreeTest {
+
+    private static ArchiveEntry getEntry(DefaultMutableTreeNode node) {
+        return (ArchiveEntry)node.getUserObject();
+    }
+
+    /**
+     * Adds entries whose parent directories are missing or listed after them, and looks them up with and without
+     * trailing separators.
+     */
+    @Test
+    public void testAddAndFind() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        tree.addArchiveEntry(new ArchiveEntry("a/b/c.txt", false, 0, 1, true));
+        tree.addArchiveEntry(new ArchiveEntry("a/d.txt", false, 0, 1, true));
+        tree.addArchiveEntry(new ArchiveEntry("a/", true, 42, 0, true));
+        tree.addArchiveEntry(new ArchiveEntry("e", true, 0, 0, true));
+
+        assert tree.findEntryNode("") == tree;
+        assert tree.getChildCount() == 2;
+
+        DefaultMutableTreeNode a = tree.findEntryNode("a");
+        assert a != null && a == tree.findEntryNode("a/");
+        assert a.getParent() == tree;
+        assert a.getChildCount() == 2;
+        assert getEntry(a).getDate() == 42;
+
+        DefaultMutableTreeNode b = tree.findEntryNode("a/b/");
+        assert b != null && b.getParent() == a;
+        assert getEntry(b).isDirectory();
+
+        DefaultMutableTreeNode c = tree.findEntryNode("a/b/c.txt");
+        assert c != null && c.getParent() == b;
+        assert "c.txt".equals(getEntry(c).getName());
+
+        assert tree.findEntryNode("e/") != null;
+        assert tree.findEntryNode("a/c.txt") == null;
+        assert tree.findEntryNode("b") == null;
+    }
+
+    /**
+     * Removes a directory and checks that its children can no longer be found, then adds them back.
+     */
+    @Test
+    public void testRemove() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        tree.addArchiveEntry(new ArchiveEntry("a/b/c.txt", false, 0, 1, true));
+        tree.addArchiveEntry(new ArchiveEntry("a/d.txt", false, 0, 1, true));
+
+        tree.removeArchiveEntry(new ArchiveEntry("a/b", true, 0, 0, true));
+        assert tree.findEntryNode("a/b") == null;
+        assert tree.findEntryNode("a/b/c.txt") == null;
+        assert tree.findEntryNode("a").getChildCount() == 1;
+
+        tree.addArchiveEntry(new ArchiveEntry("a/b/c.txt", false, 0, 1, true));
+        assert tree.findEntryNode("a/b/c.txt").getParent() == tree.findEntryNode("a/b");
+        assert tree.findEntryNode("a").getChildCount() == 2;
+
+        // Nodes detached without going through the tree are not found either
+        tree.findEntryNode("a").removeFromParent();
+        assert tree.findEntryNode("a/d.txt") == null;
+        assert tree.getChildCount() == 0;
+    }
+}
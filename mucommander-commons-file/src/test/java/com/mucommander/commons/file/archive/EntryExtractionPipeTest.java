@@ -0,0 +1,154 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.io.StreamUtils;
+
+/**
+ * This class is a TestNG test case for {@link EntryExtractionPipe}.
+ */
+public class EntryExtractionPipeTest {
+
+    /** Size of the entries, larger than the pipe's buffer */
+    private final static int ENTRY_SIZE = 3 * EntryExtractionPipe.BUFFER_SIZE;
+
+    private static List<ArchiveEntry> createEntries(int nbEntries) {
+        List<ArchiveEntry> entries = new ArrayList<>();
+        for (int i = 0; i < nbEntries; i++)
+            entries.add(new ArchiveEntry("entry" + i, false, 0, ENTRY_SIZE, true));
+
+        return entries;
+    }
+
+    /**
+     * Extracts the given entries to the pipe from another thread, failing with the given error once done.
+     */
+    private static CompletableFuture<Void> extract(EntryExtractionPipe pipe, List<ArchiveEntry> entries, Exception failure) {
+        return CompletableFuture.runAsync(() -> {
+            Exception extractionFailure = failure;
+            try {
+                for (ArchiveEntry entry : entries) {
+                    OutputStream out = pipe.startEntry(entry);
+                    byte[] data = new byte[ENTRY_SIZE];
+                    for (int i = 0; i < data.length; i++)
+                        data[i] = (byte) entries.indexOf(entry);
+                    out.write(data);
+                    pipe.endEntry(null);
+                }
+            }
+            catch (IOException e) {
+                extractionFailure = e;
+            }
+            finally {
+                pipe.finish(extractionFailure);
+            }
+        });
+    }
+
+    /**
+     * Asserts that entries are passed in order with their whole content, and that unread content is discarded.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testConsume() throws Exception {
+        List<ArchiveEntry> entries = createEntries(5);
+        EntryExtractionPipe pipe = new EntryExtractionPipe();
+        CompletableFuture<Void> extraction = extract(pipe, entries, null);
+
+        List<ArchiveEntry> consumedEntries = new ArrayList<>();
+        pipe.consume((entry, in) -> {
+            int index = consumedEntries.size();
+            consumedEntries.add(entry);
+            // Odd entries are skipped
+            if (index % 2 == 1)
+                return true;
+
+            byte[] data = new byte[ENTRY_SIZE];
+            StreamUtils.readFully(in, data);
+            for (byte b : data)
+                assert b == index;
+            assert in.read() == -1;
+            return true;
+        });
+
+        assert consumedEntries.equals(entries);
+        extraction.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Asserts that the extraction is aborted when the consumer stops it.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testStop() throws Exception {
+        EntryExtractionPipe pipe = new EntryExtractionPipe();
+        CompletableFuture<Void> extraction = extract(pipe, createEntries(5), null);
+
+        int[] nbConsumedEntries = {0};
+        pipe.consume((entry, in) -> ++nbConsumedEntries[0] < 2);
+
+        assert nbConsumedEntries[0] == 2;
+        extraction.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Asserts that the extracting thread has ended once the consumer has stopped the extraction.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testStopWaitsForExtractingThread() throws Exception {
+        EntryExtractionPipe pipe = new EntryExtractionPipe();
+        Thread extractingThread = new Thread(() -> extract(pipe, createEntries(5), null).join());
+        extractingThread.start();
+
+        pipe.consume((entry, in) -> false, extractingThread);
+
+        assert !extractingThread.isAlive();
+    }
+
+    /**
+     * Asserts that a failed extraction is reported to the consumer.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testFailure() throws Exception {
+        EntryExtractionPipe pipe = new EntryExtractionPipe();
+        extract(pipe, createEntries(1), new IOException("corrupt archive"));
+
+        try {
+            pipe.consume((entry, in) -> true);
+            assert false;
+        }
+        catch (IOException e) {
+            assert e.getMessage().equals("corrupt archive");
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.connection;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.FileURL;
+
+/**
+ * This class is a TestNG test case for {@link ConnectionPool}. Each test uses its own host, so that the connection
+ * handlers of a test are not served to another.
+ */
+public class ConnectionPoolTest implements ConnectionHandlerFactory {
+
+    /** Scheme of the test URLs, whose connection limit is set by the tests */
+    private final static String SCHEME = "pooltest";
+
+    /** Close on inactivity period of the handlers created by the tests */
+    private long closeOnInactivityPeriod = 300;
+
+    /**
+     * A connection handler that does not connect to anything.
+     */
+    private static class TestConnectionHandler extends ConnectionHandler {
+        private volatile boolean connected;
+
+        private TestConnectionHandler(FileURL location, long closeOnInactivityPeriod) {
+            super(location);
+            setCloseOnInactivityPeriod(closeOnInactivityPeriod);
+        }
+
+        @Override
+        public void startConnection() {
+            connected = true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public void closeConnection() {
+            connected = false;
+        }
+
+        @Override
+        public void keepAlive() {
+        }
+    }
+
+    public ConnectionHandler createConnectionHandler(FileURL location) {
+        return new TestConnectionHandler(location, closeOnInactivityPeriod);
+    }
+
+    private static FileURL getURL(String host) throws MalformedURLException {
+        return FileURL.getFileURL(SCHEME+"://"+host+"/path");
+    }
+
+    /**
+     * Borrows a connection and asserts that it is reused once released.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testReuse() throws Exception {
+        FileURL url = getURL("reuse");
+        long hitCount = ConnectionPool.getHitCount();
+        long createCount = ConnectionPool.getCreateCount();
+
+        ConnectionHandler connHandler = ConnectionPool.getConnectionHandler(this, url, true);
+        connHandler.checkConnection();
+        connHandler.releaseLock();
+
+        assert ConnectionPool.getConnectionHandler(this, url, true) == connHandler;
+        assert ConnectionPool.getCreateCount() == createCount + 1;
+        assert ConnectionPool.getHitCount() == hitCount + 1;
+        connHandler.releaseLock();
+    }
+
+    /**
+     * Borrows as many connections as allowed and asserts that the next request waits for one to be released.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testMaxConnections() throws Exception {
+        FileURL url = getURL("max");
+        ConnectionPool.setMaxConnectionsPerRealm(SCHEME, 2);
+        assert ConnectionPool.getMaxConnectionsPerRealm(SCHEME) == 2;
+
+        ConnectionHandler connHandler1 = ConnectionPool.getConnectionHandler(this, url, true);
+        connHandler1.checkConnection();
+        ConnectionHandler connHandler2 = ConnectionPool.getConnectionHandler(this, url, true);
+        connHandler2.checkConnection();
+        assert connHandler1 != connHandler2;
+
+        CompletableFuture<ConnectionHandler> connHandler3 = CompletableFuture.supplyAsync(() -> {
+            try {
+                return ConnectionPool.getConnectionHandler(this, url, true);
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        try {
+            connHandler3.get(500, TimeUnit.MILLISECONDS);
+            assert false;
+        }
+        catch (TimeoutException e) {
+            // The request waits for a connection to be released
+        }
+
+        connHandler2.releaseLock();
+        assert connHandler3.get(5, TimeUnit.SECONDS) == connHandler2;
+
+        connHandler1.releaseLock();
+        connHandler2.releaseLock();
+    }
+
+    /**
+     * Closes a connection and asserts that its handler is removed from the pool once released.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testEviction() throws Exception {
+        FileURL url = getURL("eviction");
+        long evictionCount = ConnectionPool.getEvictionCount();
+
+        ConnectionHandler connHandler = ConnectionPool.getConnectionHandler(this, url, true);
+        connHandler.checkConnection();
+        connHandler.closeConnection();
+        connHandler.releaseLock();
+
+        assert ConnectionPool.getEvictionCount() == evictionCount + 1;
+        assert !ConnectionPool.getConnectionHandlersSnapshot().contains(connHandler);
+        assert ConnectionPool.getConnectionHandler(this, url, true) != connHandler;
+    }
+
+    /**
+     * Releases a connection whose close on inactivity period is zero and asserts that it is closed and removed from
+     * the pool.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCloseOnInactivity() throws Exception {
+        closeOnInactivityPeriod = 0;
+        FileURL url = getURL("inactivity");
+
+        ConnectionHandler connHandler = ConnectionPool.getConnectionHandler(this, url, true);
+        connHandler.checkConnection();
+        connHandler.releaseLock();
+
+        for (int i = 0; i < 50 && connHandler.isConnected(); i++)
+            Thread.sleep(100);
+
+        assert !connHandler.isConnected();
+        assert !ConnectionPool.getConnectionHandlersSnapshot().contains(connHandler);
+    }
+}
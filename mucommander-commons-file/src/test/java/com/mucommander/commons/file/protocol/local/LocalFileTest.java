@@ -22,10 +22,15 @@ import com.mucommander.commons.file.AbstractFileTest;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.protocol.local.LocalFile;
+import com.mucommander.commons.io.BoundedInputStream;
+import com.mucommander.commons.io.ByteCounter;
+import com.mucommander.commons.io.CounterInputStream;
+import com.mucommander.commons.io.ThroughputLimitInputStream;
 
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.NoSuchAlgorithmException;
 import java.util.regex.Matcher;
 
@@ -94,6 +99,100 @@ public class LocalFileTest extends AbstractFileTest {
         assert !destFile.isSymlink();          // Leave me
     }
 
+    /**
+     * Asserts that {@link LocalFile#copyStream(java.io.InputStream, boolean, long)} copies the content of a local file
+     * when its stream is wrapped by filter streams that support channel transfers, and that the transferred bytes are
+     * accounted for by the filter streams.
+     *
+     * @throws IOException should not normally happen
+     * @throws NoSuchAlgorithmException should not happen
+     */
+    @Test
+    public void testCopyStreamChannelTransfer() throws IOException, NoSuchAlgorithmException {
+        String md5 = createFile(tempFile, 100000);
+        AbstractFile destFile = getTemporaryFile();
+        deleteWhenFinished(destFile);
+
+        ByteCounter counter = new ByteCounter();
+        try (ThroughputLimitInputStream in = new ThroughputLimitInputStream(new CounterInputStream(tempFile.getInputStream(), counter))) {
+            assert in.isChannelTransferSupported();
+            destFile.copyStream(in, false, tempFile.getSize());
+        }
+
+        assert 100000 == counter.getByteCount();
+        assert 100000 == destFile.getSize();
+        assert md5.equals(calculateMd5(destFile));
+
+        // Resume the transfer from the middle of the file
+        try (InputStream in = new BoundedInputStream(tempFile.getInputStream(), 50000, false)) {
+            destFile.copyStream(in, false, 50000);
+        }
+        try (InputStream in = new CounterInputStream(tempFile.getInputStream(50000))) {
+            destFile.copyStream(in, true, 50000);
+        }
+
+        assert md5.equals(calculateMd5(destFile));
+    }
+
+    /**
+     * Asserts that {@link LocalFile#copyStream(java.io.InputStream, boolean, long)} copies the whole content of a file
+     * whose size is reported as 0, such as the files in <code>/proc</code>. This test does nothing on platforms that
+     * have no such file.
+     *
+     * @throws IOException should not normally happen
+     */
+    @Test
+    public void testCopyStreamSizelessFile() throws IOException {
+        AbstractFile procFile = FileFactory.getFile("/proc/self/status");
+        if (procFile == null || !procFile.exists() || procFile.getSize() != 0)
+            return;
+
+        AbstractFile destFile = getTemporaryFile();
+        deleteWhenFinished(destFile);
+
+        try (InputStream in = procFile.getInputStream()) {
+            destFile.copyStream(in, false, -1);
+        }
+
+        assert destFile.getSize() > 0;
+    }
+
+    /**
+     * Asserts that the attributes returned by {@link LocalFile#getAttributes()} match those returned by the getters,
+     * and that the attributes read by {@link LocalFile#ls()} are returned only once.
+     *
+     * @throws IOException should not normally happen
+     * @throws NoSuchAlgorithmException should not happen
+     */
+    @Test
+    public void testAttributes() throws IOException, NoSuchAlgorithmException {
+        tempFile.mkdir();
+        createFile(tempFile.getDirectChild("file"), 1000);
+        tempFile.getDirectChild("dir").mkdir();
+
+        for (AbstractFile child : tempFile.ls()) {
+            LocalFile localChild = (LocalFile)child.getAncestor(LocalFile.class);
+            LocalFileAttributes attributes = localChild.getAttributes();
+
+            assert attributes.exists();
+            assert attributes.isDirectory() == child.isDirectory();
+            assert attributes.isSymlink() == child.isSymlink();
+            assert attributes.isHidden() == child.isHidden();
+            assert attributes.getSize() == child.getSize();
+            assert attributes.getDate() == child.getDate();
+            assert attributes.getOwner() == null ? child.getOwner() == null : attributes.getOwner().equals(child.getOwner());
+            assert attributes.getGroup() == null ? child.getGroup() == null : attributes.getGroup().equals(child.getGroup());
+        }
+
+        // The attributes read by ls() have been used, changes are seen
+        LocalFile file = (LocalFile)tempFile.getDirectChild("file").getAncestor(LocalFile.class);
+        createFile(file, 2000);
+        assert file.getAttributes().getSize() == 2000;
+
+        file.delete();
+        assert !file.getAttributes().exists();
+    }
+
     /**
      * Asserts that {@link com.mucommander.commons.file.protocol.local.LocalFile#getUserHome()} returns a file that is not null,
      * is a directory, and exists, and that '~' can be resolved as the user home folder.
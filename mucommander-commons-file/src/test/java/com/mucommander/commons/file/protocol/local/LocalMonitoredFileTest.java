@@ -0,0 +1,92 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.protocol.local;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+
+/**
+ * This class is a TestNG test case for {@link LocalMonitoredFile}.
+ */
+public class LocalMonitoredFileTest {
+
+    /**
+     * Creates, modifies and deletes children of a watched folder, and asserts that the names of the changed children
+     * are reported once each.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testChangedChildren() throws Exception {
+        AbstractFile folder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        folder.mkdir();
+        AbstractFile unchanged = folder.getDirectChild("unchanged");
+        unchanged.mkfile();
+        AbstractFile deleted = folder.getDirectChild("deleted");
+        deleted.mkfile();
+
+        LocalMonitoredFile monitoredFile = new LocalMonitoredFile(folder);
+        monitoredFile.startWatch();
+        try {
+            AbstractFile created = folder.getDirectChild("created");
+            created.mkfile();
+            write(created, "first");
+            write(created, "second");
+            deleted.delete();
+
+            Set<String> changedChildren = waitForChangedChildren(monitoredFile, 2);
+            assert changedChildren.size() == 2;
+            assert changedChildren.contains("created");
+            assert changedChildren.contains("deleted");
+            assert monitoredFile.takeChangedChildren().isEmpty();
+        }
+        finally {
+            monitoredFile.stopWatch();
+            folder.deleteRecursively();
+        }
+    }
+
+    private static void write(AbstractFile file, String content) throws IOException {
+        try (OutputStream out = file.getOutputStream()) {
+            out.write(content.getBytes());
+        }
+    }
+
+    /**
+     * Polls the given file for changes until the given number of changed children have been reported, or a few
+     * seconds have elapsed.
+     */
+    private static Set<String> waitForChangedChildren(LocalMonitoredFile monitoredFile, int nbChildren) throws InterruptedException {
+        Set<String> changedChildren = new HashSet<>();
+        long timeout = System.currentTimeMillis() + 10000;
+        while (changedChildren.size() < nbChildren && System.currentTimeMillis() < timeout) {
+            if (monitoredFile.isChanged(true))
+                changedChildren.addAll(monitoredFile.takeChangedChildren());
+            else
+                Thread.sleep(50);
+        }
+        return changedChildren;
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+
+/**
+ * This class is a TestNG test case for {@link FilePool}.
+ */
+public class FilePoolTest {
+
+    /** Number of files created by the tests, used to give them distinct names */
+    private static int nbFiles;
+
+    private static AbstractFile createFile() throws IOException {
+        return FileFactory.getTemporaryFolder().getDirectChild(FilePoolTest.class.getName() + (nbFiles++));
+    }
+
+    /**
+     * Adds files to the pool and asserts that they are returned, and that lookups are counted.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testPutGet() throws IOException {
+        FilePool pool = new FilePool();
+        AbstractFile file1 = createFile();
+        AbstractFile file2 = createFile();
+
+        assert pool.put(file1.getURL(), file1) == null;
+        assert pool.put(file2.getURL(), file2) == null;
+        assert pool.put(file1.getURL(), file1) == file1;
+
+        assert pool.get(file1.getURL()) == file1;
+        assert pool.get(file2.getURL()) == file2;
+        assert pool.get(createFile().getURL()) == null;
+        assert pool.containsKey(file1.getURL());
+        assert pool.containsValue(file2);
+        assert pool.size() == 2;
+
+        assert pool.getHitCount() == 2;
+        assert pool.getMissCount() == 1;
+
+        pool.clear();
+        assert pool.size() == 0;
+        assert pool.get(file1.getURL()) == null;
+    }
+
+    /**
+     * Asserts that the mappings of files that are not referenced anymore are removed once the files are garbage
+     * collected.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCollectedFiles() throws Exception {
+        FilePool pool = new FilePool();
+        AbstractFile file = createFile();
+        pool.put(file.getURL(), file);
+        pool.put(createFile().getURL(), createFile());
+
+        for (int i = 0; i < 50 && pool.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        assert pool.size() == 1;
+        assert pool.get(file.getURL()) == file;
+    }
+
+    /**
+     * Adds more files than a bounded pool holds and asserts that the oldest ones are removed.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testMaxSize() throws IOException {
+        FilePool pool = new FilePool(10);
+        List<AbstractFile> files = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            AbstractFile file = createFile();
+            files.add(file);
+            pool.put(file.getURL(), file);
+            // Replaced mappings do not count twice
+            pool.put(file.getURL(), file);
+        }
+
+        assert pool.getMaxSize() == 10;
+        assert pool.size() == 10;
+        assert pool.get(files.get(0).getURL()) == null;
+        assert pool.get(files.get(99).getURL()) == files.get(99);
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.io.FileTransferError;
+import com.mucommander.commons.io.FileTransferException;
+
+/**
+ * This class is a TestNG test case for {@link SegmentedCopier}. Local files are used as source, which the copier
+ * does not segment when used by {@link SegmentedCopier#isSupported(AbstractFile, AbstractFile, long)} but copies like
+ * any other file.
+ */
+public class SegmentedCopierTest {
+
+    private final static int LENGTH = (int) (2 * SegmentedCopier.MIN_SEGMENT_SIZE + 12345);
+
+    private byte[] data;
+    private AbstractFile sourceFile;
+    private AbstractFile destFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        data = new byte[LENGTH];
+        new Random(LENGTH).nextBytes(data);
+
+        sourceFile = FileFactory.getTemporaryFile(getClass().getName(), true);
+        try (OutputStream out = sourceFile.getOutputStream()) {
+            out.write(data);
+        }
+
+        destFile = FileFactory.getTemporaryFile(getClass().getName(), true);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        sourceFile.delete();
+        if (destFile.exists())
+            destFile.delete();
+    }
+
+    private byte[] readDestFile() throws IOException {
+        return Files.readAllBytes(Paths.get(destFile.getAbsolutePath()));
+    }
+
+    /**
+     * Copies the file in segments and asserts that the destination file is identical to the source file.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCopy() throws IOException {
+        new SegmentedCopier(sourceFile, destFile).copy(0);
+
+        assert Arrays.equals(data, readDestFile());
+        assert !SegmentedCopier.isSupported(sourceFile, destFile, LENGTH);
+    }
+
+    /**
+     * Resumes a copy and asserts that the bytes that follow the offset are copied and that those that precede it are
+     * left untouched.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testResume() throws IOException {
+        int offset = 1000;
+        try (OutputStream out = destFile.getOutputStream()) {
+            out.write(data, 0, offset);
+            // Bytes past the offset are overwritten
+            out.write(new byte[offset]);
+        }
+
+        new SegmentedCopier(sourceFile, destFile).copy(offset);
+
+        assert Arrays.equals(data, readDestFile());
+    }
+
+    /**
+     * Makes the segments fail after they have read some bytes and asserts that they are retried from the point they
+     * reached.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testRetry() throws IOException {
+        AtomicInteger nbOpened = new AtomicInteger();
+        new SegmentedCopier(sourceFile, destFile, in -> {
+            // Every other stream fails after 100 KB
+            if (nbOpened.incrementAndGet() % 2 == 0)
+                return in;
+
+            return new FilterInputStream(in) {
+                private int nbRead;
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (nbRead >= 100 * 1024)
+                        throw new IOException();
+
+                    int n = super.read(b, off, len);
+                    if (n > 0)
+                        nbRead += n;
+                    return n;
+                }
+            };
+        }).copy(0);
+
+        assert nbOpened.get() > 2;
+        assert Arrays.equals(data, readDestFile());
+    }
+
+    /**
+     * Makes the segments fail without progress and asserts that the copy fails, leaving the part that precedes the
+     * first failure in the destination file.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testFailure() throws IOException {
+        try {
+            new SegmentedCopier(sourceFile, destFile, in -> {
+                throw new IOException();
+            }).copy(0);
+            assert false;
+        }
+        catch (FileTransferException e) {
+            assert e.getReason() == FileTransferError.OPENING_SOURCE;
+        }
+
+        assert readDestFile().length == 0;
+    }
+}
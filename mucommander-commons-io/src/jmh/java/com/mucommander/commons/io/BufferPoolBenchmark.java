@@ -0,0 +1,107 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of {@link BufferPool} with that of the single-lock pool it replaced, when concurrent threads
+ * get and release buffers the way stream copies do.
+ *
+ * <p>Run with <code>gradle :mucommander-commons-io:jmh</code>, JMH options can be passed with <code>--args</code>,
+ * e.g. <code>--args='-t 1'</code> to measure the uncontended case.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class BufferPoolBenchmark {
+
+    /** Length of the requested buffers, the default buffer size and a smaller one */
+    @Param({"65536", "8192"})
+    public int length;
+
+    @Benchmark
+    public byte[] stripedPool() {
+        byte[] buffer = BufferPool.getByteArray(length);
+        buffer[0]++;
+        BufferPool.releaseByteArray(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public byte[] singleLockPool() {
+        byte[] buffer = SingleLockPool.getByteArray(length);
+        buffer[0]++;
+        SingleLockPool.releaseByteArray(buffer);
+        return buffer;
+    }
+
+    /**
+     * The previous implementation of {@link BufferPool}, reduced to byte arrays: a list of buffers that is scanned
+     * under a class-wide lock.
+     */
+    private static class SingleLockPool {
+
+        private static List<byte[]> buffers = new ArrayList<>();
+
+        private static long poolSize;
+
+        private static synchronized byte[] getByteArray(int length) {
+            for(int i=0; i<buffers.size(); i++) {
+                if(buffers.get(i).length==length) {
+                    poolSize -= length;
+                    return buffers.remove(i);
+                }
+            }
+
+            return new byte[length];
+        }
+
+        private static synchronized boolean releaseByteArray(byte[] buffer) {
+            for(byte[] pooledBuffer : buffers) {
+                if(pooledBuffer==buffer)
+                    return false;
+            }
+
+            if(poolSize+buffer.length>BufferPool.INITIAL_POOL_LIMIT)
+                return false;
+
+            buffers.add(buffer);
+            poolSize += buffer.length;
+            return true;
+        }
+    }
+}
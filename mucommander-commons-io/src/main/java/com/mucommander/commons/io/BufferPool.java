@@ -22,7 +22,12 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.util.Vector;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class allows to share and reuse byte buffers to avoid excessive memory allocation and garbage collection.
@@ -45,7 +50,10 @@ import java.util.Vector;
  * </ul>
  * </p>
  *
- * <p>Note: this class is thread safe and thus can safely be used by concurrent threads.</p>
+ * <p>Note: this class is thread safe and thus can safely be used by concurrent threads. Pooled buffers are grouped by
+ * class and length, and each group is split into stripes that are locked independently. A thread releases buffers to
+ * the stripe its identifier maps to and looks for a buffer in that stripe first, so that concurrent threads seldom
+ * compete for the same lock.</p>
  *
  * @author Maxence Bernard, Nicolas Rinaudo
  * @see com.mucommander.commons.io.StreamUtils
@@ -54,23 +62,44 @@ public class BufferPool {
     /** Logger used by this class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(BufferPool.class);
 
-    /** List of BufferContainer instances that wraps available buffers */
-    private static Vector<BufferContainer> bufferContainers = new Vector<BufferContainer>();
+    /** Number of stripes each group of pooled buffers is split into, a power of two */
+    private final static int NB_STRIPES = Integer.highestOneBit(Math.min(16, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+    /** Stripes of pooled buffers, grouped by buffer class and length */
+    private final static Map<SizeClass, Stripe[]> stripes = new ConcurrentHashMap<>();
+
+    /** Containers of the buffers that currently are in the pool, used to detect buffers that are released twice */
+    private final static Set<BufferContainer> pooledBuffers = ConcurrentHashMap.newKeySet();
+
+    /** Factories used by the shorthand get/release methods */
+    private final static ByteArrayFactory BYTE_ARRAY_FACTORY = new ByteArrayFactory();
+    private final static CharArrayFactory CHAR_ARRAY_FACTORY = new CharArrayFactory();
+    private final static ByteBufferFactory BYTE_BUFFER_FACTORY = new ByteBufferFactory();
+    private final static CharBufferFactory CHAR_BUFFER_FACTORY = new CharBufferFactory();
 
     /** The initial default buffer size */
     public final static int INITIAL_DEFAULT_BUFFER_SIZE = 65536;
 
     /** Size of buffers returned by get*Buffer methods without a size argument */
-    public static int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
+    public static volatile int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
 
     /** The initial max pool size */
     public final static long INITIAL_POOL_LIMIT = 10485760;
 
     /** Maximum combined size of all pooled buffers, in bytes */
-    public static long maxPoolSize = INITIAL_POOL_LIMIT;
+    public static volatile long maxPoolSize = INITIAL_POOL_LIMIT;
 
     /** Current combined size of all pooled buffers, in bytes */
-    public static long poolSize;
+    private final static AtomicLong poolSize = new AtomicLong();
+
+    /** Combined size of the buffers that were handed out and not released yet, in bytes */
+    private final static LongAdder outstandingSize = new LongAdder();
+
+    /** Number of buffers that were taken from the pool */
+    private final static LongAdder nbHits = new LongAdder();
+
+    /** Number of buffers that had to be created because none was available in the pool */
+    private final static LongAdder nbMisses = new LongAdder();
 
 
     /**
@@ -79,7 +108,7 @@ public class BufferPool {
      *
      * @return a byte array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized byte[] getByteArray() {
+    public static byte[] getByteArray() {
         return getByteArray(getDefaultBufferSize());
     }
 
@@ -97,8 +126,8 @@ public class BufferPool {
      * @param length length of the byte array
      * @return a byte array of the specified size
      */
-    public static synchronized byte[] getByteArray(int length) {
-        return (byte[])getBuffer(new ByteArrayFactory(), length);
+    public static byte[] getByteArray(int length) {
+        return (byte[])getBuffer(BYTE_ARRAY_FACTORY, length);
     }
 
     /**
@@ -107,7 +136,7 @@ public class BufferPool {
      *
      * @return a char array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized char[] getCharArray() {
+    public static char[] getCharArray() {
         return getCharArray(getDefaultBufferSize());
     }
 
@@ -125,8 +154,8 @@ public class BufferPool {
      * @param length length of the char array
      * @return a char array of the specified length
      */
-    public static synchronized char[] getCharArray(int length) {
-        return (char[])getBuffer(new CharArrayFactory(), length);
+    public static char[] getCharArray(int length) {
+        return (char[])getBuffer(CHAR_ARRAY_FACTORY, length);
     }
 
     /**
@@ -135,14 +164,14 @@ public class BufferPool {
      *
      * @return a ByteBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized ByteBuffer getByteBuffer() {
+    public static ByteBuffer getByteBuffer() {
         return getByteBuffer(getDefaultBufferSize());
     }
 
     /**
-     * Returns a ByteBuffer of the specified capacity. This method first checks if a ByteBuffer instance of the
-     * specified capacity exists in the pool. If one is found, it is removed from the pool and returned. If not,
-     * a new instance is created and returned.
+     * Returns a direct ByteBuffer of the specified capacity, suitable for channel I/O. This method first checks if a
+     * ByteBuffer instance of the specified capacity exists in the pool. If one is found, it is removed from the pool,
+     * cleared and returned. If not, a new instance is created and returned.
      *
      * <p>This method won't return the same buffer instance until it has been released with
      * {@link #releaseByteBuffer(ByteBuffer)}.</p>
@@ -153,8 +182,8 @@ public class BufferPool {
      * @param capacity capacity of the ByteBuffer
      * @return a ByteBuffer with the specified capacity
      */
-    public static synchronized ByteBuffer getByteBuffer(int capacity) {
-        return (ByteBuffer)getBuffer(new ByteBufferFactory(), capacity);
+    public static ByteBuffer getByteBuffer(int capacity) {
+        return (ByteBuffer)getBuffer(BYTE_BUFFER_FACTORY, capacity);
     }
 
 
@@ -164,14 +193,14 @@ public class BufferPool {
      *
      * @return a CharBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized CharBuffer getCharBuffer() {
+    public static CharBuffer getCharBuffer() {
         return getCharBuffer(getDefaultBufferSize());
     }
 
     /**
      * Returns a CharBuffer of the specified capacity. This method first checks if a CharBuffer instance of the
-     * specified capacity exists in the pool. If one is found, it is removed from the pool and returned. If not,
-     * a new instance is created and returned.
+     * specified capacity exists in the pool. If one is found, it is removed from the pool, cleared and returned. If
+     * not, a new instance is created and returned.
      *
      * <p>This method won't return the same buffer instance until it has been released with
      * {@link #releaseCharBuffer(CharBuffer)}.</p>
@@ -182,8 +211,8 @@ public class BufferPool {
      * @param capacity capacity of the CharBuffer
      * @return a CharBuffer with the specified capacity
      */
-    public static synchronized CharBuffer getCharBuffer(int capacity) {
-        return (CharBuffer)getBuffer(new CharBufferFactory(), capacity);
+    public static CharBuffer getCharBuffer(int capacity) {
+        return (CharBuffer)getBuffer(CHAR_BUFFER_FACTORY, capacity);
     }
 
 
@@ -194,16 +223,18 @@ public class BufferPool {
      * @param factory BufferFactory used to identify the target buffer class and create a new buffer (if necessary)
      * @return a buffer with a size equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized Object getBuffer(BufferFactory factory) {
+    public static Object getBuffer(BufferFactory factory) {
         return getBuffer(factory, getDefaultBufferSize());
     }
 
     /**
      * Returns a byte array of the specified size. This method first checks if a buffer the same size as the specified
-     * one and a class compatible with the specified factory exists in the pool. If one is found, it is removed from the
-     * pool and returned.
+     * one and of the class of the specified factory exists in the pool. If one is found, it is removed from the
+     * pool, reset with {@link BufferFactory#clearBuffer(Object)} and returned.
      * If not, a new instance is created and returned using {@link BufferFactory#newBuffer(int)}.
      *
+     * <p>The stripe the current thread releases buffers to is searched first, and then the other ones.</p>
+     *
      * <p>This method won't return the same buffer instance until it has been released with
      * {@link #releaseBuffer(Object, BufferFactory)}.</p>
      *
@@ -211,28 +242,35 @@ public class BufferPool {
      * @param size size of the buffer
      * @return a buffer of the specified size
      */
-    public static synchronized Object getBuffer(BufferFactory factory, int size) {
-        int nbBuffers = bufferContainers.size();
-        BufferContainer bufferContainer;
-        Object buffer;
-
-        // Looks for a buffer container in the pool that matches the specified size and buffer class.
-        for(int i=0; i<nbBuffers; i++) {
-            bufferContainer = bufferContainers.elementAt(i);
-            buffer = bufferContainer.getBuffer();
-
-            // Caution: mind the difference between BufferContainer#getLength() and BufferContainer#getSize()
-            if(bufferContainer.getLength()==size && (factory.matchesBufferClass(buffer.getClass()))) {
-                bufferContainers.removeElementAt(i);
-                poolSize -= bufferContainer.getSize();
-                return buffer;
+    public static Object getBuffer(BufferFactory factory, int size) {
+        Stripe[] sizeClassStripes = stripes.get(new SizeClass(factory.getBufferClass(), size));
+
+        if(sizeClassStripes!=null) {
+            int homeStripe = getHomeStripe();
+            for(int i=0; i<NB_STRIPES; i++) {
+                BufferContainer bufferContainer = sizeClassStripes[(homeStripe+i) & (NB_STRIPES-1)].poll();
+                if(bufferContainer!=null) {
+                    // Caution: mind the difference between BufferContainer#getLength() and BufferContainer#getSize()
+                    int bufferSize = bufferContainer.getSize();
+                    pooledBuffers.remove(bufferContainer);
+                    poolSize.addAndGet(-bufferSize);
+                    outstandingSize.add(bufferSize);
+                    nbHits.increment();
+
+                    Object buffer = bufferContainer.getBuffer();
+                    factory.clearBuffer(buffer);
+                    return buffer;
+                }
             }
         }
 
         LOGGER.trace("Creating new buffer with {} size= {}", factory, size);
 
         // No buffer with the same class and size found in the pool, create a new one and return it
-        return factory.newBuffer(size);
+        Object buffer = factory.newBuffer(size);
+        outstandingSize.add(factory.newBufferContainer(buffer).getSize());
+        nbMisses.increment();
+        return buffer;
     }
 
 
@@ -248,8 +286,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteArray(byte buffer[]) {
-        return releaseBuffer(buffer, new ByteArrayFactory());
+    public static boolean releaseByteArray(byte buffer[]) {
+        return releaseBuffer(buffer, BYTE_ARRAY_FACTORY);
     }
 
     /**
@@ -264,8 +302,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharArray(char buffer[]) {
-        return releaseBuffer(buffer, new CharArrayFactory());
+    public static boolean releaseCharArray(char buffer[]) {
+        return releaseBuffer(buffer, CHAR_ARRAY_FACTORY);
     }
 
     /**
@@ -280,8 +318,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteBuffer(ByteBuffer buffer) {
-        return releaseBuffer(buffer, new ByteBufferFactory());
+    public static boolean releaseByteBuffer(ByteBuffer buffer) {
+        return releaseBuffer(buffer, BYTE_BUFFER_FACTORY);
     }
 
     /**
@@ -296,8 +334,8 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharBuffer(CharBuffer buffer) {
-        return releaseBuffer(buffer, new CharBufferFactory());
+    public static boolean releaseCharBuffer(CharBuffer buffer) {
+        return releaseBuffer(buffer, CHAR_BUFFER_FACTORY);
     }
 
     /**
@@ -314,34 +352,71 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool or the pool size limit has been reached
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseBuffer(Object buffer, BufferFactory factory) {
+    public static boolean releaseBuffer(Object buffer, BufferFactory factory) {
         if(buffer==null)
             throw new IllegalArgumentException("specified buffer is null");
 
         BufferContainer bufferContainer = factory.newBufferContainer(buffer);
 
-        if(bufferContainers.contains(bufferContainer)) {
+        if(!pooledBuffers.add(bufferContainer)) {
             LOGGER.info("Warning: specified buffer is already in the pool: {}", buffer);
             return false;
         }
 
         long bufferSize = bufferContainer.getSize();        // size in bytes (!= length)
+        outstandingSize.add(-bufferSize);
 
-        if(maxPoolSize!=-1 && poolSize+bufferSize>maxPoolSize) {
+        if(!reservePoolSize(bufferSize)) {
+            pooledBuffers.remove(bufferContainer);
             LOGGER.info("Warning: maximum pool size reached, buffer not added to the pool: {}", buffer);
             return false;
         }
 
-        bufferContainers.add(bufferContainer);
-        poolSize += bufferSize;
+        stripes.computeIfAbsent(new SizeClass(factory.getBufferClass(), bufferContainer.getLength()), sizeClass -> newStripes())
+                [getHomeStripe()].push(bufferContainer);
 
         return true;
     }
 
+    /**
+     * Adds the given number of bytes to the pool size, unless that would exceed the maximum pool size.
+     *
+     * @param bufferSize size in bytes of the buffer to add to the pool
+     * @return <code>true</code> if the pool size was increased, <code>false</code> if the maximum pool size would have been exceeded
+     */
+    private static boolean reservePoolSize(long bufferSize) {
+        while(true) {
+            long currentPoolSize = poolSize.get();
+            long currentMaxPoolSize = maxPoolSize;
+            if(currentMaxPoolSize!=-1 && currentPoolSize+bufferSize>currentMaxPoolSize)
+                return false;
+
+            if(poolSize.compareAndSet(currentPoolSize, currentPoolSize+bufferSize))
+                return true;
+        }
+    }
+
+    /**
+     * Returns the index of the stripe the current thread releases buffers to.
+     *
+     * @return the index of the stripe the current thread releases buffers to
+     */
+    private static int getHomeStripe() {
+        return (int)Thread.currentThread().getId() & (NB_STRIPES-1);
+    }
+
+    private static Stripe[] newStripes() {
+        Stripe[] sizeClassStripes = new Stripe[NB_STRIPES];
+        for(int i=0; i<NB_STRIPES; i++)
+            sizeClassStripes[i] = new Stripe();
+
+        return sizeClassStripes;
+    }
+
     /**
      * Returns <code>true</code> if the specified buffer is currently in the pool.
      *
-     * <p>Note that it is not necessary (and thus not recommended for performance reasons) to call this method before
+     * <p>Note that it is not necessary (and thus not recommended for performance reasons) to call this method before
      * calling <code>release*Buffer</code> as it already performs this test before adding a buffer to the pool.</p>
      *
      * @param buffer the buffer to look for in the pool
@@ -349,7 +424,7 @@ public class BufferPool {
      * @return <code>true</code> if the specified buffer is already in the pool
      */
     public static boolean containsBuffer(Object buffer, BufferFactory factory) {
-        return bufferContainers.contains(factory.newBufferContainer(buffer));
+        return pooledBuffers.contains(factory.newBufferContainer(buffer));
     }
 
 
@@ -360,7 +435,7 @@ public class BufferPool {
      * @return the number of buffers currently in the pool
      */
     public static int getBufferCount() {
-        return bufferContainers.size();
+        return pooledBuffers.size();
     }
 
     /**
@@ -371,10 +446,9 @@ public class BufferPool {
      * @return the number of buffers currently in the pool
      */
     public static int getBufferCount(BufferFactory factory) {
-        int count = 0;        
-        int nbBuffers = bufferContainers.size();
-        for(int i=0; i<nbBuffers; i++) {
-            if(factory.matchesBufferClass(bufferContainers.elementAt(i).getBuffer().getClass())) {
+        int count = 0;
+        for(BufferContainer bufferContainer : pooledBuffers) {
+            if(factory.matchesBufferClass(bufferContainer.getBuffer().getClass())) {
                 count ++;
             }
         }
@@ -382,6 +456,36 @@ public class BufferPool {
         return count;
     }
 
+    /**
+     * Returns the number of buffers that were taken from the pool by <code>get*Buffer</code> methods since the
+     * application started.
+     *
+     * @return the number of buffers that were taken from the pool
+     */
+    public static long getHitCount() {
+        return nbHits.sum();
+    }
+
+    /**
+     * Returns the number of buffers that <code>get*Buffer</code> methods had to create because none of the requested
+     * class and size was in the pool, since the application started.
+     *
+     * @return the number of buffers that were created because the pool had none to offer
+     */
+    public static long getMissCount() {
+        return nbMisses.sum();
+    }
+
+    /**
+     * Returns the combined size in bytes of the buffers that were returned by <code>get*Buffer</code> methods and
+     * that have not been released yet. A steadily growing value hints at buffers that are never released.
+     *
+     * @return the combined size in bytes of the buffers that were handed out and not released yet
+     */
+    public static long getOutstandingSize() {
+        return outstandingSize.sum();
+    }
+
     /**
      * Returns the default size of buffers returned by <code>get*Buffer</code> methods without a <code>size</code>
      * argument.
@@ -399,7 +503,7 @@ public class BufferPool {
      *
      * @param bufferSize the new buffer size
      */
-    public static synchronized void setDefaultBufferSize(int bufferSize) {
+    public static void setDefaultBufferSize(int bufferSize) {
         BufferPool.defaultBufferSize = bufferSize;
     }
 
@@ -410,7 +514,7 @@ public class BufferPool {
      * @return the combined size in bytes of all buffers that are currenty in the pool
      */
     public static long getPoolSize() {
-        return poolSize;
+        return poolSize.get();
     }
 
     /**
@@ -433,7 +537,7 @@ public class BufferPool {
      *
      * @param maxPoolSize the maximum combined size in bytes for all buffers in the pool
      */
-    public static synchronized void setMaxPoolSize(long maxPoolSize) {
+    public static void setMaxPoolSize(long maxPoolSize) {
         BufferPool.maxPoolSize = maxPoolSize;
     }
 
@@ -442,6 +546,44 @@ public class BufferPool {
     // Inner classes //
     ///////////////////
 
+    /**
+     * Identifies a group of pooled buffers that share the same class and length.
+     */
+    private final static class SizeClass {
+
+        private final Class<?> bufferClass;
+        private final int length;
+
+        private SizeClass(Class<?> bufferClass, int length) {
+            this.bufferClass = bufferClass;
+            this.length = length;
+        }
+
+        public boolean equals(Object o) {
+            return (o instanceof SizeClass) && bufferClass == ((SizeClass)o).bufferClass && length == ((SizeClass)o).length;
+        }
+
+        public int hashCode() {
+            return 31*bufferClass.hashCode() + length;
+        }
+    }
+
+    /**
+     * A stack of pooled buffers of the same size class, locked independently of the other stripes.
+     */
+    private final static class Stripe {
+
+        private final ArrayDeque<BufferContainer> bufferContainers = new ArrayDeque<>();
+
+        private synchronized BufferContainer poll() {
+            return bufferContainers.pollLast();
+        }
+
+        private synchronized void push(BufferContainer bufferContainer) {
+            bufferContainers.addLast(bufferContainer);
+        }
+    }
+
     /**
      * Wraps a buffer instance and provides information about the wrapped buffer.
      */
@@ -472,10 +614,17 @@ public class BufferPool {
          * Implements a shallow equal comparison.
          */
         public boolean equals(Object o) {
-            // Note: this method is used by Vector.contains()
+            // Note: this method is used by the set of pooled buffers
             return (o instanceof BufferContainer) && buffer == ((BufferContainer)o).buffer;
         }
 
+        /**
+         * Returns the identity hash code of the wrapped buffer, consistent with {@link #equals(Object)}.
+         */
+        public int hashCode() {
+            return System.identityHashCode(buffer);
+        }
+
         /**
          * Returns the length of the wrapped buffer instance.
          *
@@ -518,6 +667,15 @@ public class BufferPool {
          */
         public abstract Object newBuffer(int size);
 
+        /**
+         * Resets the state of a pooled buffer before it is handed out again. This implementation does nothing, which
+         * suits arrays.
+         *
+         * @param buffer the buffer to reset
+         */
+        public void clearBuffer(Object buffer) {
+        }
+
         /**
          * Creates and returns a {@link BufferContainer} for the specified buffer instance.
          *
@@ -608,6 +766,11 @@ public class BufferPool {
             return ByteBuffer.allocateDirect(size);
         }
 
+        @Override
+        public void clearBuffer(Object buffer) {
+            ((ByteBuffer)buffer).clear();
+        }
+
         @Override
         public BufferContainer newBufferContainer(Object buffer) {
             return new BufferContainer(buffer) {
@@ -638,6 +801,11 @@ public class BufferPool {
             return CharBuffer.allocate(size);
         }
 
+        @Override
+        public void clearBuffer(Object buffer) {
+            ((CharBuffer)buffer).clear();
+        }
+
         @Override
         public BufferContainer newBufferContainer(Object buffer) {
             return new BufferContainer(buffer) {
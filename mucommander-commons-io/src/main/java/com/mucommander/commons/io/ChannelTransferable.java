@@ -0,0 +1,58 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * This interface is implemented by <code>InputStream</code> classes that are able to transfer their bytes directly to
+ * a {@link WritableByteChannel}, without the bytes being copied to a buffer in user space. Streams backed by a
+ * {@link java.nio.channels.FileChannel} typically implement it using
+ * {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)}, which lets the kernel carry out
+ * the copy.
+ *
+ * <p>Filter streams (e.g. {@link CounterInputStream}, {@link ThroughputLimitInputStream}) implement this interface by
+ * delegating to their underlying stream, accounting the transferred bytes the same way they account bytes that
+ * are read. They therefore support channel transfers only if their underlying stream does, which is what
+ * {@link #isChannelTransferSupported()} reports.</p>
+ *
+ * @see StreamUtils#transferStream(ChannelTransferable, WritableByteChannel)
+ */
+public interface ChannelTransferable {
+
+    /**
+     * Returns <code>true</code> if {@link #transferTo(WritableByteChannel, long)} can be called on this stream.
+     *
+     * @return true if bytes can be transferred directly to a channel
+     */
+    boolean isChannelTransferSupported();
+
+    /**
+     * Transfers up to <code>count</code> bytes from the current position of this stream to the given channel,
+     * and advances the position by the number of bytes that were transferred.
+     *
+     * @param out the channel to write to
+     * @param count maximum number of bytes to transfer
+     * @return the number of bytes that were transferred, <code>-1</code> if the end of the stream has been reached
+     * @throws FileTransferException with {@link FileTransferError#READING_SOURCE} as reason if reading from this stream
+     * failed
+     * @throws IOException if any other I/O error occurred, e.g. while writing to the channel
+     */
+    long transferTo(WritableByteChannel out, long count) throws IOException;
+}
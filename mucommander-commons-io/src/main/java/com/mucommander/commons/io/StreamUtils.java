@@ -18,6 +18,7 @@
 package com.mucommander.commons.io;
 
 import java.io.*;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * This class provides convenience static methods that operate on streams. All read/write buffers are allocated using
@@ -27,6 +28,10 @@ import java.io.*;
  */
 public class StreamUtils {
 
+    /** Maximum number of bytes transferred at once by {@link #transferStream(ChannelTransferable, WritableByteChannel)},
+     * so that progress is reported and throughput limits are enforced along the way */
+    private final static long CHANNEL_TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
     /**
      * This method is a shorthand for {@link #copyStream(java.io.InputStream, java.io.OutputStream, int)} called with a
      * {@link BufferPool#getDefaultBufferSize() default buffer size}.
@@ -128,6 +133,46 @@ public class StreamUtils {
         return totalRead;
     }
 
+    /**
+     * Copies the content of the given stream to the specified channel until the end of the stream is reached, without
+     * going through a buffer in user space. This method does *NOT* close the stream nor the channel.
+     *
+     * <p>The bytes are transferred in chunks of a few megabytes, each of them going through the stream's
+     * {@link ChannelTransferable#transferTo(WritableByteChannel, long)} method: filter streams such as
+     * {@link CounterInputStream} or {@link ThroughputLimitInputStream} can thus monitor or throttle the transfer.</p>
+     *
+     * <p>This method must only be called with a stream whose {@link ChannelTransferable#isChannelTransferSupported()}
+     * method returns <code>true</code>.</p>
+     *
+     * @param in the stream to read from
+     * @param out the channel to write to
+     * @return the number of bytes that were transferred
+     * @throws FileTransferException if something went wrong while transferring the bytes
+     */
+    public static long transferStream(ChannelTransferable in, WritableByteChannel out) throws FileTransferException {
+        long nbTransferred;
+        long totalTransferred = 0;
+
+        while(true) {
+            try {
+                nbTransferred = in.transferTo(out, CHANNEL_TRANSFER_CHUNK_SIZE);
+            }
+            catch(FileTransferException e) {
+                throw new FileTransferException(e.getReason(), totalTransferred);
+            }
+            catch(IOException e) {
+                throw new FileTransferException(FileTransferError.WRITING_DESTINATION, totalTransferred);
+            }
+
+            if(nbTransferred==-1)
+                break;
+
+            totalTransferred += nbTransferred;
+        }
+
+        return totalTransferred;
+    }
+
     /**
      * This method is a shorthand for {@link #transcode(java.io.InputStream, String, java.io.OutputStream, String, int)}
      * called with a {@link BufferPool#getDefaultBufferSize() default buffer size}.
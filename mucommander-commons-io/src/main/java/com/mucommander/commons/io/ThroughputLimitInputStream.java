@@ -19,6 +19,7 @@ package com.mucommander.commons.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * ThroughputLimitInputStream extends InputStream to provide control over the transfer speed and limit it to a specified
@@ -43,7 +44,7 @@ import java.io.InputStream;
  *
  * @author Maxence Bernard
  */
-public class ThroughputLimitInputStream extends InputStream {
+public class ThroughputLimitInputStream extends InputStream implements ChannelTransferable {
 
     /** Underlying InputStream */
     private InputStream in;
@@ -257,6 +258,24 @@ public class ThroughputLimitInputStream extends InputStream {
         return in.available();
     }
 
+    @Override
+    public boolean isChannelTransferSupported() {
+        return in instanceof ChannelTransferable && ((ChannelTransferable)in).isChannelTransferSupported();
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel out, long count) throws IOException {
+        // Wait until at least 1 byte is available if a limit is set and transfer as many bytes as available
+        // without exceeding the throughput limit or the number specified
+        long nbTransferred = ((ChannelTransferable)in).transferTo(out, bpsLimit>=0?Math.min(getNbAllowedBytes(),count):count);
+
+        // Increase read counter by the number of bytes that have actually been transferred
+        if(nbTransferred>0)
+            addToLimitCounter(nbTransferred);
+
+        return nbTransferred;
+    }
+
     @Override
     public void close() throws IOException {
         in.close();
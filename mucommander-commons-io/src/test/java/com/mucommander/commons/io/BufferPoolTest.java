@@ -19,6 +19,15 @@ package com.mucommander.commons.io;
 
 import org.testng.annotations.Test;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 /**
  * This class is a TestNG test case for {@link BufferPool}.
  *
@@ -187,6 +196,76 @@ public class BufferPoolTest {
         BufferPool.setMaxPoolSize(BufferPool.INITIAL_POOL_LIMIT);
     }
 
+    /**
+     * Tests the hit, miss and outstanding size counters, and asserts that pooled <code>ByteBuffer</code>s are direct
+     * and cleared when they are handed out again.
+     */
+    @Test
+    public void testCounters() {
+        long originalHitCount = BufferPool.getHitCount();
+        long originalMissCount = BufferPool.getMissCount();
+        long originalOutstandingSize = BufferPool.getOutstandingSize();
+
+        ByteBuffer buffer = BufferPool.getByteBuffer(TEST_BUFFER_SIZE_1);
+        assert buffer.isDirect();
+        assert BufferPool.getMissCount() == originalMissCount+1;
+        assert BufferPool.getOutstandingSize() == originalOutstandingSize+TEST_BUFFER_SIZE_1;
+
+        buffer.position(3).limit(5);
+        assert BufferPool.releaseByteBuffer(buffer);
+        assert BufferPool.getOutstandingSize() == originalOutstandingSize;
+
+        assert buffer == BufferPool.getByteBuffer(TEST_BUFFER_SIZE_1);
+        assert buffer.position() == 0 && buffer.limit() == TEST_BUFFER_SIZE_1;
+        assert BufferPool.getHitCount() == originalHitCount+1;
+        assert BufferPool.getMissCount() == originalMissCount+1;
+        assert BufferPool.getOutstandingSize() == originalOutstandingSize+TEST_BUFFER_SIZE_1;
+    }
+
+    /**
+     * Gets and releases buffers from concurrent threads, and asserts that a buffer is never handed out to two threads
+     * at the same time and that the pool is left in the state it was before the test.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testConcurrentUse() throws Exception {
+        int originalBufferCount = BufferPool.getBufferCount();
+        long originalPoolSize = BufferPool.getPoolSize();
+
+        int nbThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for(int t=0; t<nbThreads; t++) {
+            byte marker = (byte)t;
+            futures.add(executor.submit(() -> {
+                for(int i=0; i<10000; i++) {
+                    byte[] buffer = BufferPool.getByteArray(TEST_BUFFER_SIZE_1 + i%2);
+                    Arrays.fill(buffer, marker);
+                    Thread.yield();
+                    for(byte b : buffer)
+                        assert b == marker;
+                    assert BufferPool.releaseByteArray(buffer);
+                }
+            }));
+        }
+        for(Future<?> future : futures)
+            future.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // Retrieve all the buffers that were pooled by the test to leave BufferPool as it was before the test
+        for(int length=TEST_BUFFER_SIZE_1; length<=TEST_BUFFER_SIZE_1+1; length++) {
+            long hitCount;
+            do {
+                hitCount = BufferPool.getHitCount();
+                BufferPool.getByteArray(length);
+            } while(BufferPool.getHitCount()>hitCount);
+        }
+
+        assert originalBufferCount == BufferPool.getBufferCount();
+        assert originalPoolSize == BufferPool.getPoolSize();
+    }
+
     /**
      * Asserts that the given buffer's size matches the specified one.
      *
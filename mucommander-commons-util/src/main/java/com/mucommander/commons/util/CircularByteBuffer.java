@@ -19,6 +19,7 @@
 package com.mucommander.commons.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Implements the Circular Buffer producer/consumer model for bytes.
@@ -31,6 +32,11 @@ import java.io.*;
  * and have a more complicated API that requires instantiating two
  * classes and connecting them.
  * <p>
+ * Readers waiting for data and writers waiting for space are woken up as soon
+ * as the other side makes progress or closes its stream, so that a bounded
+ * buffer applies backpressure to a producer that is faster than its consumer
+ * without adding latency to the handoff.
+ * <p>
  * This class is thread safe.
  *
  * @see CircularCharBuffer
@@ -42,14 +48,26 @@ import java.io.*;
 public class CircularByteBuffer {
 
 	/**
-	 * The default size for a circular byte buffer.
+	 * The default size for a circular byte buffer, large enough for a
+	 * producer and a consumer on different threads not to wait for each
+	 * other on every write.
 	 *
 	 * @since ostermillerutils 1.00.00
 	 */
-	private final static int DEFAULT_SIZE = 1024;
+	public final static int DEFAULT_SIZE = 64 * 1024;
+
+	/**
+	 * Initial size of a buffer that grows as things are added.
+	 */
+	private final static int INFINITE_INITIAL_SIZE = 1024;
 
 	/**
 	 * A buffer that will grow as things are added.
+	 * <p>
+	 * Such a buffer never makes the producer wait for the consumer, so its
+	 * memory usage is only bounded by the amount of data the producer writes
+	 * ahead of the consumer. A buffer of bounded size should be preferred
+	 * when the producer and the consumer run on different threads.
 	 *
 	 * @since ostermillerutils 1.00.00
 	 */
@@ -155,6 +173,112 @@ public class CircularByteBuffer {
 			markPosition = 0;
 			outputStreamClosed = false;
 			inputStreamClosed = false;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until the other side of the buffer makes progress: the consumer
+	 * reads or closes its stream, or the producer writes or closes its
+	 * stream. Must be called while holding the lock on this buffer.
+	 *
+	 * @throws InterruptedIOException if the thread is interrupted while waiting.
+	 */
+	private void waitForProgress() throws InterruptedIOException {
+		try {
+			wait();
+		} catch (InterruptedException x){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Blocking operation on the buffer interrupted.");
+		}
+	}
+
+	/**
+	 * Read bytes into the given byte buffer, as much as are available and fit
+	 * in it. This method will block until some input is available, an I/O
+	 * error occurs, or the end of the stream is reached, like the read methods
+	 * of the InputStream of this buffer do.
+	 *
+	 * @param dst Destination buffer, whose position is advanced by the number of bytes read.
+	 * @return The number of bytes read, or -1 if the end of
+	 *   the stream has been reached
+	 * @throws IOException if the InputStream of this buffer is closed, or the read is interrupted.
+	 */
+	public int read(ByteBuffer dst) throws IOException {
+		int len = dst.remaining();
+		if (len == 0) return 0;
+		synchronized (this){
+			while (true){
+				if (inputStreamClosed) throw new IOException("InputStream has been closed; cannot read from a closed InputStream.");
+				int available = available();
+				if (available > 0){
+					int length = Math.min(len, available);
+					int firstLen = Math.min(length, buffer.length - readPosition);
+					int secondLen = length - firstLen;
+					dst.put(buffer, readPosition, firstLen);
+					if (secondLen > 0){
+						dst.put(buffer, 0, secondLen);
+						readPosition = secondLen;
+					} else {
+						readPosition += length;
+					}
+					if (readPosition == buffer.length) {
+						readPosition = 0;
+					}
+					ensureMark();
+					notifyAll();
+					return length;
+				} else if (outputStreamClosed){
+					return -1;
+				}
+				waitForProgress();
+			}
+		}
+	}
+
+	/**
+	 * Write the remaining bytes of the given byte buffer. This method blocks
+	 * until all of them have been written, or fails if the buffer is full and
+	 * does not allow blocking writes, like the write methods of the
+	 * OutputStream of this buffer do.
+	 *
+	 * @param src Source buffer, whose position is advanced by the number of bytes written.
+	 * @throws BufferOverflowException if buffer does not allow blocking writes
+	 *   and the buffer is full.  If the exception is thrown, no data
+	 *   will have been written since the buffer was set to be non-blocking.
+	 * @throws IOException if the OutputStream of this buffer is closed, or the write is interrupted.
+	 */
+	public void write(ByteBuffer src) throws IOException {
+		synchronized (this){
+			while (src.hasRemaining()){
+				if (outputStreamClosed) throw new IOException("OutputStream has been closed; cannot write to a closed OutputStream.");
+				if (inputStreamClosed) throw new IOException("Buffer closed by InputStream; cannot write to a closed buffer.");
+				int len = src.remaining();
+				int spaceLeft = spaceLeft();
+				while (infinite && spaceLeft < len){
+					resize();
+					spaceLeft = spaceLeft();
+				}
+				if (!blockingWrite && spaceLeft < len) throw new BufferOverflowException("CircularByteBuffer is full; cannot write " + len + " bytes");
+				int realLen = Math.min(len, spaceLeft);
+				if (realLen == 0){
+					waitForProgress();
+					continue;
+				}
+				int firstLen = Math.min(realLen, buffer.length - writePosition);
+				int secondLen = realLen - firstLen;
+				src.get(buffer, writePosition, firstLen);
+				if (secondLen > 0){
+					src.get(buffer, 0, secondLen);
+					writePosition = secondLen;
+				} else {
+					writePosition += firstLen;
+				}
+				if (writePosition == buffer.length) {
+					writePosition = 0;
+				}
+				notifyAll();
+			}
 		}
 	}
 
@@ -402,7 +526,7 @@ public class CircularByteBuffer {
 	 */
 	public CircularByteBuffer(int size, boolean blockingWrite){
 		if (size == INFINITE_SIZE){
-			buffer = new byte[DEFAULT_SIZE];
+			buffer = new byte[INFINITE_INITIAL_SIZE];
 			infinite = true;
 		} else {
 			buffer = new byte[size];
@@ -447,6 +571,7 @@ public class CircularByteBuffer {
 		@Override public void close() throws IOException {
 			synchronized (CircularByteBuffer.this){
 				inputStreamClosed = true;
+				CircularByteBuffer.this.notifyAll();
 			}
 		}
 
@@ -496,8 +621,8 @@ public class CircularByteBuffer {
 		 * @since ostermillerutils 1.00.00
 		 */
 		@Override public int read() throws IOException {
-			while (true){
-				synchronized (CircularByteBuffer.this){
+			synchronized (CircularByteBuffer.this){
+				while (true){
 					if (inputStreamClosed) throw new IOException("InputStream has been closed; cannot read from a closed InputStream.");
 					int available = CircularByteBuffer.this.available();
 					if (available > 0){
@@ -507,15 +632,12 @@ public class CircularByteBuffer {
 							readPosition = 0;
 						}
 						ensureMark();
+						CircularByteBuffer.this.notifyAll();
 						return result;
 					} else if (outputStreamClosed){
 						return -1;
 					}
-				}
-				try {
-					Thread.sleep(100);
-				} catch(Exception x){
-					throw new IOException("Blocking read operation interrupted.");
+					waitForProgress();
 				}
 			}
 		}
@@ -551,8 +673,9 @@ public class CircularByteBuffer {
 		 * @since ostermillerutils 1.00.00
 		 */
 		@Override public int read(byte[] cbuf, int off, int len) throws IOException {
-			while (true){
-				synchronized (CircularByteBuffer.this){
+			if (len == 0) return 0;
+			synchronized (CircularByteBuffer.this){
+				while (true){
 					if (inputStreamClosed) throw new IOException("InputStream has been closed; cannot read from a closed InputStream.");
 					int available = CircularByteBuffer.this.available();
 					if (available > 0){
@@ -570,15 +693,12 @@ public class CircularByteBuffer {
 							readPosition = 0;
 						}
 						ensureMark();
+						CircularByteBuffer.this.notifyAll();
 						return length;
 					} else if (outputStreamClosed){
 						return -1;
 					}
-				}
-				try {
-					Thread.sleep(100);
-				} catch(Exception x){
-					throw new IOException("Blocking read operation interrupted.");
+					waitForProgress();
 				}
 			}
 		}
@@ -613,12 +733,13 @@ public class CircularByteBuffer {
 		 * @since ostermillerutils 1.00.00
 		 */
 		@Override public long skip(long n) throws IOException, IllegalArgumentException {
-			while (true){
-				synchronized (CircularByteBuffer.this){
+			if (n <= 0) return 0;
+			synchronized (CircularByteBuffer.this){
+				while (true){
 					if (inputStreamClosed) throw new IOException("InputStream has been closed; cannot skip bytes on a closed InputStream.");
 					int available = CircularByteBuffer.this.available();
 					if (available > 0){
-						int length = Math.min((int)n, available);
+						int length = (int)Math.min(n, available);
 						int firstLen = Math.min(length, buffer.length - readPosition);
 						int secondLen = length - firstLen;
 						if (secondLen > 0){
@@ -630,15 +751,12 @@ public class CircularByteBuffer {
 							readPosition = 0;
 						}
 						ensureMark();
+						CircularByteBuffer.this.notifyAll();
 						return length;
 					} else if (outputStreamClosed){
 						return 0;
 					}
-				}
-				try {
-					Thread.sleep(100);
-				} catch(Exception x){
-					throw new IOException("Blocking read operation interrupted.");
+					waitForProgress();
 				}
 			}
 		}
@@ -672,6 +790,7 @@ public class CircularByteBuffer {
 					flush();
 				}
 				outputStreamClosed = true;
+				CircularByteBuffer.this.notifyAll();
 			}
 		}
 
@@ -723,8 +842,8 @@ public class CircularByteBuffer {
 		 * @since ostermillerutils 1.00.00
 		 */
 		@Override public void write(byte[] cbuf, int off, int len) throws IOException {
-			while (len > 0){
-				synchronized (CircularByteBuffer.this){
+			synchronized (CircularByteBuffer.this){
+				while (len > 0){
 					if (outputStreamClosed) throw new IOException("OutputStream has been closed; cannot write to a closed OutputStream.");
 					if (inputStreamClosed) throw new IOException("Buffer closed by InputStream; cannot write to a closed buffer.");
 					int spaceLeft = spaceLeft();
@@ -751,12 +870,11 @@ public class CircularByteBuffer {
 					}
 					off += written;
 					len -= written;
-				}
-				if (len > 0){
-					try {
-						Thread.sleep(100);
-					} catch(Exception x){
-						throw new IOException("Waiting for available space in buffer interrupted.");
+					if (written > 0){
+						CircularByteBuffer.this.notifyAll();
+					}
+					if (len > 0 && spaceLeft() == 0){
+						waitForProgress();
 					}
 				}
 			}
@@ -777,9 +895,8 @@ public class CircularByteBuffer {
 		 * @since ostermillerutils 1.00.00
 		 */
 		@Override public void write(int c) throws IOException {
-			boolean written = false;
-			while (!written){
-				synchronized (CircularByteBuffer.this){
+			synchronized (CircularByteBuffer.this){
+				while (true){
 					if (outputStreamClosed) throw new IOException("OutputStream has been closed; cannot write to a closed OutputStream.");
 					if (inputStreamClosed) throw new IOException("Buffer closed by InputStream; cannot write to a closed buffer.");
 					int spaceLeft = spaceLeft();
@@ -794,15 +911,10 @@ public class CircularByteBuffer {
 						if (writePosition == buffer.length) {
 							writePosition = 0;
 						}
-						written = true;
-					}
-				}
-				if (!written){
-					try {
-						Thread.sleep(100);
-					} catch(Exception x){
-						throw new IOException("Waiting for available space in buffer interrupted.");
+						CircularByteBuffer.this.notifyAll();
+						return;
 					}
+					waitForProgress();
 				}
 			}
 		}
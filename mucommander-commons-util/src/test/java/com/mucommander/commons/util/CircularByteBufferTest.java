@@ -0,0 +1,173 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * This class is a TestNG test case for {@link CircularByteBuffer}.
+ */
+public class CircularByteBufferTest {
+
+    private final static int SIZE = 1000;
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Writes more data than a bounded buffer holds from another thread, and asserts that the writer waits for the
+     * reader rather than growing the buffer, and that the data is read whole.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testBackpressure() throws Exception {
+        CircularByteBuffer cbb = new CircularByteBuffer(SIZE);
+        byte[] data = createData(100 * SIZE);
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try (OutputStream out = cbb.getOutputStream()) {
+                for (int off = 0; off < data.length; off += 333)
+                    out.write(data, off, Math.min(333, data.length - off));
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        InputStream in = cbb.getInputStream();
+        byte[] read = new byte[data.length];
+        int length = 0;
+        int n;
+        while ((n = in.read(read, length, Math.min(517, read.length - length))) > 0) {
+            length += n;
+            assert cbb.getAvailable() < SIZE;
+        }
+
+        assert length == data.length;
+        assert Arrays.equals(data, read);
+        assert cbb.getSize() == SIZE;
+        writer.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Hands bytes over back and forth between two threads, which would take seconds if waiting threads were not
+     * woken up as soon as the other side makes progress.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testHandoff() throws Exception {
+        CircularByteBuffer requests = new CircularByteBuffer();
+        CircularByteBuffer responses = new CircularByteBuffer();
+        CompletableFuture<Void> echo = CompletableFuture.runAsync(() -> {
+            try {
+                int b;
+                while ((b = requests.getInputStream().read()) != -1)
+                    responses.getOutputStream().write(b);
+                responses.getOutputStream().close();
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            requests.getOutputStream().write(i);
+            assert responses.getInputStream().read() == (i & 0xFF);
+        }
+        requests.getOutputStream().close();
+
+        assert responses.getInputStream().read() == -1;
+        echo.get(5, TimeUnit.SECONDS);
+        assert System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5);
+    }
+
+    /**
+     * Asserts that a writer waiting for space fails as soon as the reader closes its stream.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCloseWakesWriter() throws Exception {
+        CircularByteBuffer cbb = new CircularByteBuffer(SIZE);
+        CompletableFuture<Boolean> writer = CompletableFuture.supplyAsync(() -> {
+            try {
+                cbb.getOutputStream().write(createData(2 * SIZE));
+                return false;
+            }
+            catch (IOException e) {
+                return true;
+            }
+        });
+
+        while (cbb.getSpaceLeft() > 0)
+            Thread.sleep(10);
+        cbb.getInputStream().close();
+
+        assert writer.get(1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Transfers data through the buffer with <code>ByteBuffer</code>s, wrapping around the end of the buffer.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testByteBuffers() throws IOException {
+        CircularByteBuffer cbb = new CircularByteBuffer(SIZE);
+        byte[] data = createData(SIZE - 1);
+
+        for (int i = 0; i < 3; i++) {
+            ByteBuffer src = ByteBuffer.allocateDirect(data.length);
+            src.put(data).flip();
+            cbb.write(src);
+            assert !src.hasRemaining();
+            assert cbb.getAvailable() == data.length;
+
+            ByteBuffer dst = ByteBuffer.allocate(data.length + 10);
+            dst.put((byte) 0);
+            assert cbb.read(dst) == data.length;
+            assert dst.position() == data.length + 1;
+
+            byte[] read = new byte[data.length];
+            dst.position(1);
+            dst.get(read);
+            assert Arrays.equals(data, read);
+
+            // Shifts the positions so that the next transfer wraps around
+            cbb.getOutputStream().write(data, 0, 400);
+            assert cbb.getInputStream().skip(400) == 400;
+        }
+
+        cbb.getOutputStream().close();
+        assert cbb.read(ByteBuffer.allocate(10)) == -1;
+    }
+}
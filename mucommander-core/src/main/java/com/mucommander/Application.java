@@ -30,7 +30,9 @@ import com.mucommander.command.CommandException;
 import com.mucommander.command.CommandManager;
 import com.mucommander.command.CommandType;
 import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.connection.ConnectionPool;
 import com.mucommander.commons.file.icon.impl.SwingFileIconProvider;
+import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.util.ResourceLoader;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
@@ -476,6 +478,12 @@ public class Application {
         // the servers to decide whether to show them.
         //        FTPProtocolProvider.setForceHiddenFilesListing(MuConfigurations.getPreferences().getVariable(MuPreference.LIST_HIDDEN_FILES, MuPreferences.DEFAULT_LIST_HIDDEN_FILES));
 
+        // Limit the number of simultaneous connections to a same FTP server, which is also the number of files (or
+        // segments of a file) that can be transferred in parallel with it. This is what
+        // FTPProtocolProvider#setMaxConnectionsPerServer does, the FTP bundle not being visible from here.
+        int ftpMaxConnections = MuConfigurations.getPreferences().getVariable(MuPreference.FTP_MAX_CONNECTIONS_PER_SERVER, MuPreferences.DEFAULT_FTP_MAX_CONNECTIONS_PER_SERVER);
+        ConnectionPool.setMaxConnectionsPerRealm(FileProtocols.FTP, Math.max(1, ftpMaxConnections));
+
         // Use CredentialsManager for file URL authentication
         FileFactory.setDefaultAuthenticator(CredentialsManager.getAuthenticator());
     }
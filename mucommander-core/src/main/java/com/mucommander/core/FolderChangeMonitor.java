@@ -23,6 +23,7 @@ import java.awt.event.WindowListener;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +46,8 @@ import com.mucommander.ui.main.FolderPanel;
 /**
  * This file monitors changes in the current folder of a FolderPanel, checking periodically if the current folder's
  * date has changed. If a change has been detected, the FolderPanel will be asked to refresh its current folder.
+ * If the current folder tells which of its children have changed, only those are updated in the FolderPanel: the
+ * changes that occur between two checks are thus updated at once.
  * 
  * <p>If the MainFrame which contains the monitored FolderPanel becomes inactive (lies in the background), monitoring
  * on will be not happen until the MainFrame becomes active again.
@@ -98,6 +101,9 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** If folder change check took an average of N milliseconds, thread will wait at least N*WAIT_MULTIPLIER before next check */
     private final static int WAIT_MULTIPLIER = 50;
 
+    /** Maximum number of changed children that are updated one by one, rather than by refreshing the current folder */
+    private final static int MAX_UPDATED_CHILDREN = 1000;
+
     /** Granularity of the thread check (number of milliseconds to sleep before next loop) */
     private final static int TICK = 300;
 
@@ -234,12 +240,19 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
      * Note that folder change check took an average of N milliseconds, the returned value will be at least N*WAIT_MULTIPLIER
      */
     private synchronized long checkAndRefresh(boolean forceRefresh) {
-        if (!mayFolderChangeByFileJob() && isFolderChanged(forceRefresh)) {
-            // Try and refresh current folder in a separate thread as to not lock monitor thread
-            folderPanel.tryRefreshCurrentFolder();
-            return nbSamples==0 ?
-                    waitAfterRefresh
-                    : Math.max(waitAfterRefresh, (int)(WAIT_MULTIPLIER*(totalCheckTime/(float)nbSamples)));
+        // Changes are not checked until the current folder is listed entirely, as the children that are still being
+        // listed could otherwise be added twice
+        if (!folderPanel.getLocationManager().isListingChildren() && !mayFolderChangeByFileJob() && isFolderChanged(forceRefresh)) {
+            // Update the children that have changed if they are known and not too many
+            Set<String> changedChildren = folderPanel.getCurrentFolder().takeChangedChildren();
+            if (changedChildren == null || changedChildren.size() > MAX_UPDATED_CHILDREN
+                    || !folderPanel.getLocationManager().updateChildren(changedChildren)) {
+                // Try and refresh current folder in a separate thread as to not lock monitor thread
+                folderPanel.tryRefreshCurrentFolder();
+                return nbSamples==0 ?
+                        waitAfterRefresh
+                        : Math.max(waitAfterRefresh, (int)(WAIT_MULTIPLIER*(totalCheckTime/(float)nbSamples)));
+            }
         }
 
         return nbSamples==0 ?
@@ -17,7 +17,11 @@
 
 package com.mucommander.job.impl;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.archive.AbstractRWArchiveFile;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.job.FileCollisionChecker;
@@ -41,7 +45,8 @@ import java.io.IOException;
  * @see com.mucommander.job.impl.MoveJob
  */
 public abstract class AbstractCopyJob extends TransferFileJob {
-    
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractCopyJob.class);
+
     /** Base destination folder */
     protected AbstractFile baseDestFolder;
     
@@ -205,6 +210,37 @@ public abstract class AbstractCopyJob extends TransferFileJob {
         return destFile;
     }
     
+    /**
+     * Files can be transferred by several threads unless they are copied to an archive, as archives can only be
+     * written sequentially.
+     */
+    @Override
+    protected boolean isParallelTransferSupported() {
+        return baseDestFolder.getParentArchive()==null;
+    }
+
+    /**
+     * Sets the date of the given destination folder once the files it contains have been transferred, as transferring
+     * a file into the folder changes its date.
+     *
+     * @param destFolder the destination folder
+     * @param date the date to set
+     */
+    protected void changeFolderDateAfterTransfers(AbstractFile destFolder, long date) {
+        if (!destFolder.isFileOperationSupported(FileOperation.CHANGE_DATE))
+            return;
+
+        runAfterPendingTransfers(() -> {
+            try {
+                destFolder.changeDate(date);
+            }
+            catch (IOException e) {
+                LOGGER.debug("failed to change the date of "+destFolder, e);
+                // Fail silently
+            }
+        });
+    }
+
     /**
      * Optimizes the given writable archive file and notifies the user in case of an error.
      *
@@ -29,6 +29,9 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.archiver.Archiver;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.io.StreamUtils;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.job.FileCollisionChecker;
 import com.mucommander.job.FileJobAction;
 import com.mucommander.job.FileJobState;
@@ -187,6 +190,8 @@ public class ArchiveJob extends TransferFileJob {
                 // Tries to get an Archiver instance.
                 this.archiver = Archiver.getArchiver(destFile, archiveFormat);
                 this.archiver.setComment(archiveComment);
+                this.archiver.setThreads(MuConfigurations.getPreferences().getVariable(MuPreference.COMPRESSION_THREADS,
+                                                                                       MuPreferences.DEFAULT_COMPRESSION_THREADS));
 
                 break;
             }
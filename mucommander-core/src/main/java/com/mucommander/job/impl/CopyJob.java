@@ -20,12 +20,8 @@ package com.mucommander.job.impl;
 
 import java.io.IOException;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
-import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.archive.AbstractArchiveFile;
 import com.mucommander.commons.file.archive.AbstractRWArchiveFile;
 import com.mucommander.commons.file.protocol.local.LocalFile;
@@ -45,8 +41,6 @@ import com.mucommander.ui.main.MainFrame;
  * @author Maxence Bernard
  */
 public class CopyJob extends AbstractCopyJob {
-	private static final Logger LOGGER = LoggerFactory.getLogger(CopyJob.class);
-
     /** Destination file that is being copied, this value is updated every time #processFile() is called.
      * The value can be used by subclasses that override processFile should they need to work on the destination file. */
     protected AbstractFile currentDestFile;
@@ -171,15 +165,7 @@ public class CopyJob extends AbstractCopyJob {
                     currentDestFile = destFile;
 
                     // Only when finished with folder, set destination folder's date to match the original folder one
-                    if (destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
-                        try {
-                            destFile.changeDate(file.getDate());
-                        }
-                        catch (IOException e) {
-                            LOGGER.debug("failed to change the date of "+destFile, e);
-                            // Fail silently
-                        }
-                    }
+                    changeFolderDateAfterTransfers(destFile, file.getDate());
 
                     return true;
                 }
@@ -196,8 +182,8 @@ public class CopyJob extends AbstractCopyJob {
         }
         // File is a regular file, copy it
         else  {
-            // Copy the file
-            return tryCopyFile(file, destFile, append, errorDialogTitle);
+            // Copy the file, or queue it if files are copied by several threads
+            return submitCopyFile(file, destFile, append, errorDialogTitle, null);
         }
     }
 
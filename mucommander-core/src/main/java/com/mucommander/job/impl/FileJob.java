@@ -76,6 +76,9 @@ public abstract class FileJob implements com.mucommander.job.FileJob {
     /** Lock used when job is being paused */
     private final Object pauseLock = new Object();
 
+    /** Lock used to ask the user one question at a time when files are processed by several threads */
+    private final Object userInputLock = new Object();
+
     /** Timestamp in milliseconds when job started */
     private long startDate;
 
@@ -412,7 +415,16 @@ public abstract class FileJob implements com.mucommander.job.FileJob {
 //        // Notify ProgressDialog (if any) that a new file is being processed
 //        if(progressDialog!=null)
 //            progressDialog.notifyCurrentFileChanged();
-        
+
+        waitWhilePaused();
+    }
+
+
+    /**
+     * Blocks the calling thread for as long as this job is paused. This method is called by {@link #nextFile(AbstractFile)}
+     * and can be used by subclasses that process files in other threads than the job's one.
+     */
+    protected void waitWhilePaused() {
         // Lock the pause lock
         synchronized(pauseLock) {
             // Loop while job is paused, there shouldn't normally be more than one loop
@@ -503,6 +515,18 @@ public abstract class FileJob implements com.mucommander.job.FileJob {
     protected void jobStopped() {
         LOGGER.debug("called");
     }
+
+
+    /**
+     * This method is called by {@link #run()} after the last call to {@link #processFile(AbstractFile,Object)} has
+     * returned, whether the job has been interrupted or not, and before {@link #jobCompleted()} is called.
+     *
+     * <p>This method implementation does nothing but it can be overridden by subclasses that process files
+     * asynchronously, to wait for all files to be processed.</p>
+     */
+    protected void jobFilesProcessed() {
+        LOGGER.debug("called");
+    }
     
     
     /**
@@ -523,6 +547,13 @@ public abstract class FileJob implements com.mucommander.job.FileJob {
      * Displays an error dialog with the specified title and message and returns the selection action's value.
      */
     protected DialogAction showErrorDialog(String title, String message, List<DialogAction> actionChoices) {
+        // Errors may be reported by several threads at once, show their dialogs one after the other
+        synchronized(userInputLock) {
+            return showErrorDialogImpl(title, message, actionChoices);
+        }
+    }
+
+    private DialogAction showErrorDialogImpl(String title, String message, List<DialogAction> actionChoices) {
         // Return SKIP_ACTION if 'skip all' has previously been selected and 'skip' is in the list of actions.
         if(autoSkipErrors) {
             for (DialogAction action : actionChoices)
@@ -574,15 +605,17 @@ public abstract class FileJob implements com.mucommander.job.FileJob {
     }
     
     protected Object waitForUserResponseObject(DialogResult dialog) {
-        // Put this job in pause mode while waiting for user response
-        setPaused(true);
-        
-        UserInputHelper jobUserInput = new UserInputHelper(this, dialog);
-        Object userInput = jobUserInput.getUserInput();
-        
-        // Back to work
-        setPaused(false);
-        return userInput;
+        synchronized(userInputLock) {
+            // Put this job in pause mode while waiting for user response
+            setPaused(true);
+
+            UserInputHelper jobUserInput = new UserInputHelper(this, dialog);
+            Object userInput = jobUserInput.getUserInput();
+
+            // Back to work
+            setPaused(false);
+            return userInput;
+        }
     }
     
     
@@ -729,6 +762,9 @@ public abstract class FileJob implements com.mucommander.job.FileJob {
             }
         }
 
+        // Notify that all files have been handed to processFile
+        jobFilesProcessed();
+
         // If last file was reached without any user interruption, all files have been processed with or
         // without errors, switch to FINISHED state and notify listeners
         if (currentFileIndex == nbFiles && getState() != FileJobState.INTERRUPTED) {
@@ -192,14 +192,7 @@ public class MoveJob extends AbstractCopyJob {
                     }
 
                     // Only when finished with folder, set destination folder's date to match the original folder one
-                    if (destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
-                        try {
-                            destFile.changeDate(originalDate);
-                        } catch (IOException e) {
-                            LOGGER.debug("failed to change the date of "+destFile, e);
-                            // Fail silently
-                        }
-                    }
+                    changeFolderDateAfterTransfers(destFile, originalDate);
 
                     // If one file failed to be moved, return false (failure) since this folder could not be moved totally
                     if (!isFolderEmpty)
@@ -220,48 +213,76 @@ public class MoveJob extends AbstractCopyJob {
             if (getState() == FileJobState.INTERRUPTED)
                 return false;
 
+            // Files of this folder may still be in the process of being moved by the transfer threads:
+            // delete the folder once they are done, if all of them could be moved
+            if (isTransferringInParallel()) {
+                runAfterPendingTransfers(() -> {
+                    try {
+                        if (file.ls().length==0)
+                            tryDeleteSourceFolder(file);
+                    } catch(IOException e) {
+                        LOGGER.debug("failed to list "+file, e);
+                    }
+                });
+                return true;
+            }
+
             // finally, delete the empty folder
-            do {		// Loop for retry
-                try  {
-                    file.delete();
-                    return true;
-                } catch(IOException e) {
-                    DialogAction ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_folder", file.getAbsolutePath()));
-                    // Retry loops
-                    if(ret==FileJobAction.RETRY)
-                        continue;
-                    // Cancel, skip or close dialog returns false
-                    return false;
-                }
-            } while(true);
+            return tryDeleteSourceFolder(file);
         }
         // File is a regular file, move it by copying it to the destination and then deleting it
         else  {
 
             // if renameTo() was not supported or failed, or if it wasn't possible because of 'append',
             // try the hard way by copying the file first, and then deleting the source file.
-            if (tryCopyFile(file, destFile, append, errorDialogTitle) && getState() != FileJobState.INTERRUPTED) {
-                // Delete the source file
-                do {		// Loop for retry
-                    try  {
-                        file.delete();
-                        // All OK
-                        return true;
-                    } catch(IOException e) {
-                        LOGGER.debug("IOException caught", e);
+            return submitCopyFile(file, destFile, append, errorDialogTitle, () -> tryDeleteSourceFile(file));
+        }
+    }
 
-                        DialogAction ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
-                        // Retry loops
-                        if(ret==FileJobAction.RETRY)
-                            continue;
-                        // Cancel, skip or close dialog returns false
-                        return false;
-                    }
-                } while(true);
+    /**
+     * Deletes the given source folder once its content has been moved, giving the user the choice to retry if it fails.
+     *
+     * @return true if the folder was deleted
+     */
+    private boolean tryDeleteSourceFolder(AbstractFile file) {
+        do {		// Loop for retry
+            try  {
+                file.delete();
+                return true;
+            } catch(IOException e) {
+                DialogAction ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_folder", file.getAbsolutePath()));
+                // Retry loops
+                if(ret==FileJobAction.RETRY)
+                    continue;
+                // Cancel, skip or close dialog returns false
+                return false;
             }
+        } while(true);
+    }
 
-            return false;
-        }
+    /**
+     * Deletes the given source file once it has been copied to the destination, giving the user the choice to retry
+     * if it fails.
+     *
+     * @return true if the file was deleted
+     */
+    private boolean tryDeleteSourceFile(AbstractFile file) {
+        do {		// Loop for retry
+            try  {
+                file.delete();
+                // All OK
+                return true;
+            } catch(IOException e) {
+                LOGGER.debug("IOException caught", e);
+
+                DialogAction ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
+                // Retry loops
+                if(ret==FileJobAction.RETRY)
+                    continue;
+                // Cancel, skip or close dialog returns false
+                return false;
+            }
+        } while(true);
     }
 
     // This job modifies baseDestFolder and its subfolders
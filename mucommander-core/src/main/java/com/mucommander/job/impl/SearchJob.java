@@ -17,9 +17,13 @@
 package com.mucommander.job.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
@@ -85,9 +89,9 @@ public class SearchJob extends FileJob implements com.mucommander.commons.file.p
 
     private Pair<List<AbstractFile>, Boolean> search(List<AbstractFile> files, boolean lsFilter) {
         try {
+            int nbFindings = findings.size();
             List<AbstractFile> children = customThreadPool.submit(() -> ls(files, lsFilter)).get();
-            List<AbstractFile> matches = customThreadPool.submit(() -> match(children)).get();
-            boolean searchChanged = findings.addAll(matches);
+            boolean searchChanged = findings.size() != nbFindings;
             return new Pair<>(children, searchChanged);
         } catch (Exception e) {
             return new Pair<>(Collections.emptyList(), false);
@@ -101,16 +105,37 @@ public class SearchJob extends FileJob implements com.mucommander.commons.file.p
         return stream.map(this::ls).flatMap(s -> s).collect(Collectors.toList());
     }
 
-    private List<AbstractFile> match(List<AbstractFile> files) {
-        return files.parallelStream().filter(this::match).collect(Collectors.toList());
-    }
-
+    /**
+     * Lists the children of the given file and adds those that match to the findings. Each chunk of children is
+     * matched in parallel on the search's thread pool as soon as it is listed, so that the findings of large folders
+     * of remote filesystems are collected while the rest of the folder is being listed. The matches of each chunk are
+     * added at once, after those of the previous chunks, so that findings keep the listing order.
+     */
     private Stream<AbstractFile> ls(AbstractFile file) {
         if (getState() != FileJobState.INTERRUPTED) {
             try {
-                return Stream.of(file.ls());
+                List<AbstractFile> children = new ArrayList<>();
+                // Completes once the matches of the chunks listed so far have been added
+                CompletableFuture<?>[] added = {CompletableFuture.completedFuture(true)};
+                file.ls(null, chunk -> {
+                    List<AbstractFile> chunkList = Arrays.asList(chunk);
+                    children.addAll(chunkList);
+                    CompletableFuture<List<AbstractFile>> matching = CompletableFuture
+                            .supplyAsync(() -> chunkList.parallelStream().filter(this::match).collect(Collectors.toList()), customThreadPool)
+                            .exceptionally(e -> {
+                                LOGGER.debug("failed to match children of: " + file, e);
+                                return Collections.emptyList();
+                            });
+                    added[0] = added[0].thenCombine(matching, (previous, matches) -> findings.addAll(matches));
+                });
+                added[0].get();
+                return children.stream();
             } catch (IOException e) {
                 LOGGER.debug("failed to list: " + file, e);
+            } catch (ExecutionException e) {
+                LOGGER.debug("failed to match children of: " + file, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
         return Stream.empty();
@@ -25,7 +25,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +37,7 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.FilePermissions;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.file.util.SegmentedCopier;
 import com.mucommander.commons.io.ByteCounter;
 import com.mucommander.commons.io.ChecksumInputStream;
 import com.mucommander.commons.io.CounterInputStream;
@@ -73,8 +77,8 @@ public abstract class TransferFileJob extends FileJob {
     /** Contains the number of bytes skipped so far (resumed files), see {@link #getTotalSkippedByteCounter()} */
     private ByteCounter totalSkippedByteCounter;
 
-    /** InputStream currently being processed, may be null */
-    private ThroughputLimitInputStream tlin;
+    /** Transfer context of the job's thread, holds the InputStream currently being processed */
+    private final TransferContext jobThreadContext;
 
     /** ThroughputLimit in bytes per second, -1 initially (no limit) */
     private long throughputLimit = -1;
@@ -86,8 +90,12 @@ public abstract class TransferFileJob extends FileJob {
      *  be calculated and compared to verify they match. */
     private boolean integrityCheckEnabled;
 
-    /** True when the checksum of the source or destination file is being calculated. */
-    private boolean isCheckingIntegrity;
+    /** Number of threads that transfer files concurrently, see {@link #setTransferThreads(int)} */
+    private int nbTransferThreads = 1;
+
+    /** Threads that transfer the files handed to {@link #submitCopyFile(AbstractFile, AbstractFile, boolean, String, BooleanSupplier)},
+     * null if files are transferred by the job's thread */
+    private TransferWorkerPool workerPool;
 
     /** The checksum algorithm used for checking the integrity of transferred files. The algorithm has to be the fastest
      * possible (to have the minimum impact on transfer speed) and does not need to have a good resitance to collision. */
@@ -111,6 +119,8 @@ public abstract class TransferFileJob extends FileJob {
         // Account the current file's byte counter in the total byte counter
         this.totalByteCounter = new ByteCounter(currentFileByteCounter);
         this.totalSkippedByteCounter = new ByteCounter(currentFileSkippedByteCounter);
+
+        this.jobThreadContext = new TransferContext(currentFileByteCounter, currentFileSkippedByteCounter);
     }
 
 	
@@ -119,8 +129,16 @@ public abstract class TransferFileJob extends FileJob {
      * As much as the source and destination protocols allow, the source file's date and permissions will be preserved.
      */
     protected void copyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
+        copyFile(sourceFile, destFile, append, jobThreadContext);
+    }
+
+    /**
+     * Copies the given source file to the specified destination file, accounting the transferred bytes
+     * in the given transfer context.
+     */
+    private void copyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, TransferContext context) throws FileTransferException {
         // Reset this field in case it was set to true for the previous file
-        isCheckingIntegrity = false;
+        context.checkingIntegrity = false;
 
         // Throw a specific FileTransferException if source and destination files are identical
         if(sourceFile.equalsCanonical(destFile))
@@ -147,42 +165,55 @@ public abstract class TransferFileJob extends FileJob {
             // Copy source file stream to destination file
             try {
                 long inLength = sourceFile.getSize();
-
-                // Try to open InputStream
-                try  {
-                    long destFileSize = destFile.getSize();
-                    if(append && destFileSize!=-1) {
-                        in = sourceFile.getInputStream(destFileSize);
-                        // Do not calculate checksum, as it needs to be calculated on the whole file
-
-                        inLength -= destFileSize;
-                        // Increase current file ByteCounter by the number of bytes skipped
-                        currentFileByteCounter.add(destFileSize);
-                        // Increase skipped ByteCounter by the number of bytes skipped
-                        currentFileSkippedByteCounter.add(destFileSize);
+                long destFileSize = append ? destFile.getSize() : -1;
+                long offset = Math.max(0, destFileSize);
+
+                // Download large remote files over several connections, unless the checksum would then have to be
+                // calculated from scratch while it can be calculated on the fly
+                if((!integrityCheckEnabled || offset>0) && SegmentedCopier.isSupported(sourceFile, destFile, inLength-offset)) {
+                    // Increase current file and skipped ByteCounters by the number of bytes skipped
+                    context.byteCounter.add(offset);
+                    context.skippedByteCounter.add(offset);
+
+                    context.startSegmentedTransfer();
+                    new SegmentedCopier(sourceFile, destFile, context::addSegmentInputStream).copy(offset);
+                }
+                else {
+                    // Try to open InputStream
+                    try  {
+                        if(append && destFileSize!=-1) {
+                            in = sourceFile.getInputStream(destFileSize);
+                            // Do not calculate checksum, as it needs to be calculated on the whole file
+
+                            inLength -= destFileSize;
+                            // Increase current file ByteCounter by the number of bytes skipped
+                            context.byteCounter.add(destFileSize);
+                            // Increase skipped ByteCounter by the number of bytes skipped
+                            context.skippedByteCounter.add(destFileSize);
+                        }
+                        else {
+                            in = sourceFile.getInputStream();
+                            if(integrityCheckEnabled)
+                                in = new ChecksumInputStream(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
+                        }
+
+                        context.setInputStream(in);
                     }
-                    else {
-                        in = sourceFile.getInputStream();
-                        if(integrityCheckEnabled)
-                            in = new ChecksumInputStream(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
+                    catch(Exception e) {
+                        LOGGER.debug("IOException caught, throwing FileTransferException", e);
+                        throw new FileTransferException(FileTransferError.OPENING_SOURCE);
                     }
 
-                    setCurrentInputStream(in);
-                }
-                catch(Exception e) {
-                    LOGGER.debug("IOException caught, throwing FileTransferException", e);
-                    throw new FileTransferException(FileTransferError.OPENING_SOURCE);
+                    // Copy source stream to destination file
+                    destFile.copyStream(context.getInputStream(), append, inLength);
                 }
-
-                // Copy source stream to destination file
-                destFile.copyStream(tlin, append, inLength);
             }
             finally {
                 // This block will always be executed, even if an exception
                 // was thrown in the catch block
 
                 // Tries to close the streams no matter what happened before
-                closeCurrentInputStream();
+                context.closeInputStream();
             }
         }
 
@@ -202,7 +233,7 @@ public abstract class TransferFileJob extends FileJob {
             String destinationChecksum;
 
             // Indicate that integrity is being checked, the value is reset when the next file starts
-            isCheckingIntegrity = true;
+            context.checkingIntegrity = true;
 
             if(in!=null && (in instanceof ChecksumInputStream)) {
                 // The file was copied with a ChecksumInputStream, the checksum is already calculated, simply
@@ -213,7 +244,7 @@ public abstract class TransferFileJob extends FileJob {
                 // The file was copied using AbstractFile#copyRemotelyTo(), or the transfer was resumed:
                 // we have to calculate the source file's checksum from scratch.
                 try {
-                    sourceChecksum = calculateChecksum(sourceFile);
+                    sourceChecksum = calculateChecksum(sourceFile, context);
                 }
                 catch(Exception e) {
                     throw new FileTransferException(FileTransferError.READING_SOURCE);
@@ -224,7 +255,7 @@ public abstract class TransferFileJob extends FileJob {
 
             // Calculate the destination file's checksum
             try {
-                destinationChecksum = calculateChecksum(destFile);
+                destinationChecksum = calculateChecksum(destFile, context);
             }
             catch(Exception e) {
                 throw new FileTransferException(FileTransferError.READING_DESTINATION);
@@ -265,14 +296,14 @@ public abstract class TransferFileJob extends FileJob {
         }
     }
 
-    private String calculateChecksum(AbstractFile file) throws IOException, NoSuchAlgorithmException {
-        currentFileByteCounter.reset();
-        InputStream in = setCurrentInputStream(file.getInputStream());
+    private String calculateChecksum(AbstractFile file, TransferContext context) throws IOException, NoSuchAlgorithmException {
+        context.byteCounter.reset();
+        InputStream in = context.setInputStream(file.getInputStream());
         try {
             return AbstractFile.calculateChecksum(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
         }
         finally {
-            closeCurrentInputStream();
+            context.closeInputStream();
         }
     }
 
@@ -309,10 +340,18 @@ public abstract class TransferFileJob extends FileJob {
      *
      */
     protected boolean tryCopyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle) {
+        return tryCopyFile(sourceFile, destFile, append, errorDialogTitle, jobThreadContext);
+    }
+
+    /**
+     * Tries to copy the given source file to the specified destination file, accounting the transferred bytes
+     * in the given transfer context.
+     */
+    boolean tryCopyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle, TransferContext context) {
         // Copy file to destination
         do {  // Loop for retry
             try {
-                copyFile(sourceFile, destFile, append);
+                copyFile(sourceFile, destFile, append, context);
                 return true;
             }
             catch(FileTransferException e) {
@@ -320,7 +359,7 @@ public abstract class TransferFileJob extends FileJob {
                 // the IOException was caused by the stream being closed as a result of the user interruption.
                 // If that is the case, the exception should not be interpreted as an error.
                 // Same goes if the current file was skipped.
-                if (getState() == FileJobState.INTERRUPTED || wasCurrentFileSkipped())
+                if (getState() == FileJobState.INTERRUPTED || (context==jobThreadContext ? wasCurrentFileSkipped() : context.isSkipped()))
                     return false;
 
                 // Print the exception's stack trace
@@ -356,8 +395,8 @@ public abstract class TransferFileJob extends FileJob {
                 // Retry action (append or retry)
                 if(choice==FileJobAction.RETRY || choice==FileJobAction.APPEND) {
                     // Reset current file byte counters
-                    currentFileByteCounter.reset();
-                    currentFileSkippedByteCounter.reset();
+                    context.byteCounter.reset();
+                    context.skippedByteCounter.reset();
                     // Append resumes transfer
                     append = choice==FileJobAction.APPEND;
                     continue;
@@ -369,6 +408,120 @@ public abstract class TransferFileJob extends FileJob {
         } while(true);
     }
 
+    /**
+     * Copies the given source file to the specified destination file like {@link #tryCopyFile(AbstractFile, AbstractFile, boolean, String)},
+     * and calls the given action (if any) after the file has been successfully copied.
+     *
+     * <p>If this job uses several transfer threads (see {@link #setTransferThreads(int)}), the copy is queued and
+     * carried out by one of them: this method returns as soon as the file has been queued, blocking only while the
+     * queue is full. Collisions must therefore be resolved by the caller beforehand. If not, the file is copied by the
+     * calling thread.</p>
+     *
+     * @param sourceFile the file to copy
+     * @param destFile the destination file, collisions resolved
+     * @param append true to resume the transfer
+     * @param errorDialogTitle title of the error dialog shown if the copy fails
+     * @param postCopyAction action called after the file has been copied, may be <code>null</code>
+     * @return true if the file was copied (or queued) and the post-copy action succeeded
+     */
+    protected boolean submitCopyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle, BooleanSupplier postCopyAction) {
+        if(workerPool==null) {
+            if (!tryCopyFile(sourceFile, destFile, append, errorDialogTitle))
+                return false;
+
+            return postCopyAction==null || (getState() != FileJobState.INTERRUPTED && postCopyAction.getAsBoolean());
+        }
+
+        return workerPool.submit(sourceFile, destFile, append, errorDialogTitle, postCopyAction);
+    }
+
+    /**
+     * Calls the given action once all the files submitted so far to
+     * {@link #submitCopyFile(AbstractFile, AbstractFile, boolean, String, BooleanSupplier)} have been transferred,
+     * or immediately if files are transferred by the job's thread. Actions are called in the order they were
+     * registered and are not called if the job is interrupted.
+     *
+     * <p>This is meant for operations that need to be carried out after the content of a folder has been transferred,
+     * like preserving its date.</p>
+     *
+     * @param action the action to call
+     */
+    protected void runAfterPendingTransfers(Runnable action) {
+        if(workerPool==null)
+            action.run();
+        else
+            workerPool.runWhenDone(action);
+    }
+
+    /**
+     * Returns <code>true</code> if files handed to {@link #submitCopyFile(AbstractFile, AbstractFile, boolean, String, BooleanSupplier)}
+     * are transferred by several threads, i.e. if they may not have been transferred yet when the method returns.
+     *
+     * @return true if files are transferred by several threads
+     */
+    protected boolean isTransferringInParallel() {
+        return workerPool!=null;
+    }
+
+    /**
+     * Returns <code>true</code> if this job is able to transfer files using several threads. Parallel transfers are
+     * disabled by default, subclasses that submit their files using
+     * {@link #submitCopyFile(AbstractFile, AbstractFile, boolean, String, BooleanSupplier)} can override this method.
+     *
+     * @return true if this job is able to transfer files using several threads
+     */
+    protected boolean isParallelTransferSupported() {
+        return false;
+    }
+
+    /**
+     * Sets the number of threads that will transfer files concurrently. With the default value of <code>1</code>,
+     * files are transferred one after the other by the job's thread. This method has no effect once the job
+     * has been started or if the job does not support parallel transfers (see {@link #isParallelTransferSupported()}).
+     *
+     * @param nbTransferThreads number of threads that transfer files concurrently
+     */
+    public void setTransferThreads(int nbTransferThreads) {
+        this.nbTransferThreads = Math.max(1, nbTransferThreads);
+    }
+
+    /**
+     * Returns the number of threads that transfer files concurrently, see {@link #setTransferThreads(int)}.
+     *
+     * @return the number of threads that transfer files concurrently
+     */
+    public int getTransferThreads() {
+        return nbTransferThreads;
+    }
+
+    /**
+     * Returns the throughput limit of each of the InputStream that are read concurrently, so that the throughput
+     * limit set with {@link #setThroughputLimit(long)} applies to the job as a whole.
+     */
+    private long getStreamThroughputLimit() {
+        if(throughputLimit<=0 || workerPool==null)
+            return throughputLimit;
+
+        return Math.max(1, throughputLimit / nbTransferThreads);
+    }
+
+    /**
+     * Creates a transfer context for a thread other than the job's one. Bytes are accounted in the given counters
+     * which are expected to be added to this job's total once the file has been transferred,
+     * see {@link #fileTransferred(TransferContext)}.
+     */
+    TransferContext createTransferContext() {
+        return new TransferContext(new ByteCounter(), new ByteCounter());
+    }
+
+    /**
+     * Adds the bytes that have been transferred in the given context to this job's total.
+     */
+    void fileTransferred(TransferContext context) {
+        totalByteCounter.add(context.byteCounter, true);
+        totalSkippedByteCounter.add(context.skippedByteCounter, true);
+    }
+
 
     /**
      * Registers the given InputStream as currently in use, in order to:
@@ -384,25 +537,15 @@ public abstract class TransferFileJob extends FileJob {
      * @param in the InputStream to be used
      * @return the 'augmented' InputStream using the given stream as the underlying InputStream
      */
-    protected synchronized InputStream setCurrentInputStream(InputStream in) {
-        if(tlin==null) {
-            tlin = new ThroughputLimitInputStream(new CounterInputStream(in, currentFileByteCounter), throughputLimit);
-        }
-        else {
-            tlin.setUnderlyingInputStream(new CounterInputStream(in, currentFileByteCounter));
-        }
-
-        return tlin;
+    protected InputStream setCurrentInputStream(InputStream in) {
+        return jobThreadContext.setInputStream(in);
     }
 
     /**
      * Closes the currently registered source InputStream.
      */
-    protected synchronized void closeCurrentInputStream() {
-        if(tlin !=null) {
-            try { tlin.close(); }
-            catch(IOException e) {}
-        }
+    protected void closeCurrentInputStream() {
+        jobThreadContext.closeInputStream();
     }
 
 
@@ -432,16 +575,17 @@ public abstract class TransferFileJob extends FileJob {
      * @return true if the integrity of the current file is being verified
      */
     protected boolean isCheckingIntegrity() {
-        return isCheckingIntegrity;
+        return jobThreadContext.checkingIntegrity;
     }
 
 
     /**
-     * Interrupts the current file transfer and advance to the next one.
+     * Interrupts the current file transfer and advance to the next one. If the current file has been handed to the
+     * transfer threads, its transfer is interrupted if it has started, and is not started otherwise.
      */
     public synchronized void skipCurrentFile() {
-        if(tlin !=null) {
-            LOGGER.debug("skipping current file, closing "+ tlin);
+        if(jobThreadContext.hasInputStream()) {
+            LOGGER.debug("skipping current file, closing current InputStream");
 
             // Prevents an error from being reported when the current InputStream is closed
             currentFileSkipped = true;
@@ -449,6 +593,14 @@ public abstract class TransferFileJob extends FileJob {
             // Close the current input stream to interrupt the transfer
             closeCurrentInputStream();
         }
+        else {
+            TransferWorkerPool workerPool = this.workerPool;
+            AbstractFile currentFile = getCurrentFile();
+            if(workerPool!=null && currentFile!=null) {
+                LOGGER.debug("skipping current file, handed to the transfer threads");
+                workerPool.skipFile(currentFile);
+            }
+        }
 
         // Resume job if currently paused 
         if (getState() == FileJobState.PAUSED)
@@ -520,7 +672,13 @@ public abstract class TransferFileJob extends FileJob {
      * @return the total number of bytes that have been processed by this job so far
      */
     public long getTotalByteCount() {
-        return totalByteCounter.getByteCount();
+        long totalByteCount = totalByteCounter.getByteCount();
+        // Account the bytes of the files that are being transferred by the transfer threads
+        TransferWorkerPool workerPool = this.workerPool;
+        if(workerPool!=null)
+            totalByteCount += workerPool.getByteCount();
+
+        return totalByteCount;
     }
 
     /**
@@ -530,7 +688,12 @@ public abstract class TransferFileJob extends FileJob {
      * @return the total number of bytes that have been skipped by this job so far
      */
     public long getTotalSkippedByteCount() {
-        return totalSkippedByteCounter.getByteCount();
+        long totalSkippedByteCount = totalSkippedByteCounter.getByteCount();
+        TransferWorkerPool workerPool = this.workerPool;
+        if(workerPool!=null)
+            totalSkippedByteCount += workerPool.getSkippedByteCount();
+
+        return totalSkippedByteCount;
     }
 
 
@@ -551,11 +714,22 @@ public abstract class TransferFileJob extends FileJob {
         this.throughputLimit = bytesPerSecond<=0?-1:bytesPerSecond;
 
         synchronized(this) {
-            if(getState() != FileJobState.PAUSED && tlin !=null)
-                tlin.setThroughputLimit(throughputLimit);
+            if(getState() != FileJobState.PAUSED)
+                setStreamsThroughputLimit(getStreamThroughputLimit());
         }
     }
 
+    /**
+     * Sets the throughput limit of the InputStream that are currently being read, by the job's thread and
+     * the transfer threads.
+     */
+    private void setStreamsThroughputLimit(long bytesPerSecond) {
+        jobThreadContext.setThroughputLimit(bytesPerSecond);
+        TransferWorkerPool workerPool = this.workerPool;
+        if(workerPool!=null)
+            workerPool.setThroughputLimit(bytesPerSecond);
+    }
+
     /**
      * Returns the current transfer throughput limit, in bytes per second. <code>0</code> or <code>-1</code> means that
      * there currently is no limit to the attainable transfer speed (full speed).
@@ -571,6 +745,33 @@ public abstract class TransferFileJob extends FileJob {
     // Overridden methods //
     ////////////////////////
 
+    /**
+     * Overrides {@link FileJob#jobStarted()} to start the transfer threads if this job transfers files concurrently.
+     */
+    @Override
+    protected void jobStarted() {
+        super.jobStarted();
+
+        if(nbTransferThreads>1 && isParallelTransferSupported()) {
+            LOGGER.debug("transferring files using "+nbTransferThreads+" threads");
+            workerPool = new TransferWorkerPool(this, nbTransferThreads);
+        }
+    }
+
+    /**
+     * Overrides {@link FileJob#jobFilesProcessed()} to wait for the transfer threads (if any) to finish transferring
+     * the files that have been queued.
+     */
+    @Override
+    protected void jobFilesProcessed() {
+        super.jobFilesProcessed();
+
+        if(workerPool!=null) {
+            workerPool.shutdown();
+            workerPool = null;
+        }
+    }
+
     /**
      * Overrides {@link FileJob#jobStopped()} to stop any file processing by closing the source InputStream.
      */
@@ -579,11 +780,15 @@ public abstract class TransferFileJob extends FileJob {
         super.jobStopped();
 
         synchronized(this) {
-            if(tlin !=null) {
-                LOGGER.debug("closing current InputStream "+ tlin);
+            if(jobThreadContext.hasInputStream()) {
+                LOGGER.debug("closing current InputStream");
 
                 closeCurrentInputStream();
             }
+
+            TransferWorkerPool workerPool = this.workerPool;
+            if(workerPool!=null)
+                workerPool.closeInputStreams();
         }
     }
 
@@ -597,8 +802,7 @@ public abstract class TransferFileJob extends FileJob {
         super.jobPaused();
 
         synchronized(this) {
-            if(tlin !=null)
-                tlin.setThroughputLimit(0);
+            setStreamsThroughputLimit(0);
         }
     }
 
@@ -613,8 +817,7 @@ public abstract class TransferFileJob extends FileJob {
 
         synchronized(this) {
             // Restore previous throughput limit (if any, -1 by default)
-            if(tlin !=null)
-                tlin.setThroughputLimit(throughputLimit);
+            setStreamsThroughputLimit(getStreamThroughputLimit());
         }
     }
 
@@ -666,6 +869,191 @@ public abstract class TransferFileJob extends FileJob {
         return super.getStatusString();
     }
 
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Holds the state of the file transfers carried out by a thread: the counters in which the bytes of the file
+     * being transferred are accounted, and the InputStream currently being read.
+     */
+    class TransferContext {
+
+        /** Number of bytes processed in the file being transferred */
+        private final ByteCounter byteCounter;
+
+        /** Number of bytes skipped in the file being transferred (resumed transfer) */
+        private final ByteCounter skippedByteCounter;
+
+        /** InputStream currently being processed, may be null */
+        private ThroughputLimitInputStream tlin;
+
+        /** InputStreams the segments of the file being transferred are read from, see {@link SegmentedCopier} */
+        private final List<ThroughputLimitInputStream> segmentStreams = new ArrayList<>();
+
+        /** True once the InputStreams have been closed, until the next segmented transfer starts */
+        private boolean segmentsClosed;
+
+        /** Throughput limit of the InputStreams, in bytes per second */
+        private long throughputLimit;
+
+        /** True when the checksum of the source or destination file is being calculated */
+        private volatile boolean checkingIntegrity;
+
+        /** The file being transferred by the transfer thread this context belongs to, null if none */
+        private AbstractFile sourceFile;
+
+        /** True if the transfer of {@link #sourceFile} has been skipped */
+        private boolean skipped;
+
+        private TransferContext(ByteCounter byteCounter, ByteCounter skippedByteCounter) {
+            this.byteCounter = byteCounter;
+            this.skippedByteCounter = skippedByteCounter;
+            this.throughputLimit = getStreamThroughputLimit();
+        }
+
+        /**
+         * Returns the number of bytes processed in the file being transferred.
+         */
+        long getByteCount() {
+            return byteCounter.getByteCount();
+        }
+
+        /**
+         * Returns the number of bytes skipped in the file being transferred.
+         */
+        long getSkippedByteCount() {
+            return skippedByteCounter.getByteCount();
+        }
+
+        /**
+         * Registers the given InputStream as currently in use, see {@link TransferFileJob#setCurrentInputStream(InputStream)}.
+         */
+        synchronized InputStream setInputStream(InputStream in) {
+            if(tlin==null) {
+                tlin = new ThroughputLimitInputStream(new CounterInputStream(in, byteCounter), getStreamThroughputLimit());
+            }
+            else {
+                tlin.setUnderlyingInputStream(new CounterInputStream(in, byteCounter));
+            }
+
+            return tlin;
+        }
+
+        /**
+         * Returns the InputStream currently in use, <code>null</code> if none has been registered yet.
+         */
+        synchronized InputStream getInputStream() {
+            return tlin;
+        }
+
+        synchronized boolean hasInputStream() {
+            return tlin!=null || !segmentStreams.isEmpty();
+        }
+
+        /**
+         * Prepares for a file to be transferred in segments, see {@link #addSegmentInputStream(InputStream)}.
+         */
+        synchronized void startSegmentedTransfer() {
+            segmentsClosed = false;
+        }
+
+        /**
+         * Registers the given InputStream that a segment of the file is read from. The bytes read from it are accounted
+         * and it is closed along with the other InputStreams, like the one registered with {@link #setInputStream(InputStream)}.
+         * The returned stream is unregistered once closed, when the attempt to copy the segment ends.
+         *
+         * @throws IOException if the InputStreams have been closed since the segmented transfer started
+         */
+        synchronized InputStream addSegmentInputStream(InputStream in) throws IOException {
+            if(segmentsClosed)
+                throw new IOException("Transfer interrupted");
+
+            ThroughputLimitInputStream segmentIn = new ThroughputLimitInputStream(new CounterInputStream(in, byteCounter), getSegmentThroughputLimit()) {
+                @Override
+                public void close() throws IOException {
+                    removeSegmentInputStream(this);
+                    super.close();
+                }
+            };
+            segmentStreams.add(segmentIn);
+
+            return segmentIn;
+        }
+
+        private synchronized void removeSegmentInputStream(ThroughputLimitInputStream segmentIn) {
+            segmentStreams.remove(segmentIn);
+        }
+
+        /**
+         * Closes the currently registered InputStreams.
+         */
+        synchronized void closeInputStream() {
+            if(tlin!=null) {
+                try { tlin.close(); }
+                catch(IOException e) {}
+            }
+
+            // The streams unregister themselves when closed
+            for(ThroughputLimitInputStream segmentIn : new ArrayList<>(segmentStreams)) {
+                try { segmentIn.close(); }
+                catch(IOException e) {}
+            }
+            segmentStreams.clear();
+            segmentsClosed = true;
+        }
+
+        /**
+         * Sets the file being transferred by the transfer thread this context belongs to, <code>null</code> once the
+         * transfer is over.
+         */
+        synchronized void setSourceFile(AbstractFile sourceFile) {
+            this.sourceFile = sourceFile;
+            this.skipped = false;
+        }
+
+        /**
+         * Interrupts the transfer of the given file, if it is the one being transferred in this context.
+         *
+         * @return true if the file is being transferred in this context
+         */
+        synchronized boolean skipFile(AbstractFile file) {
+            if(sourceFile==null || !sourceFile.equals(file))
+                return false;
+
+            // Prevents an error from being reported when the InputStreams are closed
+            skipped = true;
+            closeInputStream();
+            return true;
+        }
+
+        /**
+         * Returns <code>true</code> if the transfer of the current file has been skipped, see {@link #skipFile(AbstractFile)}.
+         */
+        synchronized boolean isSkipped() {
+            return skipped;
+        }
+
+        synchronized void setThroughputLimit(long bytesPerSecond) {
+            throughputLimit = bytesPerSecond;
+
+            if(tlin!=null)
+                tlin.setThroughputLimit(bytesPerSecond);
+
+            for(ThroughputLimitInputStream segmentIn : segmentStreams)
+                segmentIn.setThroughputLimit(getSegmentThroughputLimit());
+        }
+
+        /**
+         * Returns the throughput limit of each of the InputStreams the segments of a file are read from, so that the
+         * segments share the throughput limit of this context.
+         */
+        private long getSegmentThroughputLimit() {
+            return throughputLimit<=0 ? throughputLimit : Math.max(1, throughputLimit / SegmentedCopier.MAX_SEGMENTS);
+        }
+    }
+
 //    /**
 //     * Method overridden to return a more accurate percentage of job processed so far by taking
 //     * into account the current file's processed percentage.
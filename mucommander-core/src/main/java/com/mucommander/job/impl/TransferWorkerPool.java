@@ -0,0 +1,263 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.job.FileJobState;
+
+/**
+ * Set of threads that copy the files queued by a {@link TransferFileJob}. The queue is bounded so that the job's
+ * thread, which walks the source files and resolves collisions, does not get too far ahead of the transfers.
+ *
+ * <p>Each thread has its own {@link TransferFileJob.TransferContext} so that its bytes are accounted in the job's
+ * progress, and its InputStream is throttled when the job is paused and closed when the job is interrupted.</p>
+ */
+class TransferWorkerPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransferWorkerPool.class);
+
+    /** Number of queued files per transfer thread */
+    private final static int QUEUED_FILES_PER_THREAD = 16;
+
+    /** Task that tells a transfer thread to terminate */
+    private final static Task END_OF_QUEUE = new Task(null, null, false, null, null);
+
+    /** The job whose files are transferred */
+    private final TransferFileJob job;
+
+    /** Files waiting to be transferred */
+    private final BlockingQueue<Task> queue;
+
+    /** The transfer threads */
+    private final Thread[] workers;
+
+    /** Transfer context of each of the transfer threads */
+    private final TransferFileJob.TransferContext[] contexts;
+
+    /** Actions to perform once all files have been transferred */
+    private final List<Runnable> deferredActions = new ArrayList<>();
+
+    /** Files that have been skipped before their transfer started */
+    private final Set<AbstractFile> skippedFiles = new HashSet<>();
+
+    /**
+     * Creates and starts the given number of threads transferring files on behalf of the specified job.
+     *
+     * @param job the job whose files are transferred
+     * @param nbThreads number of transfer threads
+     */
+    TransferWorkerPool(TransferFileJob job, int nbThreads) {
+        this.job = job;
+        this.queue = new ArrayBlockingQueue<>(nbThreads * QUEUED_FILES_PER_THREAD);
+        this.workers = new Thread[nbThreads];
+        this.contexts = new TransferFileJob.TransferContext[nbThreads];
+
+        for (int i=0; i<nbThreads; i++) {
+            TransferFileJob.TransferContext context = job.createTransferContext();
+            contexts[i] = context;
+            workers[i] = new Thread(() -> processQueue(context), job.getClass().getName()+" transfer #"+(i+1));
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues the given file, blocking while the queue is full.
+     *
+     * @return false if the calling thread was interrupted while waiting for the file to be queued
+     */
+    boolean submit(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle, BooleanSupplier postCopyAction) {
+        try {
+            queue.put(new Task(sourceFile, destFile, append, errorDialogTitle, postCopyAction));
+            return true;
+        }
+        catch(InterruptedException e) {
+            LOGGER.debug("interrupted while queuing "+sourceFile, e);
+            return false;
+        }
+    }
+
+    /**
+     * Registers an action to be performed once all the files queued so far have been transferred.
+     */
+    synchronized void runWhenDone(Runnable action) {
+        deferredActions.add(action);
+    }
+
+    /**
+     * Waits for all queued files to be transferred, terminates the transfer threads and then performs the deferred
+     * actions, unless the job has been interrupted.
+     */
+    void shutdown() {
+        for (int i=0; i<workers.length; i++) {
+            try {
+                queue.put(END_OF_QUEUE);
+            }
+            catch(InterruptedException e) {
+                LOGGER.debug("interrupted while terminating transfer threads", e);
+            }
+        }
+
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            }
+            catch(InterruptedException e) {
+                LOGGER.debug("interrupted while waiting for "+worker.getName(), e);
+            }
+        }
+
+        List<Runnable> actions;
+        synchronized(this) {
+            actions = new ArrayList<>(deferredActions);
+            deferredActions.clear();
+        }
+
+        for (Runnable action : actions) {
+            if (job.getState() == FileJobState.INTERRUPTED)
+                break;
+            action.run();
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the files currently being transferred.
+     */
+    long getByteCount() {
+        long byteCount = 0;
+        for (TransferFileJob.TransferContext context : contexts)
+            byteCount += context.getByteCount();
+
+        return byteCount;
+    }
+
+    /**
+     * Returns the number of bytes skipped in the files currently being transferred.
+     */
+    long getSkippedByteCount() {
+        long byteCount = 0;
+        for (TransferFileJob.TransferContext context : contexts)
+            byteCount += context.getSkippedByteCount();
+
+        return byteCount;
+    }
+
+    /**
+     * Sets the throughput limit of the InputStream currently being read by the transfer threads.
+     */
+    void setThroughputLimit(long bytesPerSecond) {
+        for (TransferFileJob.TransferContext context : contexts)
+            context.setThroughputLimit(bytesPerSecond);
+    }
+
+    /**
+     * Closes the InputStream currently being read by the transfer threads, to interrupt the transfers.
+     */
+    void closeInputStreams() {
+        for (TransferFileJob.TransferContext context : contexts)
+            context.closeInputStream();
+    }
+
+    /**
+     * Skips the given file: its transfer is interrupted if one of the transfer threads is carrying it out, and is not
+     * started otherwise.
+     */
+    synchronized void skipFile(AbstractFile file) {
+        for (TransferFileJob.TransferContext context : contexts) {
+            if (context.skipFile(file))
+                return;
+        }
+
+        skippedFiles.add(file);
+    }
+
+    /**
+     * Transfers the queued files until the end of the queue is reached. Files that are dequeued after the job has
+     * been interrupted are discarded, so that the job's thread never stays blocked on a full queue.
+     */
+    private void processQueue(TransferFileJob.TransferContext context) {
+        while (true) {
+            Task task;
+            try {
+                task = queue.take();
+            }
+            catch(InterruptedException e) {
+                LOGGER.debug("interrupted while waiting for a file to transfer", e);
+                continue;
+            }
+
+            if (task == END_OF_QUEUE)
+                return;
+
+            if (job.getState() == FileJobState.INTERRUPTED)
+                continue;
+
+            // Do not start transferring a new file while the job is paused
+            job.waitWhilePaused();
+
+            synchronized(this) {
+                if (skippedFiles.remove(task.sourceFile))
+                    continue;
+                context.setSourceFile(task.sourceFile);
+            }
+
+            try {
+                boolean success = job.tryCopyFile(task.sourceFile, task.destFile, task.append, task.errorDialogTitle, context);
+                job.fileTransferred(context);
+
+                if (success && task.postCopyAction!=null && job.getState() != FileJobState.INTERRUPTED)
+                    task.postCopyAction.getAsBoolean();
+            }
+            catch(RuntimeException e) {
+                LOGGER.warn("failed to transfer "+task.sourceFile, e);
+                job.fileTransferred(context);
+            }
+            finally {
+                context.setSourceFile(null);
+            }
+        }
+    }
+
+    /**
+     * A file that is queued for transfer.
+     */
+    private static class Task {
+        private final AbstractFile sourceFile;
+        private final AbstractFile destFile;
+        private final boolean append;
+        private final String errorDialogTitle;
+        private final BooleanSupplier postCopyAction;
+
+        private Task(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle, BooleanSupplier postCopyAction) {
+            this.sourceFile = sourceFile;
+            this.destFile = destFile;
+            this.append = append;
+            this.errorDialogTitle = errorDialogTitle;
+            this.postCopyAction = postCopyAction;
+        }
+    }
+}
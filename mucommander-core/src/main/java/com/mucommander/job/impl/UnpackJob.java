@@ -20,11 +20,13 @@ package com.mucommander.job.impl;
 
 import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.archive.AbstractArchiveFile;
+import com.mucommander.commons.file.archive.AbstractROArchiveFile;
 import com.mucommander.commons.file.archive.AbstractRWArchiveFile;
 import com.mucommander.commons.file.archive.ArchiveEntry;
 import com.mucommander.commons.file.archive.ArchiveEntryIterator;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.file.util.PathUtils;
+import com.mucommander.commons.io.FileTransferException;
 import com.mucommander.desktop.ActionType;
 import com.mucommander.job.FileJobAction;
 import com.mucommander.job.FileJobState;
@@ -40,19 +42,27 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.tree.DefaultMutableTreeNode;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 
 /**
  * This job unpacks a set of archive files to a base destination folder. Archive entries are extracted in their natural
  * order using {@link com.mucommander.commons.file.archive.AbstractArchiveFile#getEntryIterator()}, to traverse the archive only once
- * and achieve optimal performance.
+ * and achieve optimal performance. The regular files of archives that support bulk extraction (see
+ * {@link AbstractROArchiveFile#isBulkExtractionSupported()}) are extracted at once, after the archive has been traversed.
  *
  * @author Maxence Bernard
  */
 public class UnpackJob extends AbstractCopyJob {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UnpackJob.class);
 
     /**
      * Archive entries to be unpacked
@@ -188,7 +198,16 @@ public class UnpackJob extends AbstractCopyJob {
 
         String destSeparator = destFolder.getSeparator();
 
+        // Archives that extract several entries faster at once (e.g. solid archives) are extracted once the
+        // entries to unpack are known
+        AbstractROArchiveFile bulkArchiveFile = archiveFile instanceof AbstractROArchiveFile && ((AbstractROArchiveFile) archiveFile).isBulkExtractionSupported()
+                ? (AbstractROArchiveFile) archiveFile
+                : null;
+
         do {
+            // Entries to extract at once, mapped onto their entry file and destination file
+            Map<ArchiveEntry, AbstractFile[]> bulkEntries = new IdentityHashMap<>();
+
             // Unpack the archive, copying entries one by one, in the iterator's order
             try (ArchiveEntryIterator iterator = archiveFile.getEntryIterator()) {
                 ArchiveEntry entry;
@@ -307,6 +326,18 @@ public class UnpackJob extends AbstractCopyJob {
                             continue;
                         }
 
+                        if (bulkArchiveFile != null) {
+                            bulkEntries.put(entry, new AbstractFile[] {entryFile, destFile});
+                            continue;
+                        }
+
+                        // Entries of archives that can be read concurrently are handed to the transfer threads, if any
+                        if (isTransferringInParallel() && archiveFile.isConcurrentEntryReadSupported()) {
+                            if (!submitCopyFile(entryFile, destFile, append, errorDialogTitle, null))
+                                return false;
+                            continue;
+                        }
+
                         // The entry is wrapped in a ProxyFile to override #getInputStream() and delegate it to
                         // ArchiveFile#getEntryInputStream in order to take advantage of the ArchiveEntryIterator, which for
                         // some archive file implementations (such as TAR) can speed things by an order of magnitude.
@@ -315,6 +346,9 @@ public class UnpackJob extends AbstractCopyJob {
                     }
                 }
 
+                if (!bulkEntries.isEmpty() && getState() != FileJobState.INTERRUPTED)
+                    return extractEntries(bulkArchiveFile, bulkEntries);
+
                 return true;
             } catch (IOException e) {
                 DialogAction action = null;
@@ -341,6 +375,64 @@ public class UnpackJob extends AbstractCopyJob {
         return false;
     }
 
+    /**
+     * Extracts the given entries of an archive that supports bulk extraction, copying them to their destination
+     * as they are extracted.
+     *
+     * <p>The extracted content of an entry can only be read once: if its copy fails, the bulk extraction is stopped
+     * and the entry is copied on its own with {@link AbstractArchiveFile#getEntryInputStream}, which lets the user
+     * retry it. The extraction of the remaining entries then resumes.</p>
+     *
+     * @param archiveFile the archive to extract the entries from
+     * @param entries the entries to extract, mapped onto their entry file and destination file
+     * @return <code>true</code> if all the entries have been processed, <code>false</code> if the job was interrupted
+     * or an entry could not be copied
+     * @throws IOException if an error occurred while reading the archive
+     */
+    private boolean extractEntries(AbstractROArchiveFile archiveFile, Map<ArchiveEntry, AbstractFile[]> entries) throws IOException {
+        Map<ArchiveEntry, AbstractFile[]> remainingEntries = new IdentityHashMap<>(entries);
+        while (!remainingEntries.isEmpty()) {
+            boolean[] completed = {true};
+            ArchiveEntry[] failedEntry = {null};
+            archiveFile.extractEntries(new ArrayList<>(remainingEntries.keySet()), (entry, in) -> {
+                AbstractFile[] files = remainingEntries.remove(entry);
+                if (getState() == FileJobState.INTERRUPTED)
+                    return completed[0] = false;
+
+                // Notify the job that we're starting to process this file
+                nextFile(files[0]);
+
+                try {
+                    copyFile(new ExtractedEntryFile(files[0], in), files[1], append);
+                    return true;
+                } catch (FileTransferException e) {
+                    // The exception is most likely caused by the stream being closed as a result of the user
+                    // interruption or of the file being skipped
+                    if (getState() == FileJobState.INTERRUPTED || wasCurrentFileSkipped())
+                        return completed[0] = false;
+
+                    // Stop the extraction so that the entry can be read on its own
+                    LOGGER.debug("Copy of extracted entry failed", e);
+                    failedEntry[0] = entry;
+                    return false;
+                }
+            });
+
+            if (!completed[0])
+                return false;
+
+            if (failedEntry[0] == null)
+                return true;
+
+            // The bulk extraction is over, the entry can now be read with ArchiveFile#getEntryInputStream
+            AbstractFile[] files = entries.get(failedEntry[0]);
+            if (!tryCopyFile(new ProxiedEntryFile(files[0], failedEntry[0], archiveFile, null), files[1], append, errorDialogTitle))
+                return false;
+        }
+
+        return true;
+    }
+
     // This job modifies the base destination folder and its subfolders
     @Override
     protected boolean hasFolderChangedImpl(AbstractFile folder) {
@@ -402,4 +494,29 @@ public class UnpackJob extends AbstractCopyJob {
             return archiveFile.getEntryInputStream(entry, iterator);
         }
     }
+
+    /**
+     * An entry whose content is being extracted by {@link AbstractROArchiveFile#extractEntries(List, AbstractROArchiveFile.EntryConsumer)}.
+     * The extracted content can only be read once.
+     */
+    private static class ExtractedEntryFile extends ProxyFile {
+
+        private InputStream in;
+
+        public ExtractedEntryFile(AbstractFile entryFile, InputStream in) {
+            super(entryFile);
+
+            this.in = in;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (in == null)
+                throw new IOException("Extracted content already read");
+
+            InputStream extractedIn = in;
+            in = null;
+            return extractedIn;
+        }
+    }
 }
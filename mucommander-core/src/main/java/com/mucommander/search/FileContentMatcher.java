@@ -0,0 +1,250 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.BinaryDetector;
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.StreamUtils;
+
+/**
+ * Predicate that matches the files whose content contains a given text. Files are read until the first match is
+ * found, and files that {@link BinaryDetector} considers binary are skipped.
+ *
+ * <p>Literal searches are performed on the encoded bytes of the text using the Boyer-Moore-Horspool algorithm,
+ * large local files being read from their channel into a direct buffer rather than through a stream. Regular expressions, and literal searches that this cannot
+ * apply to, are matched against each line of the file like <code>grep</code> does.</p>
+ */
+class FileContentMatcher implements Predicate<AbstractFile> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileContentMatcher.class);
+
+    /** Size of the buffer used to read files through a stream */
+    private final static int BUFFER_SIZE = 65536;
+
+    /** Local files smaller than this are read through a stream rather than from their channel */
+    private final static long MIN_CHANNEL_FILE_SIZE = 262144;
+
+    /** Size of the direct buffer that local files are read into from their channel. Files are not memory-mapped, as a
+     * mapped file remains mapped until the buffer is garbage collected, which prevents it from being deleted or moved
+     * on Windows */
+    private final static int CHANNEL_BUFFER_SIZE = 1024 * 1024;
+
+    /** Charset used to decode the content of the files */
+    private final Charset charset = Charset.defaultCharset();
+
+    /** Encoded bytes of the text, lower-cased if the search is not case sensitive, null if the regex is used */
+    private final byte[] needle;
+
+    /** Boyer-Moore-Horspool shift of each byte value */
+    private final int[] shifts;
+
+    /** Whether the case of ASCII letters is ignored when comparing bytes */
+    private final boolean foldCase;
+
+    /** Pattern matched against each line, null if the text is searched as bytes */
+    private final Pattern pattern;
+
+    FileContentMatcher(String text, boolean caseSensitive, boolean regex) {
+        if (!regex && canSearchBytes(text, caseSensitive)) {
+            this.foldCase = !caseSensitive;
+            this.needle = (foldCase ? text.toLowerCase(Locale.ROOT) : text).getBytes(charset);
+            this.shifts = createShiftTable(needle);
+            this.pattern = null;
+        }
+        else {
+            int flags = caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+            this.pattern = Pattern.compile(regex ? text : Pattern.quote(text), flags);
+            this.needle = null;
+            this.shifts = null;
+            this.foldCase = false;
+        }
+    }
+
+    @Override
+    public boolean test(AbstractFile file) {
+        if (file.isDirectory())
+            return false;
+
+        try {
+            if (pattern != null)
+                return matchLines(file);
+
+            Object underlyingFile = file.getUnderlyingFileObject();
+            if (underlyingFile instanceof File && file.getSize() >= MIN_CHANNEL_FILE_SIZE)
+                return searchChannel((File) underlyingFile);
+
+            return searchStream(file);
+        } catch (IOException e) {
+            LOGGER.debug("failed to search content of " + file.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if the text can be searched as bytes: it must not span several lines, and ignoring its case must
+     * only involve ASCII letters, in a charset that encodes them as single bytes.
+     */
+    private boolean canSearchBytes(String text, boolean caseSensitive) {
+        if (text.isEmpty() || text.indexOf('\n') != -1 || text.indexOf('\r') != -1)
+            return false;
+
+        if (caseSensitive)
+            return true;
+
+        String ascii = "AZaz";
+        if (!Arrays.equals(ascii.getBytes(charset), ascii.getBytes(StandardCharsets.US_ASCII)))
+            return false;
+
+        return text.chars().allMatch(c -> c < 0x80);
+    }
+
+    private static int[] createShiftTable(byte[] needle) {
+        int[] shifts = new int[256];
+        Arrays.fill(shifts, needle.length);
+        for (int i = 0; i < needle.length - 1; i++)
+            shifts[needle[i] & 0xFF] = needle.length - 1 - i;
+        return shifts;
+    }
+
+    private byte fold(byte b) {
+        return foldCase && b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Returns true if the needle occurs between the given absolute positions of the buffer.
+     */
+    private boolean contains(ByteBuffer buffer, int from, int to) {
+        int last = needle.length - 1;
+        int i = from;
+        while (i + last < to) {
+            byte b = fold(buffer.get(i + last));
+            if (b == needle[last]) {
+                int j = last - 1;
+                while (j >= 0 && fold(buffer.get(i + j)) == needle[j])
+                    j--;
+                if (j < 0)
+                    return true;
+            }
+            i += shifts[b & 0xFF];
+        }
+        return false;
+    }
+
+    /**
+     * Searches the needle in a local file, reading it region by region from its channel into a pooled direct buffer.
+     * Consecutive regions overlap so that occurrences that cross a region boundary are found.
+     */
+    private boolean searchChannel(File file) throws IOException {
+        ByteBuffer buffer = BufferPool.getByteBuffer(Math.max(CHANNEL_BUFFER_SIZE, 2 * needle.length));
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = 0;
+            while (true) {
+                buffer.clear();
+                while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) != -1);
+                int regionSize = buffer.position();
+
+                if (position == 0) {
+                    byte[] head = new byte[Math.min(regionSize, BinaryDetector.RECOMMENDED_BYTE_SIZE)];
+                    buffer.flip();
+                    buffer.get(head);
+                    if (BinaryDetector.guessBinary(head))
+                        return false;
+                }
+
+                if (contains(buffer, 0, regionSize))
+                    return true;
+
+                // The end of the file has been reached
+                if (regionSize < buffer.capacity())
+                    return false;
+                position += regionSize - (needle.length - 1);
+            }
+        }
+        finally {
+            BufferPool.releaseByteBuffer(buffer);
+        }
+    }
+
+    /**
+     * Searches the needle in the file's InputStream, keeping the tail of each chunk so that occurrences that cross
+     * a chunk boundary are found.
+     */
+    private boolean searchStream(AbstractFile file) throws IOException {
+        byte[] buffer = BufferPool.getByteArray(Math.max(BUFFER_SIZE, 2 * needle.length));
+        try (InputStream in = file.getInputStream()) {
+            ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+            int len = StreamUtils.readUpTo(in, buffer);
+            if (BinaryDetector.guessBinary(buffer, 0, Math.min(len, BinaryDetector.RECOMMENDED_BYTE_SIZE)))
+                return false;
+
+            while (true) {
+                if (contains(wrapper, 0, len))
+                    return true;
+
+                int kept = Math.min(needle.length - 1, len);
+                System.arraycopy(buffer, len - kept, buffer, 0, kept);
+                int nbRead = in.read(buffer, kept, buffer.length - kept);
+                if (nbRead == -1)
+                    return false;
+                len = kept + nbRead;
+            }
+        }
+        finally {
+            BufferPool.releaseByteArray(buffer);
+        }
+    }
+
+    /**
+     * Matches the pattern against each line of the file, stopping at the first line that matches.
+     */
+    private boolean matchLines(AbstractFile file) throws IOException {
+        try (InputStream in = new BufferedInputStream(file.getInputStream(), BUFFER_SIZE)) {
+            in.mark(BinaryDetector.RECOMMENDED_BYTE_SIZE);
+            if (BinaryDetector.guessBinary(in))
+                return false;
+            in.reset();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, charset));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (pattern.matcher(line).find())
+                    return true;
+            }
+            return false;
+        }
+    }
+}
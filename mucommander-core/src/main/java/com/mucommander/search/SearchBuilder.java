@@ -17,18 +17,10 @@
 
 package com.mucommander.search;
 
-import java.io.IOException;
 import java.util.List;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.unix4j.Unix4j;
-import org.unix4j.unix.Grep;
-import org.unix4j.unix.grep.GrepOptionSet_Fcilnvx;
-import org.unix4j.unix.grep.GrepOptions;
-
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.protocol.search.SearchListener;
 import com.mucommander.commons.file.util.FileSet;
@@ -41,8 +33,6 @@ import com.mucommander.ui.main.MainFrame;
  * @author Arik Hadas
  */
 public class SearchBuilder implements com.mucommander.commons.file.protocol.search.SearchBuilder {
-    private static final Logger LOGGER = LoggerFactory.getLogger(SearchBuilder.class);
-
     private AbstractFile entrypoint;
     private String searchStr;
     private SearchListener listener;
@@ -288,20 +278,7 @@ public class SearchBuilder implements com.mucommander.commons.file.protocol.sear
     }
 
     private Predicate<AbstractFile> createFileContentPredicate() {
-        GrepOptionSet_Fcilnvx grepOptions = Grep.Options.l;
-        if (!textCaseSensitive)
-            grepOptions = grepOptions.i;
-        if (!textMatchRegex)
-            grepOptions = grepOptions.F;
-        final GrepOptions options = grepOptions;
-        return file -> {
-            try {
-                return !file.isDirectory() && !Unix4j.from(file.getInputStream()).grep(options, searchText).toStringResult().isEmpty();
-            } catch (IOException e) {
-                LOGGER.debug("failed to search content of " + file.getAbsolutePath(), e);
-                return false;
-            }
-        };
+        return new FileContentMatcher(searchText, textCaseSensitive, textMatchRegex);
     }
 
     private Predicate<AbstractFile> createListFilter() {
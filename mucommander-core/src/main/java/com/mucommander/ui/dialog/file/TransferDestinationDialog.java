@@ -43,6 +43,9 @@ import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.file.util.PathUtils;
 import com.mucommander.commons.util.ui.dialog.DialogToolkit;
 import com.mucommander.commons.util.ui.layout.YBoxPanel;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.job.impl.TransferFileJob;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.icon.SpinningDial;
@@ -287,6 +290,8 @@ public abstract class TransferDestinationDialog extends JobDialog implements Act
         if(job!=null) {
             job.setAutoSkipErrors(skipErrors);
             job.setIntegrityCheckEnabled(verifyIntegrity);
+            job.setTransferThreads(MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_THREADS,
+                                                                                 MuPreferences.DEFAULT_TRANSFER_THREADS));
             job.setRunInBackground(runInBackground);
             progressDialog.start(job);
         }
@@ -18,12 +18,14 @@
 package com.mucommander.ui.dialog.pref.general;
 
 import java.awt.BorderLayout;
+import java.awt.FlowLayout;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 
 import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
 import javax.swing.JLabel;
+import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 
 import com.mucommander.bonjour.BonjourDirectory;
@@ -39,6 +41,7 @@ import com.mucommander.ui.dialog.pref.PreferencesPanel;
 import com.mucommander.ui.dialog.pref.component.PrefCheckBox;
 import com.mucommander.ui.dialog.pref.component.PrefFilePathField;
 import com.mucommander.ui.dialog.pref.component.PrefRadioButton;
+import com.mucommander.ui.dialog.pref.component.PrefSpinner;
 import com.mucommander.ui.dialog.pref.component.PrefTextField;
 import com.mucommander.ui.notifier.NotifierProvider;
 
@@ -49,6 +52,9 @@ import com.mucommander.ui.notifier.NotifierProvider;
  */
 class MiscPanel extends PreferencesPanel implements ItemListener {
 
+    /** Maximum number of files that can be set to be copied or moved in parallel */
+    private final static int MAX_TRANSFER_THREADS = 16;
+
     /** Custom shell command text field */
     private PrefTextField customShellField;
 
@@ -76,6 +82,9 @@ class MiscPanel extends PreferencesPanel implements ItemListener {
     /** 'Set default file drag and drop action to COPY' checkbox */
     private PrefCheckBox setDropActionToCopyCheckBox;
 
+    /** Number of files copied or moved in parallel */
+    private PrefSpinner transferThreadsSpinner;
+
     public MiscPanel(PreferencesDialog parent) {
         super(parent, Translator.get("prefs_dialog.misc_tab"));
 
@@ -174,6 +183,15 @@ class MiscPanel extends PreferencesPanel implements ItemListener {
         setDropActionToCopyCheckBox.addDialogListener(parent);
         northPanel.add(setDropActionToCopyCheckBox);
 
+        JPanel transferThreadsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        transferThreadsPanel.setBorder(BorderFactory.createEmptyBorder());
+        transferThreadsSpinner = new PrefSpinner(1, MAX_TRANSFER_THREADS, 1, () -> Math.max(1, Math.min(MAX_TRANSFER_THREADS,
+                MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_THREADS, MuPreferences.DEFAULT_TRANSFER_THREADS))));
+        transferThreadsSpinner.addDialogListener(parent);
+        transferThreadsPanel.add(new JLabel(Translator.get("prefs_dialog.transfer_threads")));
+        transferThreadsPanel.add(transferThreadsSpinner);
+        northPanel.add(transferThreadsPanel);
+
         customShellField.addDialogListener(parent);
         useCustomShellRadioButton.addDialogListener(parent);
     }
@@ -220,5 +238,7 @@ class MiscPanel extends PreferencesPanel implements ItemListener {
         BonjourDirectory.setActive(enabled);
 
         MuConfigurations.getPreferences().setVariable(MuPreference.SET_DROP_ACTION_TO_COPY, setDropActionToCopyCheckBox.isSelected());
+
+        MuConfigurations.getPreferences().setVariable(MuPreference.TRANSFER_THREADS, (int) transferThreadsSpinner.getValue());
     }
 }
@@ -17,8 +17,16 @@
 
 package com.mucommander.ui.event;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import javax.swing.SwingUtilities;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,6 +66,9 @@ public class LocationManager {
 
 	private static final AbstractFile[] emptyAbstractFilesArray = new AbstractFile[0];
 
+	/** Lists the current folder, null if the current folder's listing failed */
+	private ChildrenLoader childrenLoader;
+
     /**
      * Creates a new LocationManager that manages location events listeners and broadcasts for the specified FolderPanel.
      *
@@ -86,9 +97,12 @@ public class LocationManager {
         newCurrentFile.startWatch();
 
         AbstractFile[] children = emptyAbstractFilesArray;
+        ChildrenLoader loader = null;
         do {
             try {
-                children = folder.ls(configurableFolderFilter);
+                loader = new ChildrenLoader(folder);
+                loader.start();
+                children = loader.waitForFirstChildren();
                 firstRun = false;
             } catch (Exception e) {
                 LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
@@ -103,12 +117,23 @@ public class LocationManager {
                 if (!firstRun) {
                     throw new RuntimeException(e.getMessage());
                 }
+                loader = null;
             }
             break;
         } while (true);
 
+        // Stop adding the children of the previous folder, if it is still being listed, now that the new folder
+        // replaces it: if the new folder could not be listed, the previous one is left as it is
+        if (childrenLoader != null)
+            childrenLoader.cancel();
+
     	folderPanel.setCurrentFolder(folder, children, fileToSelect, changeLockedTab);
 
+    	// The children that are listed from now on are added to the folder panel
+    	childrenLoader = loader;
+    	if (loader != null)
+    	    loader.folderSet();
+
     	if (currentFolder != null)
     	    currentFolder.stopWatch();
     	this.currentFolder = newCurrentFile;
@@ -122,6 +147,162 @@ public class LocationManager {
     		folderChangeMonitor = new FolderChangeMonitor(folderPanel);
     }
 
+    /**
+     * Lists a folder in the background so that the folder can be presented as soon as its first children have been
+     * listed, see {@link AbstractFile#ls(com.mucommander.commons.file.filter.FileFilter, java.util.function.Consumer)}.
+     * The children that are listed after the folder has been presented are added to the {@link FolderPanel} from the
+     * event dispatch thread, until the folder is listed entirely or the listing is cancelled.
+     */
+    private class ChildrenLoader extends Thread {
+        private final AbstractFile folder;
+
+        /** Released once the first children have been listed, or the folder has been listed entirely */
+        private final CountDownLatch firstChildrenLatch = new CountDownLatch(1);
+
+        /** Children that have been listed but not passed to the folder panel yet */
+        private final List<AbstractFile> pendingChildren = new ArrayList<>();
+
+        /** Whether some children have been listed */
+        private boolean childrenListed;
+
+        /** Whether the folder has been presented in the folder panel, after which children are added to it */
+        private boolean folderSet;
+
+        /** The exception that the listing failed with before any child was listed */
+        private Exception exception;
+
+        private volatile boolean cancelled;
+
+        private ChildrenLoader(AbstractFile folder) {
+            super("ChildrenLoader");
+            this.folder = folder;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                folder.ls(configurableFolderFilter, this::childrenListed);
+            } catch (Exception e) {
+                synchronized (this) {
+                    if (!childrenListed)
+                        exception = e;
+                    else if (!cancelled)
+                        LOGGER.info("Couldn't list all children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
+                }
+            } finally {
+                firstChildrenLatch.countDown();
+            }
+        }
+
+        private synchronized void childrenListed(AbstractFile[] children) {
+            childrenListed = true;
+            Collections.addAll(pendingChildren, children);
+            if (folderSet)
+                addPendingChildren();
+            firstChildrenLatch.countDown();
+        }
+
+        /**
+         * Waits until the first children of the folder have been listed, or until the folder has been listed entirely
+         * if it is listed quickly.
+         *
+         * @return the first children of the folder
+         * @throws Exception if the listing failed before any child was listed
+         */
+        private AbstractFile[] waitForFirstChildren() throws Exception {
+            try {
+                firstChildrenLatch.await();
+            } catch (InterruptedException e) {
+                cancel();
+                throw e;
+            }
+
+            synchronized (this) {
+                if (exception != null)
+                    throw exception;
+
+                AbstractFile[] children = pendingChildren.toArray(emptyAbstractFilesArray);
+                pendingChildren.clear();
+                return children;
+            }
+        }
+
+        /**
+         * Notifies this loader that the folder has been presented in the folder panel with the children returned by
+         * {@link #waitForFirstChildren()}: the children that have been listed since then are added to it.
+         */
+        private synchronized void folderSet() {
+            folderSet = true;
+            addPendingChildren();
+        }
+
+        private void addPendingChildren() {
+            if (pendingChildren.isEmpty())
+                return;
+
+            AbstractFile[] children = pendingChildren.toArray(emptyAbstractFilesArray);
+            pendingChildren.clear();
+            SwingUtilities.invokeLater(() -> {
+                if (!cancelled)
+                    folderPanel.addChildren(children);
+            });
+        }
+
+        /**
+         * Stops listing the folder and adding its children to the folder panel.
+         */
+        private void cancel() {
+            cancelled = true;
+            interrupt();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the children of the current folder are still being listed and added to the
+     * {@link FolderPanel}.
+     *
+     * @return <code>true</code> if the children of the current folder are still being listed
+     */
+    public boolean isListingChildren() {
+        ChildrenLoader loader = childrenLoader;
+        return loader != null && loader.isAlive();
+    }
+
+    /**
+     * Updates the children of the current folder that were created, deleted or modified, as returned by
+     * {@link MonitoredFile#takeChangedChildren()}, rather than listing the folder again. The children that still
+     * exist are resolved and filtered in the calling thread, and then updated in the {@link FolderPanel} from the
+     * event dispatch thread, unless the current folder has changed in the meantime.
+     *
+     * @param names names of the children that were created, deleted or modified
+     * @return <code>false</code> if a child could not be resolved, in which case the folder should be refreshed
+     */
+    public boolean updateChildren(Set<String> names) {
+        if (names.isEmpty())
+            return true;
+
+        MonitoredFile folder = currentFolder;
+        List<AbstractFile> children = new ArrayList<>();
+        for (String name : names) {
+            try {
+                AbstractFile child = folder.getProxiedFile().getDirectChild(name);
+                if (child.exists() && configurableFolderFilter.match(child))
+                    children.add(child);
+            } catch (IOException e) {
+                LOGGER.debug("Couldn't resolve child " + name + " of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
+                return false;
+            }
+        }
+
+        AbstractFile[] updatedChildren = children.toArray(emptyAbstractFilesArray);
+        SwingUtilities.invokeLater(() -> {
+            if (currentFolder == folder)
+                folderPanel.updateChildren(names, updatedChildren);
+        });
+        return true;
+    }
+
     /**
      * Return a {@link MonitoredFile} for the folder presented in the {@link FolderPanel}
      * 
@@ -31,6 +31,7 @@ import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.KeyEvent;
 import java.util.HashSet;
+import java.util.Set;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
@@ -403,6 +404,28 @@ public class FolderPanel extends JPanel implements FocusListener, QuickListConta
         fileTable.setCurrentFolder(folder, children, fileToSelect);
     }
 
+    /**
+     * Adds children to the current folder as they are being listed, after
+     * {@link #setCurrentFolder(AbstractFile, AbstractFile[], AbstractFile, boolean)} has been called with the first
+     * ones. This method must be called from the event dispatch thread.
+     *
+     * @param children children of the current folder to add
+     */
+    public void addChildren(AbstractFile children[]) {
+        fileTable.addChildren(children);
+    }
+
+    /**
+     * Updates the children of the current folder that were created, deleted or modified since the folder was listed,
+     * rather than listing it again. This method must be called from the event dispatch thread.
+     *
+     * @param names names of the children that were created, deleted or modified
+     * @param children the children with these names that exist and are to be displayed
+     */
+    public void updateChildren(Set<String> names, AbstractFile children[]) {
+        fileTable.updateChildren(names, children);
+    }
+
     /**
      * Shows the pop up which is located the given index in fileTablePopups.
      * 
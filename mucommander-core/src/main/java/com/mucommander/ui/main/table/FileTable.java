@@ -31,6 +31,8 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
 import java.util.WeakHashMap;
 
 import javax.swing.BorderFactory;
@@ -185,6 +187,15 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
     /** Whether or not to proceed with renaming the next file after renaming the selected file */
     private boolean consecutiveRename;
 
+    /** File to select once it is added to the current folder, null if it has been found or if there is none */
+    private AbstractFile pendingFileToSelect;
+
+    /** File that is selected until {@link #pendingFileToSelect} is found, selecting another file cancels the latter */
+    private AbstractFile pendingSelectionFallback;
+
+    /** Files to mark once they are added to the current folder, null if there is none */
+    private FileSet pendingMarkedFiles;
+
     public FileTable(MainFrame mainFrame, FolderPanel folderPanel, FileTableConfiguration conf) {
         super(new FileTableModel(), new FileTableColumnModel(conf));
 
@@ -554,6 +565,117 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         }
     }
 
+    /**
+     * Adds children to the current folder as they are being listed, after {@link #setCurrentFolder} has been called
+     * with the first ones. The selected file and marked files remain the same, only their position may change. If
+     * the file to select or files to mark that were given to <code>setCurrentFolder</code> are among the added
+     * children, they are selected and marked, unless the user has selected another file since then.
+     *
+     * <p>This method must be called from the event dispatch thread.</p>
+     *
+     * @param children children of the current folder to add
+     */
+    public void addChildren(AbstractFile children[]) {
+        // The edited row may move
+        if(isEditing())
+            getCellEditor().cancelCellEditing();
+
+        AbstractFile selectedFile = tableModel.getFileAtRow(currentRow);
+        if(pendingFileToSelect!=null && !Objects.equals(selectedFile, pendingSelectionFallback))
+            pendingFileToSelect = null;
+
+        tableModel.addFiles(children);
+
+        int row = -1;
+        if(pendingFileToSelect!=null && (row = tableModel.getFileRow(pendingFileToSelect))!=-1)
+            pendingFileToSelect = null;
+        if(row==-1 && selectedFile!=null)
+            row = tableModel.getFileRow(selectedFile);
+        if(row!=-1)
+            selectRow(row);
+        pendingSelectionFallback = tableModel.getFileAtRow(currentRow);
+
+        if(pendingMarkedFiles!=null) {
+            pendingMarkedFiles = markFiles(pendingMarkedFiles);
+            fireMarkedFilesChangedEvent();
+        }
+
+        resizeAndRepaint();
+    }
+
+    /**
+     * Updates the rows of the children of the current folder that were created, deleted or modified since the folder
+     * was listed, rather than listing the folder again. The selected file remains selected and stays at the same place
+     * within the viewport; if it was deleted, the row that takes its place is selected. Marked files remain marked.
+     *
+     * <p>This method must be called from the event dispatch thread.</p>
+     *
+     * @param names names of the children that were created, deleted or modified
+     * @param children the children with these names that exist and are to be displayed
+     */
+    public void updateChildren(Set<String> names, AbstractFile children[]) {
+        // The edited row may move
+        if(isEditing())
+            getCellEditor().cancelCellEditing();
+
+        AbstractFile selectedFile = tableModel.getFileAtRow(currentRow);
+        int selectedRowOffset = getCellRect(currentRow, 0, false).y - getVisibleRect().y;
+
+        boolean markedFilesChanged = tableModel.updateFiles(names, children);
+
+        int row = selectedFile==null ? -1 : tableModel.getFileRow(selectedFile);
+        // A modified file may not be found by its former attributes
+        if(row==-1 && selectedFile!=null && names.contains(selectedFile.getName())) {
+            int nbRows = tableModel.getRowCount();
+            for(int i=tableModel.getFirstMarkableRow(); i<nbRows && row==-1; i++) {
+                if(tableModel.getCachedFileAtRow(i).getName().equals(selectedFile.getName()))
+                    row = i;
+            }
+        }
+        if(row==-1)
+            row = Math.min(currentRow, tableModel.getRowCount()-1);
+
+        if(row>=0) {
+            // Select the row without scrolling to it, and then scroll so that it stays where it was
+            boolean autoscrolls = getAutoscrolls();
+            setAutoscrolls(false);
+            selectRow(row);
+            setAutoscrolls(autoscrolls);
+            if(scrollpaneWrapper!=null)
+                scrollpaneWrapper.getViewport().setViewPosition(new Point(0, Math.max(0, getCellRect(row, 0, false).y-selectedRowOffset)));
+        }
+
+        if(markedFilesChanged)
+            fireMarkedFilesChangedEvent();
+
+        resizeAndRepaint();
+    }
+
+    /**
+     * Marks the given files that are in the current folder.
+     *
+     * @param files the files to mark
+     * @return the files that are not in the current folder, null if there is none
+     */
+    private FileSet markFiles(FileSet files) {
+        FileSet notFound = null;
+        int nbFiles = files.size();
+        int fileRow;
+        for(int i=0; i<nbFiles; i++) {
+            AbstractFile file = files.elementAt(i);
+            fileRow = tableModel.getFileRow(file);
+            if(fileRow != -1)
+                tableModel.setRowMarked(fileRow, true);
+            else {
+                if(notFound == null)
+                    notFound = new FileSet(files.getBaseFolder());
+                notFound.add(file);
+            }
+        }
+
+        return notFound;
+    }
+
     /**
      * Sets row height based on current cell's font and border, revalidates and repaints this JTable.
      */
@@ -1858,12 +1980,14 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
 
                 // Computes the index of the new row selection.
                 int rowToSelect;
+                pendingFileToSelect = null;
                 if(selectedFile!=null) {
                     // Tries to find the index of the file to select. If it cannot be found (the file might not
-                    // exist anymore, for example), use the closest possible row.
+                    // exist anymore or not be listed yet, for example), use the closest possible row.
                     if((rowToSelect = tableModel.getFileRow(selectedFile)) == -1) {
                         int rowCount = tableModel.getRowCount();
                         rowToSelect = currentRow < rowCount ? currentRow : rowCount - 1;
+                        pendingFileToSelect = selectedFile;
                     }
                 }
                 // If no file was marked as needing to be selected, selects the first line.
@@ -1872,18 +1996,14 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
                 }
 
                 selectRow(currentRow = rowToSelect);
+                pendingSelectionFallback = tableModel.getFileAtRow(currentRow);
                 fireSelectedFileChangedEvent();
 
                 // Restore previously marked files (if any / current folder hasn't changed)
+                pendingMarkedFiles = null;
                 if(markedFiles != null) {
-                    // Restore previously marked files
-                    int nbMarkedFiles = markedFiles.size();
-                    int fileRow;
-                    for(int i  =0; i < nbMarkedFiles; i++) {
-                        fileRow = tableModel.getFileRow(markedFiles.elementAt(i));
-                        if(fileRow != -1)
-                            tableModel.setRowMarked(fileRow, true);
-                    }
+                    // Restore previously marked files, those that are not listed yet are marked when they are added
+                    pendingMarkedFiles = markFiles(markedFiles);
 
                     // Notify registered listeners that currently marked files have changed on this FileTable
                     fireMarkedFilesChangedEvent();
@@ -18,6 +18,7 @@
 package com.mucommander.ui.main.table;
 
 import java.awt.Cursor;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -253,6 +254,154 @@ public class FileTableModel extends AbstractTableModel {
         fillCellCache();
     }
 
+    /**
+     * Adds children to the current folder, as they are being listed. The rows must have been sorted since the
+     * current folder was set: the given children are sorted and merged with the current rows, so that the rows
+     * remain sorted. Marked rows remain marked.
+     *
+     * @param children children of the current folder to add
+     */
+    synchronized void addFiles(AbstractFile children[]) {
+        int nbOldFiles = cachedFiles.length;
+        int nbFiles = nbOldFiles + children.length;
+        int nbRows = nbFiles + (parent==null?0:1);
+
+        this.cachedFiles = Arrays.copyOf(cachedFiles, nbFiles);
+        int newFileArrayIndex[] = Arrays.copyOf(fileArrayIndex, nbFiles);
+        this.rowMarked = Arrays.copyOf(rowMarked, nbRows);
+        this.cellValuesCache = Arrays.copyOf(cellValuesCache, nbRows);
+
+        Function<AbstractFile, String> nameFunc = getNameFunc();
+        AbstractFile file;
+        for(int i=nbOldFiles; i<nbFiles; i++) {
+            file = new CachedFile(children[i-nbOldFiles], true);
+
+            // Pre-fetch the attributes that are used by the table renderer and some actions.
+            prefetchCachedFileAttributes(file);
+
+            cachedFiles[i] = file;
+            newFileArrayIndex[i] = i;
+        }
+        for(int row=nbRows-children.length; row<nbRows; row++)
+            cellValuesCache[row] = new Object[Column.values().length-1];
+        for(int i=nbOldFiles; i<nbFiles; i++)
+            fillCellCache(i, nameFunc);
+
+        // Sort the new files only, then merge them with the current ones which are already sorted
+        this.fileArrayIndex = newFileArrayIndex;
+        FileComparator fc = getFileComparator(sortInfo);
+        sort(fc, nbOldFiles, nbFiles-1);
+
+        int mergedFileArrayIndex[] = new int[nbFiles];
+        int oldIndex = 0;
+        int newIndex = nbOldFiles;
+        for(int i=0; i<nbFiles; i++) {
+            if(newIndex==nbFiles || (oldIndex<nbOldFiles
+                    && fc.compare(cachedFiles[fileArrayIndex[oldIndex]], cachedFiles[fileArrayIndex[newIndex]])<=0))
+                mergedFileArrayIndex[i] = fileArrayIndex[oldIndex++];
+            else
+                mergedFileArrayIndex[i] = fileArrayIndex[newIndex++];
+        }
+        this.fileArrayIndex = mergedFileArrayIndex;
+    }
+
+    /**
+     * Updates the rows of the children of the current folder that were created, deleted or modified since the
+     * current folder was set, rather than setting all of them again. The rows of the files with the given names are
+     * removed, and the given files are inserted at their sorted position, found by a binary search. The rows must have
+     * been sorted since the current folder was set. Modified files that were marked remain marked.
+     *
+     * @param names names of the children that were created, deleted or modified
+     * @param children the children with these names that exist and are to be displayed
+     * @return <code>true</code> if the marked files have changed
+     */
+    synchronized boolean updateFiles(Set<String> names, AbstractFile children[]) {
+        int nbOldFiles = cachedFiles.length;
+        int nbRowsMarkedBefore = nbRowsMarked;
+        long markedTotalSizeBefore = markedTotalSize;
+
+        // Unmark the files to remove, remembering their names so that the modified ones are marked again
+        boolean removed[] = new boolean[nbOldFiles];
+        int nbRemoved = 0;
+        Set<String> markedNames = new HashSet<>();
+        for(int i=0; i<nbOldFiles; i++) {
+            if(names.contains(cachedFiles[i].getName())) {
+                removed[i] = true;
+                nbRemoved++;
+                if(rowMarked[i]) {
+                    markedNames.add(cachedFiles[i].getName());
+                    setFileIndexMarked(i, false);
+                    markedDirectories.remove(cachedFiles[i]);
+                }
+            }
+        }
+
+        // Remove the files, keeping the others in the same order
+        int rowOffset = parent==null?0:1;
+        int nbFiles = nbOldFiles - nbRemoved + children.length;
+        AbstractFile newCachedFiles[] = new AbstractFile[nbFiles];
+        int newFileArrayIndex[] = new int[nbFiles];
+        boolean newRowMarked[] = new boolean[nbFiles+rowOffset];
+        Object newCellValuesCache[][] = new Object[nbFiles+rowOffset][];
+        if(parent!=null)
+            newCellValuesCache[0] = cellValuesCache[0];
+
+        int newFileIndexes[] = new int[nbOldFiles];
+        int nbKeptFiles = 0;
+        for(int i=0; i<nbOldFiles; i++) {
+            if(removed[i])
+                continue;
+            newCachedFiles[nbKeptFiles] = cachedFiles[i];
+            newRowMarked[nbKeptFiles] = rowMarked[i];
+            newCellValuesCache[nbKeptFiles+rowOffset] = cellValuesCache[i+rowOffset];
+            newFileIndexes[i] = nbKeptFiles++;
+        }
+        int nbSortedFiles = 0;
+        for(int i=0; i<nbOldFiles; i++) {
+            if(!removed[fileArrayIndex[i]])
+                newFileArrayIndex[nbSortedFiles++] = newFileIndexes[fileArrayIndex[i]];
+        }
+
+        this.cachedFiles = newCachedFiles;
+        this.fileArrayIndex = newFileArrayIndex;
+        this.rowMarked = newRowMarked;
+        this.cellValuesCache = newCellValuesCache;
+
+        // Insert the new files one after another at their sorted position
+        FileComparator fc = getFileComparator(sortInfo);
+        Function<AbstractFile, String> nameFunc = getNameFunc();
+        for(AbstractFile child : children) {
+            AbstractFile file = new CachedFile(child, true);
+
+            // Pre-fetch the attributes that are used by the table renderer and some actions.
+            prefetchCachedFileAttributes(file);
+
+            int fileIndex = nbSortedFiles;
+            cachedFiles[fileIndex] = file;
+            cellValuesCache[fileIndex+rowOffset] = new Object[Column.values().length-1];
+            fillCellCache(fileIndex, nameFunc);
+
+            // Look for the first file that is greater than the new one
+            int low = 0;
+            int high = nbSortedFiles;
+            while(low<high) {
+                int mid = (low+high) >>> 1;
+                if(fc.compare(cachedFiles[fileArrayIndex[mid]], file)<=0)
+                    low = mid+1;
+                else
+                    high = mid;
+            }
+            System.arraycopy(fileArrayIndex, low, fileArrayIndex, low+1, nbSortedFiles-low);
+            fileArrayIndex[low] = fileIndex;
+            nbSortedFiles++;
+
+            if(markedNames.contains(file.getName()))
+                setFileIndexMarked(fileIndex, true);
+        }
+
+        return nbRowsMarked!=nbRowsMarkedBefore || markedTotalSize!=markedTotalSizeBefore;
+    }
+
     /**
      * Pre-fetch the attributes that are used by the table renderer and some actions from the given CachedFile.
      * By doing so, the attributes will be available when the associated getters are called and thus the methods won't
@@ -295,41 +444,46 @@ public class FileTableModel extends AbstractTableModel {
         }
 
         Function<AbstractFile, String> nameFunc = getNameFunc();
-        int fileIndex = 0;
-        final int indexOffset = parent == null ? 0 : 1;
-        for (int i = indexOffset; i < len; i++) {
-            AbstractFile file = getCachedFileAtRow(i);
-            int cellIndex = fileArrayIndex[fileIndex] + indexOffset;
-            Object sizeValue;
-            if (file.isDirectory()) {
-                if (hasCalculatedDirectories) {
-                    Long dirSize;
-                    synchronized (directorySizes) {
-                        dirSize = directorySizes.get(file);
-                    }
-                    if (dirSize != null) {
-                        sizeValue = SizeFormat.format(dirSize, sizeFormat);
-                    } else {
-                        synchronized (calculateSizeQueue) {
-                            sizeValue = calculateSizeQueue.contains(file) ? QUEUED_DIRECTORY_SIZE_STRING : DIRECTORY_SIZE_STRING;
-                        }
-                    }
+        for (int fileIndex = 0; fileIndex < cachedFiles.length; fileIndex++)
+            fillCellCache(fileIndex, nameFunc);
+    }
+
+    /**
+     * Retrieves the cell values of the file at the given index and stores them in the cell values cache.
+     *
+     * @param fileIndex index of the file in the array of cached files
+     * @param nameFunc returns the value of the name column of a file
+     */
+    private void fillCellCache(int fileIndex, Function<AbstractFile, String> nameFunc) {
+        AbstractFile file = cachedFiles[fileIndex];
+        int cellIndex = fileIndex + (parent == null ? 0 : 1);
+        Object sizeValue;
+        if (file.isDirectory()) {
+            if (hasCalculatedDirectories) {
+                Long dirSize;
+                synchronized (directorySizes) {
+                    dirSize = directorySizes.get(file);
+                }
+                if (dirSize != null) {
+                    sizeValue = SizeFormat.format(dirSize, sizeFormat);
                 } else {
-                    sizeValue = DIRECTORY_SIZE_STRING;
+                    synchronized (calculateSizeQueue) {
+                        sizeValue = calculateSizeQueue.contains(file) ? QUEUED_DIRECTORY_SIZE_STRING : DIRECTORY_SIZE_STRING;
+                    }
                 }
             } else {
-                sizeValue = SizeFormat.format(file.getSize(), sizeFormat);
+                sizeValue = DIRECTORY_SIZE_STRING;
             }
-
-            cellValuesCache[cellIndex][Column.NAME.ordinal()-1] = nameFunc.apply(file);
-            cellValuesCache[cellIndex][Column.SIZE.ordinal()-1] = sizeValue;
-            cellValuesCache[cellIndex][Column.DATE.ordinal()-1] = CustomDateFormat.format(new Date(file.getDate()));
-            cellValuesCache[cellIndex][Column.PERMISSIONS.ordinal()-1] = file.getPermissionsString();
-            cellValuesCache[cellIndex][Column.OWNER.ordinal()-1] = file.getOwner();
-            cellValuesCache[cellIndex][Column.GROUP.ordinal()-1] = file.getGroup();
-
-            fileIndex++;
+        } else {
+            sizeValue = SizeFormat.format(file.getSize(), sizeFormat);
         }
+
+        cellValuesCache[cellIndex][Column.NAME.ordinal()-1] = nameFunc.apply(file);
+        cellValuesCache[cellIndex][Column.SIZE.ordinal()-1] = sizeValue;
+        cellValuesCache[cellIndex][Column.DATE.ordinal()-1] = CustomDateFormat.format(new Date(file.getDate()));
+        cellValuesCache[cellIndex][Column.PERMISSIONS.ordinal()-1] = file.getPermissionsString();
+        cellValuesCache[cellIndex][Column.OWNER.ordinal()-1] = file.getOwner();
+        cellValuesCache[cellIndex][Column.GROUP.ordinal()-1] = file.getGroup();
     }
 
     public Function<AbstractFile, String> getNameFunc() {
@@ -513,12 +667,21 @@ public class FileTableModel extends AbstractTableModel {
 
         int rowIndex = parent==null?row:row-1;
 
+        setFileIndexMarked(fileArrayIndex[rowIndex], marked);
+    }
+
+    /**
+     * Marks/Unmarks the file at the given index in the array of cached files.
+     *
+     * @param fileIndex index of the file in the array of cached files
+     * @param marked <code>true</code> to mark the file, <code>false</code> to unmark it
+     */
+    private void setFileIndexMarked(int fileIndex, boolean marked) {
         // Return if the row is already marked/unmarked
-        final int fileIndex = fileArrayIndex[rowIndex];
         if (marked == rowMarked[fileIndex])
             return;
 
-        AbstractFile file = getCachedFileAtRow(row);
+        AbstractFile file = cachedFiles[fileIndex];
 
         // Do not call getSize() on directories, it's unnecessary and the value is most likely not cached by CachedFile yet
         long fileSize;
@@ -0,0 +1,99 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+
+/**
+ * Tests {@link FileContentMatcher} on small files that are read and on larger files that are read from their channel.
+ */
+public class FileContentMatcherTest {
+
+    @Test
+    public void testLiteral() throws IOException {
+        AbstractFile file = createFile(1000, 400, "Hello World");
+
+        assert new FileContentMatcher("Hello World", true, false).test(file);
+        assert !new FileContentMatcher("hello world", true, false).test(file);
+        assert new FileContentMatcher("hello WORLD", false, false).test(file);
+        assert !new FileContentMatcher("Hello Worlds", false, false).test(file);
+        assert !new FileContentMatcher("World\nHello", false, false).test(file);
+    }
+
+    @Test
+    public void testRegex() throws IOException {
+        AbstractFile file = createFile(1000, 400, "Hello World");
+
+        assert new FileContentMatcher("H.l+o\\s+W", true, true).test(file);
+        assert !new FileContentMatcher("^hello", false, true).test(file);
+
+        file = createFile(1000, 400, "\nHello World");
+
+        assert new FileContentMatcher("^hello", false, true).test(file);
+        assert !new FileContentMatcher("^hello", true, true).test(file);
+    }
+
+    /**
+     * Places the text across the boundary of the buffers used to read files and at the very end of a file read from its
+     * channel.
+     */
+    @Test
+    public void testBoundaries() throws IOException {
+        assert new FileContentMatcher("needle", false, false).test(createFile(100000, 65536 - 3, "NEEDLE"));
+        assert new FileContentMatcher("needle", false, false).test(createFile(1500000, 1024 * 1024 - 3, "NEEDLE"));
+        assert new FileContentMatcher("needle", true, false).test(createFile(300000, 300000 - 6, "needle"));
+        assert !new FileContentMatcher("needle", true, false).test(createFile(300000, 300000 - 5, "needle"));
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        byte[] bytes = new byte[2000];
+        Arrays.fill(bytes, (byte) 'a');
+        bytes[10] = 0;
+        System.arraycopy("needle".getBytes(), 0, bytes, 1000, 6);
+        File tempFile = File.createTempFile("content", ".bin");
+        tempFile.deleteOnExit();
+        Files.write(tempFile.toPath(), bytes);
+
+        assert !new FileContentMatcher("needle", true, false).test(FileFactory.getFile(tempFile.getAbsolutePath()));
+    }
+
+    /**
+     * Creates a text file of the given size filled with dots, with the given text written at the given offset and
+     * truncated if it does not fit.
+     */
+    private AbstractFile createFile(int size, int offset, String text) throws IOException {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) '.');
+        byte[] textBytes = text.getBytes();
+        System.arraycopy(textBytes, 0, bytes, offset, Math.min(textBytes.length, size - offset));
+
+        File tempFile = File.createTempFile("content", ".txt");
+        tempFile.deleteOnExit();
+        Files.write(tempFile.toPath(), bytes);
+        return FileFactory.getFile(tempFile.getAbsolutePath());
+    }
+}
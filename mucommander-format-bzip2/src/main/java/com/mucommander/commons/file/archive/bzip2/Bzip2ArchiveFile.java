@@ -24,7 +24,7 @@ import com.mucommander.commons.file.archive.ArchiveEntry;
 import com.mucommander.commons.file.archive.ArchiveEntryIterator;
 import com.mucommander.commons.file.archive.SingleArchiveEntryIterator;
 
-import org.apache.tools.bzip2.CBZip2InputStream;
+import org.apache.tools.bzip2.ParallelCBZip2InputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,6 +44,9 @@ import java.io.InputStream;
 public class Bzip2ArchiveFile extends AbstractROArchiveFile {
     private static final Logger LOGGER = LoggerFactory.getLogger(Bzip2ArchiveFile.class);
 
+    /** Number of threads that decode the blocks of an archive ahead of the reader, each holding about 2 blocks */
+    private final static int DECOMPRESSION_THREADS = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+
     /**
      * Creates a BzipArchiveFile on top of the given file.
      *
@@ -83,24 +86,25 @@ public class Bzip2ArchiveFile extends AbstractROArchiveFile {
         try {
             InputStream in = getInputStream();
 
-            // Skips the 2 magic bytes 'BZ', as required by CBZip2InputStream. Quoted from CBZip2InputStream's Javadoc:
+            // Skips the 2 magic bytes 'BZ', as required by ParallelCBZip2InputStream like CBZip2InputStream. Quoted from
+            // CBZip2InputStream's Javadoc:
             // "Although BZip2 headers are marked with the magic 'Bz'. this constructor expects the next byte in the
             // stream to be the first one after the magic.  Thus callers have to skip the first two bytes. Otherwise
             // this constructor will throw an exception."
             // Note: the return value of read() is unchecked. In the unlikely event that EOF is reached in the first
-            // 2 bytes, CBZip2InputStream will throw an IOException.
+            // 2 bytes, ParallelCBZip2InputStream will throw an IOException.
             in.read();
             in.read();
 
-            // Quoted from CBZip2InputStream's Javadoc:
+            // Quoted from CBZip2InputStream's Javadoc, which applies to ParallelCBZip2InputStream as well:
             // "CBZip2InputStream reads bytes from the compressed source stream via the single byte {@link java.io.InputStream#read()
             // read()} method exclusively. Thus you should consider to use a buffered source stream."
-            return new CBZip2InputStream(new BufferedInputStream(in));
+            return new ParallelCBZip2InputStream(new BufferedInputStream(in), DECOMPRESSION_THREADS);
         }
         catch(Exception e) {
             // CBZip2InputStream is known to throw NullPointerException if file is not properly Bzip2-encoded
             // so we need to catch those and throw them as IOException
-            LOGGER.info("Exception caught while creating CBZip2InputStream, throwing IOException", e);
+            LOGGER.info("Exception caught while creating ParallelCBZip2InputStream, throwing IOException", e);
 
             throw new IOException();
         }
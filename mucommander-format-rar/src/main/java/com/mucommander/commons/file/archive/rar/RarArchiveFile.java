@@ -20,6 +20,9 @@ package com.mucommander.commons.file.archive.rar;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import com.github.junrar.exception.RarException;
@@ -29,6 +32,7 @@ import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.file.archive.AbstractROArchiveFile;
 import com.mucommander.commons.file.archive.ArchiveEntry;
 import com.mucommander.commons.file.archive.ArchiveEntryIterator;
+import com.mucommander.commons.file.archive.EntryExtractionPipe;
 import com.mucommander.commons.file.archive.WrapperArchiveEntryIterator;
 
 /**
@@ -119,4 +123,41 @@ public class RarArchiveFile extends AbstractROArchiveFile {
             throw new IOException(e);
         }
     }
+
+    /**
+     * Extracts the given entries in a single pass over the archive, on a thread of its own, see
+     * {@link RarFile#extractEntries(Map, EntryExtractionPipe)}.
+     */
+    @Override
+    public void extractEntries(List<ArchiveEntry> entries, EntryConsumer consumer) throws IOException, UnsupportedFileOperationException {
+        RarFile rarFile;
+        synchronized (this) {
+            try {
+                check();
+            } catch (RarException e) {
+                throw new IOException(e);
+            }
+            rarFile = this.rarFile;
+        }
+
+        Map<String, ArchiveEntry> entriesByName = new HashMap<>();
+        for (ArchiveEntry entry : entries)
+            entriesByName.put(entry.getPath().replace('/', '\\'), entry);
+
+        EntryExtractionPipe pipe = new EntryExtractionPipe();
+        Thread extractionThread = new Thread(() -> {
+            synchronized (rarFile) {
+                rarFile.extractEntries(entriesByName, pipe);
+            }
+        }, "RAR extraction");
+        extractionThread.setDaemon(true);
+        extractionThread.start();
+
+        pipe.consume(consumer, extractionThread);
+    }
+
+    @Override
+    public boolean isBulkExtractionSupported() {
+        return true;
+    }
 }
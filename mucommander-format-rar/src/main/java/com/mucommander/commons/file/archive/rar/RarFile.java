@@ -18,13 +18,17 @@ package com.mucommander.commons.file.archive.rar;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collection;
+import java.util.Map;
 
 import com.github.junrar.Archive;
 import com.github.junrar.exception.RarException;
 import com.github.junrar.rarfile.FileHeader;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
+import com.mucommander.commons.file.archive.ArchiveEntry;
+import com.mucommander.commons.file.archive.EntryExtractionPipe;
 import com.mucommander.commons.util.CircularByteBuffer;
 
 /**
@@ -64,7 +68,7 @@ public class RarFile {
         if (header.isSplitAfter())
     		throw new RarException(new Throwable("Splitting is not implemented yet"));
     	
-        final CircularByteBuffer cbb = new CircularByteBuffer(CircularByteBuffer.INFINITE_SIZE);
+        final CircularByteBuffer cbb = new CircularByteBuffer();
         
         new Thread(
     		    new Runnable(){
@@ -87,4 +91,45 @@ public class RarFile {
         
         return cbb.getInputStream();
     }
+
+    /**
+     * Extracts the given entries in the order they are stored in the archive, writing them to the given pipe, in a
+     * single pass. The entries of a solid archive that precede the requested ones are decompressed too, as their
+     * content is needed to decompress the following ones, but only once rather than for every entry.
+     *
+     * @param entries the entries to extract, mapped by the name of their file header
+     * @param pipe the pipe to write the entries to, which is finished when this method returns
+     */
+    public void extractEntries(Map<String, ArchiveEntry> entries, EntryExtractionPipe pipe) {
+        Exception failure = null;
+        try {
+            boolean solid = archive.getMainHeader().isSolid();
+            int remainingEntries = entries.size();
+            for (FileHeader header : archive.getFileHeaders()) {
+                if (remainingEntries == 0)
+                    break;
+
+                ArchiveEntry entry = entries.get(header.getFileName());
+                if (entry == null) {
+                    // Decompress the entries of solid archives, even if they are not requested
+                    if (solid && !header.isDirectory())
+                        archive.extractFile(header, OutputStream.nullOutputStream());
+                    continue;
+                }
+
+                // If the file that is going to be extracted is divided and continued in another archive
+                // part - don't extract it and throw corresponding exception to raise an error.
+                if (header.isSplitAfter())
+                    throw new RarException(new Throwable("Splitting is not implemented yet"));
+
+                archive.extractFile(header, pipe.startEntry(entry));
+                pipe.endEntry(null);
+                remainingEntries--;
+            }
+        } catch (IOException | RarException | RuntimeException e) {
+            failure = e;
+        } finally {
+            pipe.finish(failure);
+        }
+    }
 }
@@ -16,10 +16,14 @@
  */
 package com.mucommander.commons.file.archive.tar;
 
+import java.io.File;
+
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceRegistration;
 
+import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.osgi.FileFormatService;
 
 /**
@@ -27,16 +31,28 @@ import com.mucommander.commons.file.osgi.FileFormatService;
  */
 public class Activator implements BundleActivator {
 
+	/** Name of the folder that TAR indexes are saved to, next to the OSGi framework's storage */
+	private static final String INDEX_FOLDER_NAME = "mucommander-tar-index-" + System.getProperty("user.name");
+
 	private ServiceRegistration<FileFormatService> serviceRegistration;
 
 	@Override
 	public void start(BundleContext context) throws Exception {
+		// Indexes are saved next to the framework's storage rather than in it, as the storage is cleaned on startup
+		String storage = context.getProperty(Constants.FRAMEWORK_STORAGE);
+		if (storage != null) {
+			File indexFolder = new File(new File(storage).getAbsoluteFile().getParentFile(), INDEX_FOLDER_NAME);
+			if (indexFolder.isDirectory() || indexFolder.mkdirs())
+				TarArchiveFile.setIndexFolder(FileFactory.getFile(indexFolder.getAbsolutePath()));
+		}
+
 		serviceRegistration = context.registerService(FileFormatService.class, TarFormatProvider::new, null);
 	}
 
 	@Override
 	public void stop(BundleContext context) throws Exception {
 		serviceRegistration.unregister();
+		TarArchiveFile.setIndexFolder(null);
 	}
 
 }
@@ -0,0 +1,752 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.tar;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * An <code>InputStream</code> that decompresses a Gzip stream, possibly made of several members, and that can start
+ * decompressing at a deflate block boundary.
+ *
+ * <p><code>java.util.zip.Inflater</code> neither tells where deflate blocks start nor lets decompression start in the
+ * middle of a stream, so the deflate format is decoded here. While reading the stream from the start, a
+ * {@link Checkpoint} is recorded every {@link #INITIAL_SPAN} decompressed bytes or so: the position of the block in
+ * bits, the decompressed offset and the 32 KB of data that precede it, which back-references may refer to. The stream
+ * can then be resumed from any of these checkpoints with {@link #CheckpointInflater(InputStream, Checkpoint)}, which
+ * only costs to decompress the data that follows the checkpoint.</p>
+ *
+ * <p>When more than {@link #MAX_CHECKPOINTS} checkpoints have been recorded, every other one is dropped and the span
+ * between checkpoints is doubled, so that the memory held by the checkpoints is bounded whatever the size of the
+ * stream.</p>
+ */
+class CheckpointInflater extends InputStream {
+
+    /** Number of decompressed bytes between two checkpoints, until the stream gets too large */
+    final static int INITIAL_SPAN = 1024 * 1024;
+
+    /** Maximum number of checkpoints recorded for a stream */
+    final static int MAX_CHECKPOINTS = 256;
+
+    /** Maximum distance of a back-reference */
+    private final static int WINDOW_SIZE = 32 * 1024;
+
+    /** Size of the circular buffer that holds decompressed data, which must be a power of two */
+    private final static int BUFFER_SIZE = 2 * WINDOW_SIZE;
+
+    private final static int BUFFER_MASK = BUFFER_SIZE - 1;
+
+    /** Maximum length of a back-reference */
+    private final static int MAX_MATCH = 258;
+
+    /** Number of bits of the codes that are decoded with a single table lookup */
+    private final static int TABLE_BITS = 10;
+
+    private final static int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59,
+        67, 83, 99, 115, 131, 163, 195, 227, 258};
+
+    private final static int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4,
+        5, 5, 5, 5, 0};
+
+    private final static int[] DISTANCE_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385,
+        513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+
+    private final static int[] DISTANCE_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10,
+        10, 11, 11, 12, 12, 13, 13};
+
+    /** Order in which the lengths of the code length codes are stored */
+    private final static int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private final static Huffman FIXED_LITERALS = new Huffman(288);
+    private final static Huffman FIXED_DISTANCES = new Huffman(30);
+
+    static {
+        int[] lengths = new int[288];
+        for (int i = 0; i < 288; i++)
+            lengths[i] = i < 144 ? 8 : i < 256 ? 9 : i < 280 ? 7 : 8;
+        try {
+            FIXED_LITERALS.build(lengths, 0, 288);
+            Arrays.fill(lengths, 5);
+            FIXED_DISTANCES.build(lengths, 0, 30);
+        }
+        catch (ZipException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private enum State {
+        /** At the start of a deflate block */
+        BLOCK_HEADER,
+        /** In a stored block */
+        STORED,
+        /** In a compressed block */
+        COMPRESSED,
+        /** At the end of a Gzip member */
+        MEMBER_TRAILER,
+        /** At the end of the stream */
+        END
+    }
+
+    private final InputStream in;
+    private final byte[] inBuffer = new byte[8192];
+    private int inBufferOffset;
+    private int inBufferLength;
+
+    /** Position in the compressed stream of the next byte to be read from {@link #inBuffer} */
+    private long inOffset;
+
+    /** Bits that have been read from the compressed stream but not consumed yet, least significant first */
+    private long bitBuffer;
+    private int bitCount;
+
+    /** Decompressed data, indexed by the decompressed offset modulo {@link #BUFFER_SIZE} */
+    private final byte[] window = new byte[BUFFER_SIZE];
+
+    /** Decompressed offset of the next byte to be decompressed */
+    private long outOffset;
+
+    /** Decompressed offset of the next byte to be returned by the read methods */
+    private long readOffset;
+
+    /** Decompressed offset before which there is no data that back-references may refer to */
+    private long historyOffset;
+
+    private State state;
+    private boolean lastBlock;
+    private int storedRemaining;
+    private Huffman literals;
+    private Huffman distances;
+    private final Huffman dynamicLiterals = new Huffman(288);
+    private final Huffman dynamicDistances = new Huffman(30);
+    private final Huffman codeLengths = new Huffman(19);
+    private final int[] lengths = new int[288 + 32];
+
+    /** CRC of the decompressed data of the current member, null if the member was not read from its start */
+    private CRC32 crc;
+    private long crcOffset;
+    private long memberOffset;
+
+    /** Checkpoints recorded so far, null if none are */
+    private final List<Checkpoint> checkpoints;
+    private long span = INITIAL_SPAN;
+
+    /**
+     * A position in a Gzip stream at which decompression can start.
+     */
+    static class Checkpoint {
+        /** Offset in the decompressed data */
+        final long offset;
+        /** Position in bits in the compressed stream of the deflate block that starts at this checkpoint */
+        final long bitPosition;
+        /** Decompressed data that precedes the checkpoint, compressed with {@link Deflater} */
+        final byte[] window;
+        /** Length of the decompressed data that precedes the checkpoint */
+        final int windowLength;
+
+        Checkpoint(long offset, long bitPosition, byte[] window, int windowLength) {
+            this.offset = offset;
+            this.bitPosition = bitPosition;
+            this.window = window;
+            this.windowLength = windowLength;
+        }
+    }
+
+    /**
+     * Creates a new <code>CheckpointInflater</code> that decompresses the given Gzip stream from its start.
+     *
+     * @param in the Gzip stream
+     * @param recordCheckpoints <code>true</code> to record checkpoints while decompressing
+     * @throws IOException if the stream does not start with a valid Gzip header
+     */
+    CheckpointInflater(InputStream in, boolean recordCheckpoints) throws IOException {
+        this.in = in;
+        this.checkpoints = recordCheckpoints ? new ArrayList<>() : null;
+        if (!readMemberHeader())
+            throw new ZipException("Not in GZIP format");
+    }
+
+    /**
+     * Creates a new <code>CheckpointInflater</code> that resumes the decompression of a Gzip stream at the given
+     * checkpoint. The stream must be positioned at the byte that holds the first bit of the checkpoint. The data that
+     * precedes the checkpoint in the current member is not read, so its CRC is not checked.
+     *
+     * @param in the Gzip stream, positioned at the checkpoint
+     * @param checkpoint the checkpoint to resume decompression at
+     * @throws IOException if an I/O error occurred
+     */
+    CheckpointInflater(InputStream in, Checkpoint checkpoint) throws IOException {
+        this.in = in;
+        this.checkpoints = null;
+        this.inOffset = checkpoint.bitPosition >>> 3;
+        this.outOffset = checkpoint.offset;
+        this.readOffset = checkpoint.offset;
+        this.historyOffset = checkpoint.offset - checkpoint.windowLength;
+        this.state = State.BLOCK_HEADER;
+
+        if (checkpoint.windowLength > 0) {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(checkpoint.window);
+                byte[] history = new byte[checkpoint.windowLength];
+                int length = 0;
+                while (length < history.length && !inflater.finished())
+                    length += inflater.inflate(history, length, history.length - length);
+                if (length != history.length)
+                    throw new ZipException("Invalid checkpoint");
+                for (int i = 0; i < length; i++)
+                    window[(int) (historyOffset + i) & BUFFER_MASK] = history[i];
+            }
+            catch (DataFormatException e) {
+                throw new ZipException("Invalid checkpoint");
+            }
+            finally {
+                inflater.end();
+            }
+        }
+
+        bits((int) (checkpoint.bitPosition & 7));
+    }
+
+    /**
+     * Returns the checkpoints recorded so far, in order. The first one is at the start of the stream.
+     *
+     * @return the checkpoints recorded so far
+     */
+    List<Checkpoint> getCheckpoints() {
+        return checkpoints;
+    }
+
+
+    ////////////////
+    // Bit reader //
+    ////////////////
+
+    /**
+     * Loads bytes into the bit buffer until it holds at least 56 bits, or the end of the input is reached.
+     */
+    private void refill() throws IOException {
+        while (bitCount <= 56) {
+            if (inBufferOffset == inBufferLength) {
+                inBufferLength = in.read(inBuffer, 0, inBuffer.length);
+                inBufferOffset = 0;
+                if (inBufferLength <= 0) {
+                    inBufferLength = 0;
+                    return;
+                }
+            }
+            bitBuffer |= (long) (inBuffer[inBufferOffset++] & 0xFF) << bitCount;
+            bitCount += 8;
+            inOffset++;
+        }
+    }
+
+    /**
+     * Consumes and returns the given number of bits, at most 32.
+     */
+    private int bits(int n) throws IOException {
+        if (bitCount < n) {
+            refill();
+            if (bitCount < n)
+                throw new EOFException("Unexpected end of ZLIB input stream");
+        }
+        int value = (int) (bitBuffer & ((1L << n) - 1));
+        bitBuffer >>>= n;
+        bitCount -= n;
+        return value;
+    }
+
+    /**
+     * Skips the bits that remain before the next byte boundary.
+     */
+    private void alignToByte() throws IOException {
+        bits(bitCount & 7);
+    }
+
+    /**
+     * Returns the position in bits in the compressed stream of the next bit to be consumed.
+     */
+    private long getBitPosition() {
+        return 8 * inOffset - bitCount;
+    }
+
+
+    //////////////////
+    // Gzip framing //
+    //////////////////
+
+    /**
+     * Reads the header of a Gzip member.
+     *
+     * @return <code>false</code> if the end of the input was reached or if what follows is not a Gzip member
+     */
+    private boolean readMemberHeader() throws IOException {
+        refill();
+        if (bitCount < 16 || (bitBuffer & 0xFFFF) != 0x8B1F)
+            return false;
+
+        bits(16);
+        if (bits(8) != 8)
+            throw new ZipException("Unsupported compression method");
+        int flags = bits(8);
+        // Modification time, extra flags and OS
+        bits(16);
+        bits(16);
+        bits(16);
+        if ((flags & 4) != 0) {
+            int extraLength = bits(16);
+            for (int i = 0; i < extraLength; i++)
+                bits(8);
+        }
+        // Name and comment
+        for (int flag = 8; flag <= 16; flag <<= 1) {
+            if ((flags & flag) != 0) {
+                while (bits(8) != 0) ;
+            }
+        }
+        // Header CRC
+        if ((flags & 2) != 0)
+            bits(16);
+
+        crc = new CRC32();
+        crcOffset = outOffset;
+        memberOffset = outOffset;
+        historyOffset = outOffset;
+        state = State.BLOCK_HEADER;
+        return true;
+    }
+
+    /**
+     * Reads the trailer of a Gzip member, checking its CRC and size if the member was read from its start.
+     */
+    private void readMemberTrailer() throws IOException {
+        updateCRC();
+        alignToByte();
+        long storedCRC = bits(32) & 0xFFFFFFFFL;
+        long storedSize = bits(32) & 0xFFFFFFFFL;
+        if (crc != null) {
+            if (storedCRC != crc.getValue())
+                throw new ZipException("Corrupt GZIP trailer");
+            if (storedSize != ((outOffset - memberOffset) & 0xFFFFFFFFL))
+                throw new ZipException("Corrupt GZIP trailer");
+        }
+
+        // Garbage that follows the last member is ignored, as GZIPInputStream does
+        if (!readMemberHeader())
+            state = State.END;
+    }
+
+    private void updateCRC() {
+        if (crc != null) {
+            while (crcOffset < outOffset) {
+                int start = (int) crcOffset & BUFFER_MASK;
+                int length = (int) Math.min(outOffset - crcOffset, BUFFER_SIZE - start);
+                crc.update(window, start, length);
+                crcOffset += length;
+            }
+        }
+        else {
+            crcOffset = outOffset;
+        }
+    }
+
+
+    /////////////////////
+    // Deflate decoder //
+    /////////////////////
+
+    /**
+     * Decompresses data until there is as much unread data as the buffer can hold without overwriting the data that
+     * back-references may refer to, or until the end of the stream is reached.
+     */
+    private void inflate() throws IOException {
+        long limit = readOffset + WINDOW_SIZE - MAX_MATCH;
+        while (outOffset < limit) {
+            switch (state) {
+            case BLOCK_HEADER:
+                if (checkpoints != null)
+                    recordCheckpoint();
+                readBlockHeader();
+                break;
+            case STORED:
+                copyStored(limit);
+                break;
+            case COMPRESSED:
+                inflateBlock(limit);
+                break;
+            case MEMBER_TRAILER:
+                readMemberTrailer();
+                break;
+            case END:
+                updateCRC();
+                return;
+            }
+        }
+        updateCRC();
+    }
+
+    private void readBlockHeader() throws IOException {
+        lastBlock = bits(1) == 1;
+        int type = bits(2);
+        switch (type) {
+        case 0:
+            alignToByte();
+            int length = bits(16);
+            if ((length ^ 0xFFFF) != bits(16))
+                throw new ZipException("invalid stored block lengths");
+            storedRemaining = length;
+            state = State.STORED;
+            break;
+        case 1:
+            literals = FIXED_LITERALS;
+            distances = FIXED_DISTANCES;
+            state = State.COMPRESSED;
+            break;
+        case 2:
+            readDynamicTables();
+            literals = dynamicLiterals;
+            distances = dynamicDistances;
+            state = State.COMPRESSED;
+            break;
+        default:
+            throw new ZipException("invalid block type");
+        }
+    }
+
+    private void endBlock() {
+        state = lastBlock ? State.MEMBER_TRAILER : State.BLOCK_HEADER;
+    }
+
+    private void readDynamicTables() throws IOException {
+        int nbLiterals = bits(5) + 257;
+        int nbDistances = bits(5) + 1;
+        int nbCodeLengths = bits(4) + 4;
+        if (nbLiterals > 286 || nbDistances > 30)
+            throw new ZipException("too many length or distance symbols");
+
+        int[] codeLengthLengths = new int[19];
+        for (int i = 0; i < nbCodeLengths; i++)
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        codeLengths.build(codeLengthLengths, 0, 19);
+
+        int total = nbLiterals + nbDistances;
+        int i = 0;
+        while (i < total) {
+            if (bitCount < 32)
+                refill();
+            int symbol = decode(codeLengths);
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+                continue;
+            }
+
+            int length = 0;
+            int repeat;
+            if (symbol == 16) {
+                if (i == 0)
+                    throw new ZipException("invalid bit length repeat");
+                length = lengths[i - 1];
+                repeat = 3 + bits(2);
+            }
+            else if (symbol == 17) {
+                repeat = 3 + bits(3);
+            }
+            else {
+                repeat = 11 + bits(7);
+            }
+            if (i + repeat > total)
+                throw new ZipException("invalid bit length repeat");
+            while (repeat-- > 0)
+                lengths[i++] = length;
+        }
+
+        if (lengths[256] == 0)
+            throw new ZipException("invalid code -- missing end-of-block");
+
+        dynamicLiterals.build(lengths, 0, nbLiterals);
+        dynamicDistances.build(lengths, nbLiterals, nbDistances);
+    }
+
+    private void copyStored(long limit) throws IOException {
+        // Bytes that are already in the bit buffer come first
+        while (storedRemaining > 0 && outOffset < limit && bitCount >= 8) {
+            window[(int) outOffset++ & BUFFER_MASK] = (byte) bits(8);
+            storedRemaining--;
+        }
+
+        while (storedRemaining > 0 && outOffset < limit) {
+            if (inBufferOffset == inBufferLength) {
+                inBufferLength = in.read(inBuffer, 0, inBuffer.length);
+                inBufferOffset = 0;
+                if (inBufferLength <= 0) {
+                    inBufferLength = 0;
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+            }
+            int start = (int) outOffset & BUFFER_MASK;
+            int length = (int) Math.min(Math.min(storedRemaining, limit - outOffset), BUFFER_SIZE - start);
+            length = Math.min(length, inBufferLength - inBufferOffset);
+            System.arraycopy(inBuffer, inBufferOffset, window, start, length);
+            inBufferOffset += length;
+            inOffset += length;
+            outOffset += length;
+            storedRemaining -= length;
+        }
+
+        if (storedRemaining == 0)
+            endBlock();
+    }
+
+    private void inflateBlock(long limit) throws IOException {
+        byte[] window = this.window;
+        while (outOffset < limit) {
+            // Enough bits for a literal/length code, its extra bits, a distance code and its extra bits
+            if (bitCount < 48)
+                refill();
+
+            int symbol = decode(literals);
+            if (symbol < 256) {
+                window[(int) outOffset++ & BUFFER_MASK] = (byte) symbol;
+                continue;
+            }
+            if (symbol == 256) {
+                endBlock();
+                return;
+            }
+
+            symbol -= 257;
+            if (symbol >= 29)
+                throw new ZipException("invalid literal/length code");
+            int length = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+
+            symbol = decode(distances);
+            if (symbol >= 30)
+                throw new ZipException("invalid distance code");
+            int distance = DISTANCE_BASE[symbol] + bits(DISTANCE_EXTRA[symbol]);
+            if (distance > outOffset - historyOffset)
+                throw new ZipException("invalid distance too far back");
+
+            long from = outOffset - distance;
+            for (int i = 0; i < length; i++)
+                window[(int) (outOffset + i) & BUFFER_MASK] = window[(int) (from + i) & BUFFER_MASK];
+            outOffset += length;
+        }
+    }
+
+    /**
+     * Decodes a symbol with the given code, using its lookup table for the codes that are short enough.
+     */
+    private int decode(Huffman huffman) throws IOException {
+        int entry = huffman.table[(int) bitBuffer & ((1 << TABLE_BITS) - 1)];
+        int length = entry & 0xF;
+        if (length != 0 && length <= bitCount) {
+            bitBuffer >>>= length;
+            bitCount -= length;
+            return entry >>> 4;
+        }
+
+        // Codes that are longer than the table's are decoded one bit at a time
+        int code = 0;
+        int first = 0;
+        int index = 0;
+        for (int len = 1; len <= 15; len++) {
+            code |= bits(1);
+            int count = huffman.count[len];
+            if (code - first < count)
+                return huffman.symbols[index + code - first];
+            index += count;
+            first = (first + count) << 1;
+            code <<= 1;
+        }
+        throw new ZipException("invalid code");
+    }
+
+    /**
+     * Records a checkpoint at the deflate block that starts at the current position, if the previous one is far
+     * enough behind.
+     */
+    private void recordCheckpoint() {
+        Checkpoint last = checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1);
+        if (last != null && outOffset - last.offset < span)
+            return;
+
+        int windowLength = (int) Math.min(WINDOW_SIZE, outOffset - historyOffset);
+        byte[] history = new byte[windowLength];
+        for (int i = 0; i < windowLength; i++)
+            history[i] = window[(int) (outOffset - windowLength + i) & BUFFER_MASK];
+
+        byte[] compressedHistory = new byte[0];
+        if (windowLength > 0) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            try {
+                deflater.setInput(history);
+                deflater.finish();
+                byte[] buffer = new byte[windowLength + 64];
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == buffer.length)
+                        buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                    length += deflater.deflate(buffer, length, buffer.length - length);
+                }
+                compressedHistory = Arrays.copyOf(buffer, length);
+            }
+            finally {
+                deflater.end();
+            }
+        }
+
+        checkpoints.add(new Checkpoint(outOffset, getBitPosition(), compressedHistory, windowLength));
+
+        if (checkpoints.size() > MAX_CHECKPOINTS) {
+            // Keeps the first checkpoint and every other one
+            List<Checkpoint> kept = new ArrayList<>(MAX_CHECKPOINTS / 2 + 1);
+            for (int i = 0; i < checkpoints.size(); i += 2)
+                kept.add(checkpoints.get(i));
+            checkpoints.clear();
+            checkpoints.addAll(kept);
+            span *= 2;
+        }
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    /**
+     * Makes sure that there is unread decompressed data, unless the end of the stream was reached.
+     *
+     * @return <code>false</code> if the end of the stream was reached
+     */
+    private boolean fill() throws IOException {
+        while (readOffset == outOffset) {
+            if (state == State.END)
+                return false;
+            inflate();
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return window[(int) readOffset++ & BUFFER_MASK] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+
+        int start = (int) readOffset & BUFFER_MASK;
+        int length = (int) Math.min(Math.min(len, outOffset - readOffset), BUFFER_SIZE - start);
+        System.arraycopy(window, start, b, off, length);
+        readOffset += length;
+        return length;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && fill()) {
+            long length = Math.min(n - skipped, outOffset - readOffset);
+            readOffset += length;
+            skipped += length;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) (outOffset - readOffset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+
+    /**
+     * A canonical Huffman code, with a lookup table for its codes of at most {@link #TABLE_BITS} bits.
+     */
+    private static class Huffman {
+        /** Number of codes of each length */
+        final int[] count = new int[16];
+        /** Symbols ordered by code */
+        final int[] symbols;
+        /**
+         * Symbol and length of the code that starts each sequence of {@link #TABLE_BITS} bits, least significant
+         * bit first, 0 if the code is longer.
+         */
+        final int[] table = new int[1 << TABLE_BITS];
+
+        private final int[] offsets = new int[16];
+
+        Huffman(int maxSymbols) {
+            symbols = new int[maxSymbols];
+        }
+
+        void build(int[] lengths, int offset, int nbSymbols) throws ZipException {
+            Arrays.fill(count, 0);
+            for (int i = 0; i < nbSymbols; i++)
+                count[lengths[offset + i]]++;
+            count[0] = 0;
+
+            int left = 1;
+            for (int len = 1; len <= 15; len++) {
+                left = (left << 1) - count[len];
+                if (left < 0)
+                    throw new ZipException("invalid code lengths set");
+            }
+
+            offsets[1] = 0;
+            for (int len = 1; len < 15; len++)
+                offsets[len + 1] = offsets[len] + count[len];
+            for (int i = 0; i < nbSymbols; i++) {
+                int length = lengths[offset + i];
+                if (length != 0)
+                    symbols[offsets[length]++] = i;
+            }
+
+            Arrays.fill(table, 0);
+            int code = 0;
+            int index = 0;
+            for (int len = 1; len <= TABLE_BITS; len++) {
+                for (int i = 0; i < count[len]; i++) {
+                    int reversed = Integer.reverse(code++) >>> (32 - len);
+                    int entry = symbols[index++] << 4 | len;
+                    for (int j = reversed; j < table.length; j += 1 << len)
+                        table[j] = entry;
+                }
+                code <<= 1;
+            }
+        }
+    }
+}
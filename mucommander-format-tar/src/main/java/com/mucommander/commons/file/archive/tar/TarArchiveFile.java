@@ -45,6 +45,10 @@ import java.io.InputStream;
 public class TarArchiveFile extends AbstractROArchiveFile {
     private static final Logger LOGGER = LoggerFactory.getLogger(TarArchiveFile.class);
 
+    /** The file that holds the archive and that is indexed, possibly compressed, null if it can't be indexed */
+    private AbstractFile indexedFile;
+    private boolean indexedFileResolved;
+
     /**
      * Creates a TarArchiveFile on of the given file.
      *
@@ -55,12 +59,48 @@ public class TarArchiveFile extends AbstractROArchiveFile {
     }
 
 
+    /**
+     * Sets the folder that the indexes of TAR archives are saved to, so that entries can be read at random in archives
+     * browsed in previous sessions without reading the archives again. Indexes are only kept in memory by default,
+     * the bundle's {@link Activator} sets a folder next to the OSGi framework's storage.
+     *
+     * @param folder the folder that indexes are saved to, <code>null</code> for none
+     */
+    public static void setIndexFolder(AbstractFile folder) {
+        TarIndex.setIndexFolder(folder);
+    }
+
+    /**
+     * Returns the file that holds this archive and that can be indexed to read entries at random, <code>null</code>
+     * if there is none.
+     */
+    private synchronized AbstractFile getIndexedFile() {
+        if(!indexedFileResolved) {
+            indexedFile = TarIndex.getIndexedFile(file);
+            indexedFileResolved = true;
+        }
+        return indexedFile;
+    }
+
+
     ////////////////////////////////////////
     // AbstractArchiveFile implementation //
     ////////////////////////////////////////
 
     @Override
     public ArchiveEntryIterator getEntryIterator() throws IOException, UnsupportedFileOperationException {
+        // Index the archive while its entries are read, so that they can then be read without reading the archive
+        // from its start
+        AbstractFile indexedFile = getIndexedFile();
+        if(indexedFile!=null && TarIndex.get(indexedFile)==null) {
+            try {
+                return new TarEntryIterator(new TarIndex.Builder(indexedFile, file));
+            }
+            catch(IOException e) {
+                LOGGER.info("Could not index "+indexedFile+", reading it as is", e);
+            }
+        }
+
         return new TarEntryIterator(new TarArchiveInputStream(getInputStream()));
     }
 
@@ -90,6 +130,15 @@ public class TarArchiveFile extends AbstractROArchiveFile {
             // This is not the one, look for the entry from the beginning of the archive
         }
 
+        // Start reading the archive where the entry is, if it was indexed
+        AbstractFile indexedFile = getIndexedFile();
+        TarIndex index = indexedFile==null?null:TarIndex.get(indexedFile);
+        if(index!=null) {
+            InputStream in = index.getEntryInputStream(indexedFile, entry.getPath(), entry.getSize());
+            if(in!=null)
+                return in;
+        }
+
         TarArchiveInputStream tin = new TarArchiveInputStream(getInputStream());
         TarArchiveEntry tarEntry;
         String targetPath = entry.getPath();
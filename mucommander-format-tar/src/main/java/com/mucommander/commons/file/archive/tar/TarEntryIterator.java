@@ -39,6 +39,9 @@ class TarEntryIterator implements ArchiveEntryIterator {
     /** The current entry, where the TarArchiveInputStream is currently positioned */
     private ArchiveEntry currentEntry;
 
+    /** Builds the index of the archive as entries are read, null if none is built */
+    private TarIndex.Builder indexBuilder;
+
 
     /**
      * Creates a new TarEntryIterator that iterates through the entries of the given {@link TarArchiveInputStream}.
@@ -50,6 +53,18 @@ class TarEntryIterator implements ArchiveEntryIterator {
         this.tin = tin;
     }
 
+    /**
+     * Creates a new TarEntryIterator that iterates through the entries of the archive whose index is being built by
+     * the given builder. The index is complete once all entries have been iterated.
+     *
+     * @param indexBuilder the builder of the archive's index
+     * @throws IOException if an error occurred while fetching the first entry
+     */
+    TarEntryIterator(TarIndex.Builder indexBuilder) throws IOException {
+        this(new TarArchiveInputStream(indexBuilder.getInputStream()));
+        this.indexBuilder = indexBuilder;
+    }
+
     /**
      * Returns the {@link TarArchiveInputStream} instance that was used to create this object.
      *
@@ -97,8 +112,16 @@ class TarEntryIterator implements ArchiveEntryIterator {
     private ArchiveEntry getNextEntry() throws IOException {
         TarArchiveEntry entry = tin.getNextTarEntry();
 
-        if(entry==null)
+        if(entry==null) {
+            if(indexBuilder!=null) {
+                indexBuilder.complete();
+                indexBuilder = null;
+            }
             return null;
+        }
+
+        if(indexBuilder!=null)
+            indexBuilder.addEntry(entry.getName(), !entry.isGNUSparse() && !entry.isStarSparse());
 
         return createArchiveEntry(entry);
     }
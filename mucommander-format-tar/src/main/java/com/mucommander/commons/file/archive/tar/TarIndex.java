@@ -0,0 +1,561 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.tar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntToLongFunction;
+
+import org.apache.tools.bzip2.ParallelCBZip2InputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tukaani.xz.SeekableInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.archive.AbstractArchiveEntryFile;
+import com.mucommander.commons.io.BoundedInputStream;
+import com.mucommander.commons.io.ByteCounter;
+import com.mucommander.commons.io.CounterInputStream;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.io.StreamUtils;
+
+/**
+ * Records where the entries of a TAR archive start in its uncompressed data, and where decompression can start in the
+ * file that holds the archive if it is compressed, so that an entry can be read without decompressing all the entries
+ * that precede it.
+ *
+ * <p>An index is built while the entries of the archive are iterated, when the file that holds the archive can be read
+ * at random: either the TAR file itself, or the file that a Gzip, Bzip2 or XZ archive whose single entry is the TAR
+ * file wraps. Checkpoints are recorded along the way for compressed files: the deflate blocks found every megabyte or
+ * so with the data that precedes them for Gzip (see {@link CheckpointInflater}), and the start of every block for
+ * Bzip2. XZ files need none, as they hold an index of their blocks that {@link SeekableXZInputStream} reads.</p>
+ *
+ * <p>Indexes are kept in memory for the archives that were browsed recently, and saved to the folder set with
+ * {@link #setIndexFolder(AbstractFile)} if any, until the file they were built for changes.</p>
+ */
+class TarIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TarIndex.class);
+
+    /** Compressed files smaller than this are read from their start, which is cheap enough */
+    private final static long MIN_COMPRESSED_SIZE = 1024 * 1024;
+
+    /** Number of indexes kept in memory */
+    private final static int CACHE_CAPACITY = 16;
+
+    /** Number of threads that decode the blocks of Bzip2 archives */
+    private final static int BZIP2_DECOMPRESSION_THREADS = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+
+    /** Identifies the files that indexes are saved to, and the version of their format */
+    private final static int FILE_MAGIC = 0x54415231;
+
+    /** Extension of the files that indexes are saved to */
+    private final static String FILE_EXTENSION = ".tarindex";
+
+    /** Indexes of the archives browsed recently, by URL of the file they were built for */
+    private final static Map<String, SoftReference<TarIndex>> CACHE = new LinkedHashMap<String, SoftReference<TarIndex>>(CACHE_CAPACITY, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SoftReference<TarIndex>> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    /** Folder indexes are saved to, null if they are not */
+    private static AbstractFile indexFolder;
+
+    enum Compression {
+        NONE, GZIP, BZIP2, XZ
+    }
+
+    private final Compression compression;
+
+    /** Size and date of the file the index was built for */
+    private final long fileSize;
+    private final long fileDate;
+
+    /** Offsets of the entries' data in the uncompressed archive, by entry path */
+    private final Map<String, Long> entryOffsets;
+
+    /** Checkpoints of a Gzip file, in order */
+    private final List<CheckpointInflater.Checkpoint> gzipCheckpoints;
+
+    /** Checkpoints of a Bzip2 file, in order */
+    private final List<Bzip2Checkpoint> bzip2Checkpoints;
+
+    /**
+     * The start of a block of a Bzip2 file.
+     */
+    private static class Bzip2Checkpoint {
+        /** Offset in the decompressed data */
+        final long offset;
+        /** Position in bits in the file of the block's magic number */
+        final long bitPosition;
+        /** Block size of the stream the block is part of */
+        final int blockSize100k;
+
+        Bzip2Checkpoint(long offset, long bitPosition, int blockSize100k) {
+            this.offset = offset;
+            this.bitPosition = bitPosition;
+            this.blockSize100k = blockSize100k;
+        }
+    }
+
+    private TarIndex(Compression compression, long fileSize, long fileDate, Map<String, Long> entryOffsets,
+                     List<CheckpointInflater.Checkpoint> gzipCheckpoints, List<Bzip2Checkpoint> bzip2Checkpoints) {
+        this.compression = compression;
+        this.fileSize = fileSize;
+        this.fileDate = fileDate;
+        this.entryOffsets = entryOffsets;
+        this.gzipCheckpoints = gzipCheckpoints;
+        this.bzip2Checkpoints = bzip2Checkpoints;
+    }
+
+    /**
+     * Sets the folder that indexes are saved to, so that they survive the application. Indexes are not saved by
+     * default.
+     *
+     * @param folder the folder that indexes are saved to, <code>null</code> for none
+     */
+    static synchronized void setIndexFolder(AbstractFile folder) {
+        indexFolder = folder;
+    }
+
+    /**
+     * Returns the folder that indexes are saved to, <code>null</code> if they are not.
+     *
+     * @return the folder that indexes are saved to, <code>null</code> if they are not
+     */
+    static synchronized AbstractFile getIndexFolder() {
+        return indexFolder;
+    }
+
+    /**
+     * Returns the file that an index can be built for to read the given TAR file at random: the TAR file itself if it
+     * can be read at random, or the file that holds it compressed if the TAR file is the entry of a Gzip, Bzip2 or XZ
+     * archive whose file can be read at random and is large enough.
+     *
+     * @param tarFile the TAR file
+     * @return the file to build the index for, <code>null</code> if there is none
+     */
+    static AbstractFile getIndexedFile(AbstractFile tarFile) {
+        if (tarFile.isFileOperationSupported(FileOperation.RANDOM_READ_FILE))
+            return tarFile;
+
+        if (!(tarFile instanceof AbstractArchiveEntryFile))
+            return null;
+
+        AbstractFile compressedFile = ((AbstractArchiveEntryFile) tarFile).getArchiveFile().getProxiedFile();
+        if (!compressedFile.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)
+                || compressedFile.getSize() < MIN_COMPRESSED_SIZE)
+            return null;
+
+        try {
+            return getCompression(compressedFile) != Compression.NONE ? compressedFile : null;
+        }
+        catch (IOException e) {
+            LOGGER.debug("Could not read the header of " + compressedFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the compression of the given file, guessed from its magic number.
+     */
+    private static Compression getCompression(AbstractFile file) throws IOException {
+        byte[] header = new byte[6];
+        try (InputStream in = file.getInputStream()) {
+            if (StreamUtils.readUpTo(in, header) < header.length)
+                return Compression.NONE;
+        }
+
+        if ((header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B)
+            return Compression.GZIP;
+        if (header[0] == 'B' && header[1] == 'Z' && header[2] == 'h')
+            return Compression.BZIP2;
+        if ((header[0] & 0xFF) == 0xFD && header[1] == '7' && header[2] == 'z' && header[3] == 'X' && header[4] == 'Z' && header[5] == 0)
+            return Compression.XZ;
+        return Compression.NONE;
+    }
+
+    /**
+     * Returns the index of the given file, if one was built since it last changed.
+     *
+     * @param file the file the index was built for
+     * @return the index of the given file, <code>null</code> if there is none
+     */
+    static TarIndex get(AbstractFile file) {
+        String key = file.getURL().toString(false);
+        TarIndex index;
+        synchronized (CACHE) {
+            SoftReference<TarIndex> reference = CACHE.get(key);
+            index = reference == null ? null : reference.get();
+        }
+
+        if (index == null) {
+            index = load(key);
+            if (index == null)
+                return null;
+            synchronized (CACHE) {
+                CACHE.put(key, new SoftReference<>(index));
+            }
+        }
+
+        return index.fileSize == file.getSize() && index.fileDate == file.getDate() ? index : null;
+    }
+
+    /**
+     * Keeps the given index for the given file, and saves it if indexes are saved.
+     */
+    private static void put(AbstractFile file, TarIndex index) {
+        String key = file.getURL().toString(false);
+        synchronized (CACHE) {
+            CACHE.put(key, new SoftReference<>(index));
+        }
+        save(key, index);
+    }
+
+    /**
+     * Returns a stream to the data of the given entry, starting at the closest checkpoint that precedes it.
+     *
+     * @param file the file the index was built for
+     * @param path the path of the entry in the TAR archive
+     * @param size the size of the entry
+     * @return a stream to the data of the entry, <code>null</code> if the entry is not in the index
+     * @throws IOException if an I/O error occurred
+     */
+    InputStream getEntryInputStream(AbstractFile file, String path, long size) throws IOException {
+        Long offset = entryOffsets.get(path);
+        if (offset == null
+                || (compression == Compression.GZIP && gzipCheckpoints.isEmpty())
+                || (compression == Compression.BZIP2 && bzip2Checkpoints.isEmpty()))
+            return null;
+
+        RandomAccessInputStream rais = file.getRandomAccessInputStream();
+        InputStream in;
+        try {
+            switch (compression) {
+            case GZIP:
+                CheckpointInflater.Checkpoint checkpoint = gzipCheckpoints.get(floor(gzipCheckpoints.size(), i -> gzipCheckpoints.get(i).offset, offset));
+                rais.seek(checkpoint.bitPosition >>> 3);
+                in = new CheckpointInflater(rais, checkpoint);
+                StreamUtils.skipFully(in, offset - checkpoint.offset);
+                break;
+            case BZIP2:
+                Bzip2Checkpoint block = bzip2Checkpoints.get(floor(bzip2Checkpoints.size(), i -> bzip2Checkpoints.get(i).offset, offset));
+                rais.seek(block.bitPosition >>> 3);
+                in = new ParallelCBZip2InputStream(new BufferedInputStream(rais), BZIP2_DECOMPRESSION_THREADS,
+                        block.blockSize100k, (int) (block.bitPosition & 7));
+                StreamUtils.skipFully(in, offset - block.offset);
+                break;
+            case XZ:
+                SeekableXZInputStream xzIn = new SeekableXZInputStream(new SeekableRandomAccessInputStream(rais));
+                xzIn.seek(offset);
+                in = xzIn;
+                break;
+            default:
+                rais.seek(offset);
+                in = rais;
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            rais.close();
+            throw e;
+        }
+
+        return new BoundedInputStream(in, size, false);
+    }
+
+    /**
+     * Returns the index of the last checkpoint at or before the given offset, the first checkpoint being at the start
+     * of the data.
+     */
+    private static int floor(int nbCheckpoints, IntToLongFunction offsets, long offset) {
+        int low = 0;
+        int high = nbCheckpoints - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (offsets.applyAsLong(middle) <= offset)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
+
+    /////////////////
+    // Persistence //
+    /////////////////
+
+    private static AbstractFile getIndexFile(String key) throws IOException {
+        AbstractFile folder = getIndexFolder();
+        if (folder == null)
+            return null;
+
+        try {
+            StringBuilder name = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8)))
+                name.append(String.format("%02x", b & 0xFF));
+            return folder.getDirectChild(name.append(FILE_EXTENSION).toString());
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-1
+            throw new IOException(e);
+        }
+    }
+
+    private static void save(String key, TarIndex index) {
+        try {
+            AbstractFile indexFile = getIndexFile(key);
+            if (indexFile == null)
+                return;
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(indexFile.getOutputStream()))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeUTF(key);
+                out.writeByte(index.compression.ordinal());
+                out.writeLong(index.fileSize);
+                out.writeLong(index.fileDate);
+
+                out.writeInt(index.entryOffsets.size());
+                for (Map.Entry<String, Long> entry : index.entryOffsets.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+
+                out.writeInt(index.gzipCheckpoints.size());
+                for (CheckpointInflater.Checkpoint checkpoint : index.gzipCheckpoints) {
+                    out.writeLong(checkpoint.offset);
+                    out.writeLong(checkpoint.bitPosition);
+                    out.writeInt(checkpoint.windowLength);
+                    out.writeInt(checkpoint.window.length);
+                    out.write(checkpoint.window);
+                }
+
+                out.writeInt(index.bzip2Checkpoints.size());
+                for (Bzip2Checkpoint checkpoint : index.bzip2Checkpoints) {
+                    out.writeLong(checkpoint.offset);
+                    out.writeLong(checkpoint.bitPosition);
+                    out.writeByte(checkpoint.blockSize100k);
+                }
+            }
+        }
+        catch (IOException e) {
+            LOGGER.info("Could not save the index of " + key, e);
+        }
+    }
+
+    private static TarIndex load(String key) {
+        try {
+            AbstractFile indexFile = getIndexFile(key);
+            if (indexFile == null || !indexFile.exists())
+                return null;
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(indexFile.getInputStream()))) {
+                // Files of another format version, or whose name collides with that of another file, are ignored
+                if (in.readInt() != FILE_MAGIC || !in.readUTF().equals(key))
+                    return null;
+
+                Compression compression = Compression.values()[in.readUnsignedByte()];
+                long fileSize = in.readLong();
+                long fileDate = in.readLong();
+
+                int nbEntries = in.readInt();
+                Map<String, Long> entryOffsets = new HashMap<>(2 * nbEntries);
+                for (int i = 0; i < nbEntries; i++)
+                    entryOffsets.put(in.readUTF(), in.readLong());
+
+                int nbCheckpoints = in.readInt();
+                List<CheckpointInflater.Checkpoint> gzipCheckpoints = new ArrayList<>(nbCheckpoints);
+                for (int i = 0; i < nbCheckpoints; i++) {
+                    long offset = in.readLong();
+                    long bitPosition = in.readLong();
+                    int windowLength = in.readInt();
+                    byte[] window = new byte[in.readInt()];
+                    in.readFully(window);
+                    gzipCheckpoints.add(new CheckpointInflater.Checkpoint(offset, bitPosition, window, windowLength));
+                }
+
+                nbCheckpoints = in.readInt();
+                List<Bzip2Checkpoint> bzip2Checkpoints = new ArrayList<>(nbCheckpoints);
+                for (int i = 0; i < nbCheckpoints; i++)
+                    bzip2Checkpoints.add(new Bzip2Checkpoint(in.readLong(), in.readLong(), in.readUnsignedByte()));
+
+                return new TarIndex(compression, fileSize, fileDate, entryOffsets, gzipCheckpoints, bzip2Checkpoints);
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            LOGGER.info("Could not load the index of " + key, e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Builds the index of a file while the entries of the TAR archive it holds are iterated.
+     */
+    static class Builder {
+
+        private final AbstractFile file;
+        private final Compression compression;
+        private final long fileSize;
+        private final long fileDate;
+
+        /** Uncompressed data of the archive */
+        private final InputStream in;
+
+        /** Counts the uncompressed bytes read by the TAR stream */
+        private final ByteCounter counter = new ByteCounter();
+
+        private final Map<String, Long> entryOffsets = new HashMap<>();
+        private CheckpointInflater inflater;
+        private final List<Bzip2Checkpoint> bzip2Checkpoints = new ArrayList<>();
+
+        /**
+         * Creates a builder for the given file, opening the stream that the TAR archive must be read from.
+         *
+         * @param file the file to index, as returned by {@link TarIndex#getIndexedFile(AbstractFile)}
+         * @param tarFile the TAR file
+         * @throws IOException if the file could not be opened
+         */
+        Builder(AbstractFile file, AbstractFile tarFile) throws IOException {
+            this.file = file;
+            this.compression = file == tarFile ? Compression.NONE : getCompression(file);
+            this.fileSize = file.getSize();
+            this.fileDate = file.getDate();
+
+            InputStream uncompressedIn;
+            switch (compression) {
+            case GZIP:
+                uncompressedIn = inflater = new CheckpointInflater(file.getInputStream(), true);
+                break;
+            case BZIP2:
+                InputStream bzipIn = new BufferedInputStream(file.getInputStream());
+                try {
+                    if (bzipIn.read() != 'B' || bzipIn.read() != 'Z')
+                        throw new IOException("Stream is not in the BZip2 format");
+                    ParallelCBZip2InputStream bzip2In = new ParallelCBZip2InputStream(bzipIn, BZIP2_DECOMPRESSION_THREADS, true);
+                    // Positions are relative to the stream that follows the "BZ" magic
+                    bzip2In.setBlockListener((position, offset, blockSize100k) ->
+                        bzip2Checkpoints.add(new Bzip2Checkpoint(offset, position + 16, blockSize100k)));
+                    uncompressedIn = bzip2In;
+                }
+                catch (IOException e) {
+                    bzipIn.close();
+                    throw e;
+                }
+                break;
+            default:
+                // XZ files hold an index of their blocks: the stream of the TAR file is read
+                uncompressedIn = tarFile.getInputStream();
+            }
+
+            CounterInputStream counterIn = new CounterInputStream(uncompressedIn, counter);
+            counterIn.setCountSkippedBytes(true);
+            this.in = counterIn;
+        }
+
+        /**
+         * Returns the uncompressed stream of the TAR archive, that the entries must be read from.
+         *
+         * @return the uncompressed stream of the TAR archive
+         */
+        InputStream getInputStream() {
+            return in;
+        }
+
+        /**
+         * Records the offset of an entry whose header was just read.
+         *
+         * @param path the path of the entry
+         * @param contiguous <code>false</code> if the data of the entry is not stored as is, for sparse files
+         */
+        void addEntry(String path, boolean contiguous) {
+            if (contiguous)
+                entryOffsets.putIfAbsent(path, counter.getByteCount());
+        }
+
+        /**
+         * Builds the index once all the entries have been read, and keeps it for the file.
+         */
+        void complete() {
+            List<CheckpointInflater.Checkpoint> gzipCheckpoints = inflater == null
+                    ? Collections.emptyList() : new ArrayList<>(inflater.getCheckpoints());
+            put(file, new TarIndex(compression, fileSize, fileDate, entryOffsets, gzipCheckpoints, bzip2Checkpoints));
+        }
+    }
+
+
+    /**
+     * Exposes a {@link RandomAccessInputStream} as the <code>SeekableInputStream</code> that
+     * {@link SeekableXZInputStream} reads.
+     */
+    private static class SeekableRandomAccessInputStream extends SeekableInputStream {
+
+        private final RandomAccessInputStream rais;
+
+        private SeekableRandomAccessInputStream(RandomAccessInputStream rais) {
+            this.rais = rais;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return rais.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return rais.read(b, off, len);
+        }
+
+        @Override
+        public long length() throws IOException {
+            return rais.getLength();
+        }
+
+        @Override
+        public long position() throws IOException {
+            return rais.getOffset();
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            rais.seek(pos);
+        }
+
+        @Override
+        public void close() throws IOException {
+            rais.close();
+        }
+    }
+}
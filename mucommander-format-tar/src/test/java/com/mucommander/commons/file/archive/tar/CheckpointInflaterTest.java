@@ -0,0 +1,171 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.tar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.testng.annotations.Test;
+
+/**
+ * This class is a TestNG test case for {@link CheckpointInflater}.
+ */
+public class CheckpointInflaterTest {
+
+    /**
+     * Returns data made of text-like bytes with repetitions, and of random bytes that are stored as is.
+     */
+    private static byte[] createData(int length) {
+        Random random = new Random(length);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; ) {
+            int chunkLength = Math.min(length - i, 1 + random.nextInt(100000));
+            if (random.nextInt(8) == 0) {
+                for (int j = 0; j < chunkLength; j++)
+                    data[i + j] = (byte) random.nextInt();
+            }
+            else {
+                for (int j = 0; j < chunkLength; j++)
+                    data[i + j] = j > 1000 && random.nextInt(4) != 0 ? data[i + j - 1 - random.nextInt(1000)] : (byte) ('a' + random.nextInt(26));
+            }
+            i += chunkLength;
+        }
+        return data;
+    }
+
+    /**
+     * Compresses the given data into a Gzip member, at various compression levels so that blocks of all types occur.
+     */
+    private static void compress(byte[] data, int level, ByteArrayOutputStream bout) throws IOException {
+        GZIPOutputStream out = new GZIPOutputStream(bout) {
+            {
+                def.setLevel(level);
+                def.setStrategy(level == 1 ? Deflater.HUFFMAN_ONLY : Deflater.DEFAULT_STRATEGY);
+            }
+        };
+        out.write(data);
+        out.close();
+    }
+
+    private static byte[] decompress(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7919];
+        int nbRead;
+        while ((nbRead = in.read(buffer)) != -1)
+            bout.write(buffer, 0, nbRead);
+        in.close();
+        return bout.toByteArray();
+    }
+
+    /**
+     * Decompresses a stream made of several members, recording checkpoints, and then decompresses it from each
+     * checkpoint.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCheckpoints() throws IOException {
+        byte[] data1 = createData(5000000);
+        byte[] data2 = createData(3000000);
+        byte[] data3 = createData(10);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        compress(data1, 6, bout);
+        compress(data2, 1, bout);
+        compress(data3, 0, bout);
+        byte[] compressed = bout.toByteArray();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(data1);
+        expected.write(data2);
+        expected.write(data3);
+        byte[] data = expected.toByteArray();
+
+        CheckpointInflater inflater = new CheckpointInflater(new ByteArrayInputStream(compressed), true);
+        assert Arrays.equals(data, decompress(inflater));
+
+        List<CheckpointInflater.Checkpoint> checkpoints = inflater.getCheckpoints();
+        assert checkpoints.size() >= data.length / CheckpointInflater.INITIAL_SPAN;
+        assert checkpoints.get(0).offset == 0;
+
+        for (CheckpointInflater.Checkpoint checkpoint : checkpoints) {
+            ByteArrayInputStream bin = new ByteArrayInputStream(compressed);
+            bin.skip(checkpoint.bitPosition >>> 3);
+            byte[] decompressed = decompress(new CheckpointInflater(bin, checkpoint));
+            assert Arrays.equals(Arrays.copyOfRange(data, (int) checkpoint.offset, data.length), decompressed);
+        }
+    }
+
+    /**
+     * Asserts that the number of checkpoints is bounded, whatever the size of the stream.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testMaxCheckpoints() throws IOException {
+        // Letters that are not repeated within the window, so that blocks are small
+        Random random = new Random(0);
+        byte[] letters = new byte[CheckpointInflater.INITIAL_SPAN];
+        for (int i = 0; i < letters.length; i++)
+            letters[i] = (byte) ('a' + random.nextInt(26));
+
+        int nbSpans = CheckpointInflater.MAX_CHECKPOINTS + 10;
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bout);
+        for (int i = 0; i < nbSpans; i++)
+            out.write(letters);
+        out.close();
+
+        CheckpointInflater inflater = new CheckpointInflater(new ByteArrayInputStream(bout.toByteArray()), true);
+        assert inflater.skip(Long.MAX_VALUE) == (long) nbSpans * letters.length;
+        assert inflater.read() == -1;
+
+        List<CheckpointInflater.Checkpoint> checkpoints = inflater.getCheckpoints();
+        assert checkpoints.size() <= CheckpointInflater.MAX_CHECKPOINTS;
+        assert checkpoints.size() >= nbSpans / 2 - 1;
+    }
+
+    /**
+     * Asserts that a corrupted stream causes an IOException.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCorruptedStream() throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        compress(createData(100000), 6, bout);
+        byte[] compressed = bout.toByteArray();
+        compressed[compressed.length - 6] ^= 1;
+
+        try {
+            decompress(new CheckpointInflater(new ByteArrayInputStream(compressed), false));
+            assert false;
+        }
+        catch (ZipException e) {
+            // Expected
+        }
+    }
+}
@@ -211,6 +211,15 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
     }
 
 
+    /**
+     * Returns <code>true</code> if the zip file has random read access, in which case entries are read from it
+     * independently of each other.
+     */
+    @Override
+    public boolean isConcurrentEntryReadSupported() {
+        return file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE);
+    }
+
     @Override
     public synchronized InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException, UnsupportedFileOperationException {
         // If the underlying AbstractFile has random read access, use our own ZipFile implementation to read the entry
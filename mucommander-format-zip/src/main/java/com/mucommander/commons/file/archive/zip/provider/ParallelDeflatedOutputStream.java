@@ -0,0 +1,275 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.zip.provider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * DeflatedOutputStream that splits the data into blocks which are compressed concurrently by the threads of an
+ * <code>ExecutorService</code>, in the manner of <i>pigz</i>.
+ *
+ * <p>Each block is primed with the last 32 KB of the previous block as preset dictionary, so that compression ratio
+ * is barely affected, and all blocks but the last end with a sync flush so that they end on a byte boundary. The
+ * compressed blocks are written in order and together form a single DEFLATE stream, which any unzipper can inflate.
+ * The CRC is calculated by the thread that writes the data.</p>
+ *
+ * <p>Entries that fit in a single block are compressed by the calling thread, like {@link DeflatedOutputStream}
+ * does.</p>
+ */
+public class ParallelDeflatedOutputStream extends DeflatedOutputStream {
+
+    /** Size of the blocks of uncompressed data that are compressed independently */
+    public final static int BLOCK_SIZE = 131072;
+
+    /** Size of the DEFLATE window, i.e. of the dictionary that blocks are primed with */
+    private final static int DICTIONARY_SIZE = 32768;
+
+    /** Size of the buffer that compressed blocks are deflated to */
+    private final static int OUTPUT_BUFFER_SIZE = 65536;
+
+    /** Compresses the blocks */
+    private final ExecutorService executor;
+
+    /** Compression level of the blocks */
+    private final int level;
+
+    /** Maximum number of blocks being compressed or waiting to be written */
+    private final int maxPendingBlocks;
+
+    /** Blocks being compressed or waiting to be written, in order */
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<Future<byte[]>>();
+
+    /** Deflaters that are not used to compress a block */
+    private final Queue<Deflater> idleDeflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    /** The block being filled */
+    private byte[] block = new byte[BLOCK_SIZE];
+
+    /** Number of bytes in the block being filled */
+    private int blockLength;
+
+    /** The previous block, <code>null</code> if the block being filled is the first one */
+    private byte[] previousBlock;
+
+    /** Uncompressed size of the data written so far */
+    private long totalIn;
+
+    /** Compressed size of the data written so far */
+    private long totalOut;
+
+    /** Whether the entry has been finished */
+    private boolean finished;
+
+
+    /**
+     * Creates a new <code>ParallelDeflatedOutputStream</code> that writes compressed data to the given
+     * <code>OutputStream</code>.
+     *
+     * @param out the OutputStream where the compressed data is sent to
+     * @param deflater the Deflater that compresses the entry if it fits in a single block, reset before first use
+     * @param buf the buffer used to deflate data with the given Deflater
+     * @param level the compression level
+     * @param executor the ExecutorService that compresses the blocks
+     * @param maxPendingBlocks maximum number of blocks being compressed or waiting to be written, limits the memory
+     * used by this stream
+     */
+    public ParallelDeflatedOutputStream(OutputStream out, Deflater deflater, byte buf[], int level, ExecutorService executor, int maxPendingBlocks) {
+        super(out, deflater, buf);
+
+        this.level = level;
+        this.executor = executor;
+        this.maxPendingBlocks = maxPendingBlocks;
+    }
+
+    /**
+     * Queues the current block for compression, after writing the oldest pending block if too many are pending.
+     *
+     * @param last <code>true</code> if this is the last block of the entry
+     * @throws IOException if an error occurred while compressing or writing the oldest pending block
+     */
+    private void submitBlock(boolean last) throws IOException {
+        if (pendingBlocks.size() >= maxPendingBlocks)
+            writeBlock(pendingBlocks.removeFirst());
+
+        final byte[] input = block;
+        final int length = blockLength;
+        final byte[] dictionary = previousBlock;
+        pendingBlocks.addLast(executor.submit(() -> deflateBlock(input, length, dictionary, last)));
+
+        totalIn += length;
+        previousBlock = input;
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+    }
+
+    /**
+     * Compresses the given block. This method is called by the threads of the <code>ExecutorService</code>.
+     *
+     * @param input the block to compress
+     * @param length number of bytes in the block
+     * @param dictionary the previous block, <code>null</code> for the first block
+     * @param last <code>true</code> to finish the DEFLATE stream, <code>false</code> to end the block with a sync flush
+     * @return the compressed block
+     */
+    private byte[] deflateBlock(byte[] input, int length, byte[] dictionary, boolean last) {
+        Deflater blockDeflater = idleDeflaters.poll();
+        if (blockDeflater == null)
+            blockDeflater = new Deflater(level, true);
+        else
+            blockDeflater.reset();
+
+        try {
+            if (dictionary != null)
+                blockDeflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+
+            blockDeflater.setInput(input, 0, length);
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buf = new byte[OUTPUT_BUFFER_SIZE];
+            if (last) {
+                blockDeflater.finish();
+                while (!blockDeflater.finished()) {
+                    int len = blockDeflater.deflate(buf, 0, buf.length);
+                    compressed.write(buf, 0, len);
+                }
+            }
+            else {
+                // A full output buffer means that there may be more to flush
+                int len;
+                do {
+                    len = blockDeflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buf, 0, len);
+                }
+                while (len == buf.length);
+            }
+
+            return compressed.toByteArray();
+        }
+        finally {
+            idleDeflaters.offer(blockDeflater);
+        }
+    }
+
+    /**
+     * Waits for the given block to be compressed and writes it to the underlying <code>OutputStream</code>.
+     *
+     * @param pendingBlock the block to write
+     * @throws IOException if the block could not be compressed or written
+     */
+    private void writeBlock(Future<byte[]> pendingBlock) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = pendingBlock.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+
+        out.write(compressed);
+        totalOut += compressed.length;
+    }
+
+    /**
+     * Cancels the blocks that have not been written and releases the Deflaters used to compress blocks.
+     */
+    private void release() {
+        for (Future<byte[]> pendingBlock : pendingBlocks)
+            pendingBlock.cancel(false);
+        pendingBlocks.clear();
+
+        Deflater idleDeflater;
+        while ((idleDeflater = idleDeflaters.poll()) != null)
+            idleDeflater.end();
+    }
+
+
+    /////////////////////////////////////////
+    // DeflatedOutputStream implementation //
+    /////////////////////////////////////////
+
+    @Override
+    public void finishDeflate() throws IOException {
+        if (finished)
+            return;
+        finished = true;
+
+        try {
+            // The entry fits in a single block, compress it on this thread
+            if (totalIn == 0) {
+                deflater.setInput(block, 0, blockLength);
+                while (!deflater.needsInput()) {
+                    deflate();
+                }
+                super.finishDeflate();
+
+                totalIn = deflater.getBytesRead();
+                totalOut = deflater.getBytesWritten();
+                blockLength = 0;
+                return;
+            }
+
+            submitBlock(true);
+            while (!pendingBlocks.isEmpty())
+                writeBlock(pendingBlocks.removeFirst());
+        }
+        finally {
+            release();
+        }
+    }
+
+    @Override
+    public int getTotalIn() {
+        return (int)(totalIn + blockLength);
+    }
+
+    @Override
+    public int getTotalOut() {
+        return (int)totalOut;
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int length) throws IOException {
+        crc.update(b, offset, length);
+
+        while (length > 0) {
+            int nbBytes = Math.min(length, BLOCK_SIZE - blockLength);
+            System.arraycopy(b, offset, block, blockLength, nbBytes);
+            blockLength += nbBytes;
+            offset += nbBytes;
+            length -= nbBytes;
+
+            if (blockLength == BLOCK_SIZE)
+                submitBlock(false);
+        }
+    }
+}
@@ -25,6 +25,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Vector;
@@ -61,6 +68,10 @@ import java.util.zip.ZipException;
  * </ul>
  * </p>
  *
+ * <p>Entries can be read concurrently: the streams returned by {@link #getInputStream(ZipEntry)} use positional
+ * reads on a <code>FileChannel</code> shared between them if the Zip file is a local file, and otherwise
+ * <code>RandomAccessInputStream</code> instances that are recycled between entries as long as some are being read.</p>
+ *
  * <p>--------------------------------------------------------------------------------------------------------------<br>
  * <br>
  * This class is based off the <code>org.apache.tools.zip</code> package of the <i>Apache Ant</i> project. The Ant
@@ -99,6 +110,21 @@ public class ZipFile implements ZipConstants {
     /** Holds byte buffer instance used to convert short and longs, avoids creating lots of small arrays */
     private ZipBuffer zipBuffer = new ZipBuffer();
 
+    /** Maximum number of RandomAccessInputStream kept for reuse by entry streams */
+    private final static int MAX_IDLE_STREAMS = 4;
+
+    /** The local file that corresponds to the zip file, <code>null</code> if the zip file is not local */
+    private final File localFile;
+
+    /** Number of entry streams currently open */
+    private int nbEntryStreams;
+
+    /** Channel to the local zip file shared by the entry streams, opened as long as entry streams are open */
+    private FileChannel channel;
+
+    /** RandomAccessInputStreams to the zip file that are not used by any entry stream */
+    private final Deque<RandomAccessInputStream> idleStreams = new ArrayDeque<RandomAccessInputStream>();
+
     
     /**
      * Opens the given Zip file and parses information about the entries it contains.
@@ -114,6 +140,9 @@ public class ZipFile implements ZipConstants {
     public ZipFile(AbstractFile f) throws IOException, ZipException, UnsupportedFileOperationException {
         this.file = f;
 
+        Object underlyingFile = f.getUnderlyingFileObject();
+        this.localFile = underlyingFile instanceof File ? (File)underlyingFile : null;
+
         try {
             openRead();
             parseCentralDirectory();
@@ -266,26 +295,124 @@ public class ZipFile implements ZipConstants {
         if (entryInfo == null)
             throw new ZipException("Unknown entry: "+ze.getName());
 
-        openRead();
-        RandomAccessInputStream entryIn = this.rais;
-
-        // If data offset is -1 (not calculated yet), calculate it now
-        if (entryInfo.dataOffset == -1)
-            calculateDataOffset(entryInfo);
-
-        this.rais = null;
-        
-        long start = entryInfo.dataOffset;
-        BoundedInputStream bis = new BoundedInputStream(entryIn, start, ze.getCompressedSize());
-        switch (ze.getMethod()) {
-            case ZipConstants.STORED:
-                return bis;
-            case ZipConstants.DEFLATED:
-                bis.addDummy();
-                return new InflaterInputStream(bis, new Inflater(true));
-            default:
-                throw new ZipException("Found unsupported compression method "
-                                       + ze.getMethod());
+        EntryInputStream bis = localFile != null ? new ChannelEntryInputStream() : new RandomAccessEntryInputStream();
+        try {
+            // If data offset is -1 (not calculated yet), calculate it now
+            if (entryInfo.dataOffset == -1)
+                entryInfo.dataOffset = bis.readDataOffset(entryInfo.headerOffset);
+
+            bis.setRange(entryInfo.dataOffset, ze.getCompressedSize());
+            switch (ze.getMethod()) {
+                case ZipConstants.STORED:
+                    return bis;
+                case ZipConstants.DEFLATED:
+                    bis.addDummy();
+                    return new InflaterInputStream(bis, new Inflater(true));
+                default:
+                    throw new ZipException("Found unsupported compression method "
+                                           + ze.getMethod());
+            }
+        }
+        catch(IOException e) {
+            closeQuietly(bis);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the channel shared by entry streams, opening it if no entry stream is currently open.
+     *
+     * @throws IOException if the channel could not be opened
+     */
+    private synchronized FileChannel acquireChannel() throws IOException {
+        if (channel == null)
+            channel = FileChannel.open(localFile.toPath(), StandardOpenOption.READ);
+
+        nbEntryStreams++;
+        return channel;
+    }
+
+    /**
+     * Replaces the shared channel with a new one if it is the given channel, which was closed because the thread of an
+     * entry stream was interrupted while reading it, and returns the channel entry streams must now use.
+     *
+     * @param closedChannel the channel that was closed
+     * @throws IOException if the channel could not be opened
+     */
+    private synchronized FileChannel reopenChannel(FileChannel closedChannel) throws IOException {
+        if (channel == closedChannel)
+            channel = FileChannel.open(localFile.toPath(), StandardOpenOption.READ);
+
+        return channel;
+    }
+
+    /**
+     * Releases the channel acquired by an entry stream, closing it if no other entry stream uses it.
+     *
+     * @throws IOException if the channel could not be closed
+     */
+    private synchronized void releaseChannel() throws IOException {
+        if (--nbEntryStreams == 0) {
+            try {
+                channel.close();
+            }
+            finally {
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Returns an idle RandomAccessInputStream to the zip file, <code>null</code> if there is none and one has to be
+     * opened. In both cases, the stream must be handed back to {@link #releaseStream(RandomAccessInputStream, boolean)}.
+     */
+    private synchronized RandomAccessInputStream acquireStream() {
+        nbEntryStreams++;
+        return idleStreams.pollFirst();
+    }
+
+    /**
+     * Releases a RandomAccessInputStream acquired by an entry stream, keeping it for other entry streams if some are
+     * still open and the stream is reusable, closing it otherwise. Idle streams are closed when the last entry stream
+     * is closed, not to keep connections to remote files open.
+     *
+     * @param stream the stream to release, <code>null</code> if it could not be opened
+     * @param reusable <code>false</code> if the stream failed and must not be reused
+     * @throws IOException if a stream could not be closed
+     */
+    private void releaseStream(RandomAccessInputStream stream, boolean reusable) throws IOException {
+        RandomAccessInputStream[] streamsToClose;
+        synchronized(this) {
+            if (--nbEntryStreams > 0 && reusable && stream != null && idleStreams.size() < MAX_IDLE_STREAMS) {
+                idleStreams.addFirst(stream);
+                return;
+            }
+
+            if (nbEntryStreams == 0) {
+                streamsToClose = idleStreams.toArray(new RandomAccessInputStream[0]);
+                idleStreams.clear();
+            }
+            else {
+                streamsToClose = new RandomAccessInputStream[0];
+            }
+        }
+
+        try {
+            if (stream != null)
+                stream.close();
+        }
+        finally {
+            for (RandomAccessInputStream idleStream : streamsToClose)
+                closeQuietly(idleStream);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        }
+        catch(IOException e) {
+            LOGGER.debug("failed to close "+closeable, e);
         }
     }
 
@@ -1108,36 +1235,69 @@ public class ZipFile implements ZipConstants {
     ///////////////////
     
     /**
-     * InputStream that delegates requests to the underlying RandomAccessFile, making sure that only bytes from a
-     * certain range can be read.
+     * InputStream that reads the bytes of an entry from a certain range of the zip file. Reads are positional, so
+     * entry streams do not interfere with each other and can be read concurrently.
      */
-    private static class BoundedInputStream extends InputStream {
-
-        private final RandomAccessInputStream rais;
+    private abstract class EntryInputStream extends InputStream {
 
         private long remaining;
         private long loc;
         private boolean addDummyByte = false;
+        private boolean closed;
+
+        /**
+         * Reads up to <code>len</code> bytes at the given position of the zip file.
+         *
+         * @return the number of bytes read, -1 if the end of the file has been reached
+         */
+        protected abstract int read(long position, byte[] b, int off, int len) throws IOException;
+
+        /**
+         * Releases the resources used to read the zip file.
+         */
+        protected abstract void release() throws IOException;
+
+        /**
+         * Reads the lengths of the filename and extra fields of the local file header that starts at the given offset
+         * and returns the offset of the entry's data.
+         */
+        long readDataOffset(long headerOffset) throws IOException {
+            // Skip the following fields:
+            //  local file header signature     4 bytes
+            //  version needed to extract       2 bytes
+            //  general purpose bit flag        2 bytes
+            //  compression method              2 bytes
+            //  last mod file time              2 bytes
+            //  last mod file date              2 bytes
+            //  crc-32                          4 bytes
+            //  compressed size                 4 bytes
+            //  uncompressed size               4 bytes
+            // Total nb of bytes to skip:      26
+            long lengthsOffset = headerOffset + 26;
+
+            // Read the filename length and extra field length fields (2 bytes each)
+            byte[] b = new byte[4];
+            int off = 0;
+            while (off < b.length) {
+                int ret = read(lengthsOffset + off, b, off, b.length - off);
+                if (ret < 0)
+                    throw new EOFException();
+                off += ret;
+            }
+
+            return lengthsOffset + 4 + ZipShort.getValue(b, 0) + ZipShort.getValue(b, 2);
+        }
 
-        BoundedInputStream(RandomAccessInputStream rais, long start, long remaining) {
-            this.rais = rais;
-            this.remaining = remaining;
+        void setRange(long start, long length) {
             loc = start;
+            remaining = length;
         }
 
         @Override
         public int read() throws IOException {
-            if (remaining-- <= 0) {
-                if (addDummyByte) {
-                    addDummyByte = false;
-                    return 0;
-                }
-                return -1;
-            }
-            synchronized (rais) {
-                rais.seek(loc++);
-                return rais.read();
-            }
+            byte[] b = new byte[1];
+            int ret = read(b, 0, 1);
+            return ret == -1 ? -1 : b[0] & 0xFF;
         }
 
         @Override
@@ -1158,11 +1318,7 @@ public class ZipFile implements ZipConstants {
             if (len > remaining) {
                 len = (int) remaining;
             }
-            int ret;
-            synchronized (rais) {
-                rais.seek(loc);
-                ret = rais.read(b, off, len);
-            }
+            int ret = read(loc, b, off, len);
             if (ret > 0) {
                 loc += ret;
                 remaining -= ret;
@@ -1172,7 +1328,10 @@ public class ZipFile implements ZipConstants {
 
         @Override
         public void close() throws IOException {
-            rais.close();
+            if (!closed) {
+                closed = true;
+                release();
+            }
         }
 
         /**
@@ -1183,4 +1342,92 @@ public class ZipFile implements ZipConstants {
         }
     }
 
+    /**
+     * Entry stream that reads a local zip file with a <code>FileChannel</code> shared by all entry streams.
+     *
+     * <p>Interrupting a thread that reads a <code>FileChannel</code> closes the channel, so when another entry stream
+     * gets interrupted, the shared channel is reopened and the read is carried on with the new channel.</p>
+     */
+    private class ChannelEntryInputStream extends EntryInputStream {
+
+        private FileChannel channel;
+
+        ChannelEntryInputStream() throws IOException {
+            this.channel = acquireChannel();
+        }
+
+        @Override
+        protected int read(long position, byte[] b, int off, int len) throws IOException {
+            while (true) {
+                try {
+                    return channel.read(ByteBuffer.wrap(b, off, len), position);
+                }
+                catch (ClosedByInterruptException e) {
+                    // This stream's thread was interrupted
+                    throw e;
+                }
+                catch (ClosedChannelException e) {
+                    channel = reopenChannel(channel);
+                }
+            }
+        }
+
+        @Override
+        protected void release() throws IOException {
+            releaseChannel();
+        }
+    }
+
+    /**
+     * Entry stream that reads the zip file with a <code>RandomAccessInputStream</code> of its own, only seeking when
+     * the stream is not already at the requested position.
+     */
+    private class RandomAccessEntryInputStream extends EntryInputStream {
+
+        private RandomAccessInputStream rais;
+
+        /** Offset of the RandomAccessInputStream, -1 if unknown */
+        private long offset = -1;
+
+        /** Whether the RandomAccessInputStream failed and must not be reused */
+        private boolean failed;
+
+        RandomAccessEntryInputStream() throws IOException, UnsupportedFileOperationException {
+            rais = acquireStream();
+            if (rais == null) {
+                try {
+                    rais = file.getRandomAccessInputStream();
+                }
+                catch(IOException e) {
+                    releaseStream(null, false);
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        protected int read(long position, byte[] b, int off, int len) throws IOException {
+            try {
+                if (offset != position) {
+                    rais.seek(position);
+                    offset = position;
+                }
+
+                int ret = rais.read(b, off, len);
+                if (ret > 0)
+                    offset += ret;
+                return ret;
+            }
+            catch(IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        protected void release() throws IOException {
+            releaseStream(rais, !failed);
+        }
+    }
+
 }
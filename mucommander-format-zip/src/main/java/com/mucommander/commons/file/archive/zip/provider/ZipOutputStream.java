@@ -25,6 +25,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.Deflater;
 import java.util.zip.ZipException;
 
@@ -67,6 +69,12 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     /** Buffer used by Deflater to deflate data */
     protected byte[] deflaterBuf;
 
+    /** Number of threads that compress DEFLATED entries */
+    private int nbThreads = 1;
+
+    /** Compresses blocks of DEFLATED entries if several threads are used, created when first needed */
+    private ExecutorService deflaterExecutor;
+
     /** List of zip entries written so far */
     private Vector<ZipEntry> entries = new Vector<ZipEntry>();
 
@@ -296,7 +304,21 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
             deflater.reset();
             deflater.setLevel(level);
 
-            zeos = new DeflatedOutputStream(out, deflater, deflaterBuf);
+            if (nbThreads > 1) {
+                if (deflaterExecutor == null) {
+                    deflaterExecutor = Executors.newFixedThreadPool(nbThreads, runnable -> {
+                        Thread thread = new Thread(runnable, "ZipOutputStream deflater");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+
+                // Up to 2 blocks per thread are kept in memory, so that threads do not wait for blocks to be written
+                zeos = new ParallelDeflatedOutputStream(out, deflater, deflaterBuf, level, deflaterExecutor, 2 * nbThreads);
+            }
+            else {
+                zeos = new DeflatedOutputStream(out, deflater, deflaterBuf);
+            }
         }
         else {
             zeos = new StoredOutputStream(out);
@@ -333,6 +355,18 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         this.level = level;
     }
 
+    /**
+     * Sets the number of threads that compress subsequent DEFLATED entries. With more than one thread, the data of
+     * each entry is split into blocks that are compressed concurrently, see {@link ParallelDeflatedOutputStream}.
+     *
+     * <p>Default is 1: entries are compressed by the thread that writes them.</p>
+     *
+     * @param nbThreads the number of compression threads
+     */
+    public void setThreads(int nbThreads) {
+        this.nbThreads = Math.max(1, nbThreads);
+    }
+
     /**
      * Sets the default compression method for subsequent entries.
      *
@@ -699,7 +733,15 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      */
     @Override
     public void close() throws IOException {
-        finish();
+        try {
+            finish();
+        }
+        finally {
+            if(deflaterExecutor!=null) {
+                deflaterExecutor.shutdownNow();
+                deflaterExecutor = null;
+            }
+        }
 
         if(deflaterBuf !=null) {         // Only if close() has not already been called already
             BufferPool.releaseByteArray(deflaterBuf);
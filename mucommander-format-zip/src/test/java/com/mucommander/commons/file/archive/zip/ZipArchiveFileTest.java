@@ -17,8 +17,18 @@
 
 package com.mucommander.commons.file.archive.zip;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -29,6 +39,7 @@ import com.mucommander.commons.file.AbstractFileTest;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.archive.AbstractArchiveEntryFile;
+import com.mucommander.commons.io.StreamUtils;
 
 /**
  * An {@link AbstractFileTest} implementation, which performs tests on {@link AbstractArchiveEntryFile}
@@ -122,6 +133,77 @@ public class ZipArchiveFileTest extends AbstractFileTest {
         // the archive file is another instance which isn't aware of the change, because the file date hasn't changed (?).
     }
 
+    /**
+     * Reads several entries of the archive concurrently, each from a different thread, and asserts that their
+     * contents are not mixed up.
+     *
+     * @throws IOException should not happen
+     * @throws NoSuchAlgorithmException should not happen
+     * @throws ExecutionException should not happen
+     * @throws InterruptedException should not happen
+     */
+    public void testConcurrentEntryReads() throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
+        assert tempZipFile.isConcurrentEntryReadSupported();
+
+        int nbEntries = 4;
+        List<AbstractFile> entries = new ArrayList<>();
+        List<String> md5s = new ArrayList<>();
+        for (int i=0; i<nbEntries; i++) {
+            AbstractFile entry = getTemporaryFile();
+            md5s.add(createFile(entry, 100000+i));
+            entries.add(entry);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(nbEntries);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (AbstractFile entry : entries)
+                results.add(executor.submit(() -> calculateMd5(entry)));
+
+            for (int i=0; i<nbEntries; i++)
+                assert md5s.get(i).equals(results.get(i).get());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Interrupts a thread while it reads an entry of the archive, which closes the channel shared by entry streams,
+     * and asserts that an entry that is being read at the same time can still be read entirely.
+     *
+     * @throws IOException should not happen
+     * @throws NoSuchAlgorithmException should not happen
+     * @throws InterruptedException should not happen
+     */
+    public void testInterruptedEntryRead() throws IOException, NoSuchAlgorithmException, InterruptedException {
+        AbstractFile entry1 = getTemporaryFile();
+        String md5 = createFile(entry1, 100000);
+        AbstractFile entry2 = getTemporaryFile();
+        createFile(entry2, 100000);
+
+        try (InputStream in1 = entry1.getInputStream()) {
+            byte[] head = new byte[1000];
+            StreamUtils.readFully(in1, head);
+
+            AtomicBoolean interruptedReadFailed = new AtomicBoolean();
+            Thread reader = new Thread(() -> {
+                Thread.currentThread().interrupt();
+                try (InputStream in2 = entry2.getInputStream()) {
+                    StreamUtils.readFully(in2, new byte[1000]);
+                }
+                catch (IOException e) {
+                    interruptedReadFailed.set(true);
+                }
+            });
+            reader.start();
+            reader.join();
+
+            assert interruptedReadFailed.get();
+            assert md5.equals(calculateMd5(new SequenceInputStream(new ByteArrayInputStream(head), in1)));
+        }
+    }
+
 //    /**
 //     * Tests the Zip32 4GB limit by asserting two things:
 //     * <ul>
@@ -0,0 +1,93 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.zip.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipInputStream;
+
+import org.testng.annotations.Test;
+
+/**
+ * This class is a TestNG test case for {@link ZipOutputStream} that compresses entries using several threads, see
+ * {@link ParallelDeflatedOutputStream}.
+ */
+public class ZipOutputStreamTest {
+
+    /**
+     * Returns compressible data of the given length.
+     */
+    private static byte[] createData(int length) {
+        Random random = new Random(length);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte)('a' + random.nextInt(8));
+        return data;
+    }
+
+    /**
+     * Writes entries that span no, one and several blocks, using several threads, and asserts that
+     * <code>java.util.zip.ZipInputStream</code> reads them back with valid CRCs and sizes.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testParallelDeflate() throws IOException {
+        int[] lengths = {
+            0,
+            1000,
+            ParallelDeflatedOutputStream.BLOCK_SIZE,
+            3 * ParallelDeflatedOutputStream.BLOCK_SIZE,
+            10 * ParallelDeflatedOutputStream.BLOCK_SIZE + 12345
+        };
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ZipOutputStream zout = new ZipOutputStream(bout);
+        zout.setThreads(4);
+        for (int length : lengths) {
+            zout.putNextEntry(new ZipEntry("entry"+length));
+            byte[] data = createData(length);
+            // Write data in chunks that are not aligned on blocks
+            for (int off = 0; off < length; off += 10000)
+                zout.write(data, off, Math.min(10000, length - off));
+        }
+        zout.close();
+
+        try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(bout.toByteArray()))) {
+            for (int length : lengths) {
+                java.util.zip.ZipEntry entry = zin.getNextEntry();
+                assert entry != null;
+                assert ("entry"+length).equals(entry.getName());
+
+                ByteArrayOutputStream entryOut = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int nbRead;
+                while ((nbRead = zin.read(buf)) != -1)
+                    entryOut.write(buf, 0, nbRead);
+
+                assert Arrays.equals(createData(length), entryOut.toByteArray());
+                assert entry.getSize() == length;
+            }
+
+            assert zin.getNextEntry() == null;
+        }
+    }
+}
@@ -64,11 +64,14 @@ public enum MuPreference {
 	WAIT_AFTER_REFRESH(MuPreferences.WAIT_AFTER_REFRESH),
 	PROGRESS_DIALOG_EXPANDED(MuPreferences.PROGRESS_DIALOG_EXPANDED),
 	PROGRESS_DIALOG_CLOSE_WHEN_FINISHED(MuPreferences.PROGRESS_DIALOG_CLOSE_WHEN_FINISHED),
+	TRANSFER_THREADS(MuPreferences.TRANSFER_THREADS),
+	COMPRESSION_THREADS(MuPreferences.COMPRESSION_THREADS),
 	THEME_TYPE(MuPreferences.THEME_TYPE),
 	THEME_NAME(MuPreferences.THEME_NAME),
 	ENABLE_BONJOUR_DISCOVERY(MuPreferences.ENABLE_BONJOUR_DISCOVERY),
 	VIEW_ON_ERROR(MuPreferences.VIEW_ON_ERROR),
 	LIST_HIDDEN_FILES(MuPreferences.LIST_HIDDEN_FILES),
+	FTP_MAX_CONNECTIONS_PER_SERVER(MuPreferences.FTP_MAX_CONNECTIONS_PER_SERVER),
 	SMB_LM_COMPATIBILITY(MuPreferences.SMB_LM_COMPATIBILITY),
 	SMB_USE_EXTENDED_SECURITY(MuPreferences.SMB_USE_EXTENDED_SECURITY),
 	SHOW_TAB_HEADER(MuPreferences.SHOW_SINGLE_TAB_HEADER),
@@ -297,6 +297,21 @@ public class MuPreferences implements MuPreferencesAPI {
 
 
 
+	// - File transfer variables ---------------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section describing the behavior of file transfers. */
+	public static final String  TRANSFER_SECTION                  = "transfer";
+	/** Number of threads that copy or move files concurrently. */
+	public static final String  TRANSFER_THREADS                  = TRANSFER_SECTION + '.' + "threads";
+	/** Default number of threads that copy or move files concurrently. */
+	public static final int     DEFAULT_TRANSFER_THREADS          = 1;
+	/** Number of threads that compress the files added to an archive. */
+	public static final String  COMPRESSION_THREADS               = TRANSFER_SECTION + '.' + "compression_threads";
+	/** Default number of threads that compress the files added to an archive. */
+	public static final int     DEFAULT_COMPRESSION_THREADS       = 1;
+
+
+
 	// - Variables used for themes -------------------------------------------
 	// -----------------------------------------------------------------------
 	/** Section controlling which theme should be applied to muCommander. */
@@ -346,6 +361,10 @@ public class MuPreferences implements MuPreferencesAPI {
 	public static final String LIST_HIDDEN_FILES                  = FTP_SECTION + '.' + "list_hidden_files";
 	/** Default value for {@link #LIST_HIDDEN_FILES}. */
 	public static final boolean DEFAULT_LIST_HIDDEN_FILES         = false;
+	/** Maximum number of simultaneous connections to a same FTP server, which is also the number of parallel transfers with it. */
+	public static final String FTP_MAX_CONNECTIONS_PER_SERVER     = FTP_SECTION + '.' + "max_connections_per_server";
+	/** Default value for {@link #FTP_MAX_CONNECTIONS_PER_SERVER}. */
+	public static final int DEFAULT_FTP_MAX_CONNECTIONS_PER_SERVER = 4;
 
 
 	// - Variables used for SMB ----------------------------------------------
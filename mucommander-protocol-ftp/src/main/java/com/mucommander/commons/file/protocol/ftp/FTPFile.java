@@ -23,14 +23,17 @@ import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.connection.ConnectionHandler;
 import com.mucommander.commons.file.connection.ConnectionHandlerFactory;
 import com.mucommander.commons.file.connection.ConnectionPool;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.file.util.ChildrenChunker;
 import com.mucommander.commons.io.ByteUtils;
 import com.mucommander.commons.io.FilteredOutputStream;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.commons.net.ftp.FTPListParseEngine;
 import org.apache.commons.net.ftp.FTPReply;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +44,7 @@ import java.net.SocketTimeoutException;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Date;
+import java.util.function.Consumer;
 
 
 /**
@@ -96,6 +100,9 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 
     private final static String SEPARATOR = "/";
 
+    /** Number of listing entries parsed at once by {@link #ls(FileFilter, Consumer)} */
+    private final static int PARSE_BATCH_SIZE = 256;
+
     /** Name of the FTP passive mode property */
     public final static String PASSIVE_MODE_PROPERTY_NAME = "passiveMode";
 
@@ -154,10 +161,10 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 
 
     private org.apache.commons.net.ftp.FTPFile getFTPFile(FileURL fileURL) throws IOException {
-        // Todo: this method is very ineffective as it lists the parent directory to retrieve the information about the
-        // requested file to workaround the fact that FTPClient#listFiles follows directories.
-        // => Use the MLST command if supported by the server (use FEAT command to find out if it is supported).
-        // See http://tools.ietf.org/html/draft-ietf-ftpext-mlst-16
+        // Note: if the server supports the MLST command, it is used to retrieve the information about the requested
+        // file. Otherwise, the parent directory is listed to workaround the fact that FTPClient#listFiles follows
+        // directories, which is very ineffective.
+        // See http://tools.ietf.org/html/rfc3659
         FileURL parentURL = fileURL.getParent();
         LOGGER.trace("fileURL={} parent={}", fileURL, parentURL);
 
@@ -172,6 +179,9 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
                 // Makes sure the connection is started, if not starts it
                 connHandler.checkConnection();
 
+                if(connHandler.mlsdSupported)
+                    return mlistFile(connHandler, fileURL);
+
                 // List files contained by this file's parent in order to retrieve the FTPFile instance corresponding
                 // to this file
                 files = listFiles(connHandler, parentURL.getPath());
@@ -209,6 +219,42 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     }
 
 
+    /**
+     * Retrieves the information about the given file using the MLST command, which must be supported by the server.
+     *
+     * @param connHandler the connection handler to use for communicating with the server
+     * @param fileURL the location of the file
+     * @return the file, <code>null</code> if it doesn't exist
+     * @throws IOException if an error occurred while communicating with the server
+     * @throws AuthException if the user is not allowed to access this file
+     */
+    private static org.apache.commons.net.ftp.FTPFile mlistFile(FTPConnectionHandler connHandler, FileURL fileURL) throws IOException, AuthException {
+        try {
+            org.apache.commons.net.ftp.FTPFile file = connHandler.ftpClient.mlistFile(fileURL.getPath());
+            if(file==null) {
+                // Throw an AuthException if the server replied with a credentials error, the file doesn't exist
+                // if it replied with any other error
+                int replyCode = connHandler.ftpClient.getReplyCode();
+                if(replyCode==FTPReply.NEED_PASSWORD || replyCode==FTPReply.NOT_LOGGED_IN)
+                    connHandler.checkServerReply();
+
+                return null;
+            }
+
+            // The name of the file is its path as returned by the server
+            file.setName(fileURL.getFilename());
+
+            return file;
+        }
+        catch(IOException e) {
+            // Checks if the IOException corresponds to a socket error and in that case, closes the connection
+            connHandler.checkSocketException(e);
+
+            // Throw back the IOException
+            throw e;
+        }
+    }
+
     /**
      * Lists and returns the contents of the given path on the server using the given connection handler.
      * The directory contents is listed by issuing a CWD followed by a LIST so after this method is called, the current
@@ -216,13 +262,34 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
      *
      * @param connHandler the connection handler to use for communicating with the server
      * @param absPath absolute path to the directory to list
-     * @return the directory's contents. The returned array may be empty but never null. The array may contain null
-     * individual entries as FTPClient#listFiles's Javadoc mentions.
+     * @return the directory's contents. The returned array may be empty but never null.
      * @throws IOException if an error occurred while communicating with the server
      * @throws AuthException if the user is not allowed to access this directory
      */
     private static org.apache.commons.net.ftp.FTPFile[] listFiles(FTPConnectionHandler connHandler, String absPath) throws IOException, AuthException {
-        org.apache.commons.net.ftp.FTPFile files[];
+        org.apache.commons.net.ftp.FTPFile files[] = initiateListParsing(connHandler, absPath).getFiles();
+
+        if(files==null)     // In some rare conditions (bug) this method can return null
+            return new org.apache.commons.net.ftp.FTPFile[0];
+
+        return files;
+    }
+
+    /**
+     * Lists the contents of the given path on the server using the given connection handler, and returns a parse
+     * engine that turns the listing into <code>FTPFile</code> instances on demand. Like {@link #listFiles}, this method
+     * leaves the current working directory to the specified path.
+     *
+     * <p>The listing is entirely read before this method returns, so the connection handler can be released before
+     * the engine is used.</p>
+     *
+     * @param connHandler the connection handler to use for communicating with the server
+     * @param absPath absolute path to the directory to list
+     * @return an engine that parses the directory's contents
+     * @throws IOException if an error occurred while communicating with the server
+     * @throws AuthException if the user is not allowed to access this directory
+     */
+    private static FTPListParseEngine initiateListParsing(FTPConnectionHandler connHandler, String absPath) throws IOException, AuthException {
         try {
             // Important: the folder is listed by changing the current working directory using the CWD command and then
             // issuing a LIST to list the current directory, instead of issuing a LIST with the path as an argument.
@@ -241,19 +308,21 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             // See:
             // http://www.mucommander.com/forums/viewtopic.php?f=4&t=714
             // http://issues.apache.org/jira/browse/NET-10
+            //
+            // MLSD is used instead of LIST if the server supports it: its listing has a standard format and holds exact
+            // sizes and dates, while the format of LIST listings varies with servers and has to be guessed.
 
             connHandler.ftpClient.changeWorkingDirectory(absPath);
             // Throw an IOException if server replied with an error
             connHandler.checkServerReply();
 
-            files = connHandler.ftpClient.listFiles();
+            FTPListParseEngine engine = connHandler.mlsdSupported
+                    ?connHandler.ftpClient.initiateMListParsing()
+                    :connHandler.ftpClient.initiateListParsing();
             // Throw an IOException if server replied with an error
             connHandler.checkServerReply();
 
-            if(files==null)     // In some rare conditions (bug) this method can return null
-                return new org.apache.commons.net.ftp.FTPFile[0];
-
-            return files;
+            return engine;
         }
         // This exception is not an IOException and needs to be caught and thrown back as an IOException
         catch(org.apache.commons.net.ftp.parser.ParserInitializationException e) {
@@ -491,21 +560,11 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         return new FTPOutputStream(true);
     }
 
-    /**
-     * Always throws an {@link UnsupportedFileOperationException}: random read access is not available.
-     *
-     * @throws UnsupportedFileOperationException always
-     */
     @Override
-    @UnsupportedFileOperation
-    public RandomAccessInputStream getRandomAccessInputStream() throws UnsupportedFileOperationException {
-        throw new UnsupportedFileOperationException(FileOperation.RANDOM_READ_FILE);
+    public RandomAccessInputStream getRandomAccessInputStream() throws IOException {
+        return new FTPRandomAccessInputStream();
     }
 
-//    public RandomAccessInputStream getRandomAccessInputStream() throws IOException {
-//        return new FTPRandomAccessInputStream();
-//    }
-
     /**
      * Always throws an {@link UnsupportedFileOperationException}: random write access is not available.
      *
@@ -568,33 +627,14 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             return new AbstractFile[] {};
 
         AbstractFile children[] = new AbstractFile[files.length];
-        AbstractFile child;
-        FileURL childURL;
-        String childName;
         int nbFiles = files.length;
         int fileCount = 0;
-        String parentPath = fileURL.getPath();
-        if(!parentPath.endsWith(SEPARATOR))
-            parentPath += SEPARATOR;
+        String parentPath = getParentPath();
 
         for(int i=0; i<nbFiles; i++) {
-            if(files[i]==null)
-                continue;
-
-            childName = files[i].getName();
-            if(childName.equals(".") || childName.equals(".."))
-                continue;
-
-            // Note: properties and credentials are cloned for every children's url
-            childURL = (FileURL)fileURL.clone();
-            childURL.setPath(parentPath+childName);
-
-            // Discard '.' and '..' files
-            if(childName.equals(".") || childName.equals(".."))
-                continue;
-
-            child = FileFactory.getFile(childURL, this, Collections.singletonMap("parentFtpFile", files[i]));
-            children[fileCount++] = child;
+            AbstractFile child = createChild(parentPath, files[i]);
+            if(child!=null)
+                children[fileCount++] = child;
         }
 
         // Create new array of the exact file count
@@ -607,6 +647,96 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         return children;
     }
 
+    /**
+     * Parses the listing in batches of {@link #PARSE_BATCH_SIZE} entries, so that the first children are passed to the
+     * consumer before the whole listing has been parsed and their files created.
+     */
+    @Override
+    public void ls(FileFilter filter, Consumer<AbstractFile[]> chunkConsumer) throws IOException {
+        // Retrieve a ConnectionHandler and lock it
+        FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(this, fileURL, true);
+        FTPListParseEngine engine;
+        try {
+            // Makes sure the connection is started, if not starts it
+            connHandler.checkConnection();
+
+            engine = initiateListParsing(connHandler, absPath);
+        }
+        finally {
+            // Release the lock on the ConnectionHandler
+            connHandler.releaseLock();
+        }
+
+        ChildrenChunker chunker = new ChildrenChunker(filter, chunkConsumer);
+        String parentPath = getParentPath();
+        while(engine.hasNext()) {
+            for(org.apache.commons.net.ftp.FTPFile file : engine.getNext(PARSE_BATCH_SIZE)) {
+                AbstractFile child = createChild(parentPath, file);
+                if(child!=null)
+                    chunker.add(child);
+            }
+        }
+        chunker.flush();
+    }
+
+    /**
+     * Returns the path of this file, with a trailing separator.
+     */
+    private String getParentPath() {
+        String parentPath = fileURL.getPath();
+        if(!parentPath.endsWith(SEPARATOR))
+            parentPath += SEPARATOR;
+        return parentPath;
+    }
+
+    /**
+     * Creates a child of this file for the given listing entry.
+     *
+     * @param parentPath the path of this file, with a trailing separator
+     * @param file the listing entry, may be <code>null</code>
+     * @return the child, <code>null</code> if the entry is <code>null</code>, '.' or '..'
+     * @throws IOException if the child could not be created
+     */
+    private AbstractFile createChild(String parentPath, org.apache.commons.net.ftp.FTPFile file) throws IOException {
+        if(file==null)
+            return null;
+
+        // Discard '.' and '..' files
+        String childName = file.getName();
+        if(childName.equals(".") || childName.equals(".."))
+            return null;
+
+        // Discard the entries of MLSD listings that correspond to the listed directory and its parent, whatever their
+        // name: they are reported as directories by the parser
+        if(isCurrentOrParentDirectoryEntry(file))
+            return null;
+
+        // Note: properties and credentials are cloned for every children's url
+        FileURL childURL = (FileURL)fileURL.clone();
+        childURL.setPath(parentPath+childName);
+
+        return FileFactory.getFile(childURL, this, Collections.singletonMap("parentFtpFile", file));
+    }
+
+
+    /**
+     * Returns <code>true</code> if the given entry of an MLSD listing is the listed directory itself or its parent,
+     * i.e. if its type fact is <code>cdir</code> or <code>pdir</code>. Entries of LIST listings have no facts.
+     */
+    private static boolean isCurrentOrParentDirectoryEntry(org.apache.commons.net.ftp.FTPFile file) {
+        String rawListing = file.getRawListing();
+        if(rawListing==null)
+            return false;
+
+        // Facts are separated from the name by a space, and each fact is terminated by a semicolon
+        int factsEnd = rawListing.indexOf(' ');
+        if(factsEnd==-1)
+            return false;
+
+        String facts = ";"+rawListing.substring(0, factsEnd).toLowerCase();
+        return facts.contains(";type=cdir;") || facts.contains(";type=pdir;");
+    }
+
 
     @Override
     public void mkdir() throws IOException {
@@ -904,11 +1034,19 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 //        }
 //    }
 
+    /**
+     * Reads the file from a given offset, resuming the transfer with the REST command. The stream holds a connection
+     * until it is closed: if the transfer is not finished by then, the connection is closed as the transfer cannot be
+     * interrupted reliably.
+     */
     private class FTPInputStream extends FilterInputStream {
 
         private FTPConnectionHandler connHandler;
         private boolean isClosed;
 
+        /** True once the end of the file has been reached, i.e. the transfer is finished */
+        private boolean isEOF;
+
         private FTPInputStream(long skipBytes) throws IOException {
             super(null);
 
@@ -946,53 +1084,84 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             }
         }
 
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+
+            if(read==-1)
+                isEOF = true;
+
+            return read;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            int nbRead = super.read(b, off, len);
+
+            if(nbRead==-1)
+                isEOF = true;
+
+            return nbRead;
+        }
+
         @Override
         public void close() throws IOException {
             // Make sure this method is only executed once, otherwise FTPClient#completePendingCommand() would lock
             if(isClosed)
                 return;
 
-            // we need to refresh the file after an update
-            // otherwise the displayed size of archive files is incorrect
-            file = getFTPFile(getURL());
             isClosed = true;
 
             try {
-                super.close();
+                if(isEOF) {
+                    super.close();
 
-                LOGGER.info("complete pending commands");
-                connHandler.ftpClient.completePendingCommand();
-                LOGGER.info("commands completed");
-
-                // Todo: An IOException will be thrown by completePendingCommand if the transfer has not finished before calling close.
-                // An 'abort' command should be issued to the server before closing if the transfer is not finished yet.
-                // Currently in that case (transfer not finished) the whole connection has to be re-established (bad!).
-                // FTPClient#abort() is difficult to use to say the least. This post gives some insight: http://mail-archives.apache.org/mod_mbox/commons-user/200604.mbox/%3c78A73ABD8DB470439179DB682EA990B3025B87DF@mtlex02.NEXXLINK.INT%3e
+                    LOGGER.trace("complete pending commands");
+                    connHandler.ftpClient.completePendingCommand();
+                    LOGGER.trace("commands completed");
+                }
+                else {
+                    // The transfer is not finished: completePendingCommand would fail or block until the server has
+                    // sent the rest of the file, and FTPClient#abort() is not handled consistently by servers.
+                    // The connection is closed instead, after the data connection so that the server does not wait
+                    // for the transfer to finish, and re-established the next time it is needed.
+                    LOGGER.trace("transfer not finished, closing connection");
+                    try { super.close(); }
+                    catch(IOException e) {}
+                    connHandler.closeConnection();
+                }
             }
             catch(IOException e) {
                 LOGGER.info("exception in completePendingCommands()", e);
 
                 // Checks if the IOException corresponds to a socket error and in that case, closes the connection
                 connHandler.checkSocketException(e);
-
-                // Do not re-throw the exception because an IOException will be thrown if close is called before
-                // the transfer is finished (see above) which is pseudo-normal behavior (though sub-optimal).
-//                // Re-throw IOException
-//                throw e;
             }
             finally {
                 // Release the lock on the ConnectionHandler
                 connHandler.releaseLock();
             }
+
+            // we need to refresh the file after an update
+            // otherwise the displayed size of archive files is incorrect
+            // Note: this is done once the connection has been released, as another one may not be available
+            file = getFTPFile(getURL());
         }
     }
 
 
-    // This class works but because of the bug in FTPInputStream#close() which fails to interrupt an ongoing transfer
-    // gracefully, seek() will re-establish the FTP connection each time it is called, which is definitely not acceptable.
-    // Therefore, this class cannot be used at the moment.
+    /**
+     * FTPRandomAccessInputStream extends RandomAccessInputStream to provide random read access to an FTPFile.
+     *
+     * <p>An ongoing transfer cannot be interrupted without closing its connection, see {@link FTPInputStream}: seeking
+     * a short distance forward consumes the data of the current transfer, seeking elsewhere restarts the transfer at
+     * the new offset on a new connection.</p>
+     */
     private class FTPRandomAccessInputStream extends RandomAccessInputStream {
 
+        /** Seeking forward up to this number of bytes reads them rather than restarting the transfer at the new offset */
+        private final static int MAX_SKIP = 256 * 1024;
+
         private FTPInputStream in;
         private long offset;
 
@@ -1029,6 +1198,22 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         }
 
         public void seek(final long offset) throws IOException {
+            if(offset==this.offset)
+                return;
+
+            if(offset>this.offset && offset-this.offset<=MAX_SKIP) {
+                byte skipBuffer[] = new byte[(int)(offset-this.offset)];
+                int nbSkipped = 0;
+                int nbRead;
+                while(nbSkipped<skipBuffer.length && (nbRead=in.read(skipBuffer, nbSkipped, skipBuffer.length-nbSkipped))!=-1)
+                    nbSkipped += nbRead;
+
+                this.offset += nbSkipped;
+                if(this.offset==offset)
+                    return;
+                // The end of the file was reached before the offset, restart the transfer at the offset like any seek
+            }
+
             try {
                 in.close();
             }
@@ -1139,6 +1324,9 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         /** False if SITE CHMOD command is not supported by the remote server (once tried and failed) */
         private boolean chmodCommandSupported = true;
 
+        /** True if the remote server supports the MLST and MLSD commands, as advertised by the FEAT command */
+        private boolean mlsdSupported;
+
         /** Controls how ofter should keepAlive() be called by ConnectionPool */
         private final static long KEEP_ALIVE_PERIOD = 60;
 
@@ -1307,6 +1495,10 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 	                // FTP server: some servers will choose to show them, some will not. This behavior is usually a
 	                // configuration setting of the FTP server.
 	                ftpClient.setListHiddenFiles(FTPProtocolProvider.getForceHiddenFilesListing());
+
+	                // Use MLST and MLSD to retrieve file information and list directories if the server supports them
+	                mlsdSupported = ftpClient.hasFeature("MLST");
+	                LOGGER.debug("mlsdSupported={}", mlsdSupported);
 	
 	                if(encoding.equalsIgnoreCase("UTF-8")) {
 	                    // This command enables UTF8 on the remote server... but only a few FTP servers currently support this command
@@ -23,6 +23,8 @@ import java.util.Map;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.connection.ConnectionPool;
+import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.protocol.ProtocolProvider;
 
 /**
@@ -67,6 +69,32 @@ public class FTPProtocolProvider implements ProtocolProvider {
         return forceHiddenFilesListing;
     }
 
+    /**
+     * Sets the maximum number of simultaneous connections to a same FTP server with the same credentials. Each
+     * connection carries a single transfer at a time, so this is also the number of files, or segments of a large
+     * file, that can be transferred in parallel with a server.
+     * <p>
+     * The limit is {@link ConnectionPool#DEFAULT_MAX_CONNECTIONS_PER_REALM} by default, muCommander sets it at startup
+     * from the <code>ftp.max_connections_per_server</code> preference. It should not exceed the number of connections
+     * the servers accept per user, connections above it would be refused.
+     * </p>
+     *
+     * @param maxConnections the maximum number of simultaneous connections per server, must be at least 1
+     */
+    public static void setMaxConnectionsPerServer(int maxConnections) {
+        ConnectionPool.setMaxConnectionsPerRealm(FileProtocols.FTP, maxConnections);
+    }
+
+    /**
+     * Returns the maximum number of simultaneous connections to a same FTP server with the same credentials.
+     *
+     * @return the maximum number of simultaneous connections per server
+     * @see #setMaxConnectionsPerServer(int)
+     */
+    public static int getMaxConnectionsPerServer() {
+        return ConnectionPool.getMaxConnectionsPerRealm(FileProtocols.FTP);
+    }
+
 
     /////////////////////////////////////
     // ProtocolProvider Implementation //
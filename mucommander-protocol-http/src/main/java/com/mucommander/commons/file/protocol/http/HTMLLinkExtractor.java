@@ -0,0 +1,450 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.protocol.http;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the links of an HTML/XHTML document as it is read, so that the first links are returned before the whole
+ * document has been received.
+ *
+ * <p>The values of the <code>href</code> and <code>src</code> attributes of all tags are returned as links. When the
+ * document is a directory listing, the size and date of the files are also extracted from the text that follows the
+ * link, for the listing formats of the Apache and nginx <i>autoindex</i> modules. The XML listings returned by
+ * Amazon S3 (<code>ListBucketResult</code>) are also recognized.</p>
+ *
+ * <p>The document is not validated in any way: this class never fails on malformed documents, it extracts what it
+ * can.</p>
+ */
+class HTMLLinkExtractor {
+
+    /** Size of the buffer the document is read with */
+    private final static int BUFFER_SIZE = 8192;
+
+    /** Maximum length of the text following a link that is searched for a size and a date */
+    private final static int MAX_TRAILING_TEXT_LENGTH = 256;
+
+    /** Matches the value of the href and src attributes of a tag, quoted or not */
+    private final static Pattern LINK_ATTRIBUTE_PATTERN = Pattern.compile("(?i)\\b(?:href|src)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+))");
+
+    /** Matches the date and size that follow the links of autoindex listings, for instance
+     * <code>2021-03-04 12:34  1.2K</code> (Apache) or <code>04-Mar-2021 12:34     1234</code> (nginx) */
+    private final static Pattern LISTING_ATTRIBUTES_PATTERN = Pattern.compile("^\\s*(\\d{4}-\\d{2}-\\d{2}|\\d{2}-[A-Za-z]{3}-\\d{4}) (\\d{2}:\\d{2}(?::\\d{2})?)\\s+(-|\\d+(?:\\.\\d+)?[KMGTP]?)(?:\\s|$)");
+
+    private final static DateTimeFormatter ISO_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm[:ss]", Locale.ENGLISH);
+
+    private final static DateTimeFormatter DAY_MONTH_YEAR_DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MMM-yyyy HH:mm[:ss]", Locale.ENGLISH);
+
+    /**
+     * A link found in the document, with the attributes of the file it points to if they are known.
+     */
+    static class Link {
+
+        /** The link, relative to the document or absolute */
+        final String link;
+
+        /** Size of the file in bytes, <code>-1</code> if unknown */
+        final long size;
+
+        /** Date of the file in milliseconds since the epoch, <code>0</code> if unknown */
+        final long date;
+
+        /** True if the link is to a directory, only meaningful if the attributes are known */
+        final boolean isDirectory;
+
+        Link(String link) {
+            this(link, -1, 0, false);
+        }
+
+        Link(String link, long size, long date, boolean isDirectory) {
+            this.link = link;
+            this.size = size;
+            this.date = date;
+            this.isDirectory = isDirectory;
+        }
+
+        /**
+         * Returns <code>true</code> if the size and date of the file were found in the document.
+         */
+        boolean hasAttributes() {
+            return date!=0;
+        }
+    }
+
+    private final Reader reader;
+    private final char buffer[] = new char[BUFFER_SIZE];
+    private int bufferPos;
+    private int bufferLength;
+
+    /** Links that have been extracted but not returned yet */
+    private final Deque<Link> links = new ArrayDeque<Link>();
+
+    /** The link of the last anchor, whose size and date may follow, <code>null</code> if there is none */
+    private String pendingLink;
+
+    /** True once the last anchor has been closed */
+    private boolean pendingLinkClosed;
+
+    /** The text that follows the last anchor */
+    private final StringBuilder trailingText = new StringBuilder();
+
+    /** Text of the current element, used for XML listings */
+    private final StringBuilder elementText = new StringBuilder();
+
+    /** Attributes of the current S3 object, when parsing an XML listing */
+    private String objectKey;
+    private long objectSize = -1;
+    private long objectDate;
+
+    /** True while in a CommonPrefixes element of an XML listing */
+    private boolean inCommonPrefixes;
+
+    /**
+     * Creates a new extractor that reads the document from the given reader. The reader is not closed by this class.
+     *
+     * @param reader the reader to read the document from
+     */
+    HTMLLinkExtractor(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Returns the next link of the document, reading the document until one is found.
+     *
+     * @return the next link, <code>null</code> if the end of the document has been reached
+     * @throws IOException if an error occurred while reading the document
+     */
+    Link next() throws IOException {
+        while(links.isEmpty()) {
+            int c = read();
+            if(c==-1) {
+                flushPendingLink();
+                break;
+            }
+
+            if(c=='<')
+                readMarkup();
+            else
+                readText((char)c);
+        }
+
+        return links.poll();
+    }
+
+    private int read() throws IOException {
+        if(bufferPos==bufferLength) {
+            bufferLength = reader.read(buffer, 0, buffer.length);
+            bufferPos = 0;
+            if(bufferLength<=0) {
+                bufferLength = 0;
+                return -1;
+            }
+        }
+
+        return buffer[bufferPos++];
+    }
+
+    /**
+     * Reads text up to the next markup.
+     */
+    private void readText(char first) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append(first);
+
+        int c;
+        while((c=read())!=-1 && c!='<')
+            text.append((char)c);
+
+        handleText(decodeEntities(text.toString()));
+
+        if(c=='<')
+            readMarkup();
+    }
+
+    /**
+     * Reads a tag, a comment or a declaration, the leading '&lt;' having been read.
+     */
+    private void readMarkup() throws IOException {
+        StringBuilder tag = new StringBuilder();
+        char quote = 0;
+        int c;
+        while((c=read())!=-1) {
+            if(quote!=0) {
+                if(c==quote)
+                    quote = 0;
+            }
+            else if(c=='"' || c=='\'') {
+                // Comments may contain unbalanced quotes
+                if(!(tag.length()>=3 && tag.charAt(0)=='!' && tag.charAt(1)=='-' && tag.charAt(2)=='-'))
+                    quote = (char)c;
+            }
+            else if(c=='>') {
+                // Comments end with '-->' only
+                if(tag.length()<3 || tag.charAt(0)!='!' || tag.charAt(1)!='-' || tag.charAt(2)!='-' || (tag.length()>=5 && tag.charAt(tag.length()-1)=='-' && tag.charAt(tag.length()-2)=='-'))
+                    break;
+            }
+
+            tag.append((char)c);
+        }
+
+        if(tag.length()==0 || tag.charAt(0)=='!' || tag.charAt(0)=='?')
+            return;
+
+        handleTag(tag.toString());
+    }
+
+    private void handleTag(String tag) {
+        boolean isEndTag = tag.charAt(0)=='/';
+        int nameStart = isEndTag?1:0;
+        int nameEnd = nameStart;
+        while(nameEnd<tag.length() && !Character.isWhitespace(tag.charAt(nameEnd)) && tag.charAt(nameEnd)!='/')
+            nameEnd++;
+        String name = tag.substring(nameStart, nameEnd);
+
+        if(handleListBucketResultTag(name, isEndTag))
+            return;
+
+        if(isEndTag) {
+            if(name.equalsIgnoreCase("a"))
+                pendingLinkClosed = true;
+            else if(isRowEnd(name))
+                flushPendingLink();
+            else
+                appendTrailingText(" ");
+
+            return;
+        }
+
+        if(isRowEnd(name) || name.equalsIgnoreCase("a"))
+            flushPendingLink();
+        else
+            appendTrailingText(" ");
+
+        Matcher matcher = LINK_ATTRIBUTE_PATTERN.matcher(tag);
+        while(matcher.find()) {
+            String link = matcher.group(1)!=null?matcher.group(1):matcher.group(2)!=null?matcher.group(2):matcher.group(3);
+            link = decodeEntities(link.trim());
+
+            // The size and date of a file of a directory listing follow the anchor that links to it
+            if(name.equalsIgnoreCase("a") && pendingLink==null) {
+                pendingLink = link;
+                pendingLinkClosed = false;
+                trailingText.setLength(0);
+            }
+            else {
+                links.add(new Link(link));
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given tag ends the row of a directory listing.
+     */
+    private static boolean isRowEnd(String name) {
+        return name.equalsIgnoreCase("tr") || name.equalsIgnoreCase("br") || name.equalsIgnoreCase("pre")
+            || name.equalsIgnoreCase("table") || name.equalsIgnoreCase("hr") || name.equalsIgnoreCase("li");
+    }
+
+    private void handleText(String text) {
+        elementText.append(text);
+
+        if(pendingLink==null || !pendingLinkClosed)
+            return;
+
+        // Rows of preformatted listings end with a new line
+        int newLine = text.indexOf('\n');
+        if(newLine==-1) {
+            appendTrailingText(text);
+        }
+        else {
+            appendTrailingText(text.substring(0, newLine));
+            flushPendingLink();
+        }
+    }
+
+    private void appendTrailingText(String text) {
+        if(pendingLink==null || !pendingLinkClosed)
+            return;
+
+        trailingText.append(text);
+        if(trailingText.length()>=MAX_TRAILING_TEXT_LENGTH)
+            flushPendingLink();
+    }
+
+    /**
+     * Adds the pending link to the extracted links, with the size and date found in the text that follows it if any.
+     */
+    private void flushPendingLink() {
+        if(pendingLink==null)
+            return;
+
+        Link link = null;
+        Matcher matcher = LISTING_ATTRIBUTES_PATTERN.matcher(trailingText);
+        if(matcher.find()) {
+            long date = parseDate(matcher.group(1)+" "+matcher.group(2));
+            if(date!=0) {
+                String size = matcher.group(3);
+                boolean isDirectory = size.equals("-") || pendingLink.endsWith("/");
+                link = new Link(pendingLink, isDirectory?0:parseSize(size), date, isDirectory);
+            }
+        }
+
+        links.add(link==null?new Link(pendingLink):link);
+
+        pendingLink = null;
+        trailingText.setLength(0);
+    }
+
+    /**
+     * Parses the date of an autoindex listing. Listings show dates in the time zone of the server without telling it,
+     * the local time zone is assumed like it is for FTP listings.
+     *
+     * @return the date in milliseconds since the epoch, <code>0</code> if it could not be parsed
+     */
+    private static long parseDate(String date) {
+        try {
+            DateTimeFormatter format = Character.isLetter(date.charAt(3))?DAY_MONTH_YEAR_DATE_FORMAT:ISO_DATE_FORMAT;
+            return LocalDateTime.parse(date, format).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        catch(DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Parses the size of an autoindex listing.
+     *
+     * @return the size in bytes, <code>-1</code> if it is in kilobytes, megabytes... as it is then rounded and the
+     * exact size is unknown
+     */
+    private static long parseSize(String size) {
+        if(!Character.isDigit(size.charAt(size.length()-1)))
+            return -1;
+
+        return Long.parseLong(size);
+    }
+
+
+    ////////////////////////////////
+    // Amazon S3 ListBucketResult //
+    ////////////////////////////////
+
+    /**
+     * Handles the tags of an XML S3 listing, which lists the keys of the objects of a bucket in
+     * <code>Contents</code> elements and the common prefixes of the keys in <code>CommonPrefixes</code> elements.
+     *
+     * @return <code>true</code> if the tag is one of those of a listing
+     */
+    private boolean handleListBucketResultTag(String name, boolean isEndTag) {
+        if(!isEndTag) {
+            if(name.equals("CommonPrefixes"))
+                inCommonPrefixes = true;
+            elementText.setLength(0);
+
+            return name.equals("Contents") || name.equals("CommonPrefixes") || name.equals("Key")
+                || name.equals("LastModified") || name.equals("Size") || name.equals("Prefix");
+        }
+
+        String text = elementText.toString().trim();
+        elementText.setLength(0);
+
+        switch(name) {
+            case "Key":
+                objectKey = text;
+                return true;
+            case "LastModified":
+                try { objectDate = Instant.parse(text).toEpochMilli(); }
+                catch(DateTimeParseException e) { objectDate = 0; }
+                return true;
+            case "Size":
+                try { objectSize = Long.parseLong(text); }
+                catch(NumberFormatException e) { objectSize = -1; }
+                return true;
+            case "Contents":
+                if(objectKey!=null) {
+                    boolean isDirectory = objectKey.endsWith("/");
+                    links.add(objectDate==0?new Link(encodeKey(objectKey)):new Link(encodeKey(objectKey), isDirectory?0:objectSize, objectDate, isDirectory));
+                }
+                objectKey = null;
+                objectSize = -1;
+                objectDate = 0;
+                return true;
+            case "Prefix":
+                // The Prefix element of the listing itself is not a child
+                if(inCommonPrefixes && !text.isEmpty())
+                    links.add(new Link(encodeKey(text), 0, System.currentTimeMillis(), true));
+                return true;
+            case "CommonPrefixes":
+                inCommonPrefixes = false;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Encodes the given S3 key so that it can be used as a relative URL, keeping its separators.
+     */
+    private static String encodeKey(String key) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            for(String segment : key.split("/", -1)) {
+                if(sb.length()>0 || key.startsWith("/"))
+                    sb.append('/');
+                sb.append(URLEncoder.encode(segment, "UTF-8").replace("+", "%20"));
+            }
+        }
+        catch(UnsupportedEncodingException e) {
+            // This can't happen in practice, UTF-8 is necessarily supported
+            return key;
+        }
+
+        // Relative keys that contain a colon would be taken for absolute URLs
+        return "./"+sb.toString().substring(key.startsWith("/")?1:0);
+    }
+
+
+    /**
+     * Decodes the most common character entities of the given text.
+     */
+    private static String decodeEntities(String text) {
+        if(text.indexOf('&')==-1)
+            return text;
+
+        return text.replace("&nbsp;", " ")
+            .replace("&lt;", "<")
+            .replace("&gt;", ">")
+            .replace("&quot;", "\"")
+            .replace("&#39;", "'")
+            .replace("&apos;", "'")
+            .replace("&amp;", "&");
+    }
+}
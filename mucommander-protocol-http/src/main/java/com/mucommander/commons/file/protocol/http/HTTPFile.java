@@ -19,11 +19,13 @@
 package com.mucommander.commons.file.protocol.http;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.protocol.ProtocolFile;
 import com.mucommander.commons.io.BlockRandomInputStream;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
+import com.mucommander.commons.file.util.ChildrenChunker;
 import com.mucommander.commons.io.base64.Base64Encoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,12 +33,19 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.TreeSet;
-import java.util.Vector;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 
 /**
@@ -71,7 +80,10 @@ import java.util.regex.Pattern;
  * <br>
  * A HEAD request is then issued only for non-HTML files, to determine their size and last modified date.
  * HTML files will thus have a size returned by {@link #getSize()} of <code>-1</code> (undetermined), and a date
- * returned by {@link #getDate()} corresponding to 'now' (current time).</p>
+ * returned by {@link #getDate()} corresponding to 'now' (current time).
+ * <br>
+ * No request is needed at all for the files of a directory listing whose size and date are found in the listing.
+ * The other children of a listed file are resolved concurrently in the background.</p>
  *
  * <p>Access to HTTP files is provided by the <code>java.net</code> API. The {@link #getUnderlyingFileObject()} method
  * allows to retrieve a <code>java.net.URL</code> instance corresponding to this HTTPFile.</p>
@@ -92,7 +104,7 @@ public class HTTPFile extends ProtocolFile {
     private boolean resolve;
 
     /** True if file has been resolved on the remote HTTP server, either successfully or unsuccessfully */
-    private boolean fileResolved;
+    private volatile boolean fileResolved;
 
     private boolean parentValSet;
     protected AbstractFile parent;
@@ -106,11 +118,21 @@ public class HTTPFile extends ProtocolFile {
                                             + "; " + System.getProperty("os.name") + " " +
                                             System.getProperty("os.version") + " " + System.getProperty("os.arch") + ")";
 
-    /** Matches HTML and XHTML attribute key/value pairs, where the value is surrounded by Single Quotes */
-    private final static Pattern linkAttributePatternSQ = Pattern.compile("(src|href|SRC|HREF)=\\\'.*?\\\'");
+    /** Number of files that are resolved concurrently, which matches the number of keep-alive connections that
+     * <code>java.net</code> keeps per server (<code>http.maxConnections</code>) so that the connections are reused */
+    private final static int RESOLVE_THREADS = Math.max(1, Integer.getInteger("http.maxConnections", 5));
+
+    /** Resolves the children of the listed files in the background */
+    private final static ThreadPoolExecutor resolveExecutor = new ThreadPoolExecutor(RESOLVE_THREADS, RESOLVE_THREADS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), runnable -> {
+                Thread thread = new Thread(runnable, "HTTPFile resolver");
+                thread.setDaemon(true);
+                return thread;
+            });
 
-    /** Matches HTML and XHTML attribute key/value pairs, where the value is surrounded by Double Quotes */
-    private final static Pattern linkAttributePatternDQ = Pattern.compile("(src|href|SRC|HREF)=\\\".*?\\\"");
+    static {
+        resolveExecutor.allowCoreThreadTimeOut(true);
+    }
 
 
     protected HTTPFile(FileURL fileURL) throws IOException {
@@ -147,6 +169,28 @@ public class HTTPFile extends ProtocolFile {
     }
 
 
+    /**
+     * Creates a new HTTPFile whose attributes are already known, typically because they were found in the directory
+     * listing of its parent, so that the file does not have to be resolved. A file whose size is not known, because
+     * the listing only shows a rounded size, still gets resolved to find out its exact size.
+     */
+    protected HTTPFile(FileURL fileURL, URL url, FileAttributes knownAttributes) throws IOException {
+        this(fileURL, url);
+
+        attributes.setExists(knownAttributes.exists());
+        attributes.setDate(knownAttributes.getDate());
+        attributes.setSize(knownAttributes.getSize());
+        // HTML documents remain browsable
+        if(knownAttributes.isDirectory())
+            attributes.setDirectory(true);
+
+        if(knownAttributes.getSize()!=-1 || knownAttributes.isDirectory()) {
+            resolve = false;
+            fileResolved = true;
+        }
+    }
+
+
     private static SimpleFileAttributes getDefaultAttributes() {
         SimpleFileAttributes attributes = new SimpleFileAttributes();
         attributes.setDate(System.currentTimeMillis());
@@ -178,7 +222,11 @@ public class HTTPFile extends ProtocolFile {
      * @throws IOException if the HEAD request failed, either because the resource doesn't exist (404) or for any other
      * reason
      */
-    private void resolveFile() throws IOException {
+    private synchronized void resolveFile() throws IOException {
+        // The file may have been resolved in the background while waiting for the lock
+        if(fileResolved)
+            return;
+
         try {
             LOGGER.info("Resolving {}", url);
 
@@ -530,9 +578,25 @@ public class HTTPFile extends ProtocolFile {
 
     @Override
     public AbstractFile[] ls() throws IOException {
+        List<AbstractFile> children = new ArrayList<AbstractFile>();
+        ls(null, chunk -> Collections.addAll(children, chunk));
+
+        return children.toArray(new AbstractFile[children.size()]);
+    }
+
+    /**
+     * Parses the HTML document as it is received, passing the children to the consumer as their links are found.
+     * The size and date of the children are taken from the document if it is a directory listing, see
+     * {@link HTMLLinkExtractor}. The children that still have to be resolved are resolved concurrently in the
+     * background, see {@link #resolveExecutor}.
+     */
+    @Override
+    public void ls(FileFilter filter, Consumer<AbstractFile[]> chunkConsumer) throws IOException {
         // Implementation note: javax.swing.text.html.HTMLEditorKit isn't quite powerful enough to be used
 
-        BufferedReader br = null;
+        ChildrenChunker chunker = new ChildrenChunker(filter, chunkConsumer);
+        List<Future<?>> resolutions = new ArrayList<Future<?>>();
+        Reader reader = null;
         try {
             URL contextURL = this.url;
             HttpURLConnection conn;
@@ -568,7 +632,7 @@ public class HTTPFile extends ProtocolFile {
             String contentType = conn.getContentType();
             if(contentType==null || !isParsableMimeType(contentType))
                 throw new IOException("Document cannot be parsed (not HTML or XHTML)");  // Todo: localize this message
-			
+
             int pos;
             String enc = null;
             // Extract content type information (if any)
@@ -576,90 +640,85 @@ public class HTTPFile extends ProtocolFile {
                 StringTokenizer st = new StringTokenizer(contentType.substring(pos, contentType.length()));
                 enc = st.nextToken();
             }
-			
+
             // Use the encoding reported in HTTP header if there was one, otherwise just use the default encoding
             InputStream in = conn.getInputStream();
-            InputStreamReader ir;
             if(enc==null)
-                ir = new InputStreamReader(in);
+                reader = new InputStreamReader(in);
             else {
                 try {
-                    ir = new InputStreamReader(in, enc);
+                    reader = new InputStreamReader(in, enc);
                 }
                 catch(UnsupportedEncodingException e) {
-                    ir = new InputStreamReader(in);
+                    reader = new InputStreamReader(in);
                 }
             }
 
-            br = new BufferedReader(ir);
+            HTMLLinkExtractor extractor = new HTMLLinkExtractor(reader);
 
-            Vector<AbstractFile> children = new Vector<AbstractFile>();
-            // List that contains children URL, a TreeSet for fast (log(n)) search operations
-            TreeSet<String> childrenURL = new TreeSet<String>();
-            URL childURL;
-            FileURL childFileURL;
+            // Links that have already been added
+            Set<String> childrenURL = new HashSet<String>();
             Credentials credentials = fileURL.getCredentials();
+            String parentHost = fileURL.getHost();
 
-            String parentPath = fileURL.getPath();
-            if(!parentPath.endsWith("/"))
-                parentPath += "/";
+            HTMLLinkExtractor.Link extractedLink;
+            while((extractedLink=extractor.next())!=null) {
+                String link = extractedLink.link;
 
-            String parentHost = fileURL.getHost();
+                // These are not proper URLs, skip them
+                if(link.isEmpty()
+                || link.startsWith("mailto") || link.startsWith("MAILTO")
+                || link.startsWith("#")
+                || link.startsWith("javascript:"))
+                    continue;
 
-            FileURL tempChildURL = (FileURL)fileURL.clone();
-
-            Pattern pattern;
-            String line, match, link;
-            while((line=br.readLine())!=null) {
-                for(pattern=linkAttributePatternSQ;; pattern=linkAttributePatternDQ) {
-                    Matcher matcher = pattern.matcher(line);
-                    while(matcher.find()) {
-                        match = matcher.group();
-                        link = match.substring(match.indexOf(pattern==linkAttributePatternSQ?'\'':'\"')+1, match.length()-1);
-
-                        // These are not proper URLs, skip them
-                        if(link.startsWith("mailto") || link.startsWith("MAILTO")
-                        || link.startsWith("#")
-                        || link.startsWith("javascript:"))
-                            continue;
-
-                        // Don't add the same link more than once
-                        if(childrenURL.contains(link))
-                            continue;
-
-                        try {
-                            LOGGER.trace("creating child {} context={}", link, contextURL);
-                            childURL = new URL(contextURL, link);
-
-                            // Create the child FileURL instance
-                            childFileURL = FileURL.getFileURL(childURL.toExternalForm());
-                            // Keep the parent's credentials (HTTP basic authentication), only if the host is the same.
-                            // It would otherwise be unsafe.
-                            if(parentHost.equals(childFileURL.getHost()))
-                                childFileURL.setCredentials(credentials);
-
-                            // TODO: resolve file here instead of in the constructor, and multiplex requests just like a browser
-
-                            children.add(FileFactory.getFile(childFileURL, null, Collections.singletonMap("url", childURL)));
-                            childrenURL.add(link);
-                        }
-                        catch(IOException e) {
-                            LOGGER.info("Cannot create child: {}", e);
-                        }
-                    }
-
-                    if(pattern==linkAttributePatternDQ)
-                        break;
+                // Don't add the same link more than once
+                if(!childrenURL.add(link))
+                    continue;
+
+                AbstractFile child;
+                try {
+                    LOGGER.trace("creating child {} context={}", link, contextURL);
+                    URL childURL = new URL(contextURL, link);
+
+                    // Create the child FileURL instance
+                    FileURL childFileURL = FileURL.getFileURL(childURL.toExternalForm());
+                    // Keep the parent's credentials (HTTP basic authentication), only if the host is the same.
+                    // It would otherwise be unsafe.
+                    if(parentHost.equals(childFileURL.getHost()))
+                        childFileURL.setCredentials(credentials);
+
+                    Map<String, Object> instantiationParams = new HashMap<String, Object>();
+                    instantiationParams.put("url", childURL);
+                    // The size and date found in directory listings spare a HEAD request
+                    if(extractedLink.hasAttributes())
+                        instantiationParams.put("attributes", getListingAttributes(extractedLink));
+
+                    child = FileFactory.getFile(childFileURL, null, instantiationParams);
+                }
+                catch(IOException e) {
+                    LOGGER.info("Cannot create child: {}", e);
+                    continue;
                 }
+
+                // Resolve the children that need it in the background, rather than one after the other when
+                // their attributes are first requested
+                HTTPFile httpChild = child.getAncestor(HTTPFile.class);
+                if(httpChild!=null && httpChild.resolve && !httpChild.fileResolved)
+                    resolutions.add(resolveExecutor.submit(httpChild::checkResolveFile));
+
+                chunker.add(child);
             }
 
-            AbstractFile childrenArray[] = new AbstractFile[children.size()];
-            children.toArray(childrenArray);
-            return childrenArray;
+            chunker.flush();
         }
         catch (Exception e) {
             LOGGER.info("Exception caught while parsing HTML, throwing IOException", e);
 
+            // Don't resolve the children of a listing that failed
+            for(Future<?> resolution : resolutions)
+                resolution.cancel(false);
+
             if(e instanceof IOException)
                 throw (IOException)e;
 
@@ -668,13 +727,26 @@ public class HTTPFile extends ProtocolFile {
         finally {
             try {
                 // Try and close URL connection
-                if(br!=null)
-                    br.close();
+                if(reader!=null)
+                    reader.close();
             }
             catch(IOException e) {}
         }
     }
 
+    /**
+     * Returns the attributes of a file that exists, with the size and date found in a directory listing.
+     */
+    private static FileAttributes getListingAttributes(HTMLLinkExtractor.Link link) {
+        SimpleFileAttributes attributes = getDefaultAttributes();
+        attributes.setExists(true);
+        attributes.setDate(link.date);
+        attributes.setSize(link.size);
+        attributes.setDirectory(link.isDirectory);
+
+        return attributes;
+    }
+
 
     ////////////////////////
     // Overridden methods //
@@ -694,13 +766,40 @@ public class HTTPFile extends ProtocolFile {
     /**
      * Overrides AbstractFile's getInputStream(long) method to provide a more efficient implementation:
      * use the HTTP 1.1 header to start the transfer at the given offset.
+     *
+     * @throws IOException if the server did not return the bytes starting at the given offset
      */
     @Override
     public InputStream getInputStream(long offset) throws IOException {
+        if(offset==0)
+            return getInputStream();
+
+        return getRangeInputStream(offset, -1);
+    }
+
+    /**
+     * Overrides AbstractFile's getInputStream(long, long) method to request only the given range with the HTTP 1.1
+     * header.
+     *
+     * @throws IOException if the server did not return the bytes starting at the given offset
+     */
+    @Override
+    public InputStream getInputStream(long offset, long length) throws IOException {
+        return getRangeInputStream(offset, offset+length-1);
+    }
+
+    /**
+     * Requests the bytes of this file from <code>start</code> to <code>end</code> included, or to the end of the file
+     * if <code>end</code> is <code>-1</code>, and returns a stream that reads them.
+     *
+     * @throws IOException if the request failed or if the server did not reply with the requested range: servers that
+     * do not support ranges return the whole file instead
+     */
+    private InputStream getRangeInputStream(long start, long end) throws IOException {
         HttpURLConnection conn = getHttpURLConnection(this.url);
 
         // Set header that allows to resume transfer
-        conn.setRequestProperty("Range", "bytes="+offset+"-");
+        conn.setRequestProperty("Range", "bytes="+start+"-"+(end==-1?"":String.valueOf(end)));
 
         // Establish connection
         conn.connect();
@@ -708,6 +807,14 @@ public class HTTPFile extends ProtocolFile {
         // Check HTTP response code and throw appropriate IOException if request failed
         checkHTTPResponse(conn);
 
+        // Content-Range is of the form "bytes start-end/length"
+        String contentRange = conn.getHeaderField("Content-Range");
+        if(conn.getResponseCode()!=HttpURLConnection.HTTP_PARTIAL || contentRange==null
+                || !contentRange.trim().startsWith("bytes "+start+"-")) {
+            conn.disconnect();
+            throw new IOException("Range not returned by the server: "+contentRange);
+        }
+
         return conn.getInputStream();
     }
 
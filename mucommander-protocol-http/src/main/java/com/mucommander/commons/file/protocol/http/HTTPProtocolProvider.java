@@ -19,6 +19,7 @@
 package com.mucommander.commons.file.protocol.http;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileAttributes;
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.commons.file.protocol.ProtocolProvider;
 
@@ -97,8 +98,13 @@ public class HTTPProtocolProvider implements ProtocolProvider {
     }
     
     public AbstractFile getFile(FileURL url, Map<String, Object> instantiationParams) throws IOException {
-        return instantiationParams.isEmpty()
-            ?new HTTPFile(url)
-            :new HTTPFile(url, (URL)instantiationParams.get("url"));
+        if(instantiationParams.isEmpty())
+            return new HTTPFile(url);
+
+        // Attributes found in the directory listing of the parent
+        FileAttributes attributes = (FileAttributes)instantiationParams.get("attributes");
+        return attributes==null
+            ?new HTTPFile(url, (URL)instantiationParams.get("url"))
+            :new HTTPFile(url, (URL)instantiationParams.get("url"), attributes);
     }
 }
@@ -0,0 +1,170 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.protocol.http;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+/**
+ * This class is a TestNG test case for {@link HTMLLinkExtractor}.
+ */
+public class HTMLLinkExtractorTest {
+
+    private static List<HTMLLinkExtractor.Link> extract(String document) throws IOException {
+        HTMLLinkExtractor extractor = new HTMLLinkExtractor(new StringReader(document));
+        List<HTMLLinkExtractor.Link> links = new ArrayList<>();
+        HTMLLinkExtractor.Link link;
+        while ((link = extractor.next()) != null)
+            links.add(link);
+
+        return links;
+    }
+
+    private static long getDate(String date) {
+        return Instant.parse(date).toEpochMilli();
+    }
+
+    private static long getLocalDate(String date) {
+        return LocalDateTime.parse(date).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Asserts that the links of a regular HTML document are extracted, whatever the quotes and case of their
+     * attributes, and that links in comments are ignored.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testHTML() throws IOException {
+        List<HTMLLinkExtractor.Link> links = extract("<html><head><link rel=stylesheet HREF='style.css'></head>\n"
+                + "<body><!-- <a href=\"commented.html\">, it's a comment --><img src=\"logo.png\" alt=\"a > b\">\n"
+                + "<a href=\"page.html?a=1&amp;b=2\">Page</a> <a href=unquoted.html>Unquoted</a></body></html>");
+
+        assert links.size() == 4;
+        assert links.get(0).link.equals("style.css");
+        assert links.get(1).link.equals("logo.png");
+        assert links.get(2).link.equals("page.html?a=1&b=2");
+        assert links.get(3).link.equals("unquoted.html");
+        for (HTMLLinkExtractor.Link link : links)
+            assert !link.hasAttributes();
+    }
+
+    /**
+     * Asserts that the sizes and dates of an Apache autoindex listing are extracted.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testApacheListing() throws IOException {
+        List<HTMLLinkExtractor.Link> links = extract("<table>\n"
+                + "<tr><th><a href=\"?C=N;O=D\">Name</a></th><th><a href=\"?C=M;O=A\">Last modified</a></th></tr>\n"
+                + "<tr><td valign=\"top\"><img src=\"/icons/back.gif\" alt=\"[PARENTDIR]\"></td><td><a href=\"/pub/\">Parent Directory</a></td><td>&nbsp;</td><td align=\"right\">  - </td></tr>\n"
+                + "<tr><td valign=\"top\"><img src=\"/icons/folder.gif\" alt=\"[DIR]\"></td><td><a href=\"docs/\">docs/</a></td><td align=\"right\">2021-03-04 12:34  </td><td align=\"right\">  - </td></tr>\n"
+                + "<tr><td valign=\"top\"><img src=\"/icons/compressed.gif\" alt=\"[   ]\"></td><td><a href=\"file.tar.gz\">file.tar.gz</a></td><td align=\"right\">2020-01-02 03:04  </td><td align=\"right\">1.5K</td></tr>\n"
+                + "</table>\n"
+                + "<pre><a href=\"plain.txt\">plain.txt</a>              2019-05-06 07:08:09  123  \n</pre>");
+
+        HTMLLinkExtractor.Link docs = find(links, "docs/");
+        assert docs.hasAttributes();
+        assert docs.isDirectory;
+        assert docs.date == getLocalDate("2021-03-04T12:34:00");
+
+        // Abbreviated sizes are rounded
+        HTMLLinkExtractor.Link file = find(links, "file.tar.gz");
+        assert file.hasAttributes();
+        assert !file.isDirectory;
+        assert file.size == -1;
+        assert file.date == getLocalDate("2020-01-02T03:04:00");
+
+        HTMLLinkExtractor.Link plain = find(links, "plain.txt");
+        assert plain.size == 123;
+        assert plain.date == getLocalDate("2019-05-06T07:08:09");
+
+        assert !find(links, "/pub/").hasAttributes();
+        assert !find(links, "?C=N;O=D").hasAttributes();
+        assert find(links, "/icons/folder.gif") != null;
+    }
+
+    /**
+     * Asserts that the sizes and dates of an nginx autoindex listing are extracted.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testNginxListing() throws IOException {
+        List<HTMLLinkExtractor.Link> links = extract("<html>\r\n<head><title>Index of /files/</title></head>\r\n"
+                + "<body>\r\n<h1>Index of /files/</h1><hr><pre><a href=\"../\">../</a>\r\n"
+                + "<a href=\"sub/\">sub/</a>                                               04-Mar-2021 12:34                   -\r\n"
+                + "<a href=\"archive.zip\">archive.zip</a>                                        02-Jan-2020 03:04             1048576\r\n"
+                + "</pre><hr></body>\r\n</html>\r\n");
+
+        assert links.size() == 3;
+        assert !find(links, "../").hasAttributes();
+
+        HTMLLinkExtractor.Link sub = find(links, "sub/");
+        assert sub.isDirectory;
+        assert sub.date == getLocalDate("2021-03-04T12:34:00");
+
+        HTMLLinkExtractor.Link archive = find(links, "archive.zip");
+        assert !archive.isDirectory;
+        assert archive.size == 1048576;
+        assert archive.date == getLocalDate("2020-01-02T03:04:00");
+    }
+
+    /**
+     * Asserts that the objects and common prefixes of an S3 listing are extracted.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testS3Listing() throws IOException {
+        List<HTMLLinkExtractor.Link> links = extract("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"><Name>bucket</Name><Prefix></Prefix>"
+                + "<Contents><Key>my file.txt</Key><LastModified>2021-03-04T12:34:56.000Z</LastModified><ETag>&quot;abc&quot;</ETag><Size>42</Size></Contents>"
+                + "<Contents><Key>dir/a:b.bin</Key><LastModified>2020-01-02T03:04:05.000Z</LastModified><Size>7</Size></Contents>"
+                + "<CommonPrefixes><Prefix>photos/</Prefix></CommonPrefixes>"
+                + "</ListBucketResult>");
+
+        assert links.size() == 3;
+
+        HTMLLinkExtractor.Link file = find(links, "./my%20file.txt");
+        assert file.size == 42;
+        assert file.date == getDate("2021-03-04T12:34:56Z");
+        assert !file.isDirectory;
+
+        assert find(links, "./dir/a%3Ab.bin").size == 7;
+        assert find(links, "./photos/").isDirectory;
+    }
+
+    private static HTMLLinkExtractor.Link find(List<HTMLLinkExtractor.Link> links, String link) {
+        for (HTMLLinkExtractor.Link l : links) {
+            if (l.link.equals(link))
+                return l;
+        }
+
+        assert false : link + " not found";
+        return null;
+    }
+}
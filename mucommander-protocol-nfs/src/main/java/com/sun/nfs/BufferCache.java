@@ -0,0 +1,126 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sun.nfs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sparse cache of the {@link Buffer}s of a file, indexed by their position in the file, so that its size depends on
+ * the number of buffers in use rather than on the size of the file.
+ *
+ * <p>The cache holds a bounded number of buffers: when it holds more, the least recently used clean buffers, i.e.
+ * those that are {@link Buffer#LOADED}, are released. Buffers that are being loaded, that are dirty or that await a
+ * commit cannot be discarded and are kept regardless of the capacity.</p>
+ *
+ * <p>This class is not thread-safe, it is used with the lock of the {@link Nfs} file held.</p>
+ */
+class BufferCache {
+
+    /** Buffers by index, in access order */
+    private final LinkedHashMap<Long, Buffer> buffers = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Number of buffers above which clean buffers are released */
+    private final int capacity;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacity number of buffers above which clean buffers are released
+     */
+    BufferCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the buffer at the given index, <code>null</code> if there is none, and makes it the most recently used.
+     */
+    Buffer get(long index) {
+        return buffers.get(index);
+    }
+
+    /**
+     * Adds a buffer at the given index, which must not have one.
+     */
+    void put(long index, Buffer b) {
+        buffers.put(index, b);
+    }
+
+    /**
+     * Removes the buffer at the given index without releasing it.
+     */
+    Buffer remove(long index) {
+        return buffers.remove(index);
+    }
+
+    /**
+     * Returns a snapshot of the buffers, from the least to the most recently used.
+     */
+    List<Map.Entry<Long, Buffer>> entries() {
+        return new ArrayList<>(buffers.entrySet());
+    }
+
+    /**
+     * Releases the least recently used clean buffers until the cache does not hold more buffers than its capacity,
+     * or until there is no clean buffer left to release.
+     *
+     * @param keep1 index of a buffer that must not be released
+     * @param keep2 index of another buffer that must not be released
+     */
+    void trim(long keep1, long keep2) {
+        int excess = buffers.size() - capacity;
+        for (Iterator<Map.Entry<Long, Buffer>> i = buffers.entrySet().iterator(); excess > 0 && i.hasNext(); ) {
+            Map.Entry<Long, Buffer> entry = i.next();
+            long index = entry.getKey();
+            Buffer b = entry.getValue();
+            if (b.status == Buffer.LOADED && index != keep1 && index != keep2) {
+                i.remove();
+                b.exit();
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Releases all buffers that hold no new data, because the file has changed on the server.
+     *
+     * @param keep index of a buffer that must not be released
+     */
+    void invalidate(long keep) {
+        for (Iterator<Map.Entry<Long, Buffer>> i = buffers.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<Long, Buffer> entry = i.next();
+            Buffer b = entry.getValue();
+            if ((b.status == Buffer.LOADED || b.status == Buffer.EMPTY) && entry.getKey() != keep) {
+                i.remove();
+                b.exit();
+            }
+        }
+    }
+
+    /**
+     * Releases all buffers.
+     */
+    void clear() {
+        for (Buffer b : buffers.values())
+            b.exit();
+        buffers.clear();
+    }
+}
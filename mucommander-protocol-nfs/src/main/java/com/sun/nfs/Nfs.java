@@ -40,6 +40,8 @@ package com.sun.nfs;
 import java.io.*;
 import com.sun.rpc.*;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 /**
@@ -67,7 +69,7 @@ public abstract class Nfs {
     String name;
     String[] dircache;
     String symlink;
-    Buffer[] bufferList;
+    BufferCache bufferList;
     long cacheTime;		// Time when object was cached
     int rsize, wsize;
     private Object wbLock = new Object(); // write-behind semaphore lock
@@ -88,9 +90,9 @@ public abstract class Nfs {
     int NWB;	// max writes-behind    (")
     int NWC;	// max writes committed (")
     int nwb;	// current writes-behind
-    int prevReadIndex  = -1;	// Buffer index of previous read
-    int prevWriteIndex = -1;	// Buffer index of previous write
-    int maxIndexRead = 0;	// Max file offset read
+    long prevReadIndex  = -1;	// Buffer index of previous read
+    long prevWriteIndex = -1;	// Buffer index of previous write
+    long maxIndexRead = 0;	// Max file offset read
     long maxLength = 0;		// Size of file
 
     // Some important permission bits
@@ -151,7 +153,7 @@ public abstract class Nfs {
 
     abstract void fsinfo() throws IOException;
 
-    abstract long commit(int foffset, int length) throws IOException;
+    abstract long commit(long foffset, int length) throws IOException;
 
     abstract void invalidate();
 	    
@@ -213,7 +215,7 @@ public abstract class Nfs {
         throws IOException {
 
         Buffer b = null;
-        int index;
+        long index;
 	int readAhead = 0;
 	int bytesRead = 0;
 
@@ -222,9 +224,7 @@ public abstract class Nfs {
          * the last read then invalidate all cached buffers.
          */
         if (!cacheOK(cacheTime) && bufferList != null) {
-            for (int i = 0; i < bufferList.length; i++)
-                if (i != prevWriteIndex)	// don't delete dirty buffers
-                    bufferList[i] = null;
+            bufferList.invalidate(prevWriteIndex);	// don't delete dirty buffers
 
             prevReadIndex = -1;
         }
@@ -247,34 +247,25 @@ public abstract class Nfs {
 		break;
 
             /*
-             * Make sure an array of buffers exists that's big enough
-             * to for the entire file.
+             * Make sure a buffer cache exists.
              */
             if (bufferList == null)
-                bufferList = new Buffer[(int) (length() / rsize + 1)];
+                bufferList = newBufferCache();
 
 	    /*
 	     * Find the block that holds the data
 	     */
-            index = (int) (foffset / rsize);
+            index = foffset / rsize;
             if (index > maxIndexRead)
                 maxIndexRead = index;
 
 	    /*
-	     * Make sure that previously read buffers are
-	     * released.  If not, then reading a large file
-	     * would quickly run the app out of memory, though
-             * must be careful not to release in-use write buffers.
-             * XXX We should find a way to make better use of
-	     * available memory and keep file buffers cached.
+	     * Previously read buffers remain cached until
+	     * the buffer cache releases them, least recently
+	     * used first, as buffers are added to it.
 	     */
             if (index != prevReadIndex) {
 		if (prevReadIndex >= 0 && prevReadIndex != prevWriteIndex) {
-                    b = bufferList[prevReadIndex];
-                    if (b.status == b.LOADED) {
-                        bufferList[prevReadIndex] = null;
-                        b.exit();
-                    }
 
 		    /*
 		     * Do read-ahead only for sequential I/O
@@ -291,23 +282,24 @@ public abstract class Nfs {
              * any buffers that will likely be needed
 	     * i.e. read-ahead buffers.
              */
-            for (int n = index; n <= index + readAhead; n++) {
+            for (long n = index; n <= index + readAhead; n++) {
 
-                if (n >= bufferList.length)
+                if (n > index && n * rsize >= length())
                     break;
 
-                b = bufferList[n];
+                b = bufferList.get(n);
                 if (b == null) {
-                    b = new Buffer(this, (long) n * (long) rsize, rsize);
+                    b = new Buffer(this, n * rsize, rsize);
                     b.startLoad();
-                    bufferList[n] = b;
+                    bufferList.put(n, b);
                 }
             }
+            bufferList.trim(index, prevWriteIndex);
 
             /*
              * Now select the buffer and wait until its not busy.
              */
-            b = bufferList[index];
+            b = bufferList.get(index);
             try {
                 b.waitLoaded();
             } catch (NfsException n) {
@@ -323,8 +315,8 @@ public abstract class Nfs {
                  */
                 if (n.error == 72) { // DEC's EBADRPC
                     rsize = 8192;
-                    bufferList = 
-                        new Buffer[(int)(length() / rsize + 1)];
+                    bufferList.clear();
+                    bufferList = null;
                     continue;
                 }
 
@@ -339,6 +331,7 @@ public abstract class Nfs {
             int bufflen = b.buflen;
             if (bufflen < rsize && !b.eof) {
 		rsize = bufflen;
+                bufferList.clear();
                 bufferList = null;
                 prevReadIndex  = -1;
                 prevWriteIndex = -1;
@@ -416,14 +409,10 @@ public abstract class Nfs {
 
         /*
          * If we haven't read the file yet then there may
-         * be no buffer list.  Allocate one that will hold
-         * all of the existing file blocks, or if it's a newly
-         * created file, assume an initial size of 50 blocks.
+         * be no buffer cache.
          */
-        if (bufferList == null) {
-            long fileSize = Math.max(length(), 50 * wsize);
-            bufferList = new Buffer[(int)(fileSize / wsize + 1)];
-        }
+        if (bufferList == null)
+            bufferList = newBufferCache();
 
         /*
          * Keep writing data to the server in buffer-size chunks
@@ -443,7 +432,7 @@ public abstract class Nfs {
 	 */
         while (length > 0) {
 
-            int index = (int)(foffset / wsize);
+            long index = foffset / wsize;
 
             /*
              * If writing into a new buffer
@@ -451,33 +440,22 @@ public abstract class Nfs {
              */
             if (index != prevWriteIndex) {
                 if (prevWriteIndex >= 0) {
-                    bufferList[prevWriteIndex].startUnload(ASYNC);
+                    Buffer prev = bufferList.get(prevWriteIndex);
+                    if (prev != null)
+                        prev.startUnload(ASYNC);
 
                     checkCommit(false);
                 }
                 prevWriteIndex = index;
             }
 
-            /*
-             * If trying to write to a buffer off the end of
-             * the current buffer list, then double the size
-             * of the buffer list.
-             */
-            if (index >= bufferList.length) {
-                Buffer[] tlist = new Buffer[bufferList.length * 2];
-                for (int i = 0; i < bufferList.length; i++)
-                    tlist[i] = bufferList[i];
-                bufferList = tlist;
-            }
-
-
             /*
              * Check if there's a buffer allocated
              */
-            Buffer b = bufferList[index];
+            Buffer b = bufferList.get(index);
             if (b == null) {
-                b = new Buffer(this, (long) index * wsize, wsize);
-                bufferList[index] = b;
+                b = new Buffer(this, index * wsize, wsize);
+                bufferList.put(index, b);
             }
 
 	    /*
@@ -520,40 +498,29 @@ public abstract class Nfs {
      */ 
     void checkCommit(boolean flushing) throws IOException {
 
-        int minIndex = Integer.MAX_VALUE;
-        int maxIndex = 0;
+        long minIndex = Long.MAX_VALUE;
+        long maxIndex = -1;
         int nwc = 0;
 
         /*
          * Determine the first and last buffers in
-         * the buffer list that are waiting commit.
+         * the buffer cache that are waiting commit.
          * Then we know the byte range to be committed.
-         *
-         * Also, release any LOADED buffers.
          */
-        for (int i = 0; i < bufferList.length; i++) {
-            Buffer b = bufferList[i];
-            if (b != null) {
-                if (flushing)
-                    b.waitUnloaded();
-
-                if (b.status == b.LOADED) {
-
-                    /*
-                     * Don't throw away the "current" buffer
-                     */
-                    if (i == prevReadIndex || i == prevWriteIndex)
-                        continue;
-
-                    bufferList[i] = null;
-                    b.exit();
-                } else if (b.status == b.COMMIT) {
-                    nwc++;
-                    if (i < minIndex)
-                        minIndex = i;
-                    if (i > maxIndex)
-                        maxIndex = i;
-                }
+        List<Map.Entry<Long, Buffer>> entries = bufferList.entries();
+        for (Map.Entry<Long, Buffer> entry : entries) {
+            long i = entry.getKey();
+            Buffer b = entry.getValue();
+
+            if (flushing)
+                b.waitUnloaded();
+
+            if (b.status == b.COMMIT) {
+                nwc++;
+                if (i < minIndex)
+                    minIndex = i;
+                if (i > maxIndex)
+                    maxIndex = i;
             }
         }
 
@@ -565,7 +532,7 @@ public abstract class Nfs {
          * buffer.
          */
         if (flushing) {
-            Buffer b = bufferList[prevWriteIndex];
+            Buffer b = bufferList.get(prevWriteIndex);
 	    if (b != null) {
                 if (b.status == b.DIRTY) {
                     if (nwc == 0) {		// just one - do it sync
@@ -589,29 +556,32 @@ public abstract class Nfs {
         /*
          * If writing to a v3 server then there may
          * be some buffers pending commit.
-         * If the commit is successful the buffers can
-         * be released.
+         * If the commit is successful the buffers become
+         * clean and the buffer cache can release them.
          */
         if (nwc > 0 && (flushing || nwc >= NWC)) {
-            int commitOffset = minIndex * rsize +
-                bufferList[minIndex].minOffset;
-            int commitLength = (maxIndex * rsize +
-                bufferList[maxIndex].maxOffset) - commitOffset;
-    
-            long verf = commit(commitOffset, commitLength);
+            Buffer first = bufferList.get(minIndex);
+            Buffer last = bufferList.get(maxIndex);
+            long commitOffset = first.foffset;
+            long commitLength = last.foffset + last.bufsize - commitOffset;
+
+            // A count of zero commits all data from the offset to the end of the file
+            long verf = commit(commitOffset,
+                commitLength > Integer.MAX_VALUE ? 0 : (int) commitLength);
 
             /*
              * Check the write verifiers of the buffers
              * in the commit range.  If each verifier
              * matches then the buffer data are safe
-             * and we can release the buffer.
+             * and the buffer is clean.
              * If the verifier does not match its possible
              * that the server lost the data so rewrite
              * the buffer.
              */
-            for (int i = minIndex; i <= maxIndex; i++) {
-                Buffer b = bufferList[i];
-                if (b == null)
+            for (Map.Entry<Long, Buffer> entry : bufferList.entries()) {
+                long i = entry.getKey();
+                Buffer b = entry.getValue();
+                if (i < minIndex || i > maxIndex)
                     continue;
 
                 if (flushing)
@@ -619,19 +589,8 @@ public abstract class Nfs {
 
                 if (b.status == b.COMMIT) {
 
-                    /*
-                     * Can now release committed buffers with
-                     * matching verifiers iff they're not "current"
-                     */
                     if (b.writeVerifier == verf) {
-
-                        if (i == prevReadIndex || i == prevWriteIndex) {
-                            b.status = b.LOADED;
-                            continue;
-                        }
-
-                        bufferList[i] = null;		// release buffer
-                        b.exit();
+                        b.status = b.LOADED;
                     } else {
 
 			/*
@@ -652,6 +611,23 @@ public abstract class Nfs {
                 }
             } // end for
         }
+
+        /*
+         * Release clean buffers that are no longer needed,
+         * otherwise writing a large file would quickly run the
+         * app out of memory.
+         */
+        bufferList.trim(prevReadIndex, prevWriteIndex);
+    }
+
+    /**
+     * Create the cache of buffers of this file.  It holds
+     * enough buffers for read-ahead, write-behind and
+     * writes awaiting commit, plus a few more recently
+     * used ones.
+     */
+    private BufferCache newBufferCache() {
+        return new BufferCache(2 * (NRA + 1) + NWB + NWC);
     }
 
     /**
@@ -679,13 +655,7 @@ public abstract class Nfs {
 
         flush();	// unwritten data
 
-        for (int i = 0; i < bufferList.length; i++) {
-            if (bufferList[i] != null) {
-                Buffer b = bufferList[i];
-                bufferList[i] = null;
-                b.exit();
-            }
-        }
+        bufferList.clear();
 
         prevReadIndex  = -1;
         prevWriteIndex = -1;
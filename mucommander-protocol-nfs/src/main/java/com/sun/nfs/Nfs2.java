@@ -96,7 +96,7 @@ public class Nfs2 extends Nfs {
         this.name = name;
         this.attr = attr == null ? new Fattr2() : attr;
 	this.rsize = RWSIZE;
-        NRA = 2; // Max reads-ahead
+        NRA = 4; // Max reads-ahead
         NWB = 8; // Max writes-behind
     }
 
@@ -747,7 +747,7 @@ public class Nfs2 extends Nfs {
     /*
      * Commit writes - not implemented in v2
      */
-    long commit(int foffset, int length) throws IOException {
+    long commit(long foffset, int length) throws IOException {
         return 0;
     }
 
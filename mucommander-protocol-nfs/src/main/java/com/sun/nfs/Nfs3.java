@@ -135,8 +135,8 @@ class Nfs3 extends Nfs {
         this.name = name;
         this.attr = attr == null ? new Fattr3() : attr;
 	this.rsize = RWSIZE;
-        NRA = 1; // Max reads-ahead
-        NWB = 4; // Max writes-behind
+        NRA = 4; // Max reads-ahead
+        NWB = 8; // Max writes-behind
         NWC = 10; // Max writes committed
     }
 
@@ -1075,7 +1075,7 @@ class Nfs3 extends Nfs {
     /*
      * Commit previous async writes to stable storage
      */
-    long commit(int foffset, int length) throws IOException {
+    long commit(long foffset, int length) throws IOException {
 
         Xdr call = new Xdr(wsize + 512);
 
@@ -39,6 +39,10 @@ package com.sun.rpc;
 
 import java.io.*;
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.net.InetAddress;
 
 /**
@@ -48,6 +52,13 @@ import java.net.InetAddress;
  *
  * This class also handles the connection caching.
  *
+ * Several calls may be outstanding on a connection
+ * at once, up to a window of MAX_OUTSTANDING calls:
+ * the listener thread demultiplexes the replies to
+ * their callers using their XID, so that concurrent
+ * callers such as read-ahead and write-behind buffers
+ * overlap their round-trips to the server.
+ *
  * @see ConnectSocket
  * @see ConnectDatagram
  * @author Brent Callaghan
@@ -58,13 +69,21 @@ public abstract class Connection extends Thread {
     public String server;
     public int port;
     String proto;
-    Hashtable waiters = new Hashtable();
     static final int IDLETIME = 300 * 1000; // idle connection after 5 min
-    int xid;		// transaction id
-    Xdr reply;
+    static final int MAX_OUTSTANDING = 16;  // max calls awaiting a reply
     int maxSize;	// size of reply Xdr buffer
     Error err;		// might get thrown by the thread
 
+    /*
+     * Calls awaiting a reply, by XID
+     */
+    Map<Integer, PendingCall> waiters = new ConcurrentHashMap<>();
+
+    /*
+     * Limits the number of outstanding calls
+     */
+    private final Semaphore window = new Semaphore(MAX_OUTSTANDING, true);
+
     /**
      * Construct a new connection to a specified <i>server</i>
      * and <i>port</i> using protocol <i>proto</i> with a
@@ -143,69 +162,112 @@ public abstract class Connection extends Thread {
         notifyAll();
     }
 
-    synchronized Xdr send(Xdr call, int timeout)
-        throws IOException {
+    /*
+     * A call awaiting its reply.  The listener thread
+     * posts the reply and notifies the caller, which
+     * waits on this object rather than on the connection
+     * so that the other callers are not woken up.
+     */
+    private static class PendingCall {
+        Xdr reply;
+        Error err;
 
-        checkConnection();
-        resumeListener();
-        sendOne(call);
+        synchronized void post(Xdr reply) {
+            this.reply = reply;
+            notifyAll();
+        }
 
-        waiters.put(new Integer(call.xid), new Integer(timeout));
+        synchronized void fail(Error err) {
+            this.err = err;
+            notifyAll();
+        }
 
-        /*
-         * Now sleep until the listener thread posts
-         * my XID and notifies me - or I time out.
-         */
-        while (xid != call.xid) {
-            long t = System.currentTimeMillis();
+        synchronized Xdr waitReply(int timeout) throws InterruptedIOException {
+            while (reply == null) {
+                long t = System.currentTimeMillis();
 
-	    if (err != null)
-		throw err;
+                if (err != null)
+                    throw err;
 
-            try {
-                wait(timeout);
-            } catch (InterruptedException e) {}
-		
-	    if (err != null)
-		throw err;
+                try {
+                    wait(timeout);
+                } catch (InterruptedException e) {}
 
-            timeout -= (System.currentTimeMillis() - t);
-            if (timeout <= 0) {
-                waiters.remove(new Integer(call.xid));
-                throw new InterruptedIOException(); // timed out
+                if (reply != null)
+                    break;
+
+                if (err != null)
+                    throw err;
+
+                timeout -= (System.currentTimeMillis() - t);
+                if (timeout <= 0)
+                    throw new InterruptedIOException(); // timed out
             }
+
+            return reply;
         }
+    }
+
+    Xdr send(Xdr call, int timeout)
+        throws IOException {
 
         /*
-         * My reply has come in.
+         * Wait for room in the window of outstanding calls
          */
-        xid = 0;
-        waiters.remove(new Integer(call.xid));
-        notifyAll(); // wake the listener
+        long t = System.currentTimeMillis();
+        try {
+            if (!window.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+                throw new InterruptedIOException(); // timed out
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        timeout -= (System.currentTimeMillis() - t);
+
+        Integer callXid = Integer.valueOf(call.xid);
+        PendingCall pending = new PendingCall();
+        try {
+            /*
+             * Register the call before sending it so that
+             * a quick reply cannot be missed.  This is done
+             * while holding the lock so that the listener does
+             * not drop an idle connection in the meantime.
+             */
+            synchronized (this) {
+                if (err != null)
+                    throw err;
+
+                waiters.put(callXid, pending);
+                checkConnection();
+                resumeListener();
+            }
 
-        return reply;
+            sendOne(call);
+
+            /*
+             * Now sleep until the listener thread posts
+             * my reply - or I time out.
+             */
+            return pending.waitReply(Math.max(timeout, 1));
+        } finally {
+            waiters.remove(callXid, pending);
+            window.release();
+        }
     }
 
     /*
      * This is the code for the listener thread.
      * It blocks in a receive waiting for an RPC
      * reply to come in, then delivers it to the
-     * appropriate thread.
+     * appropriate thread.  It does not wait for
+     * that thread to pick the reply up: other
+     * replies may be received in the meantime.
      */
     public void run() {
 
 	try {
             while (true) {
     
-                synchronized (this) {
-                    while (xid != 0) {
-                        try {
-                            wait();
-                        } catch (InterruptedException e) {}
-                    }
-                }
-    
-                reply = new Xdr(maxSize);
+                Xdr reply = new Xdr(maxSize);
         
                 /*
                  * The listener thread now blocks reading
@@ -221,28 +283,28 @@ public abstract class Connection extends Thread {
                      * no threads waiting then drop the
                      * connection and suspend.
                      */
-                    if (waiters.isEmpty())
-                        dropConnection();
-                        suspendListener();
+                    synchronized (this) {
+                        if (waiters.isEmpty()) {
+                            dropConnection();
+                            suspendListener();
+                        }
+                    }
+                    continue;
                 } catch (IOException e) {
                         continue;
                 }
     
                 /*
                  * Have received an Xdr buffer.
-                 * Extract the xid and check the hashtable
+                 * Extract the xid and check the table
                  * to see if there's thread waiting for that reply.
-                 * If there is, then notify the thread.  If not
-                 * then ignore the reply (its thread may
+                 * If there is, then post the reply to the thread.
+                 * If not then ignore the reply (its thread may
                  * have timed out and gone away).
                  */
-                synchronized (this) {
-                    xid = reply.xdr_int();
-                    if (waiters.containsKey(new Integer(xid)))
-                        notifyAll();
-                    else
-                        xid = 0;   // ignore it
-                }
+                PendingCall pending = waiters.remove(Integer.valueOf(reply.xdr_int()));
+                if (pending != null)
+                    pending.post(reply);
             }
         } catch (Error e) {
             /*
@@ -250,10 +312,11 @@ public abstract class Connection extends Thread {
              * and notify threads before this listener thread dies
              * otherwise they'll wait forever.
              */
-            this.err = e;
             synchronized (this) {
-                notifyAll();
-	    }
+                this.err = e;
+            }
+            for (PendingCall pending : waiters.values())
+                pending.fail(e);
             throw e;
         }
     }
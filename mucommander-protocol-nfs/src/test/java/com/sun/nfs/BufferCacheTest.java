@@ -0,0 +1,72 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sun.nfs;
+
+import org.testng.annotations.Test;
+
+/**
+ * This class is a TestNG test case for {@link BufferCache}.
+ */
+public class BufferCacheTest {
+
+    private static Buffer createBuffer(BufferCache cache, long index, int status) {
+        Buffer b = new Buffer(null, index * 1024, 1024);
+        b.status = status;
+        cache.put(index, b);
+        return b;
+    }
+
+    /**
+     * Fills a cache past its capacity at indexes that an array indexed by int could not hold, and asserts that only
+     * the least recently used clean buffers are released.
+     */
+    @Test
+    public void testTrim() {
+        BufferCache cache = new BufferCache(4);
+        long base = 10L * Integer.MAX_VALUE;
+
+        createBuffer(cache, base, Buffer.LOADED);
+        createBuffer(cache, base + 1, Buffer.DIRTY);
+        createBuffer(cache, base + 2, Buffer.LOADED);
+        createBuffer(cache, base + 3, Buffer.COMMIT);
+        createBuffer(cache, base + 4, Buffer.LOADED);
+
+        // Use the first buffer so that the third one is the least recently used clean buffer
+        assert cache.get(base) != null;
+
+        cache.trim(base + 4, -1);
+        assert cache.entries().size() == 4;
+        assert cache.get(base + 2) == null;
+        assert cache.get(base) != null;
+
+        // Buffers that are kept or not clean are not released
+        createBuffer(cache, base + 5, Buffer.LOADED);
+        cache.trim(base + 4, base + 5);
+        assert cache.entries().size() == 4;
+        assert cache.get(base) == null;
+        assert cache.get(base + 1) != null && cache.get(base + 3) != null;
+        assert cache.get(base + 4) != null && cache.get(base + 5) != null;
+
+        cache.invalidate(-1);
+        assert cache.entries().size() == 2;
+        assert cache.get(base + 4) == null && cache.get(base + 5) == null;
+
+        cache.clear();
+        assert cache.entries().isEmpty();
+    }
+}
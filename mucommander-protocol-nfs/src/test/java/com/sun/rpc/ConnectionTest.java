@@ -0,0 +1,141 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.sun.rpc;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * This class is a TestNG test case for {@link Connection}, which allows several outstanding calls.
+ */
+public class ConnectionTest {
+
+    /**
+     * A connection whose server replies to the calls in the order chosen by the test.
+     */
+    private static class TestConnection extends Connection {
+        private final BlockingQueue<Integer> sent = new LinkedBlockingQueue<>();
+        private final BlockingQueue<Integer> replies = new LinkedBlockingQueue<>();
+
+        private TestConnection() {
+            super("test", 0, "test", 64);
+            start();
+        }
+
+        @Override
+        void sendOne(Xdr call) {
+            sent.add(call.xid);
+        }
+
+        /**
+         * The reply to a call contains its XID followed by ten times its XID.
+         */
+        @Override
+        void receiveOne(Xdr reply, int timeout) throws IOException {
+            Integer xid;
+            try {
+                xid = replies.poll(timeout, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                xid = null;
+            }
+            if (xid == null)
+                throw new InterruptedIOException();
+
+            reply.xdr_int(xid);
+            reply.xdr_int(xid * 10);
+            reply.xdr_offset(0);
+        }
+
+        @Override
+        InetAddress getPeer() {
+            return null;
+        }
+
+        @Override
+        void dropConnection() {
+        }
+
+        @Override
+        void checkConnection() {
+        }
+    }
+
+    private static Future<Integer> call(ExecutorService executor, Connection conn, int xid) {
+        return executor.submit(() -> {
+            Xdr call = new Xdr(64);
+            call.xid = xid;
+            return conn.send(call, 10000).xdr_int();
+        });
+    }
+
+    /**
+     * Sends more calls than the window allows and replies to them out of order, asserting that the calls that do not
+     * fit in the window are sent once replies have come in, and that every reply is delivered to its caller.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testOutstandingCalls() throws Exception {
+        TestConnection conn = new TestConnection();
+        int nbCalls = Connection.MAX_OUTSTANDING + 2;
+        ExecutorService executor = Executors.newFixedThreadPool(nbCalls);
+        try {
+            Future<?>[] results = new Future<?>[nbCalls];
+            for (int xid = 1; xid <= nbCalls; xid++)
+                results[xid - 1] = call(executor, conn, xid);
+
+            // Only a window of calls is sent
+            int[] window = new int[Connection.MAX_OUTSTANDING];
+            for (int i = 0; i < window.length; i++) {
+                Integer xid = conn.sent.poll(10, TimeUnit.SECONDS);
+                assert xid != null;
+                window[i] = xid;
+            }
+            assert conn.sent.poll(200, TimeUnit.MILLISECONDS) == null;
+
+            // Reply to the last calls of the window first
+            for (int i = window.length - 1; i >= 0; i--) {
+                conn.replies.add(window[i]);
+                assert results[window[i] - 1].get(10, TimeUnit.SECONDS).equals(window[i] * 10);
+            }
+
+            // The remaining calls have been sent as replies came in
+            for (int i = window.length; i < nbCalls; i++) {
+                Integer xid = conn.sent.poll(10, TimeUnit.SECONDS);
+                assert xid != null;
+                conn.replies.add(xid);
+                assert results[xid - 1].get(10, TimeUnit.SECONDS).equals(xid * 10);
+            }
+
+            assert conn.waiters.isEmpty();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
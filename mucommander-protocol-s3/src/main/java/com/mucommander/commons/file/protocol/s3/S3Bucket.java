@@ -21,6 +21,7 @@ package com.mucommander.commons.file.protocol.s3;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.function.Consumer;
 
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
@@ -38,6 +39,7 @@ import com.mucommander.commons.file.SimpleFilePermissions;
 import com.mucommander.commons.file.SyncedFileAttributes;
 import com.mucommander.commons.file.UnsupportedFileOperation;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.io.RandomAccessInputStream;
 
 /**
@@ -100,6 +102,22 @@ public class S3Bucket extends S3File {
         return listObjects(bucketName, "", this);
     }
 
+    @Override
+    public void ls(FileFilter filter, Consumer<AbstractFile[]> chunkConsumer) throws IOException {
+        listObjects(bucketName, "", this, filter, chunkConsumer);
+    }
+
+    /**
+     * Returns a listing of the children of the bucket that returns them one page at a time, which allows to process large
+     * directories without holding all of their children in memory. The listing must be closed when it is not needed
+     * anymore.
+     *
+     * @return a listing of the children of the bucket
+     */
+    public S3ObjectListing getChildrenListing() {
+        return new S3ObjectListing(this, bucketName, "");
+    }
+
     @Override
     public void delete() throws IOException {
         try {
@@ -20,16 +20,13 @@ package com.mucommander.commons.file.protocol.s3;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.function.Consumer;
 
-import org.jets3t.service.Constants;
 import org.jets3t.service.S3Service;
 import org.jets3t.service.ServiceException;
-import org.jets3t.service.StorageObjectsChunk;
-import org.jets3t.service.model.StorageObject;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AuthException;
@@ -43,7 +40,9 @@ import com.mucommander.commons.file.PermissionBits;
 import com.mucommander.commons.file.PermissionType;
 import com.mucommander.commons.file.UnsupportedFileOperation;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.file.util.ChildrenChunker;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 
 /**
@@ -90,67 +89,33 @@ public abstract class S3File extends ProtocolFile {
     }
     
     protected AbstractFile[] listObjects(String bucketName, String prefix, S3File parent) throws IOException {
-        try {
-        	StorageObjectsChunk chunk = service.listObjectsChunked(bucketName, prefix, "/", Constants.DEFAULT_OBJECT_LIST_CHUNK_SIZE, null, true);
-            StorageObject objects[] = chunk.getObjects();
-            String[] commonPrefixes = chunk.getCommonPrefixes();
-
-            if(objects.length==0 && !prefix.equals("")) {
-                // This happens only when the directory does not exist
-                throw new IOException();
+        List<AbstractFile> children = new ArrayList<>();
+        listObjects(bucketName, prefix, parent, null, chunk -> Collections.addAll(children, chunk));
+
+        return children.toArray(new AbstractFile[0]);
+    }
+
+    /**
+     * Lists the objects and common prefixes under the given prefix one page at a time, passing the children to the
+     * consumer as pages are received rather than once all of them have been. The next page is fetched while the
+     * children of the current one are passed to the consumer, see {@link S3ObjectListing}.
+     *
+     * @param bucketName name of the bucket to list
+     * @param prefix prefix of the objects to list, <code>""</code> to list the bucket's root
+     * @param parent the parent of the children
+     * @param filter children that do not match this filter are discarded, may be <code>null</code>
+     * @param chunkConsumer the consumer to pass the children to
+     * @throws IOException if the directory does not exist or an error occurred while listing it
+     */
+    protected void listObjects(String bucketName, String prefix, S3File parent, FileFilter filter, Consumer<AbstractFile[]> chunkConsumer) throws IOException {
+        ChildrenChunker chunker = new ChildrenChunker(filter, chunkConsumer);
+        try (S3ObjectListing listing = new S3ObjectListing(parent, bucketName, prefix)) {
+            while(listing.hasNext()) {
+                for(AbstractFile child : listing.next())
+                    chunker.add(child);
             }
 
-            AbstractFile[] children = new AbstractFile[objects.length+commonPrefixes.length];
-            FileURL childURL;
-            int i=0;
-            String objectKey;
-
-            for(StorageObject object : objects) {
-                // Discard the object corresponding to the prefix itself
-                objectKey = object.getKey();
-                if(objectKey.equals(prefix))
-                    continue;
-
-                childURL = (FileURL)fileURL.clone();
-                childURL.setPath(bucketName + "/" + objectKey);
-
-                Map<String, Object> parameters = new HashMap<>();
-                parameters.put("service", service);
-                parameters.put("object", object);
-                children[i] = FileFactory.getFile(childURL, parent, parameters);
-                i++;
-            }
-
-            org.jets3t.service.model.S3Object directoryObject;
-            for(String commonPrefix : commonPrefixes) {
-                childURL = (FileURL)fileURL.clone();
-                childURL.setPath(bucketName + "/" + commonPrefix);
-
-                directoryObject = new org.jets3t.service.model.S3Object(commonPrefix);
-                // Common prefixes are not objects per se, and therefore do not have a date, content-length nor owner.
-                directoryObject.setLastModifiedDate(new Date(System.currentTimeMillis()));
-                directoryObject.setContentLength(0);
-                Map<String, Object> parameters = new HashMap<>();
-                parameters.put("service", service);
-                parameters.put("object", directoryObject);
-                children[i] = FileFactory.getFile(childURL, parent, parameters);
-                i++;
-            }
-
-            // Trim the array if an object was discarded.
-            // Note: Having to recreate an array sucks (puts pressure on the GC), but I haven't found a reliable way
-            // to know in advance whether the prefix will appear in the results or not.
-            if(i<children.length) {
-                AbstractFile[] childrenTrimmed = new AbstractFile[i];
-                System.arraycopy(children, 0, childrenTrimmed, 0, i);
-
-                return childrenTrimmed;
-            }
-
-            return children;
-        }
-        catch(ServiceException e) {
-            throw getIOException(e);
+            chunker.flush();
         }
     }
 
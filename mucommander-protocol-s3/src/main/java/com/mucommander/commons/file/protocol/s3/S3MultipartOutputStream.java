@@ -0,0 +1,354 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.protocol.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jets3t.service.S3Service;
+import org.jets3t.service.ServiceException;
+import org.jets3t.service.model.MultipartPart;
+import org.jets3t.service.model.MultipartUpload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.io.BufferPool;
+
+/**
+ * OutputStream that uploads an S3 object with a multipart upload, as the data is written to it: the data is split into
+ * parts that are buffered in memory and uploaded concurrently, so that neither the length of the object nor a
+ * temporary file is needed.
+ *
+ * <p>The parts that are buffered or being uploaded take up at most {@link #MAX_BUFFERED_BYTES} bytes, or a single part
+ * if parts are larger than that, which bounds the memory used by the stream. Writing blocks until enough pending parts
+ * have been uploaded to buffer the next part.</p>
+ *
+ * <p>The object is created by {@link #close()}, once all parts have been uploaded, and only if all of them were.
+ * An upload that must not complete, for instance because the data could not be read entirely, must be
+ * {@link #abort() aborted} instead, in which case the parts uploaded so far are discarded and the object is left
+ * untouched. Objects that fit in a single part are uploaded with a single PUT request when the stream is closed.</p>
+ */
+class S3MultipartOutputStream extends OutputStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(S3MultipartOutputStream.class);
+
+    /** Size of the first parts, the minimum part size allowed by S3 is 5 MB */
+    final static int PART_SIZE = 8 * 1024 * 1024;
+
+    /** Maximum size of a part. S3 allows parts of up to 5 GB, but parts are buffered in byte arrays */
+    private final static int MAX_PART_SIZE = 1024 * 1024 * 1024;
+
+    /** Maximum number of parts of an object allowed by S3 */
+    private final static int MAX_PARTS = 10000;
+
+    /** When the length of the object is not known, the part size is doubled every time this number of parts have been
+     * uploaded, up to {@link #MAX_PART_SIZE}, so that objects up to the maximum object size of 5 TB can be uploaded */
+    private final static int PARTS_PER_SIZE = 500;
+
+    /** Number of parts that are uploaded concurrently */
+    final static int UPLOAD_THREADS = 4;
+
+    /** Maximum number of bytes of the parts that are buffered or being uploaded, unless a single part is larger */
+    private final static long MAX_BUFFERED_BYTES = (UPLOAD_THREADS+1) * (long)PART_SIZE;
+
+    private final S3Service service;
+    private final String bucketName;
+    private final String objectKey;
+
+    /** Uploads the parts */
+    private ExecutorService executor;
+
+    /** The multipart upload, <code>null</code> until the first part is uploaded */
+    private MultipartUpload upload;
+
+    /** Parts being uploaded, in order */
+    private final Deque<Future<MultipartPart>> pendingParts = new ArrayDeque<>();
+
+    /** Sizes of the buffers of the parts being uploaded, in the same order as {@link #pendingParts} */
+    private final Deque<Integer> pendingPartSizes = new ArrayDeque<>();
+
+    /** Total size of the buffers of the parts being uploaded */
+    private long pendingBytes;
+
+    /** Parts that have been uploaded */
+    private final List<MultipartPart> uploadedParts = new ArrayList<>();
+
+    /** Size of all parts if the length of the object is known, <code>-1</code> otherwise */
+    private final int fixedPartSize;
+
+    /** The part being filled, <code>null</code> until data is written to it */
+    private byte[] part;
+
+    /** Number of bytes in the part being filled */
+    private int partLength;
+
+    /** Number of the part being filled, starting at 1 */
+    private int partNumber = 1;
+
+    /** Total number of bytes written */
+    private long length;
+
+    /** True once the stream has been closed or aborted */
+    private boolean closed;
+
+    /**
+     * Creates a new stream that uploads the given object.
+     *
+     * @param service the service to upload the object with
+     * @param bucketName name of the bucket of the object
+     * @param objectKey key of the object
+     * @param length length of the object, <code>-1</code> if it is not known
+     */
+    S3MultipartOutputStream(S3Service service, String bucketName, String objectKey, long length) {
+        this.service = service;
+        this.bucketName = bucketName;
+        this.objectKey = objectKey;
+        this.fixedPartSize = length<0 ? -1 : (int)Math.min(MAX_PART_SIZE, Math.max(PART_SIZE, (length+MAX_PARTS-1) / MAX_PARTS));
+    }
+
+    /**
+     * Returns the total number of bytes written to this stream.
+     */
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the size of the given part, so that objects up to 5 TB fit in the maximum number of parts. When the
+     * length of the object is known, all parts have the smallest size that allows it.
+     */
+    private int getPartSize(int partNumber) {
+        if(fixedPartSize!=-1)
+            return fixedPartSize;
+
+        return (int)Math.min(MAX_PART_SIZE, (long)PART_SIZE << ((partNumber-1) / PARTS_PER_SIZE));
+    }
+
+    /**
+     * Allocates the buffer of the part to fill, after waiting for the oldest pending parts to be uploaded if the
+     * buffer would not fit in {@link #MAX_BUFFERED_BYTES} otherwise.
+     */
+    private void allocatePart() throws IOException {
+        if(partNumber>MAX_PARTS)
+            throw new IOException("Object is too large");
+
+        int partSize = getPartSize(partNumber);
+        while(!pendingParts.isEmpty() && pendingBytes+partSize>MAX_BUFFERED_BYTES)
+            waitForOldestPart();
+
+        part = BufferPool.getByteArray(partSize);
+    }
+
+    /**
+     * Queues the part being filled for upload.
+     */
+    private void submitPart() throws IOException {
+        try {
+            if(upload==null) {
+                upload = service.multipartStartUpload(bucketName, new org.jets3t.service.model.S3Object(objectKey));
+                executor = Executors.newFixedThreadPool(UPLOAD_THREADS, r -> {
+                    Thread thread = new Thread(r, "S3 upload of "+objectKey);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        catch(ServiceException e) {
+            throw new IOException(e);
+        }
+
+        final byte[] data = part;
+        final int dataLength = partLength;
+        final int number = partNumber;
+        pendingParts.addLast(executor.submit(() -> {
+            try {
+                org.jets3t.service.model.S3Object object = new org.jets3t.service.model.S3Object(objectKey);
+                object.setDataInputStream(new ByteArrayInputStream(data, 0, dataLength));
+                object.setContentLength(dataLength);
+
+                return service.multipartUploadPart(upload, number, object);
+            }
+            finally {
+                BufferPool.releaseByteArray(data);
+            }
+        }));
+        pendingPartSizes.addLast(data.length);
+        pendingBytes += data.length;
+
+        partNumber++;
+        part = null;
+        partLength = 0;
+    }
+
+    /**
+     * Waits for the oldest pending part to be uploaded.
+     */
+    private void waitForOldestPart() throws IOException {
+        Future<MultipartPart> pendingPart = pendingParts.removeFirst();
+        pendingBytes -= pendingPartSizes.removeFirst();
+        try {
+            uploadedParts.add(pendingPart.get());
+        }
+        catch(InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Discards the upload: the parts that have been uploaded are deleted and the object is not created.
+     * This method has no effect if the stream has already been closed or aborted.
+     */
+    void abort() {
+        if(closed)
+            return;
+        closed = true;
+
+        release();
+
+        if(upload!=null) {
+            try {
+                service.multipartAbortUpload(upload);
+            }
+            catch(ServiceException e) {
+                LOGGER.info("failed to abort the upload of {}", objectKey, e);
+            }
+        }
+    }
+
+    /**
+     * Cancels the parts that are pending and releases the buffers and threads used by this stream.
+     */
+    private void release() {
+        for(Future<MultipartPart> pendingPart : pendingParts)
+            pendingPart.cancel(true);
+        pendingParts.clear();
+        pendingPartSizes.clear();
+        pendingBytes = 0;
+
+        if(executor!=null)
+            executor.shutdownNow();
+
+        if(part!=null) {
+            BufferPool.releaseByteArray(part);
+            part = null;
+        }
+    }
+
+
+    /////////////////////////////////
+    // OutputStream implementation //
+    /////////////////////////////////
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+
+        while(len>0) {
+            if(part==null) {
+                try {
+                    allocatePart();
+                }
+                catch(IOException e) {
+                    abort();
+                    throw e;
+                }
+            }
+
+            int nbBytes = Math.min(len, getPartSize(partNumber)-partLength);
+            System.arraycopy(b, off, part, partLength, nbBytes);
+            partLength += nbBytes;
+            length += nbBytes;
+            off += nbBytes;
+            len -= nbBytes;
+
+            if(partLength==getPartSize(partNumber)) {
+                try {
+                    submitPart();
+                }
+                catch(IOException e) {
+                    abort();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Uploads the remaining data and completes the upload, creating the object. If the upload fails, it is aborted.
+     *
+     * @throws IOException if the object could not be uploaded
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+
+        try {
+            // The object fits in a single part, upload it with a single request
+            if(upload==null) {
+                org.jets3t.service.model.S3Object object = new org.jets3t.service.model.S3Object(objectKey);
+                object.setDataInputStream(new ByteArrayInputStream(part==null ? new byte[0] : part, 0, partLength));
+                object.setContentLength(partLength);
+                service.putObject(bucketName, object);
+
+                closed = true;
+                release();
+                return;
+            }
+
+            if(partLength>0)
+                submitPart();
+
+            while(!pendingParts.isEmpty())
+                waitForOldestPart();
+
+            uploadedParts.sort(Comparator.comparing(MultipartPart::getPartNumber));
+            service.multipartCompleteUpload(upload, uploadedParts);
+
+            closed = true;
+            release();
+        }
+        catch(ServiceException e) {
+            abort();
+            throw new IOException(e);
+        }
+        catch(IOException e) {
+            abort();
+            throw e;
+        }
+    }
+}
@@ -20,11 +20,21 @@ package com.mucommander.commons.file.protocol.s3;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
 import org.jets3t.service.ServiceException;
+import org.jets3t.service.model.MultipartPart;
+import org.jets3t.service.model.MultipartUpload;
 import org.jets3t.service.model.StorageObject;
 import org.jets3t.service.model.StorageOwner;
 import org.slf4j.Logger;
@@ -33,7 +43,6 @@ import org.slf4j.LoggerFactory;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AuthException;
 import com.mucommander.commons.file.FileAttributes;
-import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.FilePermissions;
 import com.mucommander.commons.file.FileURL;
@@ -41,6 +50,7 @@ import com.mucommander.commons.file.SimpleFilePermissions;
 import com.mucommander.commons.file.SyncedFileAttributes;
 import com.mucommander.commons.file.UnsupportedFileOperation;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.FileTransferError;
 import com.mucommander.commons.io.FileTransferException;
@@ -58,9 +68,12 @@ public class S3Object extends S3File {
     private String bucketName;
     private S3ObjectFileAttributes atts;
 
-    /** Maximum size of an S3 object (5GB) */
+    /** Maximum size of an S3 object that can be uploaded or copied with a single request (5GB) */
     private final static long MAX_OBJECT_SIZE = 5368709120l;
 
+    /** Size of the parts of the objects that are copied in parts, see {@link #copyInPartsTo(S3Object)} */
+    private final static long COPY_PART_SIZE = 1024 * 1024 * 1024;
+
     // TODO: add support for ACL ? (would cost an extra request per object)
     /** Default permissions for S3 objects */
     private final static FilePermissions DEFAULT_PERMISSIONS = new SimpleFilePermissions(384);   // rw-------
@@ -126,6 +139,109 @@ public class S3Object extends S3File {
     }
 
 
+    /**
+     * Uploads the object contained in the given input stream to S3 with a multipart upload, which does not require the
+     * length of the object to be known. The object is created only if the stream could be read entirely.
+     *
+     * @param in the stream that contains the object to be uploaded
+     * @param length length of the object, <code>-1</code> if it is not known
+     * @throws FileTransferException if an error occurred during the transfer
+     */
+    private void putObjectInParts(InputStream in, long length) throws FileTransferException {
+        S3MultipartOutputStream out = new S3MultipartOutputStream(service, bucketName, getObjectKey(false), length);
+        boolean uploaded = false;
+        try {
+            StreamUtils.copyStream(in, out, IO_BUFFER_SIZE);
+
+            try {
+                out.close();
+            }
+            catch(IOException e) {
+                LOGGER.info("failed to upload {}", getURL(), e);
+                throw new FileTransferException(FileTransferError.CLOSING_DESTINATION);
+            }
+            uploaded = true;
+        }
+        finally {
+            // Do not leave the upload open if the object could not be uploaded, whatever the reason
+            if(!uploaded)
+                out.abort();
+        }
+
+        // Update local file attributes
+        atts.setExists(true);
+        atts.setDirectory(false);
+        atts.setSize(out.getLength());
+        atts.setDate(System.currentTimeMillis());
+        atts.updateExpirationDate();
+    }
+
+    /**
+     * Copies this object, which is larger than the maximum size of a single COPY request, to the given object with a
+     * multipart upload whose parts are copied by S3 from ranges of this object, several at a time. The content type
+     * and user metadata of this object are given to the destination object, like a single COPY request does.
+     *
+     * @param destObjectFile the object to copy this object to
+     * @throws IOException if the copy failed, in which case the destination object is left untouched
+     */
+    private void copyInPartsTo(S3Object destObjectFile) throws IOException {
+        long size = getSize();
+        String sourceKey = getObjectKey(false);
+        MultipartUpload upload;
+        try {
+            org.jets3t.service.model.S3Object destObject = new org.jets3t.service.model.S3Object(destObjectFile.getObjectKey(false));
+            destObject.addAllMetadata(service.getObjectDetails(bucketName, sourceKey).getModifiableMetadata());
+
+            upload = service.multipartStartUpload(destObjectFile.bucketName, destObject);
+        }
+        catch(ServiceException e) {
+            throw getIOException(e);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(S3MultipartOutputStream.UPLOAD_THREADS, r -> {
+            Thread thread = new Thread(r, "S3 copy of "+sourceKey);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<MultipartPart>> futures = new ArrayList<>();
+            int partNumber = 1;
+            for(long start=0; start<size; start+=COPY_PART_SIZE) {
+                final int number = partNumber++;
+                final long rangeStart = start;
+                final long rangeEnd = Math.min(size, start+COPY_PART_SIZE)-1;
+                futures.add(executor.submit(() -> service.multipartUploadPartCopy(upload, number, bucketName, sourceKey,
+                        null, null, null, null, rangeStart, rangeEnd, null)));
+            }
+
+            List<MultipartPart> parts = new ArrayList<>(futures.size());
+            for(Future<MultipartPart> future : futures)
+                parts.add(future.get());
+
+            service.multipartCompleteUpload(upload, parts);
+        }
+        catch(Exception e) {
+            try {
+                service.multipartAbortUpload(upload);
+            }
+            catch(ServiceException e1) {
+                LOGGER.info("failed to abort the copy of {}", getURL(), e1);
+            }
+
+            if(e instanceof InterruptedException)
+                throw new InterruptedIOException();
+            if(e instanceof ExecutionException && e.getCause() instanceof ServiceException)
+                throw getIOException((ServiceException)e.getCause());
+            if(e instanceof ServiceException)
+                throw getIOException((ServiceException)e);
+            throw new IOException(e);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+
     ///////////////////////////
     // S3File implementation //
     ///////////////////////////
@@ -155,6 +271,22 @@ public class S3Object extends S3File {
         return listObjects(bucketName, getObjectKey(true), this);
     }
 
+    @Override
+    public void ls(FileFilter filter, Consumer<AbstractFile[]> chunkConsumer) throws IOException {
+        listObjects(bucketName, getObjectKey(true), this, filter, chunkConsumer);
+    }
+
+    /**
+     * Returns a listing of the children of this directory that returns them one page at a time, which allows to process large
+     * directories without holding all of their children in memory. The listing must be closed when it is not needed
+     * anymore.
+     *
+     * @return a listing of the children of this directory
+     */
+    public S3ObjectListing getChildrenListing() {
+        return new S3ObjectListing(this, bucketName, getObjectKey(true));
+    }
+
     @Override
     public void mkdir() throws IOException {
         if(exists())
@@ -219,6 +351,17 @@ public class S3Object extends S3File {
 //                throw new IOException();
 
             boolean isDirectory = isDirectory();
+            if(!isDirectory && getSize()>MAX_OBJECT_SIZE) {
+                copyInPartsTo(destObjectFile);
+
+                // Update destination file attributes
+                destObjectFile.atts.setExists(true);
+                destObjectFile.atts.setDirectory(false);
+                destObjectFile.atts.setSize(getSize());
+                destObjectFile.atts.setDate(System.currentTimeMillis());
+                return;
+            }
+
             org.jets3t.service.model.S3Object destObject = new org.jets3t.service.model.S3Object(destObjectFile.getObjectKey(isDirectory));
 
             destObject.addAllMetadata(
@@ -332,59 +475,11 @@ public class S3Object extends S3File {
 
         // TODO: compute md5 ?
 
-        // If the length is known, we can upload the object directly without having to go through the tedious process
-        // of copying the stream to a temporary file.
-        if(length>=0) {
+        // Objects that fit in a single part are uploaded directly, others are uploaded in parts as they are read
+        if(length>=0 && length<=S3MultipartOutputStream.PART_SIZE)
             putObject(in, length);
-        }
-        else {
-            // Copy the stream to a temporary file so that we can know the object's length, which has to be declared
-            // in the PUT request's headers (that is before the transfer is started).
-            final AbstractFile tempFile;
-            final OutputStream tempOut;
-            try {
-                tempFile = FileFactory.getTemporaryFile(false);
-                tempOut = tempFile.getOutputStream();
-            }
-            catch(IOException e) {
-                throw new FileTransferException(FileTransferError.OPENING_DESTINATION);
-            }
-
-            try {
-                // Copy the stream to the temporary file
-                try {
-                    StreamUtils.copyStream(in, tempOut, IO_BUFFER_SIZE);
-                }
-                finally {
-                    // Close the stream even if copyStream() threw an IOException
-                    try {
-                        tempOut.close();
-                    }
-                    catch(IOException e) {
-                        // Do not re-throw the exception to prevent swallowing the exception thrown in the try block
-                    }
-                }
-
-                InputStream tempIn;
-                try {
-                    tempIn = tempFile.getInputStream();
-                }
-                catch(IOException e) {
-                    throw new FileTransferException(FileTransferError.OPENING_SOURCE);
-                }
-
-                putObject(tempIn, tempFile.getSize());
-            }
-            finally {
-                // Delete the temporary file, no matter what.
-                try {
-                    tempFile.delete();
-                }
-                catch(IOException e) {
-                    // Do not re-throw the exception to prevent exceptions caught in the catch block from being replaced
-                }
-            }
-        }
+        else
+            putObjectInParts(in, length);
     }
 
     ///////////////////
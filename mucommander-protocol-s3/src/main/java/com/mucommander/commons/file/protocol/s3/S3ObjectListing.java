@@ -0,0 +1,214 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.protocol.s3;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jets3t.service.Constants;
+import org.jets3t.service.ServiceException;
+import org.jets3t.service.StorageObjectsChunk;
+import org.jets3t.service.model.StorageObject;
+import org.jets3t.service.model.StorageOwner;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.FileURL;
+
+/**
+ * Lists the objects and common prefixes under an S3 prefix one page at a time, each page holding up to
+ * {@link Constants#DEFAULT_OBJECT_LIST_CHUNK_SIZE} keys.
+ *
+ * <p>The request for the next page is sent as soon as a page is received, so that the next page is being fetched while
+ * the current one is processed. Only the current and next pages are held in memory, whatever the size of the
+ * listing. The children keep the attributes of their object but not the object itself, and the children of a listing
+ * share the owner of their objects instead of each holding the copy that was parsed from the listing.</p>
+ *
+ * <p>A listing that is not needed anymore must be {@link #close() closed}, which cancels the request for the next
+ * page.</p>
+ */
+public class S3ObjectListing implements Closeable {
+
+    /** Fetches the next pages of the listings */
+    private final static ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "S3 listing");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final S3File parent;
+    private final String bucketName;
+    private final String prefix;
+
+    /** The next page being fetched, <code>null</code> if the listing is complete or closed */
+    private Future<StorageObjectsChunk> nextPage;
+
+    /** True until the first page has been returned */
+    private boolean firstPage = true;
+
+    /** Owners of the listed objects, by id, shared by the children of the listing */
+    private final Map<String, StorageOwner> owners = new HashMap<>();
+
+    /**
+     * Starts listing the children of the given prefix.
+     *
+     * @param parent the parent of the children
+     * @param bucketName name of the bucket to list
+     * @param prefix prefix of the objects to list, <code>""</code> to list the bucket's root
+     */
+    S3ObjectListing(S3File parent, String bucketName, String prefix) {
+        this.parent = parent;
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+
+        nextPage = fetchPage(null);
+    }
+
+    /**
+     * Requests the page that follows the given key.
+     */
+    private Future<StorageObjectsChunk> fetchPage(String priorLastKey) {
+        return PREFETCH_EXECUTOR.submit(() ->
+            parent.service.listObjectsChunked(bucketName, prefix, "/", Constants.DEFAULT_OBJECT_LIST_CHUNK_SIZE, priorLastKey, false)
+        );
+    }
+
+    /**
+     * Returns <code>true</code> if there are more pages to return.
+     *
+     * @return <code>true</code> if there are more pages to return
+     */
+    public synchronized boolean hasNext() {
+        return nextPage!=null;
+    }
+
+    /**
+     * Returns the children of the next page, waiting for it to be received if needed, and requests the page after it.
+     *
+     * @return the children of the next page, possibly none
+     * @throws IOException if the prefix does not exist or an error occurred while listing it
+     * @throws NoSuchElementException if there are no more pages
+     */
+    public AbstractFile[] next() throws IOException {
+        Future<StorageObjectsChunk> page;
+        synchronized(this) {
+            if(nextPage==null)
+                throw new NoSuchElementException();
+            page = nextPage;
+        }
+
+        StorageObjectsChunk chunk;
+        try {
+            chunk = page.get();
+        }
+        catch(InterruptedException e) {
+            close();
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e) {
+            close();
+            if(e.getCause() instanceof ServiceException)
+                throw parent.getIOException((ServiceException)e.getCause());
+            throw new IOException(e.getCause());
+        }
+
+        synchronized(this) {
+            // The listing has been closed while the page was being received
+            if(nextPage!=page)
+                throw new NoSuchElementException();
+
+            nextPage = chunk.isListingComplete() ? null : fetchPage(chunk.getPriorLastKey());
+        }
+
+        StorageObject objects[] = chunk.getObjects();
+        if(firstPage && objects.length==0 && !prefix.equals("")) {
+            // The object corresponding to the prefix itself, if any, comes first: this happens only when the
+            // directory does not exist
+            close();
+            throw new IOException();
+        }
+        firstPage = false;
+
+        return createChildren(objects, chunk.getCommonPrefixes());
+    }
+
+    /**
+     * Creates the children corresponding to the given objects and common prefixes.
+     */
+    private AbstractFile[] createChildren(StorageObject objects[], String commonPrefixes[]) throws IOException {
+        List<AbstractFile> children = new ArrayList<>(objects.length+commonPrefixes.length);
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("service", parent.service);
+
+        for(StorageObject object : objects) {
+            // Discard the object corresponding to the prefix itself
+            String objectKey = object.getKey();
+            if(objectKey.equals(prefix))
+                continue;
+
+            // Most objects have the same owner, whose name would otherwise be held by each child
+            StorageOwner owner = object.getOwner();
+            if(owner!=null && owner.getId()!=null)
+                object.setOwner(owners.computeIfAbsent(owner.getId(), id -> owner));
+
+            parameters.put("object", object);
+            children.add(FileFactory.getFile(getChildURL(objectKey), parent, parameters));
+        }
+
+        // Common prefixes are not objects per se, and therefore do not have a date, content-length nor owner.
+        Date now = new Date(System.currentTimeMillis());
+        for(String commonPrefix : commonPrefixes) {
+            org.jets3t.service.model.S3Object directoryObject = new org.jets3t.service.model.S3Object(commonPrefix);
+            directoryObject.setLastModifiedDate(now);
+            directoryObject.setContentLength(0);
+
+            parameters.put("object", directoryObject);
+            children.add(FileFactory.getFile(getChildURL(commonPrefix), parent, parameters));
+        }
+
+        return children.toArray(new AbstractFile[0]);
+    }
+
+    private FileURL getChildURL(String key) {
+        FileURL childURL = (FileURL)parent.getURL().clone();
+        childURL.setPath(bucketName + "/" + key);
+        return childURL;
+    }
+
+    /**
+     * Stops listing: the request for the next page is cancelled and {@link #hasNext()} returns <code>false</code>.
+     */
+    @Override
+    public synchronized void close() {
+        if(nextPage!=null) {
+            nextPage.cancel(true);
+            nextPage = null;
+        }
+    }
+}
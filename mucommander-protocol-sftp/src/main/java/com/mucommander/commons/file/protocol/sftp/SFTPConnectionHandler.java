@@ -47,6 +47,13 @@ class SFTPConnectionHandler extends ConnectionHandler implements AutoCloseable {
     /** 'Public key' SSH authentication method, not supported at the moment */
     private final static String PUBLIC_KEY_AUTH_METHOD = "publickey";
 
+    /**
+     * Maximum number of read or write requests that are sent ahead, without waiting for the server's response, by the
+     * streams that transfer files. Each request carries up to a packet of data (32 KB with most servers), so that a
+     * transfer keeps up to 2 MB in flight and is not bound by the round-trip time.
+     */
+    final static int BULK_REQUESTS = 64;
+
 
     SFTPConnectionHandler(FileURL location) {
         super(location);
@@ -92,6 +99,7 @@ class SFTPConnectionHandler extends ConnectionHandler implements AutoCloseable {
             // Init SFTP connections
             channelSftp = (ChannelSftp) session.openChannel("sftp");
             channelSftp.connect(5*1000);
+            channelSftp.setBulkRequests(BULK_REQUESTS);
             LOGGER.info("authentication complete");
         }
         catch(IOException e) {
@@ -20,11 +20,13 @@
 package com.mucommander.commons.file.protocol.sftp;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,8 +50,10 @@ import com.mucommander.commons.file.UnsupportedFileOperation;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.file.connection.ConnectionHandler;
 import com.mucommander.commons.file.connection.ConnectionPool;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.file.util.ChildrenChunker;
 import com.mucommander.commons.io.ByteCounter;
 import com.mucommander.commons.io.ByteUtils;
 import com.mucommander.commons.io.CounterOutputStream;
@@ -410,8 +414,6 @@ public class SFTPFile extends ProtocolFile {
             return new AbstractFile[] {};
 
         AbstractFile children[] = new AbstractFile[nbFiles];
-        FileURL childURL;
-        String filename;
         int fileCount = 0;
         String parentPath = fileURL.getPath();
         if(!parentPath .endsWith(SEPARATOR))
@@ -419,15 +421,12 @@ public class SFTPFile extends ProtocolFile {
 
         // Fill AbstractFile array and discard '.' and '..' files
         for (LsEntry file : files) {
-            filename = file.getFilename();
+            String filename = file.getFilename();
             // Discard '.' and '..' files, dunno why these are returned
             if (filename.equals(".") || filename.equals(".."))
                 continue;
 
-            childURL = (FileURL) fileURL.clone();
-            childURL.setPath(parentPath + filename);
-
-            children[fileCount++] = FileFactory.getFile(childURL, this, Collections.singletonMap("attributes", new SFTPFileAttributes(childURL, file.getAttrs())));
+            children[fileCount++] = createChild(parentPath, file);
         }
 
         // Create new array of the exact file count
@@ -440,6 +439,57 @@ public class SFTPFile extends ProtocolFile {
         return children;
     }
 
+    /**
+     * Lists this folder, passing children to the consumer as the server sends them rather than once the whole folder
+     * has been listed.
+     */
+    @Override
+    public void ls(FileFilter filter, Consumer<AbstractFile[]> chunkConsumer) throws IOException {
+        String parentPath = fileURL.getPath();
+        if(!parentPath.endsWith(SEPARATOR))
+            parentPath += SEPARATOR;
+        final String childrenPath = parentPath;
+
+        ChildrenChunker chunker = new ChildrenChunker(filter, chunkConsumer);
+        InterruptedIOException interruption[] = new InterruptedIOException[1];
+        try (SFTPConnectionHandler connHandler = (SFTPConnectionHandler)ConnectionPool.getConnectionHandler(connHandlerFactory, fileURL, true)) {
+            // Makes sure the connection is started, if not starts it
+            connHandler.checkConnection();
+
+            connHandler.channelSftp.ls(absPath, entry -> {
+                String filename = entry.getFilename();
+                // Discard '.' and '..' files, dunno why these are returned
+                if (filename.equals(".") || filename.equals(".."))
+                    return ChannelSftp.LsEntrySelector.CONTINUE;
+
+                try {
+                    chunker.add(createChild(childrenPath, entry));
+                    return ChannelSftp.LsEntrySelector.CONTINUE;
+                } catch (InterruptedIOException e) {
+                    interruption[0] = e;
+                    return ChannelSftp.LsEntrySelector.BREAK;
+                }
+            });
+        } catch (Exception e) {
+            LOGGER.error("failed to ls {}", getURL());
+        }
+
+        if (interruption[0] != null)
+            throw interruption[0];
+
+        chunker.flush();
+    }
+
+    /**
+     * Returns the child of this folder that corresponds to the given directory entry.
+     */
+    private AbstractFile createChild(String parentPath, LsEntry entry) {
+        FileURL childURL = (FileURL) fileURL.clone();
+        childURL.setPath(parentPath + entry.getFilename());
+
+        return FileFactory.getFile(childURL, this, Collections.singletonMap("attributes", new SFTPFileAttributes(childURL, entry.getAttrs())));
+    }
+
 
     @Override
     public void mkdir() throws IOException {
@@ -574,8 +624,8 @@ public class SFTPFile extends ProtocolFile {
             // Makes sure the connection is started, if not starts it
             connHandler.checkConnection();
 
-            InputStream in = connHandler.channelSftp.get(absPath);
-            in.skip(offset);
+            // Start reading at the offset rather than skipping the bytes before it, which would transfer them
+            InputStream in = connHandler.channelSftp.get(absPath, null, offset);
             return new InputStream() {
                 @Override
                 public int read() throws IOException {
@@ -775,14 +825,33 @@ public class SFTPFile extends ProtocolFile {
 
     /**
      * SFTPRandomAccessInputStream extends RandomAccessInputStream to provide random read access to an SFTPFile.
+     *
+     * <p>The stream holds a connection for its whole life and reads the file from the current offset with requests
+     * that are sent ahead of time, see {@link SFTPConnectionHandler#BULK_REQUESTS}. Seeking a short distance forward
+     * consumes the data that has already been requested, seeking elsewhere restarts reading at the new offset on the
+     * same connection.</p>
      */
     private class SFTPRandomAccessInputStream extends RandomAccessInputStream {
 
+        /** Seeking forward up to this number of bytes reads them rather than restarting reading at the new offset */
+        private final static int MAX_SKIP = 256 * 1024;
+
+        private final SFTPConnectionHandler connHandler;
         private InputStream in;
         private long offset;
 
         private SFTPRandomAccessInputStream() throws IOException {
-            this.in = getInputStream();
+            connHandler = (SFTPConnectionHandler)ConnectionPool.getConnectionHandler(connHandlerFactory, fileURL, true);
+            try {
+                // Makes sure the connection is started, if not starts it
+                connHandler.checkConnection();
+
+                in = connHandler.channelSftp.get(absPath, null, 0);
+            } catch(Exception e) {
+                LOGGER.error("failed to get random access input stream {}", getURL());
+                connHandler.releaseLock();
+                throw new IOException(e);
+            }
         }
 
         @Override
@@ -814,18 +883,43 @@ public class SFTPFile extends ProtocolFile {
         }
 
         public void seek(long offset) throws IOException {
+            if(offset==this.offset)
+                return;
+
+            if(offset>this.offset && offset-this.offset<=MAX_SKIP) {
+                byte skipBuffer[] = new byte[(int)(offset-this.offset)];
+                int nbSkipped = 0;
+                int nbRead;
+                while(nbSkipped<skipBuffer.length && (nbRead=in.read(skipBuffer, nbSkipped, skipBuffer.length-nbSkipped))!=-1)
+                    nbSkipped += nbRead;
+
+                this.offset += nbSkipped;
+                if(this.offset==offset)
+                    return;
+                // The end of the file was reached before the offset, restart reading at the offset like any seek
+            }
+
             try {
                 in.close();
             }
             catch(IOException e) {}
 
-            in = getInputStream(offset);
+            try {
+                in = connHandler.channelSftp.get(absPath, null, offset);
+            } catch(SftpException e) {
+                throw new IOException(e);
+            }
             this.offset = offset;
         }
 
         @Override
         public void close() throws IOException {
-            in.close();
+            try {
+                in.close();
+            }
+            finally {
+                connHandler.releaseLock();
+            }
         }
     }
 }
@@ -0,0 +1,295 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.viewer.text;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.mucommander.commons.io.RandomAccessInputStream;
+
+/**
+ * Sparse index of the lines of a text file, that allows to read any range of lines without reading the file from
+ * its start. The offset of one line out of {@link #LINES_PER_CHECKPOINT} is recorded, lines in between being found
+ * by reading forward from the closest recorded line.
+ *
+ * <p>The index is built by {@link #build(RandomAccessInputStream, Runnable)}, usually in a background thread while
+ * the lines that are already indexed are read from other threads. Lines are separated by <code>'\n'</code> bytes,
+ * which requires a charset that encodes this character, and no other one, with this byte: see
+ * {@link #isSupported(Charset)}.</p>
+ */
+class LineIndex {
+
+    /** Number of lines between two lines whose offset is recorded */
+    static final int LINES_PER_CHECKPOINT = 128;
+
+    /** Lines longer than this number of bytes are truncated when they are read */
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /** Size of the buffer used to read the file */
+    private static final int BUFFER_SIZE = 65536;
+
+    /** Minimum delay in milliseconds between two progress notifications */
+    private static final long PROGRESS_INTERVAL = 250;
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private final Charset charset;
+
+    /** Offsets of lines 0, LINES_PER_CHECKPOINT, 2 * LINES_PER_CHECKPOINT... */
+    private long[] checkpoints = new long[1024];
+    private int nbCheckpoints;
+
+    /** Number of lines that are indexed so far */
+    private long lineCount;
+
+    /** Whether the whole file has been indexed */
+    private boolean complete;
+
+    LineIndex(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Returns <code>true</code> if files encoded with the given charset can be indexed.
+     */
+    static boolean isSupported(Charset charset) {
+        return charset.canEncode() && Arrays.equals("\n".getBytes(charset), new byte[] {'\n'});
+    }
+
+    /**
+     * Indexes the lines of the file, notifying the given listener from time to time and once the index is complete.
+     * This method returns early if the current thread is interrupted.
+     *
+     * @param in the stream to read the file from, not closed by this method
+     * @param progressListener called from the indexing thread whenever lines have been indexed
+     * @throws IOException if an error occurred while reading the file, or the thread was interrupted
+     */
+    void build(RandomAccessInputStream in, Runnable progressListener) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        in.seek(0);
+
+        // Skip the UTF-8 byte-order mark
+        int nbRead = readUpTo(in, buffer, UTF8_BOM.length);
+        int start = charset.equals(StandardCharsets.UTF_8) && nbRead == UTF8_BOM.length
+                && Arrays.equals(Arrays.copyOf(buffer, nbRead), UTF8_BOM) ? UTF8_BOM.length : 0;
+        addCheckpoint(start);
+
+        long offset = 0;
+        long nbLines = 0;
+        long lastNotification = System.currentTimeMillis();
+        do {
+            for (int i = start; i < nbRead; i++) {
+                if (buffer[i] == '\n' && ++nbLines % LINES_PER_CHECKPOINT == 0)
+                    addCheckpoint(offset + i + 1);
+            }
+            offset += nbRead;
+            start = 0;
+
+            synchronized (this) {
+                lineCount = nbLines;
+            }
+
+            if (Thread.currentThread().isInterrupted())
+                throw new InterruptedIOException();
+
+            long now = System.currentTimeMillis();
+            if (now - lastNotification >= PROGRESS_INTERVAL) {
+                progressListener.run();
+                lastNotification = now;
+            }
+        } while ((nbRead = in.read(buffer)) != -1);
+
+        // The last line is not followed by a separator
+        synchronized (this) {
+            lineCount = nbLines + 1;
+            complete = true;
+        }
+        progressListener.run();
+    }
+
+    private synchronized void addCheckpoint(long offset) {
+        if (nbCheckpoints == checkpoints.length)
+            checkpoints = Arrays.copyOf(checkpoints, 2 * checkpoints.length);
+        checkpoints[nbCheckpoints++] = offset;
+    }
+
+    /**
+     * Returns the number of lines that can be read, i.e. the number of lines of the file if the index is complete.
+     */
+    synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    synchronized boolean isComplete() {
+        return complete;
+    }
+
+    private synchronized long getCheckpoint(long line) {
+        return checkpoints[(int) (line / LINES_PER_CHECKPOINT)];
+    }
+
+    /**
+     * Reads the given range of lines, without their separator. Lines that are not indexed yet are not returned.
+     *
+     * @param in the stream to read the file from, not closed by this method
+     * @param firstLine the index of the first line to read
+     * @param nbLines the number of lines to read
+     * @return the lines, truncated to {@link #MAX_LINE_LENGTH} bytes
+     * @throws IOException if an error occurred while reading the file
+     */
+    List<String> readLines(RandomAccessInputStream in, long firstLine, int nbLines) throws IOException {
+        long count = getLineCount();
+        List<String> lines = new ArrayList<>();
+        if (firstLine >= count)
+            return lines;
+
+        LineReader reader = new LineReader(in, firstLine);
+        for (long line = firstLine; line < count && lines.size() < nbLines; line++) {
+            String text = reader.readLine();
+            if (text == null)
+                break;
+            lines.add(text);
+        }
+        return lines;
+    }
+
+    /**
+     * Searches the given text in the indexed lines, ignoring case. Lines are read one after the other, without
+     * loading the file in memory.
+     *
+     * @param in the stream to read the file from, not closed by this method
+     * @param text the text to search
+     * @param line the line to start searching at
+     * @param column the column in <code>line</code> to start searching at: the first match that starts at or after
+     * this column if searching forward, the last match that starts at or before it if searching backward
+     * @param forward <code>true</code> to search towards the end of the file, <code>false</code> towards its start
+     * @return the line and column of the match, <code>null</code> if the text was not found
+     * @throws IOException if an error occurred while reading the file, or the thread was interrupted
+     */
+    long[] find(RandomAccessInputStream in, String text, long line, int column, boolean forward) throws IOException {
+        text = text.toLowerCase();
+
+        if (forward) {
+            long count = getLineCount();
+            LineReader reader = new LineReader(in, line);
+            for (long l = line; l < count; l++) {
+                String lineText = reader.readLine();
+                if (lineText == null)
+                    break;
+                int index = lineText.toLowerCase().indexOf(text, l == line ? column : 0);
+                if (index >= 0)
+                    return new long[] {l, index};
+                checkInterrupted();
+            }
+        }
+        else {
+            // Read the lines block by block, each block starting with an indexed line
+            for (long first = line - line % LINES_PER_CHECKPOINT; first >= 0; first -= LINES_PER_CHECKPOINT) {
+                List<String> lines = readLines(in, first, (int) Math.min(LINES_PER_CHECKPOINT, line - first + 1));
+                for (int i = lines.size() - 1; i >= 0; i--) {
+                    long l = first + i;
+                    int index = lines.get(i).toLowerCase().lastIndexOf(text, l == line ? column : Integer.MAX_VALUE);
+                    if (index >= 0)
+                        return new long[] {l, index};
+                }
+                checkInterrupted();
+            }
+        }
+
+        return null;
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted())
+            throw new InterruptedIOException();
+    }
+
+    private static int readUpTo(RandomAccessInputStream in, byte[] buffer, int length) throws IOException {
+        int total = 0;
+        int nbRead;
+        while (total < length && (nbRead = in.read(buffer, total, length - total)) != -1)
+            total += nbRead;
+        return total;
+    }
+
+    /**
+     * Reads lines from a given line on, through a buffer.
+     */
+    private class LineReader {
+        private final RandomAccessInputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int length;
+        private boolean endOfFile;
+
+        private byte[] lineBytes = new byte[256];
+
+        private LineReader(RandomAccessInputStream in, long line) throws IOException {
+            this.in = in;
+            in.seek(getCheckpoint(line));
+            for (long l = line % LINES_PER_CHECKPOINT; l > 0; l--)
+                readLine();
+        }
+
+        /**
+         * Returns the next line, without its <code>"\n"</code> or <code>"\r\n"</code> separator, <code>null</code>
+         * if the end of the file was reached.
+         */
+        String readLine() throws IOException {
+            if (endOfFile)
+                return null;
+
+            int lineLength = 0;
+            boolean eol = false;
+            while (!eol) {
+                if (position == length) {
+                    length = in.read(buffer);
+                    position = 0;
+                    if (length == -1) {
+                        // The last line, which may be empty, is not followed by a separator
+                        length = 0;
+                        endOfFile = true;
+                        break;
+                    }
+                }
+
+                int end = position;
+                while (end < length && buffer[end] != '\n')
+                    end++;
+                eol = end < length;
+
+                int nbBytes = Math.min(end - position, MAX_LINE_LENGTH - lineLength);
+                if (lineLength + nbBytes > lineBytes.length)
+                    lineBytes = Arrays.copyOf(lineBytes, Math.max(lineLength + nbBytes, 2 * lineBytes.length));
+                System.arraycopy(buffer, position, lineBytes, lineLength, nbBytes);
+                lineLength += nbBytes;
+
+                position = eol ? end + 1 : end;
+            }
+
+            if (lineLength > 0 && lineBytes[lineLength - 1] == '\r')
+                lineLength--;
+            return new String(lineBytes, 0, lineLength, charset);
+        }
+    }
+}
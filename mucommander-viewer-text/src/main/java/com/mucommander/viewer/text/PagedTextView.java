@@ -0,0 +1,505 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.viewer.text;
+
+import java.awt.Cursor;
+import java.awt.Point;
+import java.awt.Toolkit;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JFrame;
+import javax.swing.JScrollBar;
+import javax.swing.JViewport;
+import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.fife.ui.rtextarea.RTextScrollPane;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.util.StringUtils;
+import com.mucommander.job.impl.SearchJob;
+
+/**
+ * Read-only view of large text files, that only reads and decodes the lines that are visible instead of loading the
+ * whole file into the text area.
+ *
+ * <p>The lines of the file are indexed by a {@link LineIndex} built in a background thread, the lines that are indexed
+ * being viewable right away. The text area only holds the visible lines and its vertical scroll bar is replaced by one
+ * that spans the whole file. The visible lines are read by {@link #lineReader}, and searches read the file line by
+ * line in a background thread, so that the event dispatch thread never waits for the file.</p>
+ */
+class PagedTextView {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PagedTextView.class);
+
+    /** Reads the visible lines of the files being viewed, and closes the streams they are read from */
+    private final static ThreadPoolExecutor lineReader = new ThreadPoolExecutor(1, 1,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), runnable -> {
+                Thread thread = new Thread(runnable, "PagedTextView reader");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    static {
+        lineReader.allowCoreThreadTimeOut(true);
+    }
+
+    private final TextEditorImpl textEditorImpl;
+    private final RSyntaxTextArea textArea;
+    private final RTextScrollPane scrollPane;
+
+    /** Scroll bar spanning all the indexed lines, in lines */
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+
+    /** true while the scroll bar is being updated by this class */
+    private boolean adjustingScrollBar;
+
+    private AbstractFile file;
+    private LineIndex index;
+
+    /** Stream the visible lines are read from, only read by {@link #lineReader} */
+    private RandomAccessInputStream in;
+
+    private Thread indexingThread;
+    private Thread searchThread;
+
+    /** Index of the first line in the text area */
+    private long firstLine;
+
+    /** Index of the first line to show, which differs from {@link #firstLine} while the lines are being read */
+    private long requestedLine;
+
+    /** Incremented on each read of the visible lines, so that the reads that have been superseded are dropped */
+    private volatile long readRequest;
+
+    PagedTextView(TextEditorImpl textEditorImpl) {
+        this.textEditorImpl = textEditorImpl;
+        this.textArea = textEditorImpl.getTextArea();
+        this.scrollPane = (RTextScrollPane) textEditorImpl.getScrollPane();
+
+        scrollBar.setVisible(false);
+        scrollBar.addAdjustmentListener(e -> {
+            if (!adjustingScrollBar)
+                scrollTo(e.getValue());
+        });
+
+        scrollPane.addMouseWheelListener(e -> {
+            if (isActive() && (e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) == 0)
+                scrollTo(requestedLine + e.getUnitsToScroll());
+        });
+
+        scrollPane.getViewport().addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                if (isActive())
+                    scrollTo(requestedLine);
+            }
+        });
+
+        textArea.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (isActive())
+                    handleKey(e);
+            }
+        });
+    }
+
+    /**
+     * Returns the scroll bar that replaces the one of the text area, which should be placed next to it.
+     */
+    JScrollBar getScrollBar() {
+        return scrollBar;
+    }
+
+    boolean isActive() {
+        return index != null;
+    }
+
+    /**
+     * Starts viewing the given file, indexing its lines in the background.
+     *
+     * @param file the file to view, which must support random read access
+     * @param charset the charset of the file, which must be supported by {@link LineIndex}
+     * @throws IOException if the file could not be opened
+     */
+    void open(AbstractFile file, Charset charset) throws IOException {
+        close();
+
+        this.file = file;
+        this.in = file.getRandomAccessInputStream();
+        this.index = new LineIndex(charset);
+        this.firstLine = 0;
+        this.requestedLine = 0;
+
+        scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER);
+        scrollBar.setVisible(true);
+
+        final LineIndex lineIndex = index;
+        indexingThread = new Thread(() -> {
+            try (RandomAccessInputStream indexIn = file.getRandomAccessInputStream()) {
+                lineIndex.build(indexIn, () -> SwingUtilities.invokeLater(() -> indexProgressed(lineIndex)));
+            } catch (InterruptedIOException e) {
+                // The file was closed
+            } catch (IOException e) {
+                LOGGER.info("Failed to index the lines of " + file.getAbsolutePath(), e);
+            }
+        }, "PagedTextView indexer");
+        indexingThread.setDaemon(true);
+        indexingThread.start();
+
+        scrollTo(0);
+        textArea.setCaretPosition(0);
+    }
+
+    /**
+     * Stops viewing the current file, if any, and gives the text area its vertical scroll bar back.
+     */
+    void close() {
+        if (!isActive())
+            return;
+
+        indexingThread.interrupt();
+        if (searchThread != null)
+            searchThread.interrupt();
+        indexingThread = null;
+        searchThread = null;
+        index = null;
+
+        // Drop the pending reads, then close the stream once the read in progress, if any, is over
+        readRequest++;
+        final RandomAccessInputStream closedIn = in;
+        final AbstractFile closedFile = file;
+        lineReader.execute(() -> {
+            try {
+                closedIn.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close " + closedFile.getAbsolutePath(), e);
+            }
+        });
+        in = null;
+        file = null;
+
+        textArea.setCursor(Cursor.getPredefinedCursor(Cursor.TEXT_CURSOR));
+        textEditorImpl.setText("", 0);
+        scrollBar.setVisible(false);
+        scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
+    }
+
+    /**
+     * Called on the event dispatch thread when lines have been indexed.
+     */
+    private void indexProgressed(LineIndex lineIndex) {
+        // Ignore notifications of a file that was closed
+        if (lineIndex != index)
+            return;
+
+        // Fill the text area if there were not enough lines to do so
+        if (textArea.getLineCount() <= getVisibleRows())
+            scrollTo(requestedLine);
+        else
+            updateScrollBar();
+    }
+
+    /**
+     * Returns the number of lines that fit in the text area.
+     */
+    private int getVisibleRows() {
+        return Math.max(1, scrollPane.getViewport().getExtentSize().height / textArea.getLineHeight());
+    }
+
+    /**
+     * Shows the lines that start at the given line, keeping the caret on the same row.
+     */
+    private void scrollTo(long line) {
+        scrollTo(line, null);
+    }
+
+    /**
+     * Shows the lines that start at the given line, keeping the caret on the same row. The lines are read by
+     * {@link #lineReader}, and the given action, if any, is run on the event dispatch thread once they are shown.
+     */
+    private void scrollTo(long line, Runnable shown) {
+        int rows = getVisibleRows();
+        line = Math.max(0, Math.min(line, index.getLineCount() - rows));
+        requestedLine = line;
+
+        final long request = ++readRequest;
+        final long startLine = line;
+        final LineIndex lineIndex = index;
+        final RandomAccessInputStream lineIn = in;
+        final AbstractFile readFile = file;
+        lineReader.execute(() -> {
+            // Another read was requested meanwhile
+            if (request != readRequest)
+                return;
+
+            List<String> lines;
+            try {
+                // One more line for the row that is partially visible
+                lines = lineIndex.readLines(lineIn, startLine, rows + 1);
+            } catch (IOException e) {
+                if (request == readRequest)
+                    LOGGER.info("Failed to read lines of " + readFile.getAbsolutePath(), e);
+                return;
+            }
+
+            SwingUtilities.invokeLater(() -> linesRead(request, startLine, rows, lines, shown));
+        });
+    }
+
+    /**
+     * Called on the event dispatch thread when the lines requested by {@link #scrollTo(long, Runnable)} have been
+     * read, to show them.
+     */
+    private void linesRead(long request, long line, int rows, List<String> lines, Runnable shown) {
+        // Ignore lines that were superseded, or of a file that was closed
+        if (request != readRequest)
+            return;
+
+        // Remember the position of the caret in the text area
+        int caretRow = 0;
+        int caretColumn = 0;
+        try {
+            int caretPosition = textArea.getCaretPosition();
+            caretRow = textArea.getLineOfOffset(caretPosition);
+            caretColumn = caretPosition - textArea.getLineStartOffset(caretRow);
+        } catch (BadLocationException e) {
+            // Keep the caret at the start
+        }
+
+        firstLine = line;
+        textEditorImpl.setText(String.join("\n", lines), line);
+        setCaret(Math.min(caretRow, rows - 1), caretColumn);
+        updateScrollBar();
+
+        if (shown != null)
+            shown.run();
+    }
+
+    /**
+     * Moves the caret to the given row and column of the text area, keeping the first row visible.
+     */
+    private void setCaret(int row, int column) {
+        try {
+            row = Math.min(row, textArea.getLineCount() - 1);
+            int start = textArea.getLineStartOffset(row);
+            int end = textArea.getLineEndOffset(row);
+            // The end offset of rows but the last one includes the line separator
+            if (row < textArea.getLineCount() - 1)
+                end--;
+            textArea.setCaretPosition(Math.min(start + column, end));
+        } catch (BadLocationException e) {
+            textArea.setCaretPosition(0);
+        }
+        resetViewPosition();
+    }
+
+    /**
+     * Scrolls the text area back to its first row, in case moving the caret scrolled it.
+     */
+    private void resetViewPosition() {
+        JViewport viewport = scrollPane.getViewport();
+        Point position = viewport.getViewPosition();
+        if (position.y != 0)
+            viewport.setViewPosition(new Point(position.x, 0));
+    }
+
+    private void updateScrollBar() {
+        int rows = getVisibleRows();
+        int max = (int) Math.min(index.getLineCount(), Integer.MAX_VALUE);
+
+        adjustingScrollBar = true;
+        scrollBar.setValues((int) Math.min(firstLine, max), Math.min(rows, max), 0, max);
+        scrollBar.setUnitIncrement(1);
+        scrollBar.setBlockIncrement(rows);
+        adjustingScrollBar = false;
+    }
+
+    /**
+     * Scrolls the lines when the caret would leave the text area.
+     */
+    private void handleKey(KeyEvent e) {
+        int rows = getVisibleRows();
+        int caretRow;
+        try {
+            caretRow = textArea.getLineOfOffset(textArea.getCaretPosition());
+        } catch (BadLocationException ex) {
+            return;
+        }
+
+        boolean ctrl = (e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0;
+        switch (e.getKeyCode()) {
+        case KeyEvent.VK_UP:
+            if (caretRow > 0)
+                return;
+            scrollTo(requestedLine - 1);
+            break;
+        case KeyEvent.VK_DOWN:
+            if (caretRow < rows - 1)
+                return;
+            scrollTo(requestedLine + 1);
+            break;
+        case KeyEvent.VK_PAGE_UP:
+            scrollTo(requestedLine - rows);
+            break;
+        case KeyEvent.VK_PAGE_DOWN:
+            scrollTo(requestedLine + rows);
+            break;
+        case KeyEvent.VK_HOME:
+            if (!ctrl)
+                return;
+            scrollTo(0, () -> setCaret(0, 0));
+            break;
+        case KeyEvent.VK_END:
+            if (!ctrl)
+                return;
+            scrollTo(Long.MAX_VALUE, () -> setCaret(rows - 1, Integer.MAX_VALUE));
+            break;
+        default:
+            return;
+        }
+        e.consume();
+    }
+
+    /////////////////
+    // Search code //
+    /////////////////
+
+    void find(JFrame frame) {
+        FindDialog findDialog = new FindDialog(frame);
+
+        if (findDialog.wasValidated()) {
+            String searchString = findDialog.getSearchString();
+
+            if (!StringUtils.isNullOrEmpty(searchString)) {
+                SearchJob.lastSearchString = searchString;
+                search(0, 0, true);
+            }
+        }
+    }
+
+    void findNext(JFrame frame) {
+        if (StringUtils.isNullOrEmpty(SearchJob.lastSearchString)) {
+            find(frame);
+        } else {
+            int offset = textArea.getSelectionEnd();
+            search(getLine(offset), getColumn(offset), true);
+        }
+    }
+
+    void findPrevious() {
+        if (!StringUtils.isNullOrEmpty(SearchJob.lastSearchString)) {
+            int offset = textArea.getSelectionStart();
+            search(getLine(offset), getColumn(offset) - 1, false);
+        }
+    }
+
+    private long getLine(int offset) {
+        try {
+            return firstLine + textArea.getLineOfOffset(offset);
+        } catch (BadLocationException e) {
+            return firstLine;
+        }
+    }
+
+    private int getColumn(int offset) {
+        try {
+            return offset - textArea.getLineStartOffset(textArea.getLineOfOffset(offset));
+        } catch (BadLocationException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Searches the last search string in a background thread, selecting the match that is found, if any.
+     */
+    private void search(long line, int column, boolean forward) {
+        if (searchThread != null)
+            searchThread.interrupt();
+
+        final String searchString = SearchJob.lastSearchString;
+        final LineIndex lineIndex = index;
+        final AbstractFile searchedFile = file;
+        textArea.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        searchThread = new Thread(() -> {
+            long[] match = null;
+            try (RandomAccessInputStream searchIn = searchedFile.getRandomAccessInputStream()) {
+                match = lineIndex.find(searchIn, searchString, line, column, forward);
+            } catch (InterruptedIOException e) {
+                // Another search was started or the file was closed
+                return;
+            } catch (IOException e) {
+                LOGGER.info("Failed to search " + searchedFile.getAbsolutePath(), e);
+            }
+
+            final long[] result = match;
+            SwingUtilities.invokeLater(() -> searchDone(lineIndex, result, searchString.length()));
+        }, "PagedTextView search");
+        searchThread.setDaemon(true);
+        searchThread.start();
+    }
+
+    private void searchDone(LineIndex lineIndex, long[] match, int length) {
+        if (lineIndex != index)
+            return;
+
+        searchThread = null;
+        textArea.setCursor(Cursor.getPredefinedCursor(Cursor.TEXT_CURSOR));
+        textArea.requestFocus();
+
+        if (match == null) {
+            // Beep when no match has been found, from a separate thread like TextEditorImpl does
+            new Thread(Toolkit.getDefaultToolkit()::beep).start();
+            return;
+        }
+
+        long line = match[0];
+        Runnable select = () -> {
+            try {
+                int start = textArea.getLineStartOffset((int) (line - firstLine)) + (int) match[1];
+                textArea.select(start, start + length);
+            } catch (BadLocationException e) {
+                LOGGER.debug("Match is out of the visible lines", e);
+            }
+            resetViewPosition();
+        };
+
+        int rows = getVisibleRows();
+        if (line < firstLine || line >= firstLine + rows)
+            scrollTo(line - rows / 3, select);
+        else
+            select.run();
+    }
+}
@@ -442,6 +442,10 @@ class TextEditorImpl implements ThemeListener {
         return scrollPane;
     }
 
+    RSyntaxTextArea getTextArea() {
+        return textArea;
+    }
+
     void addDocumentListener(DocumentListener documentListener) {
         textArea.getDocument().addDocumentListener(documentListener);
     }
@@ -457,6 +461,18 @@ class TextEditorImpl implements ThemeListener {
         textArea.setCaretPosition(0);
     }
 
+    /**
+     * Replaces the content of the text area with the given lines of a file, that are numbered from the given line on.
+     *
+     * @param text the lines to show
+     * @param firstLine the index of the first line in the file
+     */
+    void setText(String text, long firstLine) {
+        textArea.setText(text);
+        textArea.discardAllEdits();
+        scrollPane.getGutter().setLineNumberingStartIndex((int) Math.min(firstLine + 1, Integer.MAX_VALUE));
+    }
+
     void write(Writer writer) throws IOException {
         Document document = textArea.getDocument();
 
@@ -53,6 +53,16 @@ public class TextFileViewerService implements FileViewerService, FileEditorServi
 
     @Override
     public boolean canViewFile(AbstractFile file) throws WarnUserException {
+        // Large files are not loaded into memory by the viewer if they can be read page by page in their encoding
+        return canOpenFile(file, !TextViewer.isPagedViewable(file));
+    }
+
+    @Override
+    public boolean canEditFile(AbstractFile file) throws WarnUserException {
+        return canOpenFile(file, true);
+    }
+
+    private boolean canOpenFile(AbstractFile file, boolean loadedIntoMemory) throws WarnUserException {
         // Do not allow directories
         if (file.isDirectory()) {
             return false;
@@ -78,18 +88,13 @@ public class TextFileViewerService implements FileViewerService, FileEditorServi
 
         // Warn the user if the file is large that a certain size as the whole file is loaded into memory
         // (in a JTextArea)
-        if (file.getSize() > MAX_FILE_SIZE_FOR_EDIT) {
+        if (loadedIntoMemory && file.getSize() > MAX_FILE_SIZE_FOR_EDIT) {
             throw new WarnUserException(Translator.get("file_viewer.large_file_warning"));
         }
 
         return true;
     }
 
-    @Override
-    public boolean canEditFile(AbstractFile file) throws WarnUserException {
-        return canViewFile(file);
-    }
-
     @Override
     public FileViewer createFileViewer() {
         return new TextViewer();
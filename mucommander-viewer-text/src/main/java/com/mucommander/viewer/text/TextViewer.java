@@ -19,6 +19,7 @@ package com.mucommander.viewer.text;
 
 import static com.mucommander.viewer.text.TextViewerSnapshot.TEXT_FILE_PRESENTER_SECTION;
 
+import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
@@ -37,8 +38,8 @@ import javax.swing.JComponent;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JPanel;
 import javax.swing.JRadioButtonMenuItem;
-import javax.swing.JScrollPane;
 import javax.swing.KeyStroke;
 import javax.swing.event.DocumentListener;
 
@@ -66,15 +67,23 @@ import com.mucommander.viewer.ViewerPresenter;
 /**
  * A simple text viewer. Most of the implementation is located in {@link TextEditorImpl}.
  *
+ * <p>Files larger than {@link #PAGED_VIEW_MIN_FILE_SIZE} are not loaded into the text area but viewed page by page
+ * with {@link PagedTextView}, provided that they can be read randomly.</p>
+ *
  * @author Maxence Bernard, Arik Hadas
  */
 public class TextViewer implements FileViewer, EncodingListener, ActionListener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TextViewer.class);
 
-    private JScrollPane ui;
+    /** Files larger than this are viewed page by page if possible */
+    static final long PAGED_VIEW_MIN_FILE_SIZE = 1024 * 1024;
+
+    private JComponent ui;
     private ViewerPresenter presenter;
     private TextEditorImpl textEditorImpl;
+    /** Shows large files, null for the editor which loads files entirely */
+    private PagedTextView pagedTextView;
     private AbstractFile currentFile;
 
     /** Menu items */
@@ -115,7 +124,97 @@ public class TextViewer implements FileViewer, EncodingListener, ActionListener
     }
     
     protected void attachView() {
-        ui = textEditorImpl.getScrollPane();
+        pagedTextView = new PagedTextView(textEditorImpl);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(textEditorImpl.getScrollPane(), BorderLayout.CENTER);
+        panel.add(pagedTextView.getScrollBar(), BorderLayout.EAST);
+        ui = panel;
+    }
+
+    /**
+     * Returns <code>true</code> if the given file is large enough to be viewed page by page and can be, in the
+     * encoding detected from its content. This reads the beginning of the file.
+     */
+    static boolean isPagedViewable(AbstractFile file) {
+        if (!isPagedViewable(file, null))
+            return false;
+
+        try (InputStream in = file.getInputStream()) {
+            String encoding = detectEncoding(in);
+            return isPagedViewable(file, Charset.forName(encoding == null || !Charset.isSupported(encoding) ? "UTF-8" : encoding));
+        } catch (IOException e) {
+            LOGGER.debug("Failed to detect the encoding of " + file.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given file is large enough to be viewed page by page and can be, in the given
+     * charset. The charset is not checked if <code>null</code>.
+     */
+    private static boolean isPagedViewable(AbstractFile file, Charset charset) {
+        return file.getSize() > PAGED_VIEW_MIN_FILE_SIZE && file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)
+                && (charset == null || LineIndex.isSupported(charset));
+    }
+
+    /**
+     * Detects the encoding of the text read from the given stream.
+     */
+    private static String detectEncoding(InputStream in) throws IOException {
+        AtomicBoolean is8bit = new AtomicBoolean();
+        // The FilterInputStream Wraps/Proxies a given InputStream to snoop if any read characters were
+        // 8bit to distinguish ISO-8859-1 (and others) from 7-bit ASCII (US-ASCII).
+        // See: https://github.com/mucommander/mucommander/issues/824
+        String encoding = EncodingDetector.detectEncoding(new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (!is8bit.get() && check8Bit(b)) {
+                    is8bit.set(true);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] bytes) throws IOException {
+                int ret = in.read(bytes);
+                if (ret > 0 && !is8bit.get()) {
+                    for (byte b : bytes) {
+                        if (check8Bit(b)) {
+                            is8bit.set(true);
+                            break;
+                        }
+                    }
+                }
+                return ret;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int ret = in.read(b, off, len);
+                if (ret > 0 && !is8bit.get()) {
+                    for (int i = off; i < off + ret; i++) {
+                        if (check8Bit(b[i])) {
+                            is8bit.set(true);
+                            break;
+                        }
+                    }
+                }
+                return ret;
+            }
+
+            private boolean check8Bit(int b) {
+                return (b & 0x80) != 0;
+            }
+        });
+
+        // Override 7-bit ISO-8859-1 encoding to ensure UTF-8 chars that user may enter are saved correctly.
+        if (!is8bit.get() && "ISO-8859-1".equalsIgnoreCase(encoding)) {
+            encoding = "UTF-8";
+        }
+
+        return encoding;
     }
 
     void setLineNumbers(boolean lineNumbers) {
@@ -142,57 +241,7 @@ public class TextViewer implements FileViewer, EncodingListener, ActionListener
                 in = file.getInputStream();
             }
 
-            AtomicBoolean is8bit = new AtomicBoolean();
-            // The FilterInputStream Wraps/Proxies a given InputStream to snoop if any read characters were
-            // 8bit to distinguish ISO-8859-1 (and others) from 7-bit ASCII (US-ASCII).
-            // See: https://github.com/mucommander/mucommander/issues/824
-            String encoding = EncodingDetector.detectEncoding(new FilterInputStream(in) {
-                @Override
-                public int read() throws IOException {
-                    int b = in.read();
-                    if (!is8bit.get() && check8Bit(b)) {
-                        is8bit.set(true);
-                    }
-                    return b;
-                }
-
-                @Override
-                public int read(byte[] bytes) throws IOException {
-                    int ret = in.read(bytes);
-                    if (ret > 0 && !is8bit.get()) {
-                        for (byte b : bytes) {
-                            if (check8Bit(b)) {
-                                is8bit.set(true);
-                                break;
-                            }
-                        }
-                    }
-                    return ret;
-                }
-
-                @Override
-                public int read(byte[] b, int off, int len) throws IOException {
-                    int ret = in.read(b, off, len);
-                    if (ret > 0 && !is8bit.get()) {
-                        for (int i = off; i < off + ret; i++) {
-                            if (check8Bit(b[i])) {
-                                is8bit.set(true);
-                                break;
-                            }
-                        }
-                    }
-                    return ret;
-                }
-
-                private boolean check8Bit(int b) {
-                    return (b & 0x80) != 0;
-                }
-            });
-
-            // Override 7-bit ISO-8859-1 encoding to ensure UTF-8 chars that user may enter are saved correctly.
-            if (!is8bit.get() && "ISO-8859-1".equalsIgnoreCase(encoding)) {
-                encoding = "UTF-8";
-            }
+            String encoding = detectEncoding(in);
 
             if (in instanceof RandomAccessInputStream) {
                 // Seek to the beginning of the file and reuse the stream
@@ -230,6 +279,18 @@ public class TextViewer implements FileViewer, EncodingListener, ActionListener
         // If the given encoding is invalid (null or not supported), default to "UTF-8" 
         this.encoding = encoding == null || !Charset.isSupported(encoding) ? "UTF-8" : encoding;
 
+        if (pagedTextView != null) {
+            Charset charset = Charset.forName(this.encoding);
+            if (documentListener == null && isPagedViewable(file, charset)) {
+                // The file is read page by page through its own streams
+                in.close();
+                pagedTextView.open(file, charset);
+                textEditorImpl.setSyntaxStyle(file);
+                return;
+            }
+            pagedTextView.close();
+        }
+
         textEditorImpl.read(new BufferedReader(new InputStreamReader(in, this.encoding)));
         textEditorImpl.setSyntaxStyle(file);
 
@@ -361,6 +422,9 @@ public class TextViewer implements FileViewer, EncodingListener, ActionListener
     
     @Override
     public void close() {
+        if (pagedTextView != null) {
+            pagedTextView.close();
+        }
     }
 
     ///////////////////////////////////
@@ -375,6 +439,14 @@ public class TextViewer implements FileViewer, EncodingListener, ActionListener
             textEditorImpl.copy();
         else if(source == selectAllItem)
             textEditorImpl.selectAll();
+        else if(pagedTextView != null && pagedTextView.isActive() && (source == findItem || source == findNextItem || source == findPreviousItem)) {
+            if(source == findItem)
+                pagedTextView.find(presenter.getWindowFrame());
+            else if(source == findNextItem)
+                pagedTextView.findNext(presenter.getWindowFrame());
+            else
+                pagedTextView.findPrevious();
+        }
         else if(source == findItem)
             textEditorImpl.find();
         else if(source == findNextItem)
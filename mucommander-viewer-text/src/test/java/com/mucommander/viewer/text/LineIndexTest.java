@@ -0,0 +1,151 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.viewer.text;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.mucommander.commons.io.RandomAccessInputStream;
+
+/**
+ * This class is a TestNG test case for {@link LineIndex}.
+ */
+public class LineIndexTest {
+
+    /**
+     * RandomAccessInputStream that reads a byte array.
+     */
+    private static class ByteArrayRandomAccessInputStream extends RandomAccessInputStream {
+        private final byte[] bytes;
+        private int offset;
+
+        ByteArrayRandomAccessInputStream(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() {
+            return offset < bytes.length ? bytes[offset++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (offset >= bytes.length)
+                return -1;
+            len = Math.min(len, bytes.length - offset);
+            System.arraycopy(bytes, offset, b, off, len);
+            offset += len;
+            return len;
+        }
+
+        @Override
+        public long getOffset() {
+            return offset;
+        }
+
+        @Override
+        public long getLength() {
+            return bytes.length;
+        }
+
+        @Override
+        public void seek(long offset) {
+            this.offset = (int) offset;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Returns a file of the given number of lines, line <i>i</i> being "line <i>i</i>", separated by CRLF.
+     */
+    private static RandomAccessInputStream createFile(int nbLines, boolean trailingNewline) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < nbLines; i++) {
+            if (i > 0)
+                sb.append("\r\n");
+            sb.append("line ").append(i);
+        }
+        if (trailingNewline)
+            sb.append("\r\n");
+        return new ByteArrayRandomAccessInputStream(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Indexes a file that spans several checkpoints and reads lines around them.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testReadLines() throws IOException {
+        int nbLines = 10 * LineIndex.LINES_PER_CHECKPOINT + 7;
+        RandomAccessInputStream in = createFile(nbLines, false);
+        LineIndex index = new LineIndex(StandardCharsets.UTF_8);
+        index.build(in, () -> {});
+
+        assert index.isComplete();
+        assert index.getLineCount() == nbLines;
+
+        List<String> lines = index.readLines(in, LineIndex.LINES_PER_CHECKPOINT - 1, 3);
+        assert lines.size() == 3;
+        assert ("line " + (LineIndex.LINES_PER_CHECKPOINT - 1)).equals(lines.get(0));
+        assert ("line " + (LineIndex.LINES_PER_CHECKPOINT + 1)).equals(lines.get(2));
+
+        lines = index.readLines(in, nbLines - 2, 10);
+        assert lines.size() == 2;
+        assert ("line " + (nbLines - 1)).equals(lines.get(1));
+
+        assert index.readLines(in, nbLines, 1).isEmpty();
+
+        // A trailing line separator is followed by an empty line, like in the text area
+        in = createFile(3, true);
+        index = new LineIndex(StandardCharsets.UTF_8);
+        index.build(in, () -> {});
+        assert index.getLineCount() == 4;
+        assert "".equals(index.readLines(in, 3, 1).get(0));
+    }
+
+    /**
+     * Searches forward and backward, across checkpoints.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testFind() throws IOException {
+        RandomAccessInputStream in = createFile(5 * LineIndex.LINES_PER_CHECKPOINT, false);
+        LineIndex index = new LineIndex(StandardCharsets.UTF_8);
+        index.build(in, () -> {});
+
+        long[] match = index.find(in, "LINE 300", 0, 0, true);
+        assert match != null && match[0] == 300 && match[1] == 0;
+
+        match = index.find(in, "e 31", 300, 0, true);
+        assert match != null && match[0] == 310 && match[1] == 3;
+
+        match = index.find(in, "ne 1", 300, Integer.MAX_VALUE, false);
+        assert match != null && match[0] == 199 && match[1] == 2;
+
+        assert index.find(in, "line 1000", 0, 0, true) == null;
+        assert index.find(in, "line 300", 299, Integer.MAX_VALUE, false) == null;
+    }
+}
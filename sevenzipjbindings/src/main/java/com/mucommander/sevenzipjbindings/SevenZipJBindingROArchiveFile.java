@@ -20,9 +20,12 @@ package com.mucommander.sevenzipjbindings;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,11 +34,16 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.archive.AbstractROArchiveFile;
 import com.mucommander.commons.file.archive.ArchiveEntry;
 import com.mucommander.commons.file.archive.ArchiveEntryIterator;
+import com.mucommander.commons.file.archive.EntryExtractionPipe;
 import com.mucommander.commons.file.archive.WrapperArchiveEntryIterator;
 import com.mucommander.commons.util.CircularByteBuffer;
 import com.mucommander.commons.util.StringUtils;
 
 import net.sf.sevenzipjbinding.ArchiveFormat;
+import net.sf.sevenzipjbinding.ExtractAskMode;
+import net.sf.sevenzipjbinding.ExtractOperationResult;
+import net.sf.sevenzipjbinding.IArchiveExtractCallback;
+import net.sf.sevenzipjbinding.ICryptoGetTextPassword;
 import net.sf.sevenzipjbinding.IInArchive;
 import net.sf.sevenzipjbinding.ISequentialOutStream;
 import net.sf.sevenzipjbinding.PropID;
@@ -107,7 +115,7 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
 
     @Override
     public InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) {
-        final CircularByteBuffer cbb = new CircularByteBuffer(CircularByteBuffer.INFINITE_SIZE);
+        final CircularByteBuffer cbb = new CircularByteBuffer();
         new Thread(() -> {
             synchronized (SevenZipJBindingROArchiveFile.this) {
                 try {
@@ -139,6 +147,107 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
         return cbb.getInputStream();
     }
 
+    /**
+     * Extracts the given entries with a single call to {@link IInArchive#extract(int[], boolean, IArchiveExtractCallback)},
+     * so that solid archives are decompressed once rather than from their start for every entry. The extraction
+     * runs on a thread of its own and the entries are handed over to the consumer through an
+     * {@link EntryExtractionPipe}, which bounds the memory used.
+     */
+    @Override
+    public void extractEntries(List<ArchiveEntry> entries, EntryConsumer consumer) throws IOException {
+        Map<Integer, ArchiveEntry> entriesByIndex = new HashMap<>();
+        for (ArchiveEntry entry : entries)
+            entriesByIndex.put((Integer) entry.getEntryObject(), entry);
+        int[] indices = entriesByIndex.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+
+        EntryExtractionPipe pipe = new EntryExtractionPipe();
+        Thread extractionThread = new Thread(() -> {
+            Exception failure = null;
+            synchronized (SevenZipJBindingROArchiveFile.this) {
+                try (IInArchive sevenZipFile = openInArchive()) {
+                    sevenZipFile.extract(indices, false, new ExtractCallback(entriesByIndex, pipe));
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.warn("failed to extract entries from archive: " + e.getMessage());
+                    LOGGER.debug("failed to extract entries from archive", e);
+                    failure = e;
+                } finally {
+                    inArchive = null;
+                    pipe.finish(failure);
+                }
+            }
+        }, "7-Zip extraction");
+        extractionThread.setDaemon(true);
+        extractionThread.start();
+
+        pipe.consume(consumer, extractionThread);
+    }
+
+    @Override
+    public boolean isBulkExtractionSupported() {
+        return true;
+    }
+
+    /**
+     * Writes the entries extracted by {@link IInArchive#extract(int[], boolean, IArchiveExtractCallback)} to an
+     * {@link EntryExtractionPipe}.
+     */
+    private class ExtractCallback implements IArchiveExtractCallback, ICryptoGetTextPassword {
+        private final Map<Integer, ArchiveEntry> entriesByIndex;
+        private final EntryExtractionPipe pipe;
+
+        private ExtractCallback(Map<Integer, ArchiveEntry> entriesByIndex, EntryExtractionPipe pipe) {
+            this.entriesByIndex = entriesByIndex;
+            this.pipe = pipe;
+        }
+
+        @Override
+        public ISequentialOutStream getStream(int index, ExtractAskMode extractAskMode) throws SevenZipException {
+            ArchiveEntry entry = entriesByIndex.get(index);
+            if (extractAskMode != ExtractAskMode.EXTRACT || entry == null)
+                return null;
+
+            OutputStream out;
+            try {
+                out = pipe.startEntry(entry);
+            } catch (IOException e) {
+                throw new SevenZipException(e);
+            }
+
+            return data -> {
+                try {
+                    out.write(data);
+                } catch (IOException e) {
+                    throw new SevenZipException(e);
+                }
+                return data.length; // Return amount of proceed data
+            };
+        }
+
+        @Override
+        public void prepareOperation(ExtractAskMode extractAskMode) {
+        }
+
+        @Override
+        public void setOperationResult(ExtractOperationResult extractOperationResult) {
+            pipe.endEntry(extractOperationResult == ExtractOperationResult.OK
+                    ? null
+                    : new IOException("failed to extract entry: " + extractOperationResult));
+        }
+
+        @Override
+        public void setTotal(long total) {
+        }
+
+        @Override
+        public void setCompleted(long complete) {
+        }
+
+        @Override
+        public String cryptoGetTextPassword() {
+            return password;
+        }
+    }
+
     /**
      * Creates and return an {@link ArchiveEntry()} whose attributes are fetched from the given {@link com.mucommander.commons.file.impl.sevenzip.provider.SevenZip.Archive.SevenZipEntry}
      *